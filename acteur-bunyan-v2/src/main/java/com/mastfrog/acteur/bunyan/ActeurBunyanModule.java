@@ -42,6 +42,7 @@ import com.mastfrog.acteur.util.RequestID;
 import com.mastfrog.acteurbase.ActeurState;
 import com.mastfrog.bunyan.java.v2.Log;
 import com.mastfrog.bunyan.java.v2.Logs;
+import com.mastfrog.bunyan.java.v2.MessageTemplate;
 import com.mastfrog.giulius.bunyan.java.v2.LoggingModule;
 import com.mastfrog.jackson.configuration.JacksonConfigurer;
 import com.mastfrog.util.preconditions.Exceptions;
@@ -62,6 +63,10 @@ public class ActeurBunyanModule extends AbstractModule {
     private String requestLoggerLevel = "debug";
     private boolean bindErrorInterceptor = true;
     private boolean useProbe = false;
+    private String requestLogsLogger = ACCESS_LOGGER;
+    private int requestLogsBufferSize;
+    static final String GUICE_BINDING_REQUEST_LOGS_LOGGER = "_requestLogsLogger";
+    static final String GUICE_BINDING_REQUEST_LOGS_BUFFER_SIZE = "_requestLogsBufferSize";
 
     public ActeurBunyanModule() {
         this(true);
@@ -95,6 +100,28 @@ public class ActeurBunyanModule extends AbstractModule {
         return this;
     }
 
+    /**
+     * Buffer trace and debug records logged through loggers obtained from
+     * <code>RequestLogs.forRequest()</code>, writing them only if an error is
+     * logged through the same logger or the response status is 500 or
+     * greater, so failed requests come with full debug detail without
+     * writing it for every request.
+     *
+     * @param loggerName The logger name to use for per-request loggers
+     * @param maxRecordsPerRequest The maximum number of records to buffer for
+     * each request; older ones are discarded beyond that
+     * @return this
+     */
+    public ActeurBunyanModule bufferDebugLogsPerRequest(String loggerName, int maxRecordsPerRequest) {
+        checkLaunched();
+        if (maxRecordsPerRequest <= 0) {
+            throw new IllegalArgumentException("Buffer size must be > 0: " + maxRecordsPerRequest);
+        }
+        this.requestLogsLogger = loggerName;
+        this.requestLogsBufferSize = maxRecordsPerRequest;
+        return this;
+    }
+
     private boolean includeBody;
 
     public ActeurBunyanModule useProbe(boolean includeBody) {
@@ -125,6 +152,10 @@ public class ActeurBunyanModule extends AbstractModule {
         bind(RequestLogger.class).to(JsonRequestLogger.class);
         bind(String.class).annotatedWith(Names.named(GUICE_BINDING_REQUEST_LOGGER_LEVEL))
                 .toInstance(this.requestLoggerLevel);
+        bind(String.class).annotatedWith(Names.named(GUICE_BINDING_REQUEST_LOGS_LOGGER))
+                .toInstance(requestLogsLogger);
+        bind(Integer.class).annotatedWith(Names.named(GUICE_BINDING_REQUEST_LOGS_BUFFER_SIZE))
+                .toInstance(requestLogsBufferSize);
 
         if (useProbe) {
             bind(Probe.class).toProvider(ProbeLogger.class);
@@ -163,7 +194,8 @@ public class ActeurBunyanModule extends AbstractModule {
 
         @Override
         protected void onInfo(String info, Object... objs) {
-            logger.info(String.format(info, objs)).close();
+            // Only formatted if info logging is enabled for the probe logger
+            logger.info(MessageTemplate.printf(info), objs).close();
         }
 
         @Override
@@ -228,13 +260,15 @@ public class ActeurBunyanModule extends AbstractModule {
         private final Logs logger;
         private final String level;
         private final RequestLogRecordDecorator decorator;
+        private final RequestLogs requestLogs;
 
         @Inject
         JsonRequestLogger(@Named(ACCESS_LOGGER) Logs logger, @Named(GUICE_BINDING_REQUEST_LOGGER_LEVEL) String level,
-                RequestLogRecordDecorator decorator) {
+                RequestLogRecordDecorator decorator, RequestLogs requestLogs) {
             this.logger = logger;
             this.level = level.intern();
             this.decorator = decorator;
+            this.requestLogs = requestLogs;
         }
 
         @Override
@@ -268,6 +302,9 @@ public class ActeurBunyanModule extends AbstractModule {
                     throw new AssertionError(level);
             }
             decorator.decorate(log, event, status, rid);
+            // Write or discard any buffered debug records for the request
+            // ahead of the request record itself
+            requestLogs.onRespond(rid, status);
             log.add("id", rid.stringValue())
                     .add("dur", rid.getDuration().toMillis())
                     .add("status", status.code())
@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.bunyan;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.mastfrog.acteur.util.RequestID;
+import static com.mastfrog.acteur.bunyan.ActeurBunyanModule.GUICE_BINDING_REQUEST_LOGS_BUFFER_SIZE;
+import static com.mastfrog.acteur.bunyan.ActeurBunyanModule.GUICE_BINDING_REQUEST_LOGS_LOGGER;
+import com.mastfrog.bunyan.java.v2.BufferingLogs;
+import com.mastfrog.bunyan.java.v2.LoggingConfig;
+import com.mastfrog.bunyan.java.v2.Logs;
+import com.mastfrog.util.preconditions.Exceptions;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Provides per-request loggers whose records include the request id. If
+ * <code>ActeurBunyanModule.bufferDebugLogsPerRequest()</code> was called,
+ * trace and debug records logged through them are buffered, and only written
+ * if an error is logged through the same instance or the response status is
+ * 500 or greater; otherwise they are discarded when the response is sent.
+ *
+ * @author Tim Boudreau
+ */
+@Singleton
+public final class RequestLogs {
+
+    private final Cache<RequestID, BufferingLogs> buffers = CacheBuilder.newBuilder().weakKeys().build();
+    private final Provider<LoggingConfig> config;
+    private final String loggerName;
+    private final int maxBuffered;
+    private Logs logger;
+
+    @Inject
+    RequestLogs(Provider<LoggingConfig> config,
+            @Named(GUICE_BINDING_REQUEST_LOGS_LOGGER) String loggerName,
+            @Named(GUICE_BINDING_REQUEST_LOGS_BUFFER_SIZE) int maxBuffered) {
+        this.config = config;
+        this.loggerName = loggerName;
+        this.maxBuffered = maxBuffered;
+    }
+
+    private synchronized Logs logger() {
+        if (logger == null) {
+            logger = config.get().logs(loggerName);
+        }
+        return logger;
+    }
+
+    /**
+     * Get the logger for a request.
+     *
+     * @param id The request id
+     * @return A logger which includes the request id in its records
+     */
+    public Logs forRequest(RequestID id) {
+        if (maxBuffered <= 0) {
+            return logger().child("rid", id.stringValue());
+        }
+        try {
+            return buffers.get(id, () -> logger().bufferingChild("rid", id.stringValue(), maxBuffered));
+        } catch (ExecutionException ex) {
+            Exceptions.printStackTrace(ex);
+            return logger().child("rid", id.stringValue());
+        }
+    }
+
+    void onRespond(RequestID id, HttpResponseStatus status) {
+        if (maxBuffered <= 0) {
+            return;
+        }
+        BufferingLogs logs = buffers.getIfPresent(id);
+        if (logs != null) {
+            buffers.invalidate(id);
+            if (status.code() >= 500) {
+                logs.flush();
+            } else {
+                logs.discard();
+            }
+        }
+    }
+}
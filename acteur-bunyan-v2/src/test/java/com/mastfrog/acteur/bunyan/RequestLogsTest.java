@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.bunyan;
+
+import com.mastfrog.acteur.util.RequestID;
+import com.mastfrog.bunyan.java.v2.JSONContext;
+import com.mastfrog.bunyan.java.v2.LogSink;
+import com.mastfrog.bunyan.java.v2.LoggingConfig;
+import com.mastfrog.bunyan.java.v2.Logs;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class RequestLogsTest {
+
+    private final List<Map<String, Object>> records = Collections.synchronizedList(new ArrayList<>());
+    private final RequestID.Factory ids = new RequestID.Factory();
+    private LoggingConfig config;
+    private RequestLogs logs;
+
+    @Test
+    public void testBufferedRecordsAreFlushedOnServerError() {
+        RequestID id = ids.next();
+        logs.forRequest(id).debug("buffered").close();
+        assertTrue(records.isEmpty(), records.toString());
+        logs.onRespond(id, HttpResponseStatus.INTERNAL_SERVER_ERROR);
+        assertEquals(1, records.size(), records.toString());
+        assertEquals("buffered", records.get(0).get("msg"));
+        assertEquals(id.stringValue(), records.get(0).get("rid"));
+
+        RequestID other = ids.next();
+        logs.forRequest(other).debug("unavailable").close();
+        logs.onRespond(other, HttpResponseStatus.SERVICE_UNAVAILABLE);
+        assertEquals(2, records.size(), records.toString());
+        assertEquals("unavailable", records.get(1).get("msg"));
+    }
+
+    @Test
+    public void testBufferedRecordsAreDiscardedOtherwise() {
+        RequestID id = ids.next();
+        Logs forRequest = logs.forRequest(id);
+        forRequest.debug("buffered").close();
+        forRequest.info("written").close();
+        assertEquals(1, records.size(), records.toString());
+        logs.onRespond(id, HttpResponseStatus.NOT_FOUND);
+        assertEquals(1, records.size(), records.toString());
+        assertEquals("written", records.get(0).get("msg"));
+        // Responding forgets the request's buffer
+        assertNotSame(forRequest, logs.forRequest(id));
+        logs.onRespond(id, HttpResponseStatus.INTERNAL_SERVER_ERROR);
+        assertEquals(1, records.size(), records.toString());
+    }
+
+    @Test
+    public void testBuffersAreWeaklyKeyedByRequestId() throws InterruptedException {
+        RequestID id = ids.next();
+        Logs forRequest = logs.forRequest(id);
+        assertSame(forRequest, logs.forRequest(id));
+        forRequest.debug("abandoned").close();
+        WeakReference<Logs> ref = new WeakReference<>(forRequest);
+        forRequest = null;
+        id = null;
+        for (int i = 0; i < 100 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+            // Give the cache a chance to expunge collected keys
+            logs.forRequest(ids.next());
+        }
+        assertNull(ref.get(), "Buffer for an unreachable request id was retained");
+        assertTrue(records.isEmpty(), records.toString());
+    }
+
+    @BeforeEach
+    public void setup() {
+        LogSink sink = (JSONContext ctx, Map<String, Object> logrecord) -> records.add(logrecord);
+        config = LoggingConfig.builder().nonDefault()
+                .dontUseShutdownHook()
+                .logTo(sink)
+                .setMinimumLogLevelToInfo()
+                .build();
+        logs = new RequestLogs(() -> config, "requests", 32);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (config != null) {
+            config.shutdown();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import com.mastfrog.bunyan.java.v2.benchmarks.DiscardingLogSink;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures records logged through a static <code>Logs.named()</code>
+ * instance before any LoggingConfig exists - buffered, then replayed when a
+ * global configuration is set - against the same records logged once it
+ * is configured. Each invocation logs a batch and installs and removes the
+ * global configuration, which is done directly, in the package of
+ * LoggingConfig, so the cost of building a configuration is not included.
+ * The fork raises the threshold for automatic configuration, so it never
+ * kicks in.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Ddisable.console.logger=true",
+    "-D" + LoggingConfig.PROP_AUTO_CONFIG_THRESHOLD + "=2147483647"})
+@Threads(1)
+public class DelayedDelegationLogsBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int records;
+
+    private LoggingConfig config;
+    private DiscardingLogSink sink;
+    private Logs logs;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sink = new DiscardingLogSink();
+        config = LoggingConfig.builder()
+                .nonDefault()
+                .dontUseShutdownHook()
+                .hostNameForLogRecords("bench")
+                .logTo(sink)
+                .build();
+        logs = Logs.named("delayed");
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        config.shutdown();
+    }
+
+    @Benchmark
+    public long bufferedThenReplayed() {
+        for (int i = 0; i < records; i++) {
+            logs.info("pre-init").add("index", i).close();
+        }
+        DelayedDelegationLogs.setGlobalLoggingConfig(config, true);
+        DelayedDelegationLogs.onConfigShutdown(config);
+        return sink.count();
+    }
+
+    @Benchmark
+    public long configured() {
+        DelayedDelegationLogs.setGlobalLoggingConfig(config, true);
+        for (int i = 0; i < records; i++) {
+            logs.info("pre-init").add("index", i).close();
+        }
+        DelayedDelegationLogs.onConfigShutdown(config);
+        return sink.count();
+    }
+}
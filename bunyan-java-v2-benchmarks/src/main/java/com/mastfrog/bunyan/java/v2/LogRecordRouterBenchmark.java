@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import com.mastfrog.bunyan.java.v2.benchmarks.DiscardingLogSink;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures looking up the sink for a logger name and level, which every
+ * enabled record does - for a logger with its own route, one which falls
+ * through to the default, and the severe-record route. This is in the
+ * package of LoggingConfig, since the lookup is not public.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Ddisable.console.logger=true")
+public class LogRecordRouterBenchmark {
+
+    @Param({"1", "16"})
+    public int routes;
+
+    @Param({"false", "true"})
+    public boolean async;
+
+    private LoggingConfig config;
+    private String routed;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        LoggingConfig.Builder b = LoggingConfig.builder()
+                .nonDefault()
+                .dontUseShutdownHook()
+                .hostNameForLogRecords("bench")
+                .logToFile(Paths.get("/dev/null"))
+                .logErrorAndFatalTo(new DiscardingLogSink());
+        for (int i = 0; i < routes; i++) {
+            b.routeLogsTo(new DiscardingLogSink(), "routed" + i);
+        }
+        if (async) {
+            b.asyncLogging();
+        }
+        config = b.build();
+        routed = "routed" + (routes - 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        config.shutdown();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public LogSink routedLogger() {
+        return config.sinkFor(routed, LogLevel.INFO);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public LogSink defaultLogger() {
+        return config.sinkFor("unrouted", LogLevel.INFO);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public LogSink severe() {
+        return config.sinkFor("unrouted", LogLevel.ERROR);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public LogSink routedLoggerContended() {
+        return config.sinkFor(routed, LogLevel.INFO);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mastfrog.bunyan.java.v2.LoggingConfig;
+import com.mastfrog.bunyan.java.v2.Logs;
+import com.mastfrog.bunyan.parse.LogFilter;
+import com.mastfrog.bunyan.parse.LogRecord;
+import com.mastfrog.bunyan.parse.LogStreamFactory;
+import com.mastfrog.jackson.configuration.JacksonConfigurer;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading a log file written by bunyan-java-v2 with bunyan-parse,
+ * in records per microsecond, both parsing every record and with a filter
+ * on the logger name, which can skip lines before parsing them.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Ddisable.console.logger=true")
+@Threads(1)
+public class BunyanParseBenchmark {
+
+    private static final int RECORDS = 10_000;
+    private Path file;
+    private LogStreamFactory factory;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = Files.createTempFile("bunyan-parse-bench", ".log");
+        LoggingConfig config = LoggingConfig.builder()
+                .nonDefault()
+                .dontUseShutdownHook()
+                .hostNameForLogRecords("bench")
+                .logToFile(file)
+                .build();
+        try {
+            Logs a = config.logs("a");
+            Logs b = config.logs("b");
+            for (int i = 0; i < RECORDS; i++) {
+                ((i & 1) == 0 ? a : b).info("request")
+                        .add("path", "/api/things/" + i)
+                        .add("status", 200)
+                        .add("bytes", 18231L + i)
+                        .close();
+            }
+        } finally {
+            config.shutdown();
+        }
+        ObjectMapper mapper = JacksonConfigurer.configureFromMetaInfServices(new ObjectMapper());
+        factory = new LogStreamFactory(file, mapper);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public long parseAll() throws IOException {
+        try (Stream<LogRecord> records = factory.stream()) {
+            return records.count();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public long parseFiltered() throws IOException {
+        try (Stream<LogRecord> records = factory.stream(LogFilter.named("a"))) {
+            return records.count();
+        }
+    }
+}
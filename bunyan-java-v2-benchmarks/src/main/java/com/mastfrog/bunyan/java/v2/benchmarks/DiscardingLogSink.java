@@ -0,0 +1,54 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2.benchmarks;
+
+import com.mastfrog.bunyan.java.v2.JSONContext;
+import com.mastfrog.bunyan.java.v2.LogSink;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A log sink which discards records but counts them, so benchmarks measure
+ * the logging pipeline and not I/O.
+ *
+ * @author Tim Boudreau
+ */
+public final class DiscardingLogSink implements LogSink {
+
+    private final LongAdder count = new LongAdder();
+
+    @Override
+    public void push(JSONContext ctx, Map<String, Object> logrecord) {
+        count.increment();
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "discard(" + count.sum() + ")";
+    }
+}
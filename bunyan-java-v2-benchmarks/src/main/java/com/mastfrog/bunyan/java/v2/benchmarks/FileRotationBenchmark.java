@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2.benchmarks;
+
+import com.mastfrog.bunyan.java.v2.LoggingConfig;
+import com.mastfrog.bunyan.java.v2.Logs;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures logging to a file which is rotated when it passes a size
+ * threshold, so the cost of checking the file's size and of switching
+ * files is included; compare with FileLogSinkBenchmark for the overhead.
+ * Rotated files are written to a directory which is deleted after each
+ * iteration.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Ddisable.console.logger=true")
+public class FileRotationBenchmark {
+
+    @Param({"1", "16"})
+    public long thresholdMegabytes;
+
+    @Param({"false", "true"})
+    public boolean async;
+
+    private Path dir;
+    private LoggingConfig config;
+    private Logs logs;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("bunyan-rotation-bench");
+        LoggingConfig.Builder b = LoggingConfig.builder()
+                .nonDefault()
+                .dontUseShutdownHook()
+                .hostNameForLogRecords("bench")
+                .fileRotationThresholdMegabytes(thresholdMegabytes)
+                .logToFile(dir.resolve("rotating.log"));
+        if (async) {
+            b.asyncLogging();
+        }
+        config = b.build();
+        logs = config.logs("rotation");
+    }
+
+    @TearDown(Level.Iteration)
+    public void teardown() throws IOException {
+        config.shutdown();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            });
+        }
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void write() {
+        logs.info("request")
+                .add("path", "/api/things/23")
+                .add("status", 200)
+                .add("bytes", 18231L)
+                .close();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void writeContended() {
+        logs.info("request")
+                .add("path", "/api/things/23")
+                .add("status", 200)
+                .add("bytes", 18231L)
+                .close();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2.benchmarks;
+
+import com.mastfrog.bunyan.java.v2.LoggingConfig;
+import com.mastfrog.bunyan.java.v2.Logs;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the JSON serialization policies - SimpleJSON only, Jackson only,
+ * and adaptive (SimpleJSON unless a record contains something it cannot
+ * definitely serialize) - writing synchronously to <code>/dev/null</code>.
+ * The <code>bean</code> records contain an object only Jackson can
+ * serialize properly, so the adaptive policy falls back to Jackson for them.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Ddisable.console.logger=true")
+@Threads(1)
+public class JsonPolicyBenchmark {
+
+    @Param({"simple", "jackson", "adaptive"})
+    public String policy;
+
+    private LoggingConfig config;
+    private Logs logs;
+    private final Map<String, Object> nested = new LinkedHashMap<>();
+    private final Thing bean = new Thing();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        LoggingConfig.Builder b = LoggingConfig.builder()
+                .nonDefault()
+                .dontUseShutdownHook()
+                .hostNameForLogRecords("bench")
+                .logToFile(Paths.get("/dev/null"));
+        switch (policy) {
+            case "simple":
+                b.neverUseJacksonForJSON();
+                break;
+            case "jackson":
+                b.useJacksonExclusivelyForJSON();
+                break;
+            case "adaptive":
+                b.useJacksonWhenNeededForJSON();
+                break;
+            default:
+                throw new IllegalArgumentException(policy);
+        }
+        config = b.build();
+        logs = config.logs("json");
+        nested.put("ids", Arrays.asList(1, 2, 3, 5, 8, 13));
+        nested.put("tags", Arrays.asList("a", "b", "c"));
+        Map<String, Object> inner = new LinkedHashMap<>();
+        inner.put("host", "example.com");
+        inner.put("port", 8080);
+        nested.put("target", inner);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        config.shutdown();
+    }
+
+    @Benchmark
+    public void flat() {
+        logs.info("request")
+                .add("path", "/api/things/23")
+                .add("status", 200)
+                .add("bytes", 18231L)
+                .add("cached", false)
+                .close();
+    }
+
+    @Benchmark
+    public void nested() {
+        logs.info("request").add("detail", nested).close();
+    }
+
+    @Benchmark
+    public void bean() {
+        logs.info("request").add("thing", bean).close();
+    }
+
+    public static final class Thing {
+
+        private final String name = "thing";
+        private final List<Integer> sizes = Arrays.asList(1, 2, 3);
+
+        public String getName() {
+            return name;
+        }
+
+        public List<Integer> getSizes() {
+            return sizes;
+        }
+    }
+}
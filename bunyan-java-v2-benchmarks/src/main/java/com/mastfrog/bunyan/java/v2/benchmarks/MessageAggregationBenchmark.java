@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2.benchmarks;
+
+import com.mastfrog.bunyan.java.v2.Log;
+import com.mastfrog.bunyan.java.v2.LoggingConfig;
+import com.mastfrog.bunyan.java.v2.Logs;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of assembling a record's message from 1, 5 or 20 pieces,
+ * comparing the default substring deduplication with
+ * <code>LoggingConfig.Builder.deduplicateMessagePiecesExactly()</code>, with
+ * and without pooled records. Half the pieces are numbers, as with
+ * <code>log.add("took").add(elapsed)</code>.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Ddisable.console.logger=true")
+public class MessageAggregationBenchmark {
+
+    @Param({"1", "5", "20"})
+    public int fragments;
+
+    @Param({"false", "true"})
+    public boolean exact;
+
+    @Param({"false", "true"})
+    public boolean pooled;
+
+    private LoggingConfig config;
+    private Logs logs;
+    private Object[] pieces;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        LoggingConfig.Builder b = LoggingConfig.builder()
+                .nonDefault()
+                .dontUseShutdownHook()
+                .neverUseJacksonForJSON()
+                .hostNameForLogRecords("bench")
+                .logToFile(Paths.get("/dev/null"));
+        if (exact) {
+            b.deduplicateMessagePiecesExactly();
+        }
+        if (pooled) {
+            b.pooledRecords();
+        }
+        config = b.build();
+        logs = config.logs("aggregation");
+        pieces = new Object[fragments - 1];
+        for (int i = 0; i < pieces.length; i++) {
+            pieces[i] = i % 2 == 0 ? "fragment-" + i : (Object) (i * 1000L);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        config.shutdown();
+    }
+
+    @Benchmark
+    public void aggregate() {
+        Log log = logs.info("message");
+        for (Object piece : pieces) {
+            log.add(piece);
+        }
+        log.close();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2.benchmarks;
+
+import com.mastfrog.bunyan.java.v2.LoggingConfig;
+import com.mastfrog.bunyan.java.v2.Logs;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares pooled and unpooled log records, writing to <code>/dev/null</code>
+ * so the full encoding path runs without real I/O. The interesting number is
+ * allocation rate, so run it with the GC profiler:
+ * <pre>
+ * java -jar target/benchmarks.jar PooledRecordsBenchmark -prof gc
+ * </pre> and compare <code>gc.alloc.rate.norm</code> across the
+ * <code>pooled</code> parameter.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Ddisable.console.logger=true")
+@Threads(8)
+public class PooledRecordsBenchmark {
+
+    @Param({"false", "true"})
+    public boolean pooled;
+
+    @Param({"false", "true"})
+    public boolean async;
+
+    private LoggingConfig config;
+    private Logs logs;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        LoggingConfig.Builder b = LoggingConfig.builder()
+                .nonDefault()
+                .dontUseShutdownHook()
+                .neverUseJacksonForJSON()
+                .hostNameForLogRecords("bench")
+                .logToFile(Paths.get("/dev/null"));
+        if (async) {
+            b.asyncLogging();
+        }
+        if (pooled) {
+            b.pooledRecords();
+        }
+        config = b.build();
+        logs = config.logs("pool");
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        config.shutdown();
+    }
+
+    @Benchmark
+    public void smallRecord() {
+        logs.info("x").add("k", 1).close();
+    }
+
+    @Benchmark
+    public void typicalRecord() {
+        logs.info("request")
+                .add("path", "/api/things/23")
+                .add("status", 200)
+                .add("bytes", 18231L)
+                .add("cached", false)
+                .add("user", "someone")
+                .close();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+/**
+ * Told how sending a batch of records to a remote sink went. One of its
+ * methods should be called, once; calls after the first - or after the
+ * sender has stopped waiting for an answer, because the delivery timeout
+ * passed - are ignored.
+ *
+ * @author Tim Boudreau
+ */
+public interface DeliveryCallback {
+
+    /**
+     * The records were delivered.
+     */
+    void sent();
+
+    /**
+     * The records could not be delivered now, but might be later - the
+     * remote end is down or overloaded, or a connection was lost. They are
+     * sent again after a backoff which grows with each consecutive failure.
+     *
+     * @param cause The cause, or null
+     */
+    void failed(Throwable cause);
+
+    /**
+     * The records will never be accepted by the remote end - for example,
+     * it has said they are malformed or too large. They are dropped, and
+     * the sender moves on.
+     *
+     * @param cause The cause, or null
+     */
+    void rejected(Throwable cause);
+}
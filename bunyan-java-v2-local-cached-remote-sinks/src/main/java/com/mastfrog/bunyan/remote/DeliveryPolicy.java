@@ -0,0 +1,94 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long the sender waits for a batch to be acknowledged, and how it backs
+ * off after failures. The delay after a failure doubles with each
+ * consecutive failure, up to a maximum, and is jittered so that senders on
+ * many hosts which lost the same endpoint do not all retry at once. After
+ * enough consecutive failures the circuit opens: only one batch at a time is
+ * sent, as a probe, until one succeeds.
+ *
+ * @author Tim Boudreau
+ */
+final class DeliveryPolicy {
+
+    static final DeliveryPolicy DEFAULT = new DeliveryPolicy(TimeUnit.SECONDS.toNanos(30),
+            TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.SECONDS.toNanos(30), 5);
+    final long timeoutNanos;
+    final long initialBackoffNanos;
+    final long maxBackoffNanos;
+    final int breakerFailures;
+
+    /**
+     * Create a policy.
+     *
+     * @param timeoutNanos How long to wait for a batch to be acknowledged
+     * before treating it as failed
+     * @param initialBackoffNanos The delay after the first failure
+     * @param maxBackoffNanos The most the delay grows to
+     * @param breakerFailures The number of consecutive failures after which
+     * only one batch at a time is sent
+     */
+    DeliveryPolicy(long timeoutNanos, long initialBackoffNanos, long maxBackoffNanos, int breakerFailures) {
+        this.timeoutNanos = timeoutNanos;
+        this.initialBackoffNanos = initialBackoffNanos;
+        this.maxBackoffNanos = Math.max(initialBackoffNanos, maxBackoffNanos);
+        this.breakerFailures = breakerFailures;
+    }
+
+    /**
+     * Get how long to wait after a number of consecutive failures - between
+     * half and all of the un-jittered delay, so retries are spread out but
+     * never come sooner than half the intended delay.
+     *
+     * @param failures The number of consecutive failures, at least 1
+     * @return A delay in nanoseconds
+     */
+    long backoffNanos(int failures) {
+        long delay = initialBackoffNanos;
+        for (int i = 1; i < failures && delay < maxBackoffNanos; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, maxBackoffNanos);
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    boolean isCircuitOpen(int failures) {
+        return failures >= breakerFailures;
+    }
+
+    @Override
+    public String toString() {
+        return "DeliveryPolicy(timeout " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos)
+                + "ms, backoff " + TimeUnit.NANOSECONDS.toMillis(initialBackoffNanos)
+                + "-" + TimeUnit.NANOSECONDS.toMillis(maxBackoffNanos)
+                + "ms, circuit opens after " + breakerFailures + " failures)";
+    }
+}
@@ -26,36 +26,100 @@ package com.mastfrog.bunyan.remote;
 
 import com.mastfrog.bunyan.java.v2.JSONContext;
 import com.mastfrog.bunyan.java.v2.LogSink;
-import com.mastfrog.logstructured.LogStructuredAppender;
 import java.io.IOException;
 import java.util.Map;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * The log sink records are written to the spool through. Records are
+ * encoded on the thread which logs them; with an appender, they are then
+ * queued and written by the appender's thread - waiting for room if its
+ * queue is full.
  *
  * @author Tim Boudreau
  */
 class DiskSink implements LogSink {
 
-    private final LogStructuredAppender<Map<String, Object>> appender;
-    Runnable touch;
+    private final Spool spool;
+    // Null if records are written by the thread that logs them
+    private final SpoolAppender appender;
+    // Wakes the sender; set once sending starts, from another thread
+    volatile Runnable onAppend;
 
-    public DiskSink(LogStructuredAppender<Map<String, Object>> appender) {
-        this.appender = appender;
+    DiskSink(Spool spool) {
+        this(spool, 0);
+    }
+
+    /**
+     * Create a disk sink.
+     *
+     * @param spool The spool
+     * @param queueRecords The most records to queue for a background
+     * thread to write, or 0 to write them on the thread which logs them
+     */
+    DiskSink(Spool spool, int queueRecords) {
+        this.spool = spool;
+        this.appender = queueRecords > 0
+                ? new SpoolAppender(spool, queueRecords, this::appended) : null;
     }
 
     @Override
     public void push(JSONContext ctx, Map<String, Object> logrecord) {
+        Object level = logrecord.get("level");
+        if (!spool.admits(level instanceof Number ? ((Number) level).intValue() : 0)) {
+            // Over its size limit, and not taking records like this one
+            return;
+        }
         try {
-            appender.append(logrecord);
-        } catch (IOException ex) {
-            Logger.getLogger(RemoteSinkSupport.class.getName()).log(Level.SEVERE, null, ex);
-        } finally {
-            if (touch != null) {
-                touch.run();
+            // The logging config's context has usually already encoded the
+            // record for some other sink, so reuse its bytes - unless the
+            // spool applies limits of its own
+            byte[] json = ctx != null && !spool.serde().hasLimits()
+                    ? ctx.writeValueAsBytes(logrecord)
+                    : spool.serde().encode(logrecord);
+            if (appender != null && queue(json)) {
+                // The appender wakes the sender once it is written
+                return;
             }
+            spool.append(json);
+        } catch (IOException ex) {
+            RemoteSinkSupport.log(null, ex);
+        }
+        appended();
+    }
+
+    private boolean queue(byte[] json) {
+        try {
+            return appender.put(json);
+        } catch (InterruptedException ex) {
+            // Write it on this thread rather than lose it
+            Thread.currentThread().interrupt();
+            return false;
         }
     }
 
+    private void appended() {
+        Runnable wake = onAppend;
+        if (wake != null) {
+            wake.run();
+        }
+    }
+
+    /**
+     * Write any queued records and stop the appender thread, if there is
+     * one; records pushed after this are written by the thread pushing
+     * them.
+     *
+     * @throws InterruptedException If interrupted
+     */
+    void stop() throws InterruptedException {
+        if (appender != null) {
+            appender.stop(30, TimeUnit.SECONDS);
+        }
+    }
+
+    int queued() {
+        return appender == null ? 0 : appender.queued();
+    }
+
 }
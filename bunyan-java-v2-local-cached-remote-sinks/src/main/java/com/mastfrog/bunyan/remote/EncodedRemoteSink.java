@@ -0,0 +1,61 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+import java.util.List;
+
+/**
+ * A remote sink which can be passed records as the JSON they were spooled
+ * as, so they need not be parsed and encoded again in order to be sent.
+ * When the remote sink used by RemoteSinkSupport implements this interface,
+ * <code>pushEncoded()</code> is called instead of <code>pushMany()</code>.
+ *
+ * @author Tim Boudreau
+ */
+public interface EncodedRemoteSink extends RemoteSink {
+
+    /**
+     * Send a batch of records.
+     *
+     * @param records The UTF-8 JSON of each record, without any trailing
+     * newline - the arrays belong to the callee
+     * @param onDone Must be run once all of the records have been sent
+     */
+    void pushEncoded(List<byte[]> records, Runnable onDone);
+
+    /**
+     * Send a batch of records, reporting whether they were delivered, could
+     * not be delivered now, or will never be accepted. The default
+     * implementation calls <code>pushEncoded()</code>, which can only report
+     * success.
+     *
+     * @see RemoteSink#send
+     * @param records The UTF-8 JSON of each record, without any trailing
+     * newline - the arrays belong to the callee
+     * @param callback Told how delivery went
+     */
+    default void sendEncoded(List<byte[]> records, DeliveryCallback callback) {
+        pushEncoded(records, callback::sent);
+    }
+}
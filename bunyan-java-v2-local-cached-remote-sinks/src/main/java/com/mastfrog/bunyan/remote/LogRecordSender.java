@@ -21,77 +21,425 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
  * THE SOFTWARE.
  */
-
 package com.mastfrog.bunyan.remote;
 
-import com.mastfrog.logstructured.LogStructuredReader;
-import com.mastfrog.logstructured.UnadvancedRead;
+import com.mastfrog.bunyan.java.v2.JSONContext;
+import com.mastfrog.util.multivariate.Pair;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /**
+ * Reads batches of records from the spool and sends them with
+ * <code>RemoteSink.send()</code>, keeping up to a fixed number of batches in
+ * flight. Batches may be acknowledged in any order, but the spool cursor
+ * only moves past a batch once it and every batch sent before it have been
+ * acknowledged, so after a crash records may be sent twice, but are never
+ * lost.
+ * <p>
+ * A single long-lived thread does the reading and sending, and parks when
+ * there is nothing to send or no room for another batch in flight. It is
+ * woken by <code>wake()</code> - called for each record appended to the
+ * spool, and when a batch is acknowledged - which costs nothing if a wakeup
+ * is already pending, so any number of appends between two passes of the
+ * loop cost one unpark.
+ * </p>
+ * <p>
+ * A batch which fails, or is not acknowledged within the delivery timeout,
+ * is kept in memory and sent again once a backoff has passed; nothing is
+ * sent while backing off. After enough consecutive failures only one batch
+ * is sent at a time until one gets through, so an endpoint which is down or
+ * flapping costs a probe per backoff period rather than a reconnect loop. A
+ * batch the sink rejects outright is logged and skipped.
+ * </p>
  *
  * @author Tim Boudreau
  */
 final class LogRecordSender implements Runnable {
 
-    private final LogStructuredReader<Map<String, Object>> reader;
+    // How long to wait before retrying after the spool could not be read
+    private static final long ERROR_RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private final SpoolReader reader;
     private final RemoteSink sink;
-    private final AtomicBoolean sendInProgress = new AtomicBoolean();
-    private final ExecutorService threadPool;
-    private final AtomicLong touches = new AtomicLong(Long.MIN_VALUE);
+    private final int maxBatchRecords;
+    private final long maxBatchBytes;
+    private final int maxInFlight;
+    private final DeliveryPolicy policy;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Batches in the order they were sent
+    private final ConcurrentLinkedQueue<Batch> outstanding = new ConcurrentLinkedQueue<>();
+    // Batches which failed, in the order they failed, to be sent again
+    private final ConcurrentLinkedQueue<Batch> retries = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock commitLock = new ReentrantLock();
+    // Set by wake(), cleared by the sender thread before each pass
+    private final AtomicBoolean signalled = new AtomicBoolean();
+    private final LongAdder passes = new LongAdder();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    // System.nanoTime() before which nothing is sent
+    private volatile long backoffUntil;
+    private volatile boolean stopping;
+    // May be null
+    private final SpoolMetrics.DestinationMetrics metrics;
+    private volatile Thread thread;
+
+    LogRecordSender(SpoolReader reader, RemoteSink sink,
+            int maxBatchRecords, long maxBatchBytes, int maxInFlight) {
+        this(reader, sink, maxBatchRecords, maxBatchBytes, maxInFlight, null);
+    }
 
-    LogRecordSender(LogStructuredReader<Map<String, Object>> reader, RemoteSink sink, ExecutorService threadPool) {
+    LogRecordSender(SpoolReader reader, RemoteSink sink, int maxBatchRecords,
+            long maxBatchBytes, int maxInFlight, SpoolMetrics.DestinationMetrics metrics) {
+        this(reader, sink, maxBatchRecords, maxBatchBytes, maxInFlight, metrics, DeliveryPolicy.DEFAULT);
+    }
+
+    LogRecordSender(SpoolReader reader, RemoteSink sink, int maxBatchRecords,
+            long maxBatchBytes, int maxInFlight, SpoolMetrics.DestinationMetrics metrics,
+            DeliveryPolicy policy) {
         this.reader = reader;
         this.sink = sink;
-        this.threadPool = threadPool;
+        this.maxBatchRecords = maxBatchRecords;
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxInFlight = maxInFlight;
+        this.metrics = metrics;
+        this.policy = policy;
+        backoffUntil = System.nanoTime();
+    }
+
+    /**
+     * Start the sender thread.
+     *
+     * @return this
+     */
+    LogRecordSender start() {
+        Thread t = new Thread(this, "bunyan-remote-sender");
+        t.setDaemon(true);
+        thread = t;
+        t.start();
+        return this;
+    }
+
+    /**
+     * Wake the sender thread if it is waiting, because there may be records
+     * to send or room to send them.
+     */
+    void wake() {
+        if (!signalled.get() && signalled.compareAndSet(false, true)) {
+            Thread t = thread;
+            if (t != null) {
+                LockSupport.unpark(t);
+            }
+        }
     }
 
-    void touch() {
-        boolean tps = threadPool.isShutdown();
-        if (!tps) {
-            threadPool.submit(this);
+    /**
+     * Make one last pass to send whatever is in the spool and room allows,
+     * and exit the sender thread.
+     *
+     * @param timeout How long to wait for it to exit
+     * @param unit The time unit
+     * @throws InterruptedException If interrupted
+     */
+    void stop(long timeout, TimeUnit unit) throws InterruptedException {
+        stopping = true;
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+            if (t != Thread.currentThread()) {
+                t.join(Math.max(1, unit.toMillis(timeout)));
+            }
         }
-        touches.getAndIncrement();
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    long passes() {
+        return passes.sum();
+    }
+
+    int consecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    boolean isCircuitOpen() {
+        return policy.isCircuitOpen(consecutiveFailures.get());
     }
 
     @Override
     public void run() {
-        try {
-            long lastTouches = touches.get();
-            UnadvancedRead<Map<String, Object>> uar = reader.read();
-            if (uar == null) {
-                for (int i = 0; i < 5; i++) {
-                    Thread.sleep(20);
-                    uar = reader.read();
+        for (;;) {
+            signalled.set(false);
+            boolean stop = stopping;
+            passes.increment();
+            // Nanoseconds until something needs doing without being woken,
+            // or -1 for nothing
+            long waitNanos = expireTimedOut(System.nanoTime());
+            try {
+                // Failed batches go first, so the cursor can move again
+                Batch retry;
+                while (canSend() && (retry = retries.poll()) != null) {
+                    attempt(retry);
                 }
-            }
-            if (uar != null) {
-                sendInProgress.set(true);
-                //                    JSONContext ctx = new JSONContext(config);
-                //                    sink.push(ctx, uar.get(), () -> {
-                UnadvancedRead<Map<String, Object>> u = uar;
-                sink.push(null, uar.get(), () -> {
-                    sendInProgress.set(false);
-                    try {
-                        u.advance();
-                        if (!threadPool.isShutdown() && (reader.hasUnread() || touches.get() > lastTouches)) {
-                            threadPool.submit(this);
-                        }
-                    } catch (IOException ex) {
-                        Logger.getLogger(RemoteSinkSupport.class.getName()).log(Level.SEVERE, null, ex);
+                while (retries.isEmpty() && canSend()) {
+                    List<SpoolReader.Read> reads = reader.read(maxBatchRecords, maxBatchBytes);
+                    if (reads.isEmpty()) {
+                        break;
                     }
-                });
+                    send(reads);
+                }
+            } catch (IOException ex) {
+                RemoteSinkSupport.log("Exception reading spool", ex);
+                if (stop) {
+                    return;
+                }
+                LockSupport.parkNanos(this, ERROR_RETRY_NANOS);
+                continue;
+            }
+            if (stop) {
+                // Anything unacknowledged is still in the spool, and is sent
+                // again next time
+                return;
+            }
+            long backoff = backoffUntil - System.nanoTime();
+            if (backoff > 0) {
+                waitNanos = soonest(waitNanos, backoff);
+            }
+            if (inFlight.get() > 0) {
+                // Batches sent in this pass time out after this
+                waitNanos = soonest(waitNanos, policy.timeoutNanos);
+            }
+            // Anything appended or acknowledged since signalled was cleared
+            // has set it, and unparked us - but a lock taken during the pass
+            // may have used up the unpark, so check the flag rather than
+            // rely on it
+            if (signalled.get()) {
+                continue;
+            }
+            if (waitNanos < 0) {
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, Math.max(1, waitNanos));
+            }
+        }
+    }
+
+    private boolean canSend() {
+        // With the circuit open, one probe at a time until one gets through
+        int limit = isCircuitOpen() ? 1 : maxInFlight;
+        return inFlight.get() < limit && backoffUntil - System.nanoTime() <= 0;
+    }
+
+    private static long soonest(long a, long b) {
+        return a < 0 ? b : Math.min(a, b);
+    }
+
+    /**
+     * Fail any batch which has waited longer than the timeout for its
+     * callback.
+     *
+     * @return The nanoseconds until the next in-flight batch times out, or
+     * -1 if none is in flight
+     */
+    private long expireTimedOut(long now) {
+        long result = -1;
+        for (Batch batch : outstanding) {
+            Attempt attempt = batch.attempt;
+            if (attempt == null || attempt.isSettled()) {
+                continue;
+            }
+            long remaining = attempt.deadline - now;
+            if (remaining <= 0) {
+                attempt.failed(new TimeoutException("No response from " + sink + " in "
+                        + TimeUnit.NANOSECONDS.toMillis(policy.timeoutNanos) + "ms"));
+            } else {
+                result = soonest(result, remaining);
+            }
+        }
+        return result;
+    }
+
+    private void send(List<SpoolReader.Read> reads) {
+        SpoolReader.Read last = reads.get(reads.size() - 1);
+        Batch batch;
+        if (last.json != null && sink instanceof EncodedRemoteSink) {
+            List<byte[]> toWrite = new ArrayList<>(reads.size());
+            for (SpoolReader.Read read : reads) {
+                toWrite.add(read.json);
+            }
+            batch = new Batch(last.segment, last.end, toWrite, null);
+        } else {
+            List<Pair<JSONContext, Map<String, Object>>> toWrite = new ArrayList<>(reads.size());
+            for (SpoolReader.Read read : reads) {
+                toWrite.add(Pair.of(null, read.record));
+            }
+            batch = new Batch(last.segment, last.end, null, toWrite);
+        }
+        outstanding.add(batch);
+        attempt(batch);
+    }
+
+    private void attempt(Batch batch) {
+        Attempt attempt = new Attempt(batch, System.nanoTime() + policy.timeoutNanos);
+        batch.attempt = attempt;
+        inFlight.incrementAndGet();
+        try {
+            if (batch.encoded != null) {
+                // The sink owns the arrays it is passed, so a batch which
+                // may be sent again passes copies of the list
+                ((EncodedRemoteSink) sink).sendEncoded(new ArrayList<>(batch.encoded), attempt);
+            } else {
+                sink.send(new ArrayList<>(batch.records), attempt);
+            }
+        } catch (RuntimeException ex) {
+            attempt.failed(ex);
+        }
+    }
+
+    private void onSuccess() {
+        int failures = consecutiveFailures.getAndSet(0);
+        if (policy.isCircuitOpen(failures)) {
+            RemoteSinkSupport.log(Level.INFO, "Sending to " + sink + " again after "
+                    + failures + " failures", null);
+        }
+    }
+
+    private void onFailure(Batch batch, Throwable cause) {
+        int failures = consecutiveFailures.incrementAndGet();
+        long delay = policy.backoffNanos(failures);
+        backoffUntil = System.nanoTime() + delay;
+        if (metrics != null) {
+            metrics.onFailed();
+        }
+        // Log the first failure and the circuit opening, not every retry
+        if (failures == 1 || failures == policy.breakerFailures) {
+            RemoteSinkSupport.log(Level.WARNING,
+                    "Could not send " + batch.size() + " records to " + sink
+                    + (policy.isCircuitOpen(failures) ? " - circuit open" : "")
+                    + "; retrying in " + TimeUnit.NANOSECONDS.toMillis(delay) + "ms", cause);
+        }
+        retries.add(batch);
+    }
+
+    private void commitCompleted() {
+        commitLock.lock();
+        try {
+            Batch last = null;
+            Batch head;
+            while ((head = outstanding.peek()) != null && head.isDone()) {
+                outstanding.poll();
+                last = head;
+            }
+            if (last != null) {
+                reader.commit(last.segment, last.end);
             }
         } catch (IOException ex) {
-            Logger.getLogger(RemoteSinkSupport.class.getName()).log(Level.SEVERE, null, ex);
-        } catch (InterruptedException ex) {
-            Logger.getLogger(RemoteSinkSupport.class.getName()).log(Level.SEVERE, null, ex);
+            RemoteSinkSupport.log("Could not update spool cursor", ex);
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private final class Batch {
+
+        private final long segment;
+        private final long end;
+        // One of these is null
+        private final List<byte[]> encoded;
+        private final List<Pair<JSONContext, Map<String, Object>>> records;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile Attempt attempt;
+
+        Batch(long segment, long end, List<byte[]> encoded,
+                List<Pair<JSONContext, Map<String, Object>>> records) {
+            this.segment = segment;
+            this.end = end;
+            this.encoded = encoded;
+            this.records = records;
+        }
+
+        int size() {
+            return encoded != null ? encoded.size() : records.size();
+        }
+
+        boolean isDone() {
+            return done.get();
+        }
+
+        void done(boolean sent) {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            if (metrics != null) {
+                if (sent) {
+                    metrics.onSent(size());
+                } else {
+                    metrics.onRejected(size());
+                }
+            }
+            commitCompleted();
+            if (inFlight.getAndDecrement() >= maxInFlight || reader.hasUnread() || !retries.isEmpty()) {
+                wake();
+            }
+        }
+    }
+
+    /**
+     * One sending of a batch, settled exactly once - by the sink, or by the
+     * sender thread when it times out, whichever comes first.
+     */
+    private final class Attempt implements DeliveryCallback {
+
+        private final Batch batch;
+        private final long deadline;
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        Attempt(Batch batch, long deadline) {
+            this.batch = batch;
+            this.deadline = deadline;
+        }
+
+        boolean isSettled() {
+            return settled.get();
+        }
+
+        @Override
+        public void sent() {
+            if (settled.compareAndSet(false, true)) {
+                onSuccess();
+                batch.done(true);
+            }
+        }
+
+        @Override
+        public void failed(Throwable cause) {
+            if (settled.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+                onFailure(batch, cause);
+                wake();
+            }
+        }
+
+        @Override
+        public void rejected(Throwable cause) {
+            if (settled.compareAndSet(false, true)) {
+                // The remote end answered, so as far as backing off goes
+                // this is not a failure
+                onSuccess();
+                RemoteSinkSupport.log(sink + " rejected " + batch.size()
+                        + " records; they will not be sent", cause);
+                batch.done(false);
+            }
         }
     }
 }
@@ -24,6 +24,7 @@
 package com.mastfrog.bunyan.remote;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mastfrog.bunyan.java.v2.RecordLimits;
 import com.mastfrog.file.channels.LeaseException;
 import com.mastfrog.logstructured.Serde;
 import com.mastfrog.util.collections.CollectionUtils;
@@ -35,6 +36,7 @@ import com.mastfrog.util.thread.BufferPool.BufferHolder;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.util.Map;
 
@@ -46,14 +48,34 @@ final class MapSerde implements Serde<Map<String, Object>>, AutoCloseable {
 
     private final ObjectMapper mapper;
     private final BufferPool pool;
+    private final RecordLimits limits;
     private static final byte[] NEWLINE = new byte[]{'\n'};
+    /**
+     * The bytes added to a record's JSON in the spool - a four byte length,
+     * and a newline before and after the JSON.
+     */
+    static final int FRAMING = 6;
 
     MapSerde(ObjectMapper mapper) {
         this(mapper, 32768 * 2);
     }
 
     MapSerde(ObjectMapper mapper, int bufferSize) {
+        this(mapper, bufferSize, null);
+    }
+
+    /**
+     * Create a serde which applies limits to records as they are written;
+     * with a maximum record size comfortably below the buffer size, records
+     * always fit in a pooled buffer.
+     *
+     * @param mapper The mapper
+     * @param bufferSize The buffer size
+     * @param limits Limits, or null
+     */
+    MapSerde(ObjectMapper mapper, int bufferSize, RecordLimits limits) {
         this.mapper = mapper;
+        this.limits = limits;
         pool = new BufferPool(nonNegative("bufferSize", bufferSize));
     }
 
@@ -64,7 +86,7 @@ final class MapSerde implements Serde<Map<String, Object>>, AutoCloseable {
 
     @Override
     public <C extends java.nio.channels.WritableByteChannel & java.nio.channels.SeekableByteChannel> void serialize(Map<String, Object> logrecord, C channel) throws IOException {
-        byte[] bytes = mapper.writeValueAsBytes(notNull("logrecord", logrecord));
+        byte[] bytes = encode(notNull("logrecord", logrecord));
         try (BufferHolder holder = pool.buffer()) {
             ByteBuffer buf = holder.buffer();
             if (bytes.length + 5 > buf.capacity()) {
@@ -120,6 +142,88 @@ final class MapSerde implements Serde<Map<String, Object>>, AutoCloseable {
         }
     }
 
+    /**
+     * Get the JSON for a record, with this serde's limits applied, if any.
+     *
+     * @param logrecord A record
+     * @return The JSON
+     * @throws IOException If serialization fails
+     */
+    byte[] encode(Map<String, Object> logrecord) throws IOException {
+        return limits == null ? mapper.writeValueAsBytes(logrecord)
+                : limits.writeValueAsBytes(mapper, logrecord);
+    }
+
+    boolean hasLimits() {
+        return limits != null;
+    }
+
+    /**
+     * Write a record's JSON into a buffer framed as <code>serialize()</code>
+     * would write it; the buffer must have <code>FRAMING</code> bytes more
+     * than its length remaining.
+     *
+     * @param json The JSON
+     * @param into A buffer
+     */
+    static void frame(byte[] json, ByteBuffer into) {
+        into.putInt(json.length + 1);
+        into.put((byte) '\n');
+        into.put(json);
+        into.put((byte) '\n');
+    }
+
+    /**
+     * Parse a record's JSON.
+     *
+     * @param bytes An array
+     * @param offset The offset of the JSON in it
+     * @param length The length of the JSON
+     * @return A record
+     * @throws IOException If the JSON is invalid
+     */
+    Map<String, Object> decode(byte[] bytes, int offset, int length) throws IOException {
+        return CollectionUtils.uncheckedMap(mapper.readValue(bytes, offset, length, Map.class));
+    }
+
+    /**
+     * Read the JSON of a record written by <code>serialize()</code> without
+     * parsing it, leaving the channel positioned after it.
+     *
+     * @param channel A channel
+     * @return The JSON, without its trailing newline
+     * @throws IOException If the channel does not contain a complete record
+     * at its current position
+     */
+    byte[] readJson(FileChannel channel) throws IOException {
+        long pos = notNull("channel", channel).position();
+        ByteBuffer len = ByteBuffer.allocate(5);
+        readFully(channel, len, pos);
+        len.flip();
+        int recordLength = len.getInt();
+        if (recordLength <= 0 || len.get() != '\n') {
+            throw new IOException("Corrupted file suggested record length " + recordLength);
+        }
+        if (recordLength > channel.size() - pos - 5) {
+            throw new IOException("Underflow reading record body - expected " + recordLength
+                    + " at " + pos);
+        }
+        byte[] result = new byte[recordLength - 1];
+        readFully(channel, ByteBuffer.wrap(result), pos + 5);
+        channel.position(pos + 5 + recordLength);
+        return result;
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        int start = buf.position();
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, pos + buf.position() - start) < 0) {
+                throw new IOException("Underflow reading " + buf.limit()
+                        + " bytes at " + pos);
+            }
+        }
+    }
+
     @Override
     public <C extends java.nio.channels.ReadableByteChannel & java.nio.channels.SeekableByteChannel>
             Map<String, Object> deserialize(Path in, C channel) throws LeaseException, IOException {
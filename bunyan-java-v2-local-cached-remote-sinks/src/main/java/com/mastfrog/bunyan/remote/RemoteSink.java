@@ -53,5 +53,23 @@ public interface RemoteSink {
         }
     }
 
+    /**
+     * Send a batch of records, reporting whether they were delivered, could
+     * not be delivered now, or will never be accepted. The default
+     * implementation calls <code>pushMany()</code>, which can only report
+     * success; sinks which can tell failures apart should override this.
+     * <p>
+     * If the callback is not called within the delivery timeout, the batch
+     * is treated as failed and sent again later, so a sink which loses a
+     * callback cannot stop records from being sent.
+     * </p>
+     *
+     * @param toWrite The records
+     * @param callback Told how delivery went
+     */
+    default void send(Collection<Pair<JSONContext, Map<String, Object>>> toWrite, DeliveryCallback callback) {
+        pushMany(toWrite, callback::sent);
+    }
+
     void close() throws IOException;
 }
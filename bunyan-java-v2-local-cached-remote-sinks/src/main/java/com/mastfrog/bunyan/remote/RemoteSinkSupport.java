@@ -25,73 +25,562 @@ package com.mastfrog.bunyan.remote;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mastfrog.bunyan.java.v2.LogSink;
-import com.mastfrog.file.channels.FileChannelPool;
-import com.mastfrog.logstructured.LogStructuredReader;
-import com.mastfrog.logstructured.LogStructuredStorage;
+import com.mastfrog.bunyan.java.v2.RecordLimits;
+import static com.mastfrog.util.preconditions.Checks.greaterThanZero;
+import static com.mastfrog.util.preconditions.Checks.nonNegative;
+import static com.mastfrog.util.preconditions.Checks.notNull;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 /**
+ * Spools log records to disk and sends them on to one or more remote sinks.
+ * Each destination has its own cursor in the spool and its own sender, so a
+ * slow or unreachable destination does not hold up the others; the spool is
+ * written once, and a segment is deleted when every destination has been
+ * sent everything in it.
  *
  * @author Tim Boudreau
  */
 public class RemoteSinkSupport {
 
-    private final LogStructuredStorage<Map<String, Object>> lss;
-    private final FileChannelPool pool;
+    static final int DEFAULT_BATCH_RECORDS = 256;
+    static final int DEFAULT_BATCH_BYTES = 1024 * 1024;
+    static final int DEFAULT_BATCHES_IN_FLIGHT = 4;
+    static final int DEFAULT_APPEND_QUEUE_RECORDS = 8192;
+    static final String DEFAULT_DESTINATION = "remote";
+    static final String CURSOR_NAME = DEFAULT_DESTINATION + Spool.CURSOR_SUFFIX;
+    private static final Pattern DESTINATION_NAME = Pattern.compile("[A-Za-z0-9._-]+");
+    private final Spool spool;
     private final AtomicBoolean spoolingStarted = new AtomicBoolean();
-    private final Supplier<RemoteSink> remoteSink;
-    private final ExecutorService sendThreads;
+    private final List<Destination> destinations = new ArrayList<>();
     private final DiskSink diskSink;
-    private LogRecordSender sender;
     private final MapSerde serde;
+    private final int batchRecords;
+    private final int batchBytes;
+    private final int batchesInFlight;
+    private final DeliveryPolicy deliveryPolicy;
+    private final SpoolMetrics metrics;
 
     public RemoteSinkSupport(Supplier<RemoteSink> remoteSink, Path storageDir, ObjectMapper mapper) {
-        // If we use more than one thread, we will duplicate log-records -
-        // LogStructuredReader reads the same record again and again until
-        // it is advanced, which should only happen when the remote sink
-        // has called the callback after a send - so we MUST send records
-        // serially
-        sendThreads = Executors.newSingleThreadExecutor();
-        serde = new MapSerde(mapper);
-        lss = LogStructuredStorage.forDir(storageDir, serde, pool = FileChannelPool.newPool(120000));
-        this.remoteSink = remoteSink;
-        diskSink = new DiskSink(lss.appender());
+        this(remoteSink, storageDir, mapper, null);
+    }
+
+    /**
+     * Create a remote sink support whose spool applies the passed limits to
+     * records as it writes them - pass
+     * <code>LoggingConfig.recordLimits()</code> to use the same limits as the
+     * logging configuration (records are not otherwise limited before they
+     * reach the spool).
+     *
+     * @param remoteSink Supplies the remote sink
+     * @param storageDir The spool directory
+     * @param mapper The mapper
+     * @param limits Record limits, or null
+     */
+    public RemoteSinkSupport(Supplier<RemoteSink> remoteSink, Path storageDir,
+            ObjectMapper mapper, RecordLimits limits) {
+        this(builder(storageDir, mapper).sendTo(remoteSink).limitRecords(limits));
+    }
+
+    private RemoteSinkSupport(Builder b) {
+        serde = b.limits == null ? new MapSerde(b.mapper)
+                : new MapSerde(b.mapper, spoolBufferSize(b.limits), b.limits);
+        try {
+            spool = new Spool(b.storageDir, serde, b.segmentBytes, b.fsyncEachBatch,
+                    Spool.DEFAULT_BATCH_BUFFER_BYTES, b.format,
+                    new SpoolLimits(b.maxSpoolBytes, b.maxSpoolAgeMillis, b.overflowPolicy));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        if (b.destinations.isEmpty()) {
+            throw new IllegalStateException("No remote sink to send to");
+        }
+        metrics = new SpoolMetrics(spool, recover(spool));
+        for (Map.Entry<String, Supplier<RemoteSink>> e : b.destinations.entrySet()) {
+            String name = e.getKey();
+            destinations.add(new Destination(name, e.getValue(),
+                    metrics.destination(name, sentBefore(spool, name))));
+        }
+        if (b.metricsJmxName != null) {
+            metrics.publish(b.metricsJmxName);
+        }
+        this.batchRecords = b.batchRecords;
+        this.batchBytes = b.batchBytes;
+        this.batchesInFlight = b.batchesInFlight;
+        this.deliveryPolicy = new DeliveryPolicy(b.timeoutNanos, b.initialBackoffNanos,
+                b.maxBackoffNanos, b.breakerFailures);
+        diskSink = new DiskSink(spool, b.appendQueueRecords);
+    }
+
+    /**
+     * Create a builder, for configuring how records are batched when they
+     * are sent.
+     *
+     * @param storageDir The spool directory
+     * @param mapper The mapper
+     * @return A builder
+     */
+    public static Builder builder(Path storageDir, ObjectMapper mapper) {
+        return new Builder(storageDir, mapper);
+    }
+
+    static void log(String msg, Throwable thrown) {
+        log(Level.SEVERE, msg, thrown);
+    }
+
+    static void log(Level level, String msg, Throwable thrown) {
+        Logger.getLogger(RemoteSinkSupport.class.getName()).log(level, msg, thrown);
+    }
+
+    /**
+     * Repair whatever a crash or bad shutdown left in the spool before
+     * anything reads it, so a torn or corrupt record cannot stop records
+     * after it from being sent.
+     *
+     * @return The number of records in the spool
+     */
+    private static long recover(Spool spool) {
+        try {
+            SpoolRecovery recovery = SpoolRecovery.recover(spool);
+            if (recovery.foundDamage()) {
+                log(Level.WARNING, recovery.toString(), null);
+            } else if (recovery.segments() > 0) {
+                log(Level.INFO, recovery.toString(), null);
+            }
+            return recovery.records();
+        } catch (IOException ex) {
+            log("Could not check spool " + spool.dir(), ex);
+            return 0;
+        }
+    }
+
+    /**
+     * Count the records in the spool which a destination's cursor says were
+     * already sent to it - those in segments kept for some other destination
+     * which is further behind, and those before the cursor in its segment.
+     *
+     * @return A count of records
+     */
+    private static long sentBefore(Spool spool, String destination) {
+        Path cursorFile = spool.dir().resolve(destination + Spool.CURSOR_SUFFIX);
+        if (!Files.exists(cursorFile)) {
+            return 0;
+        }
+        long result = 0;
+        try (SpoolCursor cursor = new SpoolCursor(cursorFile)) {
+            if (cursor.segment() < 0) {
+                return 0;
+            }
+            for (Long seq = spool.firstSegment(); seq != null && seq < cursor.segment(); seq = spool.nextSegment(seq)) {
+                Path segment = spool.segmentPath(seq);
+                if (segment != null) {
+                    result += SpoolEviction.countRecords(segment);
+                }
+            }
+            Path segment = spool.segmentPath(cursor.segment());
+            if (segment != null) {
+                result += SpoolEviction.countRecords(segment, cursor.position());
+            }
+        } catch (IOException ex) {
+            log("Could not read cursor " + cursorFile, ex);
+        }
+        return result;
+    }
+
+    /**
+     * Get metrics for the spool - how much is waiting to be sent and how
+     * fast it is being sent.
+     *
+     * @return The metrics
+     */
+    public SpoolMetrics metrics() {
+        return metrics;
+    }
+
+    private static int spoolBufferSize(RecordLimits limits) {
+        // Room for the length prefix and newlines, and the bunyan properties
+        // the size limit does not apply to
+        return Math.max(32768 * 2, limits.maxRecordBytes() + limits.maxStringLength() * 3 + 1024);
     }
 
     void shutdown() throws InterruptedException, IOException {
-        sender.touch();
-        sendThreads.shutdown();
-        sendThreads.awaitTermination(30, TimeUnit.SECONDS);
-        pool.close();
+        // Get queued records onto disk, so the senders' last pass sees them
+        diskSink.stop();
+        for (Destination dest : destinations) {
+            dest.stop();
+        }
+        spool.close();
         serde.close();
+        metrics.unpublish();
     }
 
     LogSink start() {
         if (spoolingStarted.compareAndSet(false, true)) {
-            RemoteSink sink = remoteSink.get();
-            sink.open((ready) -> {
-                if (ready) {
-                    try {
-                        LogStructuredReader<Map<String, Object>> reader = lss.reader();
-                        reader.deleteIfAllReadAndAdvanced();
-                        sender = new LogRecordSender(reader, sink, sendThreads);
-                        diskSink.touch = sender::touch;
-                        sender.touch();
-                    } catch (IOException ex) {
-                        Logger.getLogger(RemoteSinkSupport.class.getName()).log(Level.SEVERE, null, ex);
-                    }
+            // Every destination's reader is registered before anything is
+            // deleted, so a segment is only deleted once all of them have
+            // committed past it - including destinations whose sink never
+            // becomes ready
+            for (Destination dest : destinations) {
+                dest.sink = dest.supplier.get();
+                try {
+                    // A sink which takes JSON gets it straight from the
+                    // spool, without parsing and re-encoding it
+                    dest.reader = new SpoolReader(spool,
+                            new SpoolCursor(spool.dir().resolve(dest.name + Spool.CURSOR_SUFFIX)),
+                            dest.sink instanceof EncodedRemoteSink);
+                } catch (IOException ex) {
+                    log("Could not open cursor for " + dest.name, ex);
+                }
+            }
+            spool.deleteSent();
+            diskSink.onAppend = this::wakeSenders;
+            for (Destination dest : destinations) {
+                if (dest.reader != null) {
+                    dest.sink.open(dest::onReady);
                 }
-            });
+            }
         }
         return diskSink;
     }
+
+    private void wakeSenders() {
+        for (Destination dest : destinations) {
+            LogRecordSender sender = dest.sender;
+            if (sender != null) {
+                sender.wake();
+            }
+        }
+    }
+
+    /**
+     * One of the remote sinks records are sent to, with its own cursor in
+     * the spool and its own sender.
+     */
+    private final class Destination {
+
+        private final String name;
+        private final Supplier<RemoteSink> supplier;
+        private final SpoolMetrics.DestinationMetrics destinationMetrics;
+        private RemoteSink sink;
+        private SpoolReader reader;
+        private volatile LogRecordSender sender;
+
+        Destination(String name, Supplier<RemoteSink> supplier,
+                SpoolMetrics.DestinationMetrics destinationMetrics) {
+            this.name = name;
+            this.supplier = supplier;
+            this.destinationMetrics = destinationMetrics;
+        }
+
+        void onReady(boolean ready) {
+            if (ready && sender == null) {
+                // Records are read and sent by a single thread, so
+                // batches go out in spool order; more than one may
+                // be awaiting acknowledgement
+                sender = new LogRecordSender(reader, sink, batchRecords,
+                        batchBytes, batchesInFlight, destinationMetrics, deliveryPolicy).start();
+            }
+        }
+
+        void stop() throws InterruptedException, IOException {
+            LogRecordSender s = sender;
+            if (s != null) {
+                s.stop(30, TimeUnit.SECONDS);
+            }
+            if (reader != null) {
+                reader.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    public static final class Builder {
+
+        private final Path storageDir;
+        private final ObjectMapper mapper;
+        private final Map<String, Supplier<RemoteSink>> destinations = new LinkedHashMap<>();
+        private RecordLimits limits;
+        private int batchRecords = DEFAULT_BATCH_RECORDS;
+        private int batchBytes = DEFAULT_BATCH_BYTES;
+        private int batchesInFlight = DEFAULT_BATCHES_IN_FLIGHT;
+        private long segmentBytes = Spool.DEFAULT_MAX_SEGMENT_BYTES;
+        private boolean fsyncEachBatch;
+        private SpoolFormat format = SpoolFormat.JSON;
+        private long maxSpoolBytes;
+        private long maxSpoolAgeMillis;
+        private SpoolOverflowPolicy overflowPolicy = SpoolOverflowPolicy.DROP_OLDEST;
+        private String metricsJmxName;
+        private long timeoutNanos = DeliveryPolicy.DEFAULT.timeoutNanos;
+        private long initialBackoffNanos = DeliveryPolicy.DEFAULT.initialBackoffNanos;
+        private long maxBackoffNanos = DeliveryPolicy.DEFAULT.maxBackoffNanos;
+        private int breakerFailures = DeliveryPolicy.DEFAULT.breakerFailures;
+        private int appendQueueRecords = DEFAULT_APPEND_QUEUE_RECORDS;
+
+        Builder(Path storageDir, ObjectMapper mapper) {
+            this.storageDir = notNull("storageDir", storageDir);
+            this.mapper = notNull("mapper", mapper);
+        }
+
+        /**
+         * Set what records are sent to. This is the destination named
+         * <code>remote</code>, whose cursor is the one spools written
+         * before there could be more than one destination already have.
+         *
+         * @param remoteSink Supplies the remote sink when sending starts
+         * @return this
+         */
+        public Builder sendTo(Supplier<RemoteSink> remoteSink) {
+            return sendTo(DEFAULT_DESTINATION, remoteSink);
+        }
+
+        /**
+         * Add a destination records are sent to. Each destination is sent
+         * every record, independently of the others - it has its own cursor
+         * in the spool, stored in the file <code><i>name</i>.cursor</code>,
+         * and its own sender, so one which is down or slow does not hold up
+         * the rest. The spool keeps a segment until every destination has
+         * been sent everything in it, so the spool's size and age limits
+         * are what bound it while one is down.
+         *
+         * @param name A name for the destination, which must stay the same
+         * across restarts - letters, digits, '.', '_' or '-'
+         * @param remoteSink Supplies the remote sink when sending starts
+         * @return this
+         */
+        public Builder sendTo(String name, Supplier<RemoteSink> remoteSink) {
+            if (!DESTINATION_NAME.matcher(notNull("name", name)).matches()) {
+                throw new IllegalArgumentException("Bad destination name '" + name + "'");
+            }
+            if (destinations.containsKey(name)) {
+                throw new IllegalArgumentException("Already sending to '" + name + "'");
+            }
+            destinations.put(name, notNull("remoteSink", remoteSink));
+            return this;
+        }
+
+        /**
+         * Apply limits to records as they are written to the spool.
+         *
+         * @param limits The limits, or null for none
+         * @return this
+         */
+        public Builder limitRecords(RecordLimits limits) {
+            this.limits = limits;
+            return this;
+        }
+
+        /**
+         * Set how many records are read from the spool and passed to
+         * <code>RemoteSink.pushMany()</code> at a time - up to
+         * <code>maxRecords</code>, stopping once their size in the spool
+         * reaches <code>maxBytes</code>. The defaults are 256 records and
+         * 1Mb.
+         *
+         * @param maxRecords The maximum records per batch
+         * @param maxBytes The size at which to stop adding records to a
+         * batch
+         * @return this
+         */
+        public Builder batchSize(int maxRecords, int maxBytes) {
+            this.batchRecords = greaterThanZero("maxRecords", maxRecords);
+            this.batchBytes = greaterThanZero("maxBytes", maxBytes);
+            return this;
+        }
+
+        /**
+         * Set how many batches may be sent before the first of them is
+         * acknowledged by the remote sink calling its callback. The default
+         * is 4; 1 sends strictly one batch at a time. The remote sink may
+         * receive batches concurrently, so records may arrive out of order
+         * if it processes them that way.
+         *
+         * @param batches The number of batches
+         * @return this
+         */
+        public Builder maxBatchesInFlight(int batches) {
+            this.batchesInFlight = greaterThanZero("batches", batches);
+            return this;
+        }
+
+        /**
+         * Set the size at which the spool starts a new segment file; segment
+         * files are deleted once everything in them has been sent. The
+         * default is 8Mb.
+         *
+         * @param bytes The size
+         * @return this
+         */
+        public Builder spoolSegmentSize(long bytes) {
+            if (bytes <= 0) {
+                throw new IllegalArgumentException("Bad segment size " + bytes);
+            }
+            this.segmentBytes = bytes;
+            return this;
+        }
+
+        /**
+         * Force each batch of records written to the spool to disk before
+         * the write completes, so records survive a power failure, not just
+         * the process dying. Concurrently logged records are written - and
+         * forced - together, so the cost is paid per batch, not per record.
+         *
+         * @return this
+         */
+        public Builder fsyncEachBatch() {
+            this.fsyncEachBatch = true;
+            return this;
+        }
+
+        /**
+         * Set the format records are written to the spool in. Segments
+         * already spooled in another format are still read and sent. The
+         * default is <code>SpoolFormat.JSON</code>.
+         *
+         * @param format The format
+         * @return this
+         */
+        public Builder spoolFormat(SpoolFormat format) {
+            this.format = notNull("format", format);
+            return this;
+        }
+
+        /**
+         * Limit the total size of the spool, for when records cannot be sent
+         * as fast as they are logged - for example, while the remote end is
+         * down. Limits are applied to whole segments, so the spool may
+         * exceed the limit by up to a segment; the default is no limit.
+         *
+         * @param maxBytes The size
+         * @param policy What to do about records once the spool is larger
+         * @return this
+         */
+        public Builder maxSpoolSize(long maxBytes, SpoolOverflowPolicy policy) {
+            this.maxSpoolBytes = greaterThanZero("maxBytes", maxBytes);
+            this.overflowPolicy = notNull("policy", policy);
+            return this;
+        }
+
+        /**
+         * Delete spool segments which have not been written to for longer
+         * than the passed duration, whether or not their records have been
+         * sent. The default is no limit.
+         *
+         * @param age The maximum age
+         * @return this
+         */
+        public Builder maxSpoolAge(Duration age) {
+            if (notNull("age", age).isNegative() || age.isZero()) {
+                throw new IllegalArgumentException("Bad spool age " + age);
+            }
+            this.maxSpoolAgeMillis = age.toMillis();
+            return this;
+        }
+
+        /**
+         * Publish the spool's metrics as a JMX MXBean named
+         * <code>com.mastfrog.bunyan:type=SpoolMetrics,name=<i>name</i></code>.
+         *
+         * @param jmxName The name
+         * @return this
+         */
+        public Builder publishMetrics(String jmxName) {
+            this.metricsJmxName = notNull("jmxName", jmxName);
+            return this;
+        }
+
+        /**
+         * Set how long to wait for a remote sink to say whether a batch was
+         * delivered, after which the batch is treated as failed and sent
+         * again - a sink that loses a callback would otherwise stop anything
+         * more being sent. Set it longer than the remote end can reasonably
+         * take, since a batch that times out may end up delivered twice.
+         * The default is 30 seconds.
+         *
+         * @param timeout The timeout
+         * @return this
+         */
+        public Builder deliveryTimeout(Duration timeout) {
+            this.timeoutNanos = positive("timeout", timeout);
+            return this;
+        }
+
+        /**
+         * Set how long to wait before sending again after a batch fails. The
+         * delay doubles with each consecutive failure up to
+         * <code>max</code>, and is randomized to between half and all of
+         * that. The defaults are 100 milliseconds and 30 seconds.
+         *
+         * @param initial The delay after the first failure
+         * @param max The longest delay
+         * @return this
+         */
+        public Builder retryBackoff(Duration initial, Duration max) {
+            this.initialBackoffNanos = positive("initial", initial);
+            this.maxBackoffNanos = positive("max", max);
+            if (maxBackoffNanos < initialBackoffNanos) {
+                throw new IllegalArgumentException("Max backoff " + max
+                        + " less than initial " + initial);
+            }
+            return this;
+        }
+
+        /**
+         * Set the number of consecutive failures after which the circuit to
+         * a remote sink opens: only one batch at a time is sent, once per
+         * backoff, until one succeeds. The default is 5.
+         *
+         * @param consecutiveFailures The number of failures
+         * @return this
+         */
+        public Builder circuitBreaker(int consecutiveFailures) {
+            this.breakerFailures = greaterThanZero("consecutiveFailures", consecutiveFailures);
+            return this;
+        }
+
+        /**
+         * Set how many records may be queued in memory for the spool's own
+         * appender thread to write, so threads which log do not wait on disk
+         * I/O even when logging is not asynchronous. If the queue is full, a
+         * thread which logs waits for room in it. 0 turns the queue off,
+         * so each record is on disk - and forced there, with
+         * <code>fsyncEachBatch()</code> - when the call that logged it
+         * returns, whether that thread or another one logging at the same
+         * time wrote it. The default is 8192.
+         *
+         * @param records The number of records, or 0
+         * @return this
+         */
+        public Builder appendQueue(int records) {
+            this.appendQueueRecords = nonNegative("records", records);
+            return this;
+        }
+
+        private static long positive(String name, Duration duration) {
+            if (notNull(name, duration).isNegative() || duration.isZero()) {
+                throw new IllegalArgumentException("Bad " + name + " " + duration);
+            }
+            return duration.toNanos();
+        }
+
+        public RemoteSinkSupport build() {
+            return new RemoteSinkSupport(this);
+        }
+    }
 }
@@ -0,0 +1,851 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A directory of numbered segment files which log records are appended to,
+ * in one of the SpoolFormats, and read back from by SpoolReaders. Each
+ * segment is read in the format it was written in, so segments left in
+ * another format when the spool is reopened are still sent.
+ * Unlike LogStructuredStorage, whose reader hands back the same record until
+ * it is advanced, reading here is decoupled from acknowledging: a reader can
+ * read ahead and send several batches while it only moves its persistent
+ * cursor forward as the oldest batches are acknowledged, so a crash causes
+ * resends of unacknowledged records, never losses.
+ * <p>
+ * Readers never see a partially written record: they read up to the
+ * published end of the last complete append. Segments are deleted once a
+ * reader's cursor is past them.
+ * </p>
+ * <p>
+ * Appends are group-committed: an appending thread queues its record's JSON
+ * and, if no other thread is writing, writes everything queued - framed
+ * into one reused buffer, with a single gathering write per batch, and
+ * optionally forced to disk once per batch. If another thread is writing,
+ * it waits for it, and that thread usually writes the record in its batch;
+ * if not, the waiting thread writes whatever is still queued. So under
+ * contention appends are batched, and when an append returns its record
+ * has been written - or the caller gets the exception writing it failed
+ * with.
+ * </p>
+ * <p>
+ * If the spool has limits, they are enforced by whichever appending thread
+ * finishes a segment, or first appends a second or more after they were last
+ * enforced - see SpoolEviction.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+final class Spool implements AutoCloseable {
+
+    static final String SEGMENT_SUFFIX = ".spool";
+    static final String CURSOR_SUFFIX = ".cursor";
+    static final long DEFAULT_MAX_SEGMENT_BYTES = 8 * 1024 * 1024;
+    static final int DEFAULT_BATCH_BUFFER_BYTES = 256 * 1024;
+    private static final long LIMIT_CHECK_INTERVAL_MILLIS = 1000;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("^([0-9a-f]{16})\\.spool$");
+    private final Path dir;
+    private final MapSerde serde;
+    private final long maxSegmentBytes;
+    private final boolean forceEachBatch;
+    private final SpoolFormat format;
+    // Null unless writing blocks
+    private final SpoolBlocks blocks;
+    private final ConcurrentSkipListMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+    private final ConcurrentLinkedQueue<Queued> pending = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Guarded by writeLock
+    private FileChannel writeChannel;
+    private final ByteBuffer batchBuffer;
+    private final ByteBuffer[] batch;
+    private final ByteBuffer[] oversized;
+    // The tickets of the records in the batch being written
+    private final List<Ticket> batchTickets = new ArrayList<>();
+    // Whether starting the next segment has failed since it last succeeded
+    private boolean rollOverFailing;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder appended = new LongAdder();
+    private volatile Mark written;
+    private volatile boolean closed;
+    private final SpoolLimits limits;
+    // Sizes of segments no longer being written, and their total
+    private final ConcurrentHashMap<Long, Long> sealedSizes = new ConcurrentHashMap<>();
+    private final AtomicLong sealedBytes = new AtomicLong();
+    // When each segment was created, in epoch millis
+    private final ConcurrentSkipListMap<Long, Long> created = new ConcurrentSkipListMap<>();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private volatile boolean rolledOver;
+    private volatile long nextLimitCheck;
+    // Readers, and the furthest segment any cursor pointed to when opened;
+    // segments up to that far must not be rewritten by eviction
+    private final Set<SpoolReader> readers = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock segmentLock = new ReentrantLock();
+    private final long cursorFloor;
+
+    Spool(Path dir, MapSerde serde, long maxSegmentBytes) throws IOException {
+        this(dir, serde, maxSegmentBytes, false, DEFAULT_BATCH_BUFFER_BYTES, SpoolFormat.JSON);
+    }
+
+    Spool(Path dir, MapSerde serde, long maxSegmentBytes, boolean forceEachBatch,
+            int batchBufferBytes, SpoolFormat format) throws IOException {
+        this(dir, serde, maxSegmentBytes, forceEachBatch, batchBufferBytes, format, SpoolLimits.NONE);
+    }
+
+    Spool(Path dir, MapSerde serde, long maxSegmentBytes, boolean forceEachBatch,
+            int batchBufferBytes, SpoolFormat format, SpoolLimits limits) throws IOException {
+        if (maxSegmentBytes <= 0) {
+            throw new IllegalArgumentException("Bad segment size " + maxSegmentBytes);
+        }
+        this.dir = dir;
+        this.serde = serde;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.forceEachBatch = forceEachBatch;
+        this.format = format;
+        this.limits = limits;
+        if (format.isBlocks()) {
+            // Blocks are checksummed and compressed from a heap array
+            blocks = new SpoolBlocks(format == SpoolFormat.DEFLATED_BLOCKS);
+            batchBuffer = ByteBuffer.allocate(Math.max(SpoolBlocks.BLOCK_HEADER_BYTES
+                    + SpoolBlocks.RECORD_FRAMING + 1, batchBufferBytes));
+        } else {
+            blocks = null;
+            batchBuffer = ByteBuffer.allocateDirect(Math.max(MapSerde.FRAMING + 1, batchBufferBytes));
+        }
+        batch = new ByteBuffer[]{batchBuffer};
+        // A record too large for the batch buffer is written on its own,
+        // with its framing in separate buffers
+        oversized = new ByteBuffer[]{ByteBuffer.allocate(5), null, ByteBuffer.allocate(1)};
+        Files.createDirectories(dir);
+        List<Path> legacy = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                Matcher m = SEGMENT_NAME.matcher(name);
+                if (m.find()) {
+                    segments.put(Long.parseLong(m.group(1), 16), file);
+                } else if (!name.endsWith(CURSOR_SUFFIX) && !name.startsWith(".")
+                        && Files.isRegularFile(file)) {
+                    legacy.add(file);
+                }
+            }
+        }
+        long seq = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        if (!legacy.isEmpty()) {
+            seq = adoptLegacyFiles(legacy, seq);
+        }
+        for (Map.Entry<Long, Path> e : segments.entrySet()) {
+            BasicFileAttributes attrs = Files.readAttributes(e.getValue(), BasicFileAttributes.class);
+            sealedSizes.put(e.getKey(), attrs.size());
+            sealedBytes.addAndGet(attrs.size());
+            created.put(e.getKey(), attrs.creationTime().toMillis());
+        }
+        long floor = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + CURSOR_SUFFIX)) {
+            for (Path file : files) {
+                try (SpoolCursor cursor = new SpoolCursor(file)) {
+                    floor = Math.max(floor, cursor.segment());
+                }
+            }
+        }
+        cursorFloor = floor;
+        openSegment(seq);
+    }
+
+    /**
+     * Files left by LogStructuredStorage, which spooled records in this
+     * directory with the same serde, become segments to send first. Its
+     * cursors cannot be interpreted, so records it had already sent may be
+     * sent again.
+     */
+    private long adoptLegacyFiles(List<Path> legacy, long seq) throws IOException {
+        Collections.sort(legacy);
+        for (Path file : legacy) {
+            if (Files.size(file) == 0) {
+                Files.delete(file);
+                continue;
+            }
+            Path target = dir.resolve(segmentName(seq));
+            Files.move(file, target);
+            segments.put(seq++, target);
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + CURSOR_SUFFIX)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        return seq;
+    }
+
+    static String segmentName(long seq) {
+        String hex = Long.toHexString(seq);
+        StringBuilder sb = new StringBuilder(16 + SEGMENT_SUFFIX.length());
+        for (int i = hex.length(); i < 16; i++) {
+            sb.append('0');
+        }
+        return sb.append(hex).append(SEGMENT_SUFFIX).toString();
+    }
+
+    private void openSegment(long seq) throws IOException {
+        Path path = dir.resolve(segmentName(seq));
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        long size;
+        try {
+            size = ch.size();
+            ch.position(size);
+            if (blocks != null && size == 0) {
+                // Written before the segment is visible to readers, so they
+                // always know its format
+                SpoolBlocks.writeSegmentHeader(ch);
+                size = ch.position();
+            }
+        } catch (IOException | RuntimeException ex) {
+            ch.close();
+            if (blocks != null) {
+                // Do not leave a partial header to be appended to next time
+                Files.deleteIfExists(path);
+            }
+            throw ex;
+        }
+        writeChannel = ch;
+        created.put(seq, System.currentTimeMillis());
+        segments.put(seq, path);
+        written = new Mark(seq, size);
+    }
+
+    Path dir() {
+        return dir;
+    }
+
+    MapSerde serde() {
+        return serde;
+    }
+
+    SpoolFormat format() {
+        return format;
+    }
+
+    /**
+     * Append a record, encoding it with the serde.
+     *
+     * @param record A record
+     * @throws IOException If something goes wrong
+     */
+    void append(Map<String, Object> record) throws IOException {
+        append(serde.encode(record));
+    }
+
+    /**
+     * Append a record's JSON. It is written by this thread, along with any
+     * others queued, unless another thread is already writing, in which case
+     * that thread writes it, and this one waits until it has. If a batch
+     * cannot be written completely, whatever was written of it is truncated
+     * away so no reader ever sees it, and every caller with a record in it
+     * gets an exception.
+     *
+     * @param json The JSON for one record
+     * @throws IOException If something goes wrong
+     */
+    void append(byte[] json) throws IOException {
+        if (closed) {
+            throw new IOException("Spool closed: " + dir);
+        }
+        Ticket ticket = new Ticket(1);
+        pending.add(new Queued(json, ticket));
+        writeQueued(ticket);
+    }
+
+    /**
+     * Append a batch of records' JSON, written together - as group commit
+     * batches records from concurrent callers, for a single caller which
+     * has collected records itself.
+     *
+     * @param records The JSON of each record
+     * @throws IOException If something goes wrong
+     */
+    void append(Collection<byte[]> records) throws IOException {
+        if (closed) {
+            throw new IOException("Spool closed: " + dir);
+        }
+        if (records.isEmpty()) {
+            return;
+        }
+        Ticket ticket = new Ticket(records.size());
+        for (byte[] json : records) {
+            pending.add(new Queued(json, ticket));
+        }
+        writeQueued(ticket);
+    }
+
+    private void writeQueued(Ticket ticket) throws IOException {
+        // Whoever holds the lock writes until its own records are written,
+        // so by the time this thread gets it, they usually have been too
+        writeLock.lock();
+        try {
+            writePending(ticket);
+            ticket.check();
+        } finally {
+            writeLock.unlock();
+        }
+        if (limits.isLimited()) {
+            enforceLimits();
+        }
+    }
+
+    private void enforceLimits() {
+        long now = System.currentTimeMillis();
+        if ((rolledOver || now >= nextLimitCheck) && evictionLock.tryLock()) {
+            try {
+                rolledOver = false;
+                nextLimitCheck = now + LIMIT_CHECK_INTERVAL_MILLIS;
+                SpoolEviction.enforce(this);
+            } catch (IOException | RuntimeException ex) {
+                RemoteSinkSupport.log("Could not enforce spool limits " + limits + " on " + dir, ex);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Determine whether a record of a level should be spooled, counting it
+     * as refused if not.
+     *
+     * @param level The record's level
+     * @return Whether to spool it
+     */
+    boolean admits(int level) {
+        if (limits.policy != SpoolOverflowPolicy.REFUSE_NON_SEVERE
+                || level >= SpoolLimits.SEVERE_LEVEL || !limits.isOverSize(totalBytes())) {
+            return true;
+        }
+        refused.increment();
+        return false;
+    }
+
+    /**
+     * Write queued records in batches until those of the passed ticket are
+     * written, or everything queued is if it is null.
+     */
+    private void writePending(Ticket until) throws IOException {
+        if (closed) {
+            return;
+        }
+        if (blocks != null) {
+            writePendingBlocks(until);
+            return;
+        }
+        while (!pending.isEmpty() && (until == null || !until.isDone())) {
+            ByteBuffer[] srcs;
+            int count = 0;
+            ByteBuffer buf = batchBuffer;
+            buf.clear();
+            Queued queued;
+            while ((queued = pending.peek()) != null) {
+                byte[] next = queued.json;
+                int framed = next.length + MapSerde.FRAMING;
+                if (framed > buf.capacity()) {
+                    if (count == 0) {
+                        pending.poll();
+                        batchTickets.add(queued.ticket);
+                        count++;
+                        oversized[0].clear();
+                        oversized[0].putInt(next.length + 1).put((byte) '\n').flip();
+                        oversized[1] = ByteBuffer.wrap(next);
+                        oversized[2].clear();
+                        oversized[2].put((byte) '\n').flip();
+                    }
+                    break;
+                }
+                if (framed > buf.remaining()) {
+                    break;
+                }
+                pending.poll();
+                batchTickets.add(queued.ticket);
+                MapSerde.frame(next, buf);
+                count++;
+            }
+            if (buf.position() > 0) {
+                buf.flip();
+                srcs = batch;
+            } else {
+                srcs = oversized;
+            }
+            try {
+                write(srcs);
+            } catch (IOException | RuntimeException ex) {
+                batchWritten(ex);
+                throw ex;
+            } finally {
+                oversized[1] = null;
+            }
+            batchWritten(null);
+            batches.increment();
+            appended.add(count);
+        }
+    }
+
+    private void writePendingBlocks(Ticket until) throws IOException {
+        while (!pending.isEmpty() && (until == null || !until.isDone())) {
+            int count = 0;
+            ByteBuffer buf = batchBuffer;
+            buf.clear();
+            buf.position(SpoolBlocks.BLOCK_HEADER_BYTES);
+            Queued queued;
+            while ((queued = pending.peek()) != null) {
+                byte[] next = queued.json;
+                int framed = next.length + SpoolBlocks.RECORD_FRAMING;
+                if (framed > buf.remaining()) {
+                    if (count == 0) {
+                        // Too big for the batch buffer - a block of its own
+                        pending.poll();
+                        batchTickets.add(queued.ticket);
+                        buf = ByteBuffer.allocate(SpoolBlocks.BLOCK_HEADER_BYTES + framed);
+                        buf.position(SpoolBlocks.BLOCK_HEADER_BYTES);
+                        buf.putInt(next.length).put(next);
+                        count++;
+                    }
+                    break;
+                }
+                pending.poll();
+                batchTickets.add(queued.ticket);
+                buf.putInt(next.length).put(next);
+                count++;
+            }
+            try {
+                batch[0] = blocks.seal(buf, count);
+                write(batch);
+            } catch (IOException | RuntimeException ex) {
+                batchWritten(ex);
+                throw ex;
+            } finally {
+                batch[0] = batchBuffer;
+            }
+            batchWritten(null);
+            batches.increment();
+            appended.add(count);
+        }
+    }
+
+    private void batchWritten(Throwable failure) {
+        for (Ticket ticket : batchTickets) {
+            ticket.written(failure);
+        }
+        batchTickets.clear();
+    }
+
+    private void write(ByteBuffer[] srcs) throws IOException {
+        Mark mark = written;
+        FileChannel ch = writeChannel;
+        long remaining = 0;
+        for (ByteBuffer b : srcs) {
+            remaining += b.remaining();
+        }
+        try {
+            while (remaining > 0) {
+                remaining -= ch.write(srcs);
+            }
+            if (forceEachBatch) {
+                ch.force(false);
+            }
+        } catch (IOException | RuntimeException ex) {
+            try {
+                ch.truncate(mark.position);
+                ch.position(mark.position);
+            } catch (IOException | RuntimeException ex2) {
+                ex.addSuppressed(ex2);
+            }
+            throw ex;
+        }
+        // The batch is written - publish it before anything else can fail
+        long pos = ch.position();
+        written = new Mark(mark.segment, pos);
+        if (pos >= maxSegmentBytes) {
+            rollOver(mark.segment, ch, pos);
+        }
+    }
+
+    /**
+     * Start the next segment. If it cannot be created, keep writing this one
+     * and try again after the next batch, rather than fail a batch which is
+     * already written.
+     */
+    private void rollOver(long seg, FileChannel ch, long size) {
+        try {
+            openSegment(seg + 1);
+        } catch (IOException | RuntimeException ex) {
+            if (!rollOverFailing) {
+                rollOverFailing = true;
+                RemoteSinkSupport.log("Could not start spool segment " + (seg + 1)
+                        + " in " + dir + "; still writing segment " + seg, ex);
+            }
+            return;
+        }
+        rollOverFailing = false;
+        sealedSizes.put(seg, size);
+        sealedBytes.addAndGet(size);
+        rolledOver = true;
+        try {
+            ch.close();
+        } catch (IOException ex) {
+            RemoteSinkSupport.log("Could not close spool segment " + seg + " in " + dir, ex);
+        }
+    }
+
+    long batches() {
+        return batches.sum();
+    }
+
+    long appended() {
+        return appended.sum();
+    }
+
+    SpoolLimits limits() {
+        return limits;
+    }
+
+    /**
+     * The size of all segments.
+     *
+     * @return A number of bytes
+     */
+    long totalBytes() {
+        return sealedBytes.get() + written.position;
+    }
+
+    /**
+     * When the oldest segment was created, which is when its oldest record
+     * was written, or as near as the filesystem records.
+     *
+     * @return Epoch millis, or -1 if there are no segments
+     */
+    long oldestSegmentCreated() {
+        Map.Entry<Long, Long> e = created.firstEntry();
+        return e == null ? -1 : e.getValue();
+    }
+
+    long evicted() {
+        return evicted.sum();
+    }
+
+    long refused() {
+        return refused.sum();
+    }
+
+    void register(SpoolReader reader) {
+        readers.add(reader);
+    }
+
+    void unregister(SpoolReader reader) {
+        readers.remove(reader);
+    }
+
+    /**
+     * Held while a reader moves to another segment, and while eviction
+     * rewrites one, so nothing is rewritten under a reader.
+     *
+     * @return The lock
+     */
+    ReentrantLock segmentLock() {
+        return segmentLock;
+    }
+
+    /**
+     * The last segment which a reader may have read part of; call with the
+     * segment lock held.
+     *
+     * @return A segment number, or -1
+     */
+    long readFloor() {
+        long result = cursorFloor;
+        for (SpoolReader reader : readers) {
+            result = Math.max(result, reader.segment());
+        }
+        return result;
+    }
+
+    /**
+     * Delete a segment which is no longer being written, counting the
+     * records in it as evicted.
+     *
+     * @param seq The segment
+     * @param records The number of records in it
+     * @return true if it was deleted
+     */
+    boolean evict(long seq, long records) {
+        Path path = segments.get(seq);
+        if (seq >= written.segment || path == null || !delete(seq, path)) {
+            return false;
+        }
+        evicted.add(records);
+        return true;
+    }
+
+    /**
+     * Replace a segment which is no longer being written with a rewritten
+     * copy, counting the records left out as evicted.
+     *
+     * @param seq The segment
+     * @param replacement The new contents
+     * @param removedRecords The number of records left out
+     * @throws IOException If the file cannot be moved
+     */
+    void replace(long seq, Path replacement, long removedRecords) throws IOException {
+        Path path = segments.get(seq);
+        if (seq >= written.segment || path == null) {
+            Files.deleteIfExists(replacement);
+            return;
+        }
+        Files.move(replacement, path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        resized(seq);
+        evicted.add(removedRecords);
+    }
+
+    /**
+     * Update the recorded size of a segment no longer being written, after
+     * it has been repaired or rewritten.
+     *
+     * @param seq The segment
+     * @throws IOException If its size cannot be read
+     */
+    void resized(long seq) throws IOException {
+        Path path = segments.get(seq);
+        if (path != null && seq < written.segment) {
+            long size = Files.size(path);
+            Long old = sealedSizes.put(seq, size);
+            sealedBytes.addAndGet(size - (old == null ? 0 : old));
+        }
+    }
+
+    private boolean delete(long seq, Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            RemoteSinkSupport.log("Could not delete spool segment " + path, ex);
+            return false;
+        }
+        if (segments.remove(seq) != null) {
+            Long size = sealedSizes.remove(seq);
+            if (size != null) {
+                sealedBytes.addAndGet(-size);
+            }
+            created.remove(seq);
+        }
+        return true;
+    }
+
+    /**
+     * The end of the last complete append.
+     *
+     * @return A mark
+     */
+    Mark written() {
+        return written;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    Path segmentPath(long seq) {
+        return segments.get(seq);
+    }
+
+    Long firstSegment() {
+        return segments.isEmpty() ? null : segments.firstKey();
+    }
+
+    Long nextSegment(long seq) {
+        return segments.higherKey(seq);
+    }
+
+    /**
+     * Delete segments which every registered reader has committed past.
+     *
+     * @return The number of segments deleted
+     */
+    int deleteSent() {
+        long min = Long.MAX_VALUE;
+        for (SpoolReader reader : readers) {
+            min = Math.min(min, reader.committedSegment());
+        }
+        return min == Long.MAX_VALUE ? 0 : deleteBefore(min);
+    }
+
+    /**
+     * Delete segments which precede the passed one, except one still being
+     * written.
+     *
+     * @param seq A segment number
+     * @return The number of segments deleted
+     */
+    int deleteBefore(long seq) {
+        int result = 0;
+        long current = written.segment;
+        for (Map.Entry<Long, Path> e : segments.headMap(seq).entrySet()) {
+            if (e.getKey() == current) {
+                continue;
+            }
+            if (delete(e.getKey(), e.getValue())) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            if (!closed) {
+                try {
+                    writePending(null);
+                } finally {
+                    closed = true;
+                    writeChannel.close();
+                    if (blocks != null) {
+                        blocks.close();
+                    }
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Replace the channel the current segment is written through with one
+     * wrapping it, so tests can make writes fail.
+     *
+     * @param wrapper Wraps the channel
+     */
+    void wrapWriteChannel(UnaryOperator<FileChannel> wrapper) {
+        writeLock.lock();
+        try {
+            writeChannel = wrapper.apply(writeChannel);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Spool(" + dir + " " + segments.size() + " segments, at " + written + ")";
+    }
+
+    /**
+     * A queued record, and the ticket of the append call it came from.
+     */
+    private static final class Queued {
+
+        final byte[] json;
+        final Ticket ticket;
+
+        Queued(byte[] json, Ticket ticket) {
+            this.json = json;
+            this.ticket = ticket;
+        }
+    }
+
+    /**
+     * Tracks whether the records of one append call have been written;
+     * guarded by the write lock.
+     */
+    private final class Ticket {
+
+        private int unwritten;
+        private Throwable failure;
+
+        Ticket(int records) {
+            this.unwritten = records;
+        }
+
+        boolean isDone() {
+            return unwritten == 0;
+        }
+
+        void written(Throwable failure) {
+            unwritten--;
+            if (failure != null && this.failure == null) {
+                this.failure = failure;
+            }
+        }
+
+        void check() throws IOException {
+            if (failure != null) {
+                throw new IOException("Could not write records to " + dir, failure);
+            } else if (unwritten > 0) {
+                // Closed, or a batch failed before all of them were taken
+                throw new IOException("Records not written to " + dir);
+            }
+        }
+    }
+
+    /**
+     * A position in the spool - a segment number and an offset in it.
+     */
+    static final class Mark {
+
+        final long segment;
+        final long position;
+
+        Mark(long segment, long position) {
+            this.segment = segment;
+            this.position = position;
+        }
+
+        @Override
+        public String toString() {
+            return segment + ":" + position;
+        }
+    }
+}
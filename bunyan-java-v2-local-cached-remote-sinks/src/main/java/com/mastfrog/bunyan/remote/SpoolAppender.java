@@ -0,0 +1,218 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes records to the spool on a thread of its own, so threads which log
+ * only pay for putting a record on a queue. The queue is bounded: when it
+ * is full, <code>put()</code> waits for the appender to make room, so a
+ * burst bigger than the queue costs the threads logging it latency rather
+ * than memory, no record is dropped for want of room, and each thread's
+ * records are still written in the order it logged them.
+ * <p>
+ * The appender thread parks while the queue is empty and is woken the same
+ * way the sender is - one unpark, however many records are queued while it
+ * is running. Each time it wakes it writes everything queued as one batch.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+final class SpoolAppender implements Runnable {
+
+    // The most records written in one batch
+    private static final int MAX_BATCH = 1024;
+    private final Spool spool;
+    private final int capacity;
+    private final Runnable onWrite;
+    private final ConcurrentLinkedQueue<byte[]> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    // Set by offer(), cleared by the appender thread before each pass
+    private final AtomicBoolean signalled = new AtomicBoolean();
+    private volatile boolean stopping;
+    private final Thread thread;
+    // Only used by threads waiting for room in the queue
+    private final ReentrantLock fullLock = new ReentrantLock();
+    private final Condition notFull = fullLock.newCondition();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * Create and start an appender.
+     *
+     * @param spool The spool
+     * @param capacity The most records which may be queued
+     * @param onWrite Run after each batch is written
+     */
+    SpoolAppender(Spool spool, int capacity, Runnable onWrite) {
+        this.spool = spool;
+        this.capacity = capacity;
+        this.onWrite = onWrite;
+        thread = new Thread(this, "bunyan-spool-appender");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queue a record to be written, if there is room, without waiting.
+     *
+     * @param json The record's JSON
+     * @return false if the queue is full or the appender is stopped, in
+     * which case the caller should write the record itself
+     */
+    boolean offer(byte[] json) {
+        if (stopping) {
+            return false;
+        }
+        if (queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet();
+            return false;
+        }
+        queue.add(json);
+        if (stopping && queue.remove(json)) {
+            // Stopped after the check above, and the appender may have made
+            // its last pass already
+            queued.decrementAndGet();
+            return false;
+        }
+        if (!signalled.get() && signalled.compareAndSet(false, true)) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    /**
+     * Queue a record to be written, waiting for room if the queue is full.
+     *
+     * @param json The record's JSON
+     * @return false if the appender is stopped, in which case the caller
+     * should write the record itself
+     * @throws InterruptedException If interrupted while waiting
+     */
+    boolean put(byte[] json) throws InterruptedException {
+        if (offer(json)) {
+            return true;
+        }
+        waiting.incrementAndGet();
+        fullLock.lock();
+        try {
+            while (!stopping) {
+                if (offer(json)) {
+                    return true;
+                }
+                // Timed, since room may be made between the failed offer
+                // and starting to wait
+                notFull.await(10, TimeUnit.MILLISECONDS);
+            }
+            return false;
+        } finally {
+            fullLock.unlock();
+            waiting.decrementAndGet();
+        }
+    }
+
+    int queued() {
+        return queued.get();
+    }
+
+    /**
+     * Write whatever is queued and exit the appender thread.
+     *
+     * @param timeout How long to wait for it to exit
+     * @param unit The time unit
+     * @throws InterruptedException If interrupted
+     */
+    void stop(long timeout, TimeUnit unit) throws InterruptedException {
+        stopping = true;
+        LockSupport.unpark(thread);
+        fullLock.lock();
+        try {
+            notFull.signalAll();
+        } finally {
+            fullLock.unlock();
+        }
+        if (thread != Thread.currentThread()) {
+            thread.join(Math.max(1, unit.toMillis(timeout)));
+        }
+    }
+
+    @Override
+    public void run() {
+        List<byte[]> batch = new ArrayList<>(Math.min(capacity, MAX_BATCH));
+        for (;;) {
+            signalled.set(false);
+            // Read stopping first, so a record offered before it was set is
+            // written by the pass below
+            boolean stop = stopping;
+            byte[] json;
+            while ((json = queue.poll()) != null) {
+                batch.add(json);
+                if (batch.size() == MAX_BATCH) {
+                    write(batch);
+                }
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+            }
+            if (stop) {
+                return;
+            }
+            // Anything offered since signalled was cleared has set it, and
+            // unparked us - but a lock taken while writing may have used up
+            // the unpark, so check the flag rather than rely on it
+            if (!signalled.get()) {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    private void write(List<byte[]> batch) {
+        try {
+            spool.append(batch);
+        } catch (IOException ex) {
+            RemoteSinkSupport.log("Could not spool " + batch.size() + " records", ex);
+        } finally {
+            queued.addAndGet(-batch.size());
+            batch.clear();
+            if (waiting.get() > 0) {
+                fullLock.lock();
+                try {
+                    notFull.signalAll();
+                } finally {
+                    fullLock.unlock();
+                }
+            }
+            onWrite.run();
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes and decodes the blocks spool segments are written in by the
+ * BLOCKS and DEFLATED_BLOCKS formats. A segment starts with a four byte
+ * magic number, whose first byte, read as the start of a length, would be
+ * negative - so segments in the JSON format, which start with a record
+ * length, are never mistaken for it. Then follow blocks, each with a 17-byte
+ * header:
+ * <ul>
+ * <li>1 byte - 0 if the records are stored, 1 if deflated</li>
+ * <li>4 bytes - the number of records</li>
+ * <li>4 bytes - the length of the records uncompressed</li>
+ * <li>4 bytes - the length of the records as stored</li>
+ * <li>4 bytes - a CRC-32 of the preceding header bytes and the stored
+ * records</li>
+ * </ul>
+ * followed by the records - each a four byte length and that many bytes of
+ * JSON.
+ * <p>
+ * Not thread-safe - the spool's writer and each reader use their own
+ * instance.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+final class SpoolBlocks {
+
+    static final int MAGIC = 0xB5B10C01;
+    static final int SEGMENT_HEADER_BYTES = 4;
+    static final int BLOCK_HEADER_BYTES = 17;
+    static final int RECORD_FRAMING = 4;
+    static final int CHECKED_HEADER_BYTES = 13;
+    private static final byte STORED = 0;
+    private static final byte DEFLATED = 1;
+    // Sanity limit, so a corrupt length cannot cause a huge allocation
+    static final int MAX_BLOCK_BYTES = 256 * 1024 * 1024;
+    private final boolean compress;
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+    private Deflater deflater;
+    private Inflater inflater;
+    private byte[] scratch = new byte[0];
+    private byte[] inflated = new byte[0];
+    private ByteBuffer payload;
+
+    SpoolBlocks(boolean compress) {
+        this.compress = compress;
+    }
+
+    static void writeSegmentHeader(FileChannel ch) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+        buf.putInt(MAGIC).flip();
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+    }
+
+    /**
+     * Determine if a segment file is in a block format, by reading its
+     * magic number.
+     *
+     * @param ch A channel
+     * @return true if it starts with the magic number
+     * @throws IOException If something goes wrong
+     */
+    static boolean hasSegmentHeader(FileChannel ch) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, buf.position()) < 0) {
+                return false;
+            }
+        }
+        buf.flip();
+        return buf.getInt() == MAGIC;
+    }
+
+    /**
+     * Complete a block whose records have been written into a heap buffer
+     * after <code>BLOCK_HEADER_BYTES</code> bytes left for its header,
+     * compressing it if this instance compresses and that makes it smaller.
+     *
+     * @param block The buffer, positioned after the last record
+     * @param records The number of records in it
+     * @return A buffer containing the whole block, ready to write - either
+     * the passed one or one owned by this instance
+     */
+    ByteBuffer seal(ByteBuffer block, int records) {
+        int rawLength = block.position() - BLOCK_HEADER_BYTES;
+        byte[] array = block.array();
+        int offset = block.arrayOffset();
+        if (compress && rawLength > 64) {
+            if (deflater == null) {
+                deflater = new Deflater(Deflater.BEST_SPEED);
+            }
+            if (scratch.length < block.position()) {
+                scratch = new byte[block.position()];
+            }
+            deflater.reset();
+            deflater.setInput(array, offset + BLOCK_HEADER_BYTES, rawLength);
+            deflater.finish();
+            // Give up if the output would be no smaller than the input
+            int stored = 0;
+            int room = rawLength - 1;
+            while (!deflater.finished() && stored < room) {
+                stored += deflater.deflate(scratch, BLOCK_HEADER_BYTES + stored, room - stored);
+            }
+            if (deflater.finished()) {
+                ByteBuffer result = ByteBuffer.wrap(scratch, 0, BLOCK_HEADER_BYTES + stored);
+                writeHeader(scratch, 0, DEFLATED, records, rawLength, stored);
+                return result;
+            }
+        }
+        writeHeader(array, offset, STORED, records, rawLength, rawLength);
+        block.flip();
+        return block;
+    }
+
+    private void writeHeader(byte[] array, int offset, byte kind, int records, int rawLength, int stored) {
+        ByteBuffer buf = ByteBuffer.wrap(array, offset, BLOCK_HEADER_BYTES);
+        buf.put(kind).putInt(records).putInt(rawLength).putInt(stored);
+        crc.reset();
+        crc.update(array, offset, CHECKED_HEADER_BYTES);
+        crc.update(array, offset + BLOCK_HEADER_BYTES, stored);
+        buf.putInt((int) crc.getValue());
+    }
+
+    /**
+     * Read and check the block at a position; on success the channel is
+     * positioned after it, and <code>payload()</code> returns its records.
+     *
+     * @param ch A channel
+     * @param pos The block's position
+     * @param limit The position data can be read up to
+     * @return The number of records in the block
+     * @throws IOException If the block is truncated or corrupt
+     */
+    int read(FileChannel ch, long pos, long limit) throws IOException {
+        if (limit - pos < BLOCK_HEADER_BYTES) {
+            throw new IOException("Truncated block header at " + pos);
+        }
+        header.clear();
+        readFully(ch, header, pos);
+        header.flip();
+        byte kind = header.get();
+        int records = header.getInt();
+        int rawLength = header.getInt();
+        int stored = header.getInt();
+        int checksum = header.getInt();
+        if (!isPlausibleHeader(kind, records, rawLength, stored)) {
+            throw new IOException("Corrupt block header at " + pos);
+        }
+        if (limit - pos - BLOCK_HEADER_BYTES < stored) {
+            throw new IOException("Truncated block at " + pos);
+        }
+        if (scratch.length < stored) {
+            scratch = new byte[stored];
+        }
+        ByteBuffer body = ByteBuffer.wrap(scratch, 0, stored);
+        readFully(ch, body, pos + BLOCK_HEADER_BYTES);
+        crc.reset();
+        crc.update(header.array(), 0, CHECKED_HEADER_BYTES);
+        crc.update(scratch, 0, stored);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Checksum mismatch in block at " + pos);
+        }
+        if (kind == STORED) {
+            payload = ByteBuffer.wrap(scratch, 0, stored);
+        } else {
+            payload = inflate(scratch, 0, stored, rawLength, pos);
+        }
+        ch.position(pos + BLOCK_HEADER_BYTES + stored);
+        return records;
+    }
+
+    /**
+     * Decode a block in a heap buffer which <code>checkBlock()</code> has
+     * found to be valid - as when blocks arrive over a network connection
+     * rather than from a file; <code>payload()</code> then returns its
+     * records.
+     *
+     * @param buf A heap buffer
+     * @param pos The block's position in it
+     * @return The number of records in the block
+     * @throws IOException If the block cannot be inflated
+     */
+    int unpack(ByteBuffer buf, int pos) throws IOException {
+        byte kind = buf.get(pos);
+        int records = buf.getInt(pos + 1);
+        int rawLength = buf.getInt(pos + 5);
+        int stored = buf.getInt(pos + 9);
+        int start = buf.arrayOffset() + pos + BLOCK_HEADER_BYTES;
+        if (kind == STORED) {
+            payload = ByteBuffer.wrap(buf.array(), start, stored);
+        } else {
+            payload = inflate(buf.array(), start, stored, rawLength, pos);
+        }
+        return records;
+    }
+
+    /**
+     * Write a batch of records as a single block, compressed if this
+     * instance compresses and that makes it smaller.
+     *
+     * @param records The JSON of each record
+     * @return A new buffer containing the block, ready to write
+     */
+    ByteBuffer block(List<byte[]> records) {
+        int size = BLOCK_HEADER_BYTES;
+        for (byte[] json : records) {
+            size += RECORD_FRAMING + json.length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.position(BLOCK_HEADER_BYTES);
+        for (byte[] json : records) {
+            buf.putInt(json.length).put(json);
+        }
+        ByteBuffer result = seal(buf, records.size());
+        if (result.array() != buf.array()) {
+            // Sealed into the scratch array, which the next call reuses
+            buf.clear();
+            buf.put(result).flip();
+            result = buf;
+        }
+        return result;
+    }
+
+    static boolean isPlausibleHeader(byte kind, int records, int rawLength, int stored) {
+        return (kind == STORED || kind == DEFLATED) && records > 0
+                && rawLength >= records * (long) RECORD_FRAMING && rawLength <= MAX_BLOCK_BYTES
+                && stored > 0 && stored <= rawLength
+                && (kind == DEFLATED || stored == rawLength);
+    }
+
+    /**
+     * Check the framing and checksum of the block at a position in a
+     * buffer, without decoding it.
+     *
+     * @param buf A buffer containing a segment
+     * @param pos A position in it
+     * @param crc A checksum to use
+     * @return The position after the block, or -1 if there is not a valid
+     * block at that position
+     */
+    static int checkBlock(ByteBuffer buf, int pos, CRC32 crc) {
+        int limit = buf.limit();
+        if (limit - pos < BLOCK_HEADER_BYTES) {
+            return -1;
+        }
+        byte kind = buf.get(pos);
+        int records = buf.getInt(pos + 1);
+        int rawLength = buf.getInt(pos + 5);
+        int stored = buf.getInt(pos + 9);
+        if (!isPlausibleHeader(kind, records, rawLength, stored)
+                || limit - pos - BLOCK_HEADER_BYTES < stored) {
+            return -1;
+        }
+        crc.reset();
+        ByteBuffer dup = buf.duplicate();
+        dup.limit(pos + CHECKED_HEADER_BYTES).position(pos);
+        crc.update(dup);
+        dup.limit(pos + BLOCK_HEADER_BYTES + stored).position(pos + BLOCK_HEADER_BYTES);
+        crc.update(dup);
+        return (int) crc.getValue() == buf.getInt(pos + 13)
+                ? pos + BLOCK_HEADER_BYTES + stored : -1;
+    }
+
+    /**
+     * The records of the last block read, valid until the next read.
+     *
+     * @return A buffer
+     */
+    ByteBuffer payload() {
+        return payload;
+    }
+
+    private ByteBuffer inflate(byte[] in, int offset, int length, int rawLength, long pos) throws IOException {
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        if (inflated.length < rawLength) {
+            inflated = new byte[rawLength];
+        }
+        byte[] out = inflated;
+        inflater.reset();
+        inflater.setInput(in, offset, length);
+        try {
+            int count = 0;
+            while (count < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(out, count, rawLength - count);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                count += n;
+            }
+            if (count != rawLength) {
+                throw new IOException("Block at " + pos + " inflated to "
+                        + count + " bytes, not " + rawLength);
+            }
+            return ByteBuffer.wrap(out, 0, rawLength);
+        } catch (DataFormatException ex) {
+            throw new IOException("Corrupt compressed block at " + pos, ex);
+        }
+    }
+
+    static void readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, pos + buf.position()) < 0) {
+                throw new IOException("Unexpected end of file at " + (pos + buf.position()));
+            }
+        }
+    }
+
+    void close() {
+        if (deflater != null) {
+            deflater.end();
+        }
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+}
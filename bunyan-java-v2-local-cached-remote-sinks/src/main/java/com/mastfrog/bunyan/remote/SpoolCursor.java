@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A persistent read position in a spool - a segment number and offset,
+ * stored with a check value so a torn write is detected, in which case
+ * reading starts over from the oldest segment (resending rather than losing
+ * records). Not synchronized; callers serialize access.
+ *
+ * @author Tim Boudreau
+ */
+final class SpoolCursor implements AutoCloseable {
+
+    private static final long CHECK = 0x5b0015c0c0ffeeL;
+    private static final int SIZE = 24;
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+    private long segment = -1;
+    private long position;
+
+    SpoolCursor(Path file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() >= SIZE) {
+            while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+                // read it all
+            }
+            buffer.flip();
+            long seg = buffer.getLong();
+            long pos = buffer.getLong();
+            if (buffer.getLong() == check(seg, pos) && seg > 0 && pos >= 0) {
+                segment = seg;
+                position = pos;
+            }
+        }
+    }
+
+    private static long check(long segment, long position) {
+        return (segment * 31 + position) ^ CHECK;
+    }
+
+    /**
+     * The stored segment, or -1 if there is none.
+     *
+     * @return A segment number
+     */
+    long segment() {
+        return segment;
+    }
+
+    long position() {
+        return position;
+    }
+
+    /**
+     * Store a position. Not forced to disk: if the operating system (rather
+     * than the JVM) crashes, some records may be sent again.
+     *
+     * @param segment The segment
+     * @param position The offset into it
+     * @throws IOException If something goes wrong
+     */
+    void store(long segment, long position) throws IOException {
+        buffer.clear();
+        buffer.putLong(segment).putLong(position).putLong(check(segment, position));
+        buffer.flip();
+        long at = 0;
+        while (buffer.hasRemaining()) {
+            at += channel.write(buffer, at);
+        }
+        this.segment = segment;
+        this.position = position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return file.getFileName() + "(" + segment + ":" + position + ")";
+    }
+}
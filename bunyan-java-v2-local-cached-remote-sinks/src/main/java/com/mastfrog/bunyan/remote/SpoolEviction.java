@@ -0,0 +1,266 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Enforces a spool's limits. Segments not written to for longer than the
+ * maximum age are deleted. Then, if the spool is larger than its maximum
+ * size, its overflow policy is applied:
+ * <ul>
+ * <li>DROP_OLDEST deletes the oldest segments until it is not</li>
+ * <li>DROP_LOWEST_LEVEL rewrites segments no reader has started on without
+ * their trace records, oldest first, then without debug, info and warn
+ * records, until it is not - and if that is not enough, deletes the oldest
+ * segments</li>
+ * <li>REFUSE_NON_SEVERE does nothing here - records are refused as they
+ * are appended</li>
+ * </ul>
+ * Only segments no longer being written are touched, so the spool can
+ * exceed its limits by up to a segment.
+ *
+ * @author Tim Boudreau
+ */
+final class SpoolEviction {
+
+    private static final int[] LEVELS_TO_DROP_BELOW = {20, 30, 40, 50};
+    private static final int DEFAULT_LEVEL = 30;
+
+    private SpoolEviction() {
+        throw new AssertionError();
+    }
+
+    static void enforce(Spool spool) throws IOException {
+        SpoolLimits limits = spool.limits();
+        if (limits.maxAgeMillis > 0) {
+            long oldest = System.currentTimeMillis() - limits.maxAgeMillis;
+            for (Long seq = spool.firstSegment(); seq != null && seq < spool.written().segment;
+                    seq = spool.nextSegment(seq)) {
+                Path path = spool.segmentPath(seq);
+                long modified;
+                try {
+                    modified = path == null ? 0 : Files.getLastModifiedTime(path).toMillis();
+                } catch (NoSuchFileException ex) {
+                    // Sent and deleted meanwhile
+                    continue;
+                }
+                if (modified >= oldest) {
+                    // Later segments were written later
+                    break;
+                }
+                evict(spool, seq);
+            }
+        }
+        if (!limits.isOverSize(spool.totalBytes())) {
+            return;
+        }
+        switch (limits.policy) {
+            case REFUSE_NON_SEVERE:
+                return;
+            case DROP_LOWEST_LEVEL:
+                for (int level : LEVELS_TO_DROP_BELOW) {
+                    for (Long seq = spool.firstSegment(); seq != null && seq < spool.written().segment
+                            && limits.isOverSize(spool.totalBytes()); seq = spool.nextSegment(seq)) {
+                        dropRecordsBelow(spool, seq, level);
+                    }
+                    if (!limits.isOverSize(spool.totalBytes())) {
+                        return;
+                    }
+                }
+            // fall through
+            default:
+                Long seq;
+                while (limits.isOverSize(spool.totalBytes()) && (seq = spool.firstSegment()) != null
+                        && seq < spool.written().segment) {
+                    if (!evict(spool, seq)) {
+                        break;
+                    }
+                }
+        }
+    }
+
+    private static boolean evict(Spool spool, long seq) {
+        Path path = spool.segmentPath(seq);
+        long records = 0;
+        try {
+            records = path == null ? 0 : countRecords(path);
+        } catch (IOException ex) {
+            // Deleted meanwhile, or unreadable - delete it anyway
+        }
+        return spool.evict(seq, records);
+    }
+
+    static long countRecords(Path path) throws IOException {
+        return countRecords(path, Long.MAX_VALUE);
+    }
+
+    /**
+     * Count the records in a segment, stopping at the first which is not
+     * intact.
+     *
+     * @param path A segment
+     * @param limit The offset to count records before
+     * @return A count
+     * @throws IOException If it cannot be read
+     */
+    static long countRecords(Path path, long limit) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            SpoolScanner scanner = new SpoolScanner(ch, new CRC32());
+            long end = Math.min(scanner.size(), limit);
+            long result = 0;
+            long pos = scanner.start();
+            while (pos < end) {
+                long next = scanner.check(pos);
+                if (next < 0) {
+                    break;
+                }
+                result += scanner.records();
+                pos = next;
+            }
+            return result;
+        }
+    }
+
+    private static void dropRecordsBelow(Spool spool, long seq, int level) throws IOException {
+        spool.segmentLock().lock();
+        try {
+            Path path = spool.segmentPath(seq);
+            if (path == null || seq <= spool.readFloor()) {
+                return;
+            }
+            boolean blocks;
+            List<byte[]> records = new ArrayList<>();
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+                blocks = SpoolBlocks.hasSegmentHeader(ch);
+                readRecords(spool, ch, blocks, records);
+            }
+            List<byte[]> kept = new ArrayList<>(records.size());
+            for (byte[] json : records) {
+                if (levelOf(spool, json) >= level) {
+                    kept.add(json);
+                }
+            }
+            if (kept.size() == records.size()) {
+                return;
+            }
+            // Starts with . so it is never mistaken for a spool file
+            Path temp = path.resolveSibling("." + path.getFileName() + ".evicting");
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writeRecords(spool, out, blocks, kept);
+            }
+            spool.replace(seq, temp, records.size() - kept.size());
+        } finally {
+            spool.segmentLock().unlock();
+        }
+    }
+
+    private static int levelOf(Spool spool, byte[] json) {
+        try {
+            Map<String, Object> record = spool.serde().decode(json, 0, json.length);
+            Object level = record.get("level");
+            return level instanceof Number ? ((Number) level).intValue() : DEFAULT_LEVEL;
+        } catch (IOException ex) {
+            return DEFAULT_LEVEL;
+        }
+    }
+
+    private static void readRecords(Spool spool, FileChannel ch, boolean blocks, List<byte[]> into) throws IOException {
+        long size = ch.size();
+        if (!blocks) {
+            while (ch.position() < size) {
+                into.add(spool.serde().readJson(ch));
+            }
+            return;
+        }
+        SpoolBlocks reader = new SpoolBlocks(false);
+        try {
+            long pos = SpoolBlocks.SEGMENT_HEADER_BYTES;
+            while (pos < size) {
+                int count = reader.read(ch, pos, size);
+                ByteBuffer payload = reader.payload();
+                for (int i = 0; i < count; i++) {
+                    byte[] json = new byte[payload.getInt()];
+                    payload.get(json);
+                    into.add(json);
+                }
+                pos = ch.position();
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void writeRecords(Spool spool, FileChannel out, boolean blocks, List<byte[]> records) throws IOException {
+        if (!blocks) {
+            for (byte[] json : records) {
+                ByteBuffer buf = ByteBuffer.allocate(json.length + MapSerde.FRAMING);
+                MapSerde.frame(json, buf);
+                buf.flip();
+                writeFully(out, buf);
+            }
+            return;
+        }
+        SpoolBlocks.writeSegmentHeader(out);
+        SpoolBlocks writer = new SpoolBlocks(spool.format() == SpoolFormat.DEFLATED_BLOCKS);
+        try {
+            int ix = 0;
+            while (ix < records.size()) {
+                // One block per batch-buffer's worth of records
+                int bytes = SpoolBlocks.BLOCK_HEADER_BYTES;
+                int end = ix;
+                do {
+                    bytes += records.get(end++).length + SpoolBlocks.RECORD_FRAMING;
+                } while (end < records.size() && bytes + records.get(end).length
+                        + SpoolBlocks.RECORD_FRAMING <= Spool.DEFAULT_BATCH_BUFFER_BYTES);
+                ByteBuffer block = ByteBuffer.allocate(bytes);
+                block.position(SpoolBlocks.BLOCK_HEADER_BYTES);
+                for (int i = ix; i < end; i++) {
+                    block.putInt(records.get(i).length).put(records.get(i));
+                }
+                writeFully(out, writer.seal(block, end - ix));
+                ix = end;
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+    }
+}
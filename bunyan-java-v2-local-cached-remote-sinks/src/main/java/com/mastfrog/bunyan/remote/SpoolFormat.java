@@ -0,0 +1,53 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+/**
+ * The format records are written to the spool in. Each spool segment file
+ * records its own format, so changing it does not prevent records spooled
+ * in another format from being read and sent.
+ *
+ * @author Tim Boudreau
+ */
+public enum SpoolFormat {
+    /**
+     * Each record's JSON on its own line, preceded by its length - files can
+     * be read with the bunyan command-line tool. The default.
+     */
+    JSON,
+    /**
+     * Blocks of records - one block per batch of records written together -
+     * each with a checksum, so corruption is detected rather than sent.
+     */
+    BLOCKS,
+    /**
+     * Checksummed blocks of records, deflate-compressed. Blocks which do not
+     * get smaller are stored uncompressed.
+     */
+    DEFLATED_BLOCKS;
+
+    boolean isBlocks() {
+        return this != JSON;
+    }
+}
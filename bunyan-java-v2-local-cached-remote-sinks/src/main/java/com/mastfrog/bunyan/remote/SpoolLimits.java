@@ -0,0 +1,68 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+/**
+ * Limits on how much a spool may hold, and what to do about it when it
+ * holds more.
+ *
+ * @author Tim Boudreau
+ */
+final class SpoolLimits {
+
+    static final SpoolLimits NONE = new SpoolLimits(0, 0, SpoolOverflowPolicy.DROP_OLDEST);
+    // The level below which REFUSE_NON_SEVERE refuses records - error
+    static final int SEVERE_LEVEL = 50;
+    final long maxBytes;
+    final long maxAgeMillis;
+    final SpoolOverflowPolicy policy;
+
+    /**
+     * Create limits.
+     *
+     * @param maxBytes The size of all segments above which records are
+     * evicted or refused, or 0 for no limit
+     * @param maxAgeMillis The age above which segments are deleted,
+     * determined by when they were last written to, or 0 for no limit
+     * @param policy What to do when over the size limit
+     */
+    SpoolLimits(long maxBytes, long maxAgeMillis, SpoolOverflowPolicy policy) {
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.policy = policy;
+    }
+
+    boolean isLimited() {
+        return maxBytes > 0 || maxAgeMillis > 0;
+    }
+
+    boolean isOverSize(long bytes) {
+        return maxBytes > 0 && bytes > maxBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "SpoolLimits(" + maxBytes + " bytes, " + maxAgeMillis + "ms, " + policy + ")";
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/**
+ * Metrics for the spool of a RemoteSinkSupport - how much is waiting to be
+ * sent, how old it is and how fast it is being sent. Available from
+ * <code>RemoteSinkSupport.metrics()</code>, and as a JMX MXBean if
+ * <code>RemoteSinkSupport.Builder.publishMetrics()</code> was used.
+ * <ul>
+ * <li><code>spooledBytes</code> - the size of the spool's segment files</li>
+ * <li><code>spooledRecords</code> - records spooled and not yet sent to the
+ * destination furthest behind, or evicted - approximate, since a segment
+ * evicted after some of its records were sent is counted as all
+ * evicted</li>
+ * <li><code>oldestRecordAge</code> - how long ago the oldest segment was
+ * started</li>
+ * <li><code>sendRate</code> - records acknowledged per second by the
+ * slowest destination, over the last ten seconds</li>
+ * <li><code>recordsSent</code> - records acknowledged by the destination
+ * furthest behind since startup</li>
+ * <li><code>recordsEvicted</code>, <code>recordsRefused</code> - records
+ * dropped because of the spool's limits since startup</li>
+ * <li><code>destinations</code> - for each destination, its
+ * <code>unsent</code>, <code>sent</code> and <code>sendRate</code>, the
+ * number of <code>failures</code> - batches which failed or timed out and
+ * were sent again - and the number of records <code>rejected</code> by
+ * it</li>
+ * </ul>
+ *
+ * @author Tim Boudreau
+ */
+public final class SpoolMetrics {
+
+    private static final int RATE_WINDOW_SECONDS = 10;
+    private final Spool spool;
+    private final long recordsAtOpen;
+    private final List<DestinationMetrics> destinations = new CopyOnWriteArrayList<>();
+    private ObjectName objectName;
+
+    /**
+     * Create metrics for a spool.
+     *
+     * @param spool The spool
+     * @param recordsAtOpen The number of records it held when opened
+     */
+    SpoolMetrics(Spool spool, long recordsAtOpen) {
+        this.spool = spool;
+        this.recordsAtOpen = recordsAtOpen;
+    }
+
+    /**
+     * Add a destination records are sent to.
+     *
+     * @param name Its name
+     * @param sentAtOpen The number of records in the spool when it was
+     * opened which were already sent to it
+     * @return Its metrics
+     */
+    DestinationMetrics destination(String name, long sentAtOpen) {
+        DestinationMetrics result = new DestinationMetrics(name, sentAtOpen);
+        destinations.add(result);
+        return result;
+    }
+
+    public long spooledBytes() {
+        return spool.totalBytes();
+    }
+
+    public long spooledRecords() {
+        if (destinations.isEmpty()) {
+            return Math.max(0, recordsAtOpen + spool.appended() - spool.evicted());
+        }
+        long result = 0;
+        for (DestinationMetrics dest : destinations) {
+            result = Math.max(result, dest.unsent());
+        }
+        return result;
+    }
+
+    public Duration oldestRecordAge() {
+        long created = spool.oldestSegmentCreated();
+        if (created < 0 || spooledRecords() == 0) {
+            return Duration.ZERO;
+        }
+        return Duration.ofMillis(Math.max(0, System.currentTimeMillis() - created));
+    }
+
+    /**
+     * Get the number of records acknowledged per second by the slowest
+     * destination, averaged over the last ten complete seconds.
+     *
+     * @return A rate
+     */
+    public double sendRate() {
+        double result = destinations.isEmpty() ? 0 : Double.MAX_VALUE;
+        for (DestinationMetrics dest : destinations) {
+            result = Math.min(result, dest.sendRate());
+        }
+        return result;
+    }
+
+    public long recordsSent() {
+        long result = destinations.isEmpty() ? 0 : Long.MAX_VALUE;
+        for (DestinationMetrics dest : destinations) {
+            result = Math.min(result, dest.sent());
+        }
+        return result;
+    }
+
+    public long recordsEvicted() {
+        return spool.evicted();
+    }
+
+    public long recordsRefused() {
+        return spool.refused();
+    }
+
+    /**
+     * Get all metrics as a map, suitable for logging or serializing as
+     * JSON.
+     *
+     * @return A map
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>(8);
+        result.put("spooledBytes", spooledBytes());
+        result.put("spooledRecords", spooledRecords());
+        result.put("oldestRecordAgeMillis", oldestRecordAge().toMillis());
+        result.put("sendRate", sendRate());
+        result.put("recordsSent", recordsSent());
+        result.put("recordsEvicted", recordsEvicted());
+        result.put("recordsRefused", recordsRefused());
+        Map<String, Object> dests = new LinkedHashMap<>(destinations.size());
+        for (DestinationMetrics dest : destinations) {
+            Map<String, Object> d = new LinkedHashMap<>(4);
+            d.put("unsent", dest.unsent());
+            d.put("sent", dest.sent());
+            d.put("sendRate", dest.sendRate());
+            d.put("failures", dest.failures());
+            d.put("rejected", dest.rejected());
+            dests.put(dest.name, d);
+        }
+        result.put("destinations", dests);
+        return result;
+    }
+
+    synchronized void publish(String name) {
+        try {
+            ObjectName on = new ObjectName("com.mastfrog.bunyan:type=SpoolMetrics,name="
+                    + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), on);
+            objectName = on;
+        } catch (Exception ex) {
+            RemoteSinkSupport.log("Could not register spool metrics MBean " + name, ex);
+        }
+    }
+
+    synchronized void unpublish() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception ex) {
+                RemoteSinkSupport.log("Could not unregister " + objectName, ex);
+            } finally {
+                objectName = null;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SpoolMetrics" + snapshot();
+    }
+
+    /**
+     * Counts of records acknowledged by one destination.
+     */
+    final class DestinationMetrics {
+
+        private final String name;
+        private final long sentAtOpen;
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        // Records sent in each of the last few seconds, in a ring indexed by
+        // epoch second, with the second each slot was last used for
+        private final AtomicLongArray perSecond = new AtomicLongArray(RATE_WINDOW_SECONDS + 1);
+        private final AtomicLongArray slotSeconds = new AtomicLongArray(RATE_WINDOW_SECONDS + 1);
+
+        DestinationMetrics(String name, long sentAtOpen) {
+            this.name = name;
+            this.sentAtOpen = sentAtOpen;
+        }
+
+        void onSent(int records) {
+            sent.add(records);
+            long second = System.currentTimeMillis() / 1000;
+            int slot = (int) (second % perSecond.length());
+            long was = slotSeconds.get(slot);
+            if (was != second && slotSeconds.compareAndSet(slot, was, second)) {
+                // A count added by another thread in between is lost, which
+                // is fine for a rate
+                perSecond.set(slot, 0);
+            }
+            perSecond.addAndGet(slot, records);
+        }
+
+        void onFailed() {
+            failures.increment();
+        }
+
+        void onRejected(int records) {
+            rejected.add(records);
+        }
+
+        long sent() {
+            return sent.sum();
+        }
+
+        long failures() {
+            return failures.sum();
+        }
+
+        long rejected() {
+            return rejected.sum();
+        }
+
+        long unsent() {
+            return Math.max(0, recordsAtOpen - sentAtOpen + spool.appended()
+                    - spool.evicted() - sent.sum() - rejected.sum());
+        }
+
+        double sendRate() {
+            long now = System.currentTimeMillis() / 1000;
+            long total = 0;
+            for (int i = 1; i <= RATE_WINDOW_SECONDS; i++) {
+                long second = now - i;
+                int slot = (int) (second % perSecond.length());
+                if (slotSeconds.get(slot) == second) {
+                    total += perSecond.get(slot);
+                }
+            }
+            return total / (double) RATE_WINDOW_SECONDS;
+        }
+    }
+
+    final class Bean implements SpoolMetricsMXBean {
+
+        @Override
+        public long getSpooledBytes() {
+            return spooledBytes();
+        }
+
+        @Override
+        public long getSpooledRecords() {
+            return spooledRecords();
+        }
+
+        @Override
+        public long getOldestRecordAgeMillis() {
+            return oldestRecordAge().toMillis();
+        }
+
+        @Override
+        public double getSendRate() {
+            return sendRate();
+        }
+
+        @Override
+        public long getRecordsSent() {
+            return recordsSent();
+        }
+
+        @Override
+        public long getRecordsEvicted() {
+            return recordsEvicted();
+        }
+
+        @Override
+        public long getRecordsRefused() {
+            return recordsRefused();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+/**
+ * What to do when the spool grows past its size limit because records
+ * cannot be sent as fast as they are logged - typically because the remote
+ * endpoint is down.
+ *
+ * @author Tim Boudreau
+ */
+public enum SpoolOverflowPolicy {
+    /**
+     * Delete the oldest spool segments - the default.
+     */
+    DROP_OLDEST,
+    /**
+     * Remove the lowest-level records - trace, then debug, info and warn -
+     * from segments no destination has started reading, oldest first, and
+     * only delete whole segments if that is not enough.
+     */
+    DROP_LOWEST_LEVEL,
+    /**
+     * Keep what is spooled, but stop spooling records below error level
+     * until there is room again; errors and fatal records are still
+     * spooled.
+     */
+    REFUSE_NON_SEVERE
+}
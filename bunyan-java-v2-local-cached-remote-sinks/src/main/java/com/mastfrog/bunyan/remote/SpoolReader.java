@@ -0,0 +1,383 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+/**
+ * Reads records from a spool, ahead of the position recorded in its cursor,
+ * which only moves when <code>commit()</code> is called. A spool may have
+ * several readers, each with its own cursor, reading at their own pace;
+ * segments are deleted once all of them have committed past them. Reading is done by
+ * one thread at a time; committing may be done from any thread.
+ * <p>
+ * In raw mode, records are returned as the JSON they were spooled as,
+ * without being parsed. Records from segments in a block format are read a
+ * block at a time; the cursor can only be moved past a whole block, so a
+ * crash after part of a block has been delivered means it is all sent
+ * again.
+ * </p>
+ * <p>
+ * Recovery repairs damage when the spool is opened; damage which appears
+ * later makes reads fail at the same position. After
+ * <code>MAX_READ_FAILURES</code> failures there, the damaged bytes are
+ * copied to the quarantine directory and skipped, to the next intact
+ * record, as recovery would have - so delivery does not stop for good.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+final class SpoolReader implements AutoCloseable {
+
+    private final Spool spool;
+    private final SpoolCursor cursor;
+    private final ReentrantLock commitLock = new ReentrantLock();
+    // Read-ahead position - written only by the reading thread
+    private volatile long segment;
+    private volatile long position;
+    private volatile long committedSegment;
+    private FileChannel channel;
+    private long channelSegment = -1;
+    private boolean channelBlocks;
+    private final boolean raw;
+    private final SpoolBlocks blocks = new SpoolBlocks(false);
+    // Records decoded from a block but not yet returned - polled only by the
+    // reading thread
+    private final ConcurrentLinkedQueue<Read> decoded = new ConcurrentLinkedQueue<>();
+    private boolean closed;
+    static final int MAX_READ_FAILURES = 3;
+    // Where reading last failed, and how many times in a row - used only by
+    // the reading thread
+    private long failedSegment = -1;
+    private long failedPosition = -1;
+    private int failures;
+
+    SpoolReader(Spool spool, SpoolCursor cursor) {
+        this(spool, cursor, false);
+    }
+
+    SpoolReader(Spool spool, SpoolCursor cursor, boolean raw) {
+        this.spool = spool;
+        this.cursor = cursor;
+        this.raw = raw;
+        spool.segmentLock().lock();
+        try {
+            Long first = spool.firstSegment();
+            long start = first == null ? spool.written().segment : first;
+            if (cursor.segment() >= start && spool.segmentPath(cursor.segment()) != null) {
+                segment = cursor.segment();
+                position = cursor.position();
+            } else {
+                segment = start;
+                position = 0;
+            }
+            committedSegment = segment;
+            spool.register(this);
+        } finally {
+            spool.segmentLock().unlock();
+        }
+    }
+
+    /**
+     * The segment containing the cursor - segments before it are no longer
+     * needed by this reader.
+     *
+     * @return A segment number
+     */
+    long committedSegment() {
+        return committedSegment;
+    }
+
+    /**
+     * The segment this reader is reading, or will read next.
+     *
+     * @return A segment number
+     */
+    long segment() {
+        return segment;
+    }
+
+    /**
+     * Determine if there are records which have not been read yet.
+     *
+     * @return true if there are
+     */
+    boolean hasUnread() {
+        if (!decoded.isEmpty()) {
+            return true;
+        }
+        Spool.Mark mark = spool.written();
+        long seg = segment;
+        return seg < mark.segment || position < mark.position;
+    }
+
+    /**
+     * Read up to <code>maxRecords</code> records, stopping once their
+     * combined size in the spool reaches <code>maxBytes</code>.
+     *
+     * @param maxRecords The maximum number of records
+     * @param maxBytes The number of bytes after which to stop
+     * @return A list of records, empty if there are none
+     * @throws IOException If no record could be read
+     */
+    List<Read> read(int maxRecords, long maxBytes) throws IOException {
+        List<Read> result = null;
+        long bytes = 0;
+        while (bytes < maxBytes && (result == null || result.size() < maxRecords)) {
+            Read pendingRead = decoded.poll();
+            if (pendingRead != null) {
+                if (result == null) {
+                    result = new ArrayList<>(Math.min(maxRecords, 64));
+                }
+                result.add(pendingRead);
+                bytes += pendingRead.size;
+                continue;
+            }
+            Spool.Mark mark = spool.written();
+            long seg = segment;
+            long pos = position;
+            FileChannel ch = channel(seg);
+            long limit = seg < mark.segment ? (ch == null ? 0 : ch.size()) : mark.position;
+            if (pos >= limit) {
+                if (seg >= mark.segment) {
+                    break;
+                }
+                // Finished with a segment which will not grow any further
+                Long next = spool.nextSegment(seg);
+                closeChannel();
+                // Eviction must not rewrite a segment once we are in it
+                spool.segmentLock().lock();
+                try {
+                    segment = next == null ? mark.segment : next;
+                    position = 0;
+                } finally {
+                    spool.segmentLock().unlock();
+                }
+                continue;
+            }
+            if (channelBlocks && pos < SpoolBlocks.SEGMENT_HEADER_BYTES) {
+                position = SpoolBlocks.SEGMENT_HEADER_BYTES;
+                continue;
+            }
+            Map<String, Object> record = null;
+            byte[] json = null;
+            try {
+                if (channelBlocks) {
+                    decodeBlock(ch, seg, pos, limit);
+                    position = ch.position();
+                    continue;
+                }
+                ch.position(pos);
+                if (raw) {
+                    json = spool.serde().readJson(ch);
+                } else {
+                    record = spool.serde().deserialize(spool.segmentPath(seg), ch);
+                }
+            } catch (IOException ex) {
+                if (result != null) {
+                    // Return what we have; the next read will fail here again
+                    break;
+                }
+                if (!skipDamage(ch, seg, pos, limit, ex)) {
+                    throw ex;
+                }
+                continue;
+            }
+            long end = ch.position();
+            if (result == null) {
+                result = new ArrayList<>(Math.min(maxRecords, 64));
+            }
+            result.add(new Read(record, json, seg, end, (int) (end - pos)));
+            bytes += end - pos;
+            position = end;
+        }
+        return result == null ? Collections.emptyList() : result;
+    }
+
+    /**
+     * Called when nothing could be read at a position; once that has
+     * happened there <code>MAX_READ_FAILURES</code> times in a row, treat
+     * it as damage - quarantine everything up to the next intact record
+     * and move past it.
+     *
+     * @return true if the damage was skipped
+     */
+    private boolean skipDamage(FileChannel ch, long seg, long pos, long limit, IOException ex) throws IOException {
+        if (seg != failedSegment || pos != failedPosition) {
+            failedSegment = seg;
+            failedPosition = pos;
+            failures = 1;
+            return false;
+        }
+        if (++failures < MAX_READ_FAILURES) {
+            return false;
+        }
+        long next = new SpoolScanner(ch, new CRC32(), limit).next(pos + 1);
+        long end = next < 0 ? limit : next;
+        Path path = spool.segmentPath(seg);
+        try {
+            SpoolRecovery.quarantine(spool, path, new long[]{pos, end});
+        } catch (IOException ex2) {
+            ex.addSuppressed(ex2);
+        }
+        RemoteSinkSupport.log(Level.WARNING, "Skipping " + (end - pos) + " damaged bytes at "
+                + pos + " of " + path + " after " + failures + " failed reads", ex);
+        failures = 0;
+        failedSegment = -1;
+        position = end;
+        return true;
+    }
+
+    private void decodeBlock(FileChannel ch, long seg, long pos, long limit) throws IOException {
+        int count = blocks.read(ch, pos, limit);
+        long end = ch.position();
+        ByteBuffer payload = blocks.payload();
+        byte[] array = payload.array();
+        List<Read> reads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = payload.remaining() < SpoolBlocks.RECORD_FRAMING ? -1 : payload.getInt();
+            if (length < 0 || length > payload.remaining()) {
+                throw new IOException("Bad record length " + length + " in block at "
+                        + pos + " of " + spool.segmentPath(seg));
+            }
+            int offset = payload.arrayOffset() + payload.position();
+            Map<String, Object> record = null;
+            byte[] json = null;
+            if (raw) {
+                json = new byte[length];
+                payload.get(json);
+            } else {
+                record = spool.serde().decode(array, offset, length);
+                payload.position(payload.position() + length);
+            }
+            // Only the last record completes the block, so a commit of any
+            // other leaves the cursor at its start
+            reads.add(new Read(record, json, seg, i == count - 1 ? end : pos,
+                    length + SpoolBlocks.RECORD_FRAMING));
+        }
+        decoded.addAll(reads);
+    }
+
+    private FileChannel channel(long seg) throws IOException {
+        if (channelSegment == seg && channel != null) {
+            return channel;
+        }
+        closeChannel();
+        Path path = spool.segmentPath(seg);
+        if (path == null) {
+            return null;
+        }
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+        channelSegment = seg;
+        channelBlocks = SpoolBlocks.hasSegmentHeader(channel);
+        return channel;
+    }
+
+    private void closeChannel() throws IOException {
+        FileChannel ch = channel;
+        channel = null;
+        channelSegment = -1;
+        if (ch != null) {
+            ch.close();
+        }
+    }
+
+    /**
+     * Record that everything up to the passed position has been delivered,
+     * deleting any segments that every reader of the spool has now
+     * committed past.
+     *
+     * @param seg The segment
+     * @param pos The offset of the end of the last delivered record in it
+     * @throws IOException If the cursor cannot be written
+     */
+    void commit(long seg, long pos) throws IOException {
+        commitLock.lock();
+        try {
+            if (closed || spool.isClosed()) {
+                return;
+            }
+            if (seg < cursor.segment() || (seg == cursor.segment() && pos <= cursor.position())) {
+                return;
+            }
+            cursor.store(seg, pos);
+            committedSegment = seg;
+            spool.deleteSent();
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        commitLock.lock();
+        try {
+            closed = true;
+            cursor.close();
+        } finally {
+            commitLock.unlock();
+        }
+        spool.unregister(this);
+        closeChannel();
+        blocks.close();
+    }
+
+    /**
+     * A record read from the spool - parsed, or in raw mode as its JSON -
+     * with the position the cursor can be moved to once it is delivered.
+     */
+    static final class Read {
+
+        final Map<String, Object> record;
+        final byte[] json;
+        final long segment;
+        final long end;
+        final int size;
+
+        Read(Map<String, Object> record, byte[] json, long segment, long end, int size) {
+            this.record = record;
+            this.json = json;
+            this.segment = segment;
+            this.end = end;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Checks the segments left in a spool when it is opened - after a crash,
+ * the last may end with a partially written record, and a disk problem may
+ * have damaged any of them. Each segment's framing (and for block formats,
+ * checksums) is validated without parsing any JSON, by a SpoolScanner which
+ * reads it through a small window rather than mapping it or reading it whole.
+ * A damaged region is skipped to the next position where a valid record
+ * starts: if there is none, it is a torn tail and the segment is truncated;
+ * otherwise the region is copied to the <code>quarantine</code>
+ * subdirectory for inspection, and removed from the segment - and cursors
+ * pointing into the segment are adjusted so they still point at the same
+ * records.
+ * <p>
+ * Must only be run before anything reads the spool.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+final class SpoolRecovery {
+
+    static final String QUARANTINE_DIR = "quarantine";
+    private final Spool spool;
+    private final CRC32 crc = new CRC32();
+    private int segments;
+    private long records;
+    private long bytesTruncated;
+    private int regionsQuarantined;
+    private long bytesQuarantined;
+
+    private SpoolRecovery(Spool spool) {
+        this.spool = spool;
+    }
+
+    /**
+     * Check and repair all segments of a spool except the one it is
+     * currently writing.
+     *
+     * @param spool A spool
+     * @return A description of what was found
+     * @throws IOException If a segment cannot be read or repaired
+     */
+    static SpoolRecovery recover(Spool spool) throws IOException {
+        SpoolRecovery result = new SpoolRecovery(spool);
+        long current = spool.written().segment;
+        for (Long seg = spool.firstSegment(); seg != null && seg < current; seg = spool.nextSegment(seg)) {
+            result.recover(seg, spool.segmentPath(seg));
+        }
+        return result;
+    }
+
+    /**
+     * The number of segments checked.
+     *
+     * @return A count
+     */
+    int segments() {
+        return segments;
+    }
+
+    /**
+     * The number of intact records found.
+     *
+     * @return A count
+     */
+    long records() {
+        return records;
+    }
+
+    long bytesTruncated() {
+        return bytesTruncated;
+    }
+
+    int regionsQuarantined() {
+        return regionsQuarantined;
+    }
+
+    long bytesQuarantined() {
+        return bytesQuarantined;
+    }
+
+    boolean foundDamage() {
+        return bytesTruncated > 0 || regionsQuarantined > 0;
+    }
+
+    private void recover(long seg, Path path) throws IOException {
+        if (path == null || !Files.exists(path)) {
+            return;
+        }
+        segments++;
+        // Damaged regions, as pairs of start and end offsets
+        List<long[]> damage = new ArrayList<>();
+        long size;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = ch.size();
+            if (size == 0) {
+                return;
+            }
+            SpoolScanner scanner = new SpoolScanner(ch, crc);
+            long pos = scanner.start();
+            while (pos < size) {
+                long end = scanner.check(pos);
+                if (end > 0) {
+                    records += scanner.records();
+                    pos = end;
+                    continue;
+                }
+                long next = scanner.next(pos + 1);
+                damage.add(new long[]{pos, next < 0 ? size : next});
+                if (next < 0) {
+                    break;
+                }
+                pos = next;
+            }
+        }
+        if (!damage.isEmpty()) {
+            repair(seg, path, size, damage);
+        }
+    }
+
+    private void repair(long seg, Path path, long size, List<long[]> damage) throws IOException {
+        long[] last = damage.get(damage.size() - 1);
+        for (long[] region : damage) {
+            if (region == last && region[1] == size) {
+                bytesTruncated += size - region[0];
+            } else {
+                quarantine(spool, path, region);
+                regionsQuarantined++;
+                bytesQuarantined += region[1] - region[0];
+            }
+        }
+        if (damage.size() == 1 && last[1] == size) {
+            // Just a torn tail
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                ch.truncate(last[0]);
+                ch.force(true);
+            }
+        } else {
+            // Rewrite the segment without the damaged regions; the name
+            // starts with . so it is never mistaken for a spool file
+            Path temp = path.resolveSibling("." + path.getFileName() + ".recovering");
+            try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ);
+                    FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                long pos = 0;
+                for (long[] region : damage) {
+                    copy(in, pos, region[0], out);
+                    pos = region[1];
+                }
+                copy(in, pos, size, out);
+                out.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        adjustCursors(seg, damage);
+        spool.resized(seg);
+    }
+
+    private static void copy(FileChannel in, long from, long to, FileChannel out) throws IOException {
+        while (from < to) {
+            from += in.transferTo(from, to - from, out);
+        }
+    }
+
+    /**
+     * Copy a damaged region of a segment to the quarantine directory.
+     *
+     * @param spool The spool
+     * @param path The segment
+     * @param region The start and end offsets of the region
+     * @throws IOException If it cannot be copied
+     */
+    static void quarantine(Spool spool, Path path, long[] region) throws IOException {
+        Path dir = spool.dir().resolve(QUARANTINE_DIR);
+        Files.createDirectories(dir);
+        Path target = dir.resolve(path.getFileName() + "." + region[0] + ".corrupt");
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            copy(in, region[0], region[1], out);
+        }
+    }
+
+    /**
+     * Move any cursor into a repaired segment to where the record it pointed
+     * at now is - or for a position in a removed region, to where the region
+     * was.
+     */
+    private void adjustCursors(long seg, List<long[]> damage) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(spool.dir(), "*" + Spool.CURSOR_SUFFIX)) {
+            for (Path file : files) {
+                try (SpoolCursor cursor = new SpoolCursor(file)) {
+                    if (cursor.segment() != seg) {
+                        continue;
+                    }
+                    long pos = cursor.position();
+                    long removed = 0;
+                    for (long[] region : damage) {
+                        if (pos <= region[0]) {
+                            break;
+                        }
+                        removed += Math.min(pos, region[1]) - region[0];
+                    }
+                    if (removed > 0) {
+                        cursor.store(seg, pos - removed);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Checked " + segments + " spool segments in " + spool.dir()
+                + ": " + records + " intact records; truncated " + bytesTruncated
+                + " bytes of incomplete records; quarantined " + regionsQuarantined
+                + " corrupt regions of " + bytesQuarantined + " bytes";
+    }
+}
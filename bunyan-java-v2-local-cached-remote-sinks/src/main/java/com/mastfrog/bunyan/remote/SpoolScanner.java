@@ -0,0 +1,229 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Validates the framing (and for block formats, checksums) of records in a
+ * segment file without parsing any JSON, through positional reads into a
+ * small window which moves forward through the file - so a segment of any
+ * size is scanned without being read into memory whole or mapped.
+ * <p>
+ * The window is a heap buffer rather than a mapping because a mapping
+ * outlives the channel until it is garbage collected, and on Windows stops
+ * the segment being truncated, moved or deleted afterwards; the cost is a
+ * copy of each byte scanned, in reads of <code>WINDOW_BYTES</code>.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+final class SpoolScanner {
+
+    static final int WINDOW_BYTES = 64 * 1024;
+    private final FileChannel ch;
+    private final CRC32 crc;
+    private final long size;
+    private final boolean blocks;
+    private final ByteBuffer window = ByteBuffer.allocate(WINDOW_BYTES);
+    // For the end of a record outside the window, so checking a large
+    // record does not move the window away from where scanning is
+    private final ByteBuffer tail = ByteBuffer.allocate(2);
+    // The file offset of the start of the window
+    private long base;
+    private int records;
+
+    SpoolScanner(FileChannel ch, CRC32 crc) throws IOException {
+        this(ch, crc, ch.size());
+    }
+
+    /**
+     * Create a scanner which treats a segment as ending at the passed
+     * offset - for a segment still being written, the end of the last
+     * complete append.
+     *
+     * @param ch A channel
+     * @param crc A checksum to use
+     * @param size Where to treat the segment as ending
+     * @throws IOException If it cannot be read
+     */
+    SpoolScanner(FileChannel ch, CRC32 crc, long size) throws IOException {
+        this.ch = ch;
+        this.crc = crc;
+        this.size = size;
+        window.limit(0);
+        blocks = size >= SpoolBlocks.SEGMENT_HEADER_BYTES && load(0, SpoolBlocks.SEGMENT_HEADER_BYTES)
+                && window.getInt(0) == SpoolBlocks.MAGIC;
+    }
+
+    boolean blocks() {
+        return blocks;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * The offset of the first record.
+     *
+     * @return An offset
+     */
+    long start() {
+        return blocks ? SpoolBlocks.SEGMENT_HEADER_BYTES : 0;
+    }
+
+    /**
+     * Check whether an intact record - or block, in the block formats -
+     * starts at a position.
+     *
+     * @param pos An offset in the segment
+     * @return The offset after it, or -1 if there is not one there
+     * @throws IOException If the segment cannot be read
+     */
+    long check(long pos) throws IOException {
+        return blocks ? checkBlock(pos) : checkRecord(pos);
+    }
+
+    /**
+     * The number of records in what the last successful call to
+     * <code>check()</code> found.
+     *
+     * @return A count
+     */
+    int records() {
+        return records;
+    }
+
+    /**
+     * Find the next position at or after the passed one where an intact
+     * record or block starts.
+     *
+     * @param from An offset
+     * @return An offset, or -1 if there is none
+     * @throws IOException If the segment cannot be read
+     */
+    long next(long from) throws IOException {
+        for (long pos = Math.max(from, 1); pos < size; pos++) {
+            // In the JSON format, records follow the newline that ends the
+            // one before
+            if ((blocks || byteAt(pos - 1) == '\n') && check(pos) > 0) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private long checkRecord(long pos) throws IOException {
+        if (size - pos < MapSerde.FRAMING + 1 || !load(pos, MapSerde.FRAMING)) {
+            return -1;
+        }
+        int at = (int) (pos - base);
+        int length = window.getInt(at);
+        if (length < 3 || length > size - pos - 5 || window.get(at + 4) != '\n'
+                || window.get(at + 5) != '{') {
+            return -1;
+        }
+        long last = pos + 3 + length;
+        if (last + 2 <= base + window.limit()) {
+            if (window.get((int) (last - base)) != '}' || window.get((int) (last - base) + 1) != '\n') {
+                return -1;
+            }
+        } else {
+            tail.clear();
+            SpoolBlocks.readFully(ch, tail, last);
+            if (tail.get(0) != '}' || tail.get(1) != '\n') {
+                return -1;
+            }
+        }
+        records = 1;
+        return pos + 5 + length;
+    }
+
+    private long checkBlock(long pos) throws IOException {
+        if (size - pos < SpoolBlocks.BLOCK_HEADER_BYTES || !load(pos, SpoolBlocks.BLOCK_HEADER_BYTES)) {
+            return -1;
+        }
+        int at = (int) (pos - base);
+        byte kind = window.get(at);
+        int count = window.getInt(at + 1);
+        int rawLength = window.getInt(at + 5);
+        int stored = window.getInt(at + 9);
+        int expected = window.getInt(at + 13);
+        if (!SpoolBlocks.isPlausibleHeader(kind, count, rawLength, stored)
+                || size - pos - SpoolBlocks.BLOCK_HEADER_BYTES < stored) {
+            return -1;
+        }
+        crc.reset();
+        ByteBuffer dup = window.duplicate();
+        dup.limit(at + SpoolBlocks.CHECKED_HEADER_BYTES).position(at);
+        crc.update(dup);
+        long p = pos + SpoolBlocks.BLOCK_HEADER_BYTES;
+        long end = p + stored;
+        while (p < end) {
+            if (!load(p, 1)) {
+                return -1;
+            }
+            int from = (int) (p - base);
+            int to = (int) Math.min(window.limit(), end - base);
+            dup = window.duplicate();
+            dup.limit(to).position(from);
+            crc.update(dup);
+            p = base + to;
+        }
+        if ((int) crc.getValue() != expected) {
+            return -1;
+        }
+        records = count;
+        return end;
+    }
+
+    private byte byteAt(long pos) throws IOException {
+        load(pos, 1);
+        return window.get((int) (pos - base));
+    }
+
+    /**
+     * Make sure the window contains the passed number of bytes from a
+     * position, moving it to start there if it does not.
+     */
+    private boolean load(long pos, int bytes) throws IOException {
+        if (pos >= size) {
+            return false;
+        } else if (pos >= base && pos + bytes <= base + window.limit()) {
+            return true;
+        }
+        window.clear();
+        if (size - pos < window.capacity()) {
+            window.limit((int) (size - pos));
+        }
+        base = pos;
+        SpoolBlocks.readFully(ch, window, pos);
+        window.flip();
+        return window.limit() >= bytes;
+    }
+}
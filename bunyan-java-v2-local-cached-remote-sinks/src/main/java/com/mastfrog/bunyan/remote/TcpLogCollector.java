@@ -0,0 +1,403 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+import static com.mastfrog.util.preconditions.Checks.notNull;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Receives records sent by <code>TcpRemoteSink</code>s, and hands each batch
+ * to a handler - for tests, for measuring throughput end to end on one
+ * machine, or as a lightweight collector which writes what it receives
+ * somewhere. One thread serves all connections, without blocking, so the
+ * handler should be quick; how it returns decides what the client is told
+ * about the batch.
+ *
+ * @author Tim Boudreau
+ */
+public final class TcpLogCollector implements AutoCloseable {
+
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+    private final InetSocketAddress bindAddress;
+    private final BatchHandler handler;
+    private final LongAdder records = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private volatile boolean closed;
+    private ServerSocketChannel server;
+    private Selector selector;
+    private Thread thread;
+
+    /**
+     * Create a collector; it does not listen until started.
+     *
+     * @param bindAddress The address to listen on - port 0 for any free
+     * port
+     * @param handler Handles each batch received
+     */
+    public TcpLogCollector(InetSocketAddress bindAddress, BatchHandler handler) {
+        this.bindAddress = notNull("bindAddress", bindAddress);
+        this.handler = notNull("handler", handler);
+    }
+
+    /**
+     * Handles batches of records as they arrive.
+     */
+    @FunctionalInterface
+    public interface BatchHandler {
+
+        /**
+         * Take a batch of records. Called on the collector's thread, for
+         * each connection's batches in the order they were sent. Returning
+         * normally tells the client the records were delivered.
+         *
+         * @param records The UTF-8 JSON of each record, without a trailing
+         * newline
+         * @throws IOException If the records cannot be taken now, telling
+         * the client to send them again later
+         * @throws IllegalArgumentException If the records will never be
+         * taken, telling the client to drop them
+         */
+        void receive(List<byte[]> records) throws IOException;
+    }
+
+    /**
+     * Start listening.
+     *
+     * @return this
+     * @throws IOException If the address cannot be bound
+     */
+    public synchronized TcpLogCollector start() throws IOException {
+        if (thread != null) {
+            throw new IllegalStateException("Already started");
+        }
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        server.bind(bindAddress);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        thread = new Thread(this::run, "bunyan-tcp-collector-" + server.getLocalAddress());
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    /**
+     * Get the address being listened on, with the port actually bound.
+     *
+     * @return An address
+     * @throws IOException If not started
+     */
+    public InetSocketAddress address() throws IOException {
+        if (server == null) {
+            throw new IOException("Not started");
+        }
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    public long recordsReceived() {
+        return records.sum();
+    }
+
+    public long batchesReceived() {
+        return batches.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        Thread t;
+        synchronized (this) {
+            t = thread;
+        }
+        if (t != null) {
+            selector.wakeup();
+            if (t != Thread.currentThread()) {
+                try {
+                    t.join(TimeUnit.SECONDS.toMillis(5));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        ((Connection) key.attachment()).ready(key);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            RemoteSinkSupport.log("Exception in " + this, ex);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                server.close();
+                selector.close();
+            } catch (IOException ex) {
+                RemoteSinkSupport.log("Closing " + this, ex);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch;
+        while ((ch = server.accept()) != null) {
+            ch.configureBlocking(false);
+            ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection conn = new Connection(ch);
+            conn.key = ch.register(selector, SelectionKey.OP_READ, conn);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TcpLogCollector(" + (server == null ? bindAddress : server.socket().getLocalSocketAddress()) + ")";
+    }
+
+    /**
+     * One client's connection, and what has been read from it but not yet
+     * handled.
+     */
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+        // How far into the buffered data a newline has been searched for
+        private int scanned;
+        // The size of a block which does not fit in the buffer
+        private int needed;
+        private SpoolFormat format;
+        private List<byte[]> lines = new ArrayList<>();
+        private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        private final SpoolBlocks blocks = new SpoolBlocks(false);
+        private final CRC32 crc = new CRC32();
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void ready(SelectionKey k) {
+            try {
+                if (k.isValid() && k.isWritable()) {
+                    flush();
+                }
+                if (k.isValid() && k.isReadable()) {
+                    read();
+                }
+            } catch (IOException ex) {
+                RemoteSinkSupport.log(Level.FINE,
+                        "Closing connection from " + channel.socket().getRemoteSocketAddress(), ex);
+                close();
+            }
+        }
+
+        private void read() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            in.flip();
+            if (format == null) {
+                int end = lineEnd();
+                if (end < 0) {
+                    if (in.limit() >= TcpProtocol.MAX_RESPONSE_BYTES) {
+                        throw new IOException("No hello");
+                    }
+                } else {
+                    String line = new String(in.array(), in.position(), end - in.position(), UTF_8);
+                    in.position(end + 1);
+                    format = TcpProtocol.parseHello(line);
+                    if (format == null) {
+                        throw new IOException("Bad hello '" + line + "'");
+                    }
+                }
+            }
+            if (format == SpoolFormat.JSON) {
+                readLines();
+            } else if (format != null) {
+                readBlocks();
+            }
+            int consumed = in.position();
+            in.compact();
+            scanned -= consumed;
+            if (!in.hasRemaining() || needed > in.capacity()) {
+                grow(Math.max(in.capacity() * 2, needed));
+            }
+        }
+
+        private int lineEnd() {
+            byte[] array = in.array();
+            for (int i = Math.max(in.position(), scanned); i < in.limit(); i++) {
+                if (array[i] == '\n') {
+                    scanned = i + 1;
+                    return i;
+                }
+            }
+            scanned = in.limit();
+            return -1;
+        }
+
+        private void readLines() throws IOException {
+            int end;
+            while ((end = lineEnd()) >= 0) {
+                int start = in.position();
+                if (end == start) {
+                    List<byte[]> batch = lines;
+                    lines = new ArrayList<>();
+                    in.position(end + 1);
+                    deliver(batch);
+                } else {
+                    byte[] json = new byte[end - start];
+                    in.get(json);
+                    in.position(end + 1);
+                    lines.add(json);
+                }
+            }
+            if (in.limit() - in.position() > TcpProtocol.MAX_RECORD_BYTES) {
+                throw new IOException("Record too long");
+            }
+        }
+
+        private void readBlocks() throws IOException {
+            while (in.remaining() >= SpoolBlocks.BLOCK_HEADER_BYTES) {
+                int pos = in.position();
+                int blockRecords = in.getInt(pos + 1);
+                int rawLength = in.getInt(pos + 5);
+                int stored = in.getInt(pos + 9);
+                if (!SpoolBlocks.isPlausibleHeader(in.get(pos), blockRecords, rawLength, stored)) {
+                    throw new IOException("Corrupt block header");
+                }
+                int size = SpoolBlocks.BLOCK_HEADER_BYTES + stored;
+                if (in.remaining() < size) {
+                    needed = size;
+                    return;
+                }
+                needed = 0;
+                if (SpoolBlocks.checkBlock(in, pos, crc) < 0) {
+                    throw new IOException("Checksum mismatch");
+                }
+                int count = blocks.unpack(in, pos);
+                ByteBuffer payload = blocks.payload();
+                List<byte[]> batch = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    int length = payload.remaining() < SpoolBlocks.RECORD_FRAMING ? -1 : payload.getInt();
+                    if (length < 0 || length > payload.remaining()) {
+                        throw new IOException("Bad record length " + length);
+                    }
+                    byte[] json = new byte[length];
+                    payload.get(json);
+                    batch.add(json);
+                }
+                in.position(pos + size);
+                deliver(batch);
+            }
+        }
+
+        private void grow(int size) throws IOException {
+            if (size > SpoolBlocks.MAX_BLOCK_BYTES + SpoolBlocks.BLOCK_HEADER_BYTES) {
+                throw new IOException("Batch too large");
+            }
+            // The buffer is in write mode here
+            ByteBuffer bigger = ByteBuffer.allocate(size);
+            in.flip();
+            bigger.put(in);
+            in = bigger;
+        }
+
+        private void deliver(List<byte[]> batch) throws IOException {
+            ByteBuffer response;
+            try {
+                handler.receive(batch);
+                records.add(batch.size());
+                batches.increment();
+                response = TcpProtocol.response(TcpProtocol.OK, null);
+            } catch (IllegalArgumentException ex) {
+                response = TcpProtocol.response(TcpProtocol.REJECT, String.valueOf(ex.getMessage()));
+            } catch (IOException | RuntimeException ex) {
+                RemoteSinkSupport.log(Level.WARNING,
+                        "Handler failed on " + batch.size() + " records", ex);
+                response = TcpProtocol.response(TcpProtocol.RETRY, String.valueOf(ex.getMessage()));
+            }
+            out.add(response);
+            flush();
+        }
+
+        private void flush() throws IOException {
+            ByteBuffer head;
+            while ((head = out.peek()) != null) {
+                channel.write(head);
+                if (head.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                out.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                RemoteSinkSupport.log(Level.FINE, null, ex);
+            }
+        }
+    }
+}
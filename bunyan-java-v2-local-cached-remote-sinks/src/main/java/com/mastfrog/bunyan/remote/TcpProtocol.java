@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+import java.nio.ByteBuffer;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The protocol spoken between TcpRemoteSink and TcpLogCollector over a
+ * persistent TCP connection:
+ * <ol>
+ * <li>The client starts by sending a line naming the format it sends
+ * batches in - <code>BUNYAN/1 JSON</code>, <code>BUNYAN/1 BLOCKS</code> or
+ * <code>BUNYAN/1 DEFLATED_BLOCKS</code>.</li>
+ * <li>It then sends batches of records, without waiting for earlier ones
+ * to be answered. In the JSON format, a batch is the records as
+ * newline-delimited JSON, followed by an empty line. In the block formats,
+ * a batch is one block, as spool segments are written in - a 17-byte
+ * header with a checksum, followed by the records, possibly deflated.</li>
+ * <li>The server answers each batch, in the order they arrive, with a
+ * line: <code>OK</code> once it has taken the records,
+ * <code>RETRY <i>reason</i></code> if it cannot take them now, or
+ * <code>REJECT <i>reason</i></code> if it never will.</li>
+ * </ol>
+ * Either side closes the connection if the other breaks the protocol; the
+ * client then treats every unanswered batch as failed.
+ *
+ * @author Tim Boudreau
+ */
+final class TcpProtocol {
+
+    static final String HELLO_PREFIX = "BUNYAN/1 ";
+    static final String OK = "OK";
+    static final String RETRY = "RETRY";
+    static final String REJECT = "REJECT";
+    // The longest line either side accepts - a JSON record, or a response
+    static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+    static final int MAX_RESPONSE_BYTES = 4096;
+
+    private TcpProtocol() {
+        throw new AssertionError();
+    }
+
+    static ByteBuffer hello(SpoolFormat format) {
+        return ByteBuffer.wrap((HELLO_PREFIX + format.name() + '\n').getBytes(US_ASCII));
+    }
+
+    /**
+     * Parse the line a client starts with.
+     *
+     * @param line The line, without its newline
+     * @return The format batches will be sent in, or null if the line is
+     * not a hello
+     */
+    static SpoolFormat parseHello(String line) {
+        if (!line.startsWith(HELLO_PREFIX)) {
+            return null;
+        }
+        String name = line.substring(HELLO_PREFIX.length()).trim();
+        for (SpoolFormat format : SpoolFormat.values()) {
+            if (format.name().equals(name)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Create a response line.
+     *
+     * @param kind OK, RETRY or REJECT
+     * @param reason Why, or null
+     * @return A buffer ready to write
+     */
+    static ByteBuffer response(String kind, String reason) {
+        StringBuilder sb = new StringBuilder(kind);
+        if (reason != null && !reason.isEmpty()) {
+            sb.append(' ').append(reason.replace('\n', ' ').replace('\r', ' '));
+        }
+        byte[] bytes = sb.toString().getBytes(UTF_8);
+        int length = Math.min(bytes.length, MAX_RESPONSE_BYTES - 1);
+        ByteBuffer result = ByteBuffer.allocate(length + 1);
+        result.put(bytes, 0, length).put((byte) '\n').flip();
+        return result;
+    }
+
+    /**
+     * Find the end of the line starting at a buffer's position.
+     *
+     * @param buf A buffer
+     * @return The index of the newline, or -1
+     */
+    static int lineEnd(ByteBuffer buf) {
+        for (int i = buf.position(); i < buf.limit(); i++) {
+            if (buf.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,498 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mastfrog.bunyan.java.v2.JSONContext;
+import com.mastfrog.util.multivariate.Pair;
+import static com.mastfrog.util.preconditions.Checks.notNull;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A remote sink which sends records over a persistent TCP connection, to a
+ * <code>TcpLogCollector</code> or anything else which speaks the same simple
+ * protocol - newline-delimited JSON, or the blocks spool segments are written
+ * in, with a response line per batch.
+ * <p>
+ * Batches are written as they are sent, without waiting for earlier ones to
+ * be answered, and batches queued while a write is in progress go out in
+ * one gathering write. A single thread does the connecting, writing and
+ * reading for the sink, without blocking. It does not reconnect on its own:
+ * when the connection is lost, every unanswered batch fails, and the next
+ * batch sent opens a new connection - so how often that happens is governed
+ * by the sender's backoff and circuit breaker.
+ * </p>
+ * <p>
+ * Records passed to <code>push()</code>, <code>pushMany()</code> or
+ * <code>pushEncoded()</code>, which cannot report failures, are logged and
+ * dropped if they cannot be sent; <code>RemoteSinkSupport</code> uses
+ * <code>send()</code> and <code>sendEncoded()</code>, which can.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+public final class TcpRemoteSink implements EncodedRemoteSink {
+
+    static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    // The most buffers passed to one gathering write
+    private static final int MAX_GATHER = 64;
+    private final InetSocketAddress address;
+    private final ObjectMapper mapper;
+    private final SpoolFormat wireFormat;
+    private final long connectTimeoutNanos;
+    // Used only to encode blocks, under its own monitor
+    private final SpoolBlocks blocks;
+    private final ConcurrentLinkedQueue<Outgoing> submitted = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean closed;
+    private volatile Selector selector;
+    private Thread thread;
+    // The rest is only touched by the I/O thread
+    private SocketChannel channel;
+    private SelectionKey key;
+    private boolean connected;
+    private long connectDeadline;
+    private ByteBuffer hello;
+    private final ArrayDeque<Outgoing> writing = new ArrayDeque<>();
+    private final ArrayDeque<Outgoing> awaitingResponse = new ArrayDeque<>();
+    private final ByteBuffer responses = ByteBuffer.allocate(TcpProtocol.MAX_RESPONSE_BYTES);
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER + 1];
+
+    /**
+     * Create a sink which sends newline-delimited JSON.
+     *
+     * @param address Where to connect to
+     * @param mapper Encodes records which are not already JSON
+     */
+    public TcpRemoteSink(InetSocketAddress address, ObjectMapper mapper) {
+        this(address, mapper, SpoolFormat.JSON, DEFAULT_CONNECT_TIMEOUT);
+    }
+
+    /**
+     * Create a sink.
+     *
+     * @param address Where to connect to
+     * @param mapper Encodes records which are not already JSON
+     * @param wireFormat JSON to send newline-delimited JSON; BLOCKS or
+     * DEFLATED_BLOCKS to send each batch as a checksummed block, compressed
+     * if the latter and that makes it smaller
+     * @param connectTimeout How long to wait for a connection before
+     * failing the batches waiting for it
+     */
+    public TcpRemoteSink(InetSocketAddress address, ObjectMapper mapper,
+            SpoolFormat wireFormat, Duration connectTimeout) {
+        this.address = notNull("address", address);
+        this.mapper = notNull("mapper", mapper);
+        this.wireFormat = notNull("wireFormat", wireFormat);
+        if (notNull("connectTimeout", connectTimeout).isNegative() || connectTimeout.isZero()) {
+            throw new IllegalArgumentException("Bad connect timeout " + connectTimeout);
+        }
+        this.connectTimeoutNanos = connectTimeout.toNanos();
+        this.blocks = wireFormat.isBlocks()
+                ? new SpoolBlocks(wireFormat == SpoolFormat.DEFLATED_BLOCKS) : null;
+    }
+
+    @Override
+    public void open(Consumer<Boolean> whenReady) {
+        if (started.compareAndSet(false, true)) {
+            try {
+                selector = Selector.open();
+            } catch (IOException ex) {
+                RemoteSinkSupport.log("Could not open selector for " + this, ex);
+                whenReady.accept(false);
+                return;
+            }
+            thread = new Thread(this::run, "bunyan-tcp-sink-" + address);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        // Connecting waits for there to be something to send
+        whenReady.accept(!closed);
+    }
+
+    @Override
+    public void push(JSONContext ctx, Map<String, Object> logRecord, Runnable onDone) {
+        send(Collections.singletonList(Pair.of(ctx, logRecord)), new Completion(onDone));
+    }
+
+    @Override
+    public void pushMany(Collection<Pair<JSONContext, Map<String, Object>>> toWrite, Runnable onDone) {
+        send(toWrite, new Completion(onDone));
+    }
+
+    @Override
+    public void pushEncoded(List<byte[]> records, Runnable onDone) {
+        sendEncoded(records, new Completion(onDone));
+    }
+
+    @Override
+    public void send(Collection<Pair<JSONContext, Map<String, Object>>> toWrite, DeliveryCallback callback) {
+        List<byte[]> records = new ArrayList<>(toWrite.size());
+        for (Pair<JSONContext, Map<String, Object>> p : toWrite) {
+            try {
+                records.add(p.a != null ? p.a.writeValueAsBytes(p.b) : mapper.writeValueAsBytes(p.b));
+            } catch (IOException ex) {
+                // Will not encode any better next time
+                callback.rejected(ex);
+                return;
+            }
+        }
+        sendEncoded(records, callback);
+    }
+
+    @Override
+    public void sendEncoded(List<byte[]> records, DeliveryCallback callback) {
+        Selector sel = selector;
+        if (closed || sel == null) {
+            callback.failed(new ClosedChannelException());
+            return;
+        }
+        if (records.isEmpty()) {
+            callback.sent();
+            return;
+        }
+        Outgoing out;
+        try {
+            out = new Outgoing(encode(records), callback);
+        } catch (IOException ex) {
+            callback.rejected(ex);
+            return;
+        }
+        submitted.add(out);
+        // If run() exited after the check above, it may already have failed
+        // everything it found in submitted; whichever of us removes this
+        // one fails it
+        if (closed && submitted.remove(out)) {
+            callback.failed(new ClosedChannelException());
+            return;
+        }
+        sel.wakeup();
+    }
+
+    private ByteBuffer encode(List<byte[]> records) throws IOException {
+        if (blocks != null) {
+            synchronized (blocks) {
+                return blocks.block(records);
+            }
+        }
+        int size = 1;
+        for (byte[] json : records) {
+            if (json.length == 0) {
+                // Would be read as the empty line which ends the batch
+                throw new IOException("Empty record cannot be sent to " + address);
+            }
+            size += json.length + 1;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        byte[] array = buf.array();
+        for (byte[] json : records) {
+            int start = buf.position();
+            buf.put(json);
+            // Compact JSON never contains a raw newline - it is whitespace
+            // between tokens, where a space does as well
+            for (int i = start; i < buf.position(); i++) {
+                if (array[i] == '\n') {
+                    array[i] = ' ';
+                }
+            }
+            buf.put((byte) '\n');
+        }
+        // An empty line ends the batch
+        buf.put((byte) '\n').flip();
+        return buf;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        Selector sel = selector;
+        if (sel != null) {
+            sel.wakeup();
+        }
+        Thread t = thread;
+        if (t != null && t != Thread.currentThread()) {
+            try {
+                t.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        Selector sel = selector;
+        try {
+            while (!closed) {
+                long timeout = 0;
+                if (channel != null && !connected) {
+                    timeout = Math.max(1, TimeUnit.NANOSECONDS.toMillis(connectDeadline - System.nanoTime()));
+                }
+                sel.select(timeout);
+                takeSubmitted();
+                Iterator<SelectionKey> keys = sel.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey k = keys.next();
+                    keys.remove();
+                    if (k == key) {
+                        ready(k);
+                    }
+                }
+                if (channel != null && !connected && connectDeadline - System.nanoTime() <= 0) {
+                    disconnect(new ConnectException("Timed out connecting to " + address));
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            RemoteSinkSupport.log("Exception in " + this, ex);
+        } finally {
+            closed = true;
+            disconnect(new ClosedChannelException());
+            Outgoing o;
+            while ((o = submitted.poll()) != null) {
+                o.callback.failed(new ClosedChannelException());
+            }
+            try {
+                sel.close();
+            } catch (IOException ex) {
+                RemoteSinkSupport.log("Closing selector for " + this, ex);
+            }
+        }
+    }
+
+    private void takeSubmitted() {
+        Outgoing o;
+        boolean any = false;
+        while ((o = submitted.poll()) != null) {
+            writing.add(o);
+            any = true;
+        }
+        if (!any) {
+            return;
+        }
+        if (channel == null) {
+            connect();
+        } else if (connected) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void connect() {
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            hello = TcpProtocol.hello(wireFormat);
+            responses.clear();
+            if (channel.connect(address)) {
+                key = channel.register(selector, 0);
+                connected();
+            } else {
+                connectDeadline = System.nanoTime() + connectTimeoutNanos;
+                key = channel.register(selector, SelectionKey.OP_CONNECT);
+            }
+        } catch (IOException ex) {
+            disconnect(ex);
+        }
+    }
+
+    private void connected() {
+        connected = true;
+        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    private void ready(SelectionKey k) {
+        try {
+            if (k.isValid() && k.isConnectable() && channel.finishConnect()) {
+                connected();
+            }
+            if (k.isValid() && connected && k.isWritable()) {
+                write();
+            }
+            if (k.isValid() && connected && k.isReadable()) {
+                read();
+            }
+        } catch (IOException ex) {
+            disconnect(ex);
+        }
+    }
+
+    private void write() throws IOException {
+        while (hello != null || !writing.isEmpty()) {
+            int count = 0;
+            if (hello != null) {
+                gather[count++] = hello;
+            }
+            for (Outgoing o : writing) {
+                if (count == gather.length) {
+                    break;
+                }
+                gather[count++] = o.buffer;
+            }
+            long written = channel.write(gather, 0, count);
+            if (hello != null && !hello.hasRemaining()) {
+                hello = null;
+            }
+            Outgoing head;
+            while ((head = writing.peek()) != null && !head.buffer.hasRemaining()) {
+                awaitingResponse.add(writing.poll());
+            }
+            for (int i = 0; i < count; i++) {
+                gather[i] = null;
+            }
+            if (written == 0 || head != null && head.buffer.hasRemaining()) {
+                // The socket's send buffer is full - wait until it is not
+                return;
+            }
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void read() throws IOException {
+        int count = channel.read(responses);
+        if (count < 0) {
+            throw new EOFException("Connection closed by " + address);
+        }
+        responses.flip();
+        int end;
+        while ((end = TcpProtocol.lineEnd(responses)) >= 0) {
+            int start = responses.position();
+            String line = new String(responses.array(), start, end - start, UTF_8);
+            responses.position(end + 1);
+            respond(line);
+        }
+        responses.compact();
+        if (!responses.hasRemaining()) {
+            throw new IOException("Response from " + address + " too long");
+        }
+    }
+
+    private void respond(String line) throws IOException {
+        Outgoing o = awaitingResponse.poll();
+        if (o == null) {
+            throw new IOException("Unexpected response from " + address + ": " + line);
+        }
+        if (TcpProtocol.OK.equals(line)) {
+            o.callback.sent();
+        } else if (line.startsWith(TcpProtocol.RETRY)) {
+            o.callback.failed(new IOException(address + " could not take records: "
+                    + line.substring(TcpProtocol.RETRY.length()).trim()));
+        } else if (line.startsWith(TcpProtocol.REJECT)) {
+            o.callback.rejected(new IOException(address + " rejected records: "
+                    + line.substring(TcpProtocol.REJECT.length()).trim()));
+        } else {
+            awaitingResponse.addFirst(o);
+            throw new IOException("Bad response from " + address + ": " + line);
+        }
+    }
+
+    private void disconnect(IOException cause) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                cause.addSuppressed(ex);
+            }
+        }
+        channel = null;
+        key = null;
+        connected = false;
+        hello = null;
+        // Answered in order, so the oldest batches are failed first
+        Outgoing o;
+        while ((o = awaitingResponse.poll()) != null) {
+            o.callback.failed(cause);
+        }
+        while ((o = writing.poll()) != null) {
+            o.callback.failed(cause);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TcpRemoteSink(" + address + ", " + wireFormat + ")";
+    }
+
+    private static final class Outgoing {
+
+        private final ByteBuffer buffer;
+        private final DeliveryCallback callback;
+
+        Outgoing(ByteBuffer buffer, DeliveryCallback callback) {
+            this.buffer = buffer;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * Adapts the callback of the methods which can only report success.
+     */
+    private final class Completion implements DeliveryCallback {
+
+        private final Runnable onDone;
+
+        Completion(Runnable onDone) {
+            this.onDone = onDone;
+        }
+
+        @Override
+        public void sent() {
+            onDone.run();
+        }
+
+        @Override
+        public void failed(Throwable cause) {
+            RemoteSinkSupport.log(Level.WARNING,
+                    "Could not send records to " + address + "; dropping them", cause);
+            onDone.run();
+        }
+
+        @Override
+        public void rejected(Throwable cause) {
+            failed(cause);
+        }
+    }
+}
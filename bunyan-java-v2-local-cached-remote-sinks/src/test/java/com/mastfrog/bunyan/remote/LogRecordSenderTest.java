@@ -0,0 +1,502 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mastfrog.bunyan.java.v2.JSONContext;
+import com.mastfrog.util.file.FileUtils;
+import com.mastfrog.util.multivariate.Pair;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class LogRecordSenderTest {
+
+    private Path dir;
+    private MapSerde serde;
+    private Spool spool;
+    private SpoolReader reader;
+    private LogRecordSender sender;
+
+    @Test
+    public void testBatchesArePipelinedAndCommittedInOrder() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            spool.append(record(i));
+        }
+        HeldAcksSink sink = new HeldAcksSink();
+        sender = new LogRecordSender(reader, sink, 10, 1024 * 1024, 2).start();
+        sink.awaitBatches(2);
+        // Only two batches may be outstanding
+        Thread.sleep(50);
+        assertEquals(2, sink.batches().size());
+        assertEquals(10, sink.batches().get(0).size());
+        assertEquals(10, sink.batches().get(1).size());
+        assertEquals(0, sink.batches().get(0).get(0));
+        assertEquals(10, sink.batches().get(1).get(0));
+
+        // Acknowledging the second batch first must not commit past the first
+        sink.ack(1);
+        sink.awaitBatches(3);
+        assertEquals(5, sink.batches().get(2).size());
+        assertEquals(Collections.singletonList(0), firstUnacknowledged());
+
+        sink.ack(0);
+        sink.ack(2);
+        sender.stop(10, TimeUnit.SECONDS);
+        assertEquals(0, sender.inFlight());
+        assertTrue(firstUnacknowledged().isEmpty(), firstUnacknowledged().toString());
+    }
+
+    @Test
+    public void testSenderWaitsWithoutPollingAndWakesOnAppend() throws Exception {
+        ImmediateAcksSink sink = new ImmediateAcksSink();
+        sender = new LogRecordSender(reader, sink, 10, 1024 * 1024, 2).start();
+        DiskSink disk = new DiskSink(spool);
+        disk.onAppend = sender::wake;
+        disk.push(null, record(0));
+        sink.await(1);
+        // Idle - the sender thread should be parked, not polling
+        Thread.sleep(100);
+        long passes = sender.passes();
+        Thread.sleep(300);
+        assertEquals(passes, sender.passes(), "Sender should not wake while idle");
+        for (int i = 1; i < 1000; i++) {
+            disk.push(null, record(i));
+        }
+        sink.await(1000);
+        assertTrue(sender.passes() - passes < 1000, "Wakeups should be coalesced, but "
+                + (sender.passes() - passes) + " passes for 999 records");
+        sender.stop(10, TimeUnit.SECONDS);
+        List<Object> received = sink.received();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, received.get(i));
+        }
+    }
+
+    @Test
+    public void testSenderStopsWhileReadingTheSpoolFails() throws Exception {
+        spool.append(record(0));
+        // A negative record length, so every read fails
+        try (FileChannel ch = FileChannel.open(spool.segmentPath(spool.written().segment),
+                StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(new byte[]{-1, -1, -1, -1}), 0);
+        }
+        ImmediateAcksSink sink = new ImmediateAcksSink();
+        sender = new LogRecordSender(reader, sink, 10, 1024 * 1024, 2).start();
+        while (sender.passes() == 0) {
+            Thread.sleep(5);
+        }
+        sender.stop(2, TimeUnit.SECONDS);
+        long passes = sender.passes();
+        Thread.sleep(200);
+        assertEquals(passes, sender.passes(), "Sender should exit, not retry the read");
+        assertTrue(sink.received().isEmpty());
+    }
+
+    @Test
+    public void testByteLimitSplitsBatches() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            spool.append(record(i));
+        }
+        List<SpoolReader.Read> reads = reader.read(100, 1);
+        assertEquals(1, reads.size(), "At least one record is always read");
+        reads = reader.read(3, Long.MAX_VALUE);
+        assertEquals(3, reads.size());
+        assertEquals(3, reads.get(2).record.get("ix"));
+    }
+
+    @Test
+    public void testRecordsAreReadAcrossSegments() throws Exception {
+        reader.close();
+        spool.close();
+        spool = new Spool(dir, serde, 200);
+        reader = new SpoolReader(spool, new SpoolCursor(dir.resolve("test.cursor")));
+        for (int i = 0; i < 20; i++) {
+            spool.append(record(i));
+        }
+        List<SpoolReader.Read> reads = reader.read(100, Long.MAX_VALUE);
+        assertEquals(20, reads.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, reads.get(i).record.get("ix"));
+        }
+        assertTrue(reads.get(19).segment > reads.get(0).segment);
+        SpoolReader.Read last = reads.get(19);
+        reader.commit(last.segment, last.end);
+        assertEquals(last.segment, (long) spool.firstSegment(), "Sent segments should be deleted");
+    }
+
+    @Test
+    public void testEncodedSinkIsSentSpooledJson() throws Exception {
+        reader.close();
+        spool.close();
+        spool = new Spool(dir, serde, 4096, false, Spool.DEFAULT_BATCH_BUFFER_BYTES,
+                SpoolFormat.DEFLATED_BLOCKS);
+        reader = new SpoolReader(spool, new SpoolCursor(dir.resolve("test.cursor")), true);
+        for (int i = 0; i < 100; i++) {
+            spool.append(record(i));
+        }
+        EncodedSink sink = new EncodedSink();
+        sender = new LogRecordSender(reader, sink, 7, 1024 * 1024, 2).start();
+        sink.await(100);
+        sender.stop(10, TimeUnit.SECONDS);
+        List<byte[]> received = sink.received();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, serde.decode(received.get(i), 0, received.get(i).length).get("ix"));
+        }
+        assertTrue(firstUnacknowledged().isEmpty(), firstUnacknowledged().toString());
+    }
+
+    @Test
+    public void testFailedAndTimedOutBatchesAreSentAgain() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            spool.append(record(i));
+        }
+        ScriptedSink sink = new ScriptedSink("fail", "drop");
+        SpoolMetrics.DestinationMetrics metrics = new SpoolMetrics(spool, 0).destination("test", 0);
+        sender = new LogRecordSender(reader, sink, 10, 1024 * 1024, 2, metrics,
+                new DeliveryPolicy(TimeUnit.MILLISECONDS.toNanos(200),
+                        TimeUnit.MILLISECONDS.toNanos(20), TimeUnit.MILLISECONDS.toNanos(40), 100)).start();
+        sink.await(25);
+        sender.stop(10, TimeUnit.SECONDS);
+        List<Object> received = sink.received();
+        assertEquals(25, received.size(), received.toString());
+        for (int i = 0; i < 25; i++) {
+            assertTrue(received.contains(i), "Missing " + i + " in " + received);
+        }
+        assertEquals(2, metrics.failures());
+        assertEquals(25, metrics.sent());
+        assertEquals(0, sender.consecutiveFailures());
+        assertTrue(firstUnacknowledged().isEmpty(), firstUnacknowledged().toString());
+    }
+
+    @Test
+    public void testCircuitOpensAfterConsecutiveFailures() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            spool.append(record(i));
+        }
+        ScriptedSink sink = new ScriptedSink("fail", "fail", "fail", "fail");
+        sink.sender = () -> sender;
+        sender = new LogRecordSender(reader, sink, 10, 1024 * 1024, 3, null,
+                new DeliveryPolicy(TimeUnit.SECONDS.toNanos(10),
+                        TimeUnit.MILLISECONDS.toNanos(20), TimeUnit.SECONDS.toNanos(1), 2));
+        sender.start();
+        sink.await(25);
+        sender.stop(10, TimeUnit.SECONDS);
+        List<long[]> sends = sink.sends();
+        // After the second failure, batches are sent one at a time until
+        // one gets through
+        for (int i = 2; i <= 4; i++) {
+            assertEquals(1, sends.get(i)[1], "Send " + i + " had company");
+        }
+        // The fourth consecutive failure backs off 160ms, jittered to no
+        // less than half that
+        long gap = sends.get(4)[0] - sends.get(3)[0];
+        assertTrue(gap >= TimeUnit.MILLISECONDS.toNanos(80), "Retried after " + gap + "ns");
+        assertEquals(0, sender.consecutiveFailures());
+        assertTrue(firstUnacknowledged().isEmpty(), firstUnacknowledged().toString());
+    }
+
+    @Test
+    public void testRejectedBatchesAreSkipped() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            spool.append(record(i));
+        }
+        ScriptedSink sink = new ScriptedSink("reject");
+        SpoolMetrics.DestinationMetrics metrics = new SpoolMetrics(spool, 0).destination("test", 0);
+        sender = new LogRecordSender(reader, sink, 10, 1024 * 1024, 1, metrics).start();
+        sink.await(15);
+        sender.stop(10, TimeUnit.SECONDS);
+        List<Object> received = sink.received();
+        assertEquals(15, received.size(), received.toString());
+        assertEquals(10, received.get(0));
+        assertEquals(10, metrics.rejected());
+        assertEquals(0, metrics.unsent());
+        assertEquals(0, sender.consecutiveFailures());
+        assertTrue(firstUnacknowledged().isEmpty(), firstUnacknowledged().toString());
+    }
+
+    /**
+     * Reopen the spool as after a crash, and return the indices of the
+     * records which would be sent again.
+     */
+    private List<Object> firstUnacknowledged() throws IOException {
+        try (SpoolReader r = new SpoolReader(spool, new SpoolCursor(dir.resolve("test.cursor")))) {
+            List<Object> result = new ArrayList<>();
+            List<SpoolReader.Read> reads = r.read(1, Long.MAX_VALUE);
+            for (SpoolReader.Read read : reads) {
+                result.add(read.record.get("ix"));
+            }
+            return result;
+        }
+    }
+
+    private static Map<String, Object> record(int ix) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("msg", "record-" + ix);
+        result.put("ix", ix);
+        return result;
+    }
+
+    @BeforeEach
+    public void setup() throws IOException {
+        dir = FileUtils.newTempDir(LogRecordSenderTest.class.getSimpleName() + "-");
+        serde = new MapSerde(new ObjectMapper());
+        spool = new Spool(dir, serde, Spool.DEFAULT_MAX_SEGMENT_BYTES);
+        reader = new SpoolReader(spool, new SpoolCursor(dir.resolve("test.cursor")));
+    }
+
+    @AfterEach
+    public void teardown() throws Exception {
+        if (sender != null) {
+            sender.stop(10, TimeUnit.SECONDS);
+        }
+        try {
+            reader.close();
+            spool.close();
+            serde.close();
+        } finally {
+            FileUtils.deltree(dir);
+        }
+    }
+
+    static final class ImmediateAcksSink implements RemoteSink {
+
+        private final List<Object> received = new ArrayList<>();
+
+        @Override
+        public void open(Consumer<Boolean> whenReady) {
+            whenReady.accept(true);
+        }
+
+        @Override
+        public synchronized void push(JSONContext ctx, Map<String, Object> logRecord, Runnable onDone) {
+            received.add(logRecord.get("ix"));
+            notifyAll();
+            onDone.run();
+        }
+
+        synchronized List<Object> received() {
+            return new ArrayList<>(received);
+        }
+
+        synchronized void await(int count) throws InterruptedException {
+            long until = System.currentTimeMillis() + 10_000;
+            while (received.size() < count && System.currentTimeMillis() < until) {
+                wait(100);
+            }
+            assertEquals(count, received.size());
+        }
+
+        @Override
+        public void close() throws IOException {
+            // do nothing
+        }
+    }
+
+    static final class EncodedSink implements EncodedRemoteSink {
+
+        private final List<byte[]> received = new ArrayList<>();
+
+        @Override
+        public void open(Consumer<Boolean> whenReady) {
+            whenReady.accept(true);
+        }
+
+        @Override
+        public void push(JSONContext ctx, Map<String, Object> logRecord, Runnable onDone) {
+            throw new AssertionError("Should be sent encoded");
+        }
+
+        @Override
+        public synchronized void pushEncoded(List<byte[]> records, Runnable onDone) {
+            received.addAll(records);
+            notifyAll();
+            onDone.run();
+        }
+
+        synchronized List<byte[]> received() {
+            return new ArrayList<>(received);
+        }
+
+        synchronized void await(int count) throws InterruptedException {
+            long until = System.currentTimeMillis() + 10_000;
+            while (received.size() < count && System.currentTimeMillis() < until) {
+                wait(100);
+            }
+            assertEquals(count, received.size());
+        }
+
+        @Override
+        public void close() throws IOException {
+            // do nothing
+        }
+    }
+
+    /**
+     * Fails, drops or rejects its first few batches as scripted, and
+     * acknowledges the rest as they are sent.
+     */
+    static final class ScriptedSink implements RemoteSink {
+
+        private final List<String> script;
+        private final List<Object> received = new ArrayList<>();
+        // Send time and batches in flight for each send
+        private final List<long[]> sends = new ArrayList<>();
+        volatile Supplier<LogRecordSender> sender;
+
+        ScriptedSink(String... script) {
+            this.script = new ArrayList<>(Arrays.asList(script));
+        }
+
+        @Override
+        public void open(Consumer<Boolean> whenReady) {
+            whenReady.accept(true);
+        }
+
+        @Override
+        public void push(JSONContext ctx, Map<String, Object> logRecord, Runnable onDone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void send(Collection<Pair<JSONContext, Map<String, Object>>> toWrite, DeliveryCallback callback) {
+            String action;
+            synchronized (this) {
+                Supplier<LogRecordSender> s = sender;
+                sends.add(new long[]{System.nanoTime(), s == null ? -1 : s.get().inFlight()});
+                action = script.isEmpty() ? "ok" : script.remove(0);
+            }
+            switch (action) {
+                case "fail":
+                    callback.failed(new IOException("Connection refused"));
+                    break;
+                case "reject":
+                    callback.rejected(new IllegalArgumentException("Bad records"));
+                    break;
+                case "drop":
+                    break;
+                default:
+                    synchronized (this) {
+                        for (Pair<JSONContext, Map<String, Object>> p : toWrite) {
+                            received.add(p.b.get("ix"));
+                        }
+                        notifyAll();
+                    }
+                    callback.sent();
+            }
+        }
+
+        synchronized List<Object> received() {
+            return new ArrayList<>(received);
+        }
+
+        synchronized List<long[]> sends() {
+            return new ArrayList<>(sends);
+        }
+
+        synchronized void await(int count) throws InterruptedException {
+            long until = System.currentTimeMillis() + 10000;
+            while (received.size() < count && System.currentTimeMillis() < until) {
+                wait(100);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    static final class HeldAcksSink implements RemoteSink {
+
+        private final List<List<Object>> batches = new ArrayList<>();
+        private final List<Runnable> acks = new ArrayList<>();
+
+        @Override
+        public void open(Consumer<Boolean> whenReady) {
+            whenReady.accept(true);
+        }
+
+        @Override
+        public void push(JSONContext ctx, Map<String, Object> logRecord, Runnable onDone) {
+            throw new AssertionError("Should be sent in batches");
+        }
+
+        @Override
+        public synchronized void pushMany(Collection<Pair<JSONContext, Map<String, Object>>> toWrite, Runnable onDone) {
+            List<Object> indices = new ArrayList<>();
+            for (Pair<JSONContext, Map<String, Object>> p : toWrite) {
+                indices.add(p.b.get("ix"));
+            }
+            batches.add(indices);
+            acks.add(onDone);
+            notifyAll();
+        }
+
+        synchronized List<List<Object>> batches() {
+            return new ArrayList<>(batches);
+        }
+
+        synchronized void awaitBatches(int count) throws InterruptedException {
+            long until = System.currentTimeMillis() + 10_000;
+            while (batches.size() < count && System.currentTimeMillis() < until) {
+                wait(100);
+            }
+            assertEquals(count, batches.size(), batches.toString());
+        }
+
+        void ack(int batch) {
+            Runnable r;
+            synchronized (this) {
+                r = acks.get(batch);
+            }
+            r.run();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // do nothing
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mastfrog.util.file.FileUtils;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class SpoolEvictionTest {
+
+    private static final int SEGMENT_BYTES = 1024;
+    private static final int MAX_BYTES = 4096;
+    private Path dir;
+    private MapSerde serde;
+    private Spool spool;
+
+    @Test
+    public void testDropOldest() throws Exception {
+        open(new SpoolLimits(MAX_BYTES, 0, SpoolOverflowPolicy.DROP_OLDEST), SpoolFormat.JSON);
+        for (int i = 0; i < 200; i++) {
+            spool.append(record(i, 30));
+            assertTrue(spool.totalBytes() <= MAX_BYTES + SEGMENT_BYTES * 2, spool.toString());
+        }
+        List<Map<String, Object>> left = readAll();
+        assertEquals(199, left.get(left.size() - 1).get("ix"));
+        int first = (Integer) left.get(0).get("ix");
+        assertTrue(first > 0);
+        for (int i = 0; i < left.size(); i++) {
+            assertEquals(first + i, left.get(i).get("ix"));
+        }
+        assertEquals(first, spool.evicted());
+        SpoolMetrics metrics = new SpoolMetrics(spool, 0);
+        assertEquals(left.size(), metrics.spooledRecords());
+        assertEquals(first, metrics.recordsEvicted());
+    }
+
+    @Test
+    public void testDropLowestLevelFirst() throws Exception {
+        for (SpoolFormat format : SpoolFormat.values()) {
+            clean();
+            open(new SpoolLimits(MAX_BYTES * 2, 0, SpoolOverflowPolicy.DROP_LOWEST_LEVEL), format);
+            for (int i = 0; i < 200; i++) {
+                spool.append(record(i, i % 4 == 0 ? 50 : 20));
+            }
+            assertTrue(spool.evicted() > 0, format.name());
+            List<Map<String, Object>> left = readAll();
+            int errors = 0;
+            int debugs = 0;
+            for (Map<String, Object> rec : left) {
+                if (((Number) rec.get("level")).intValue() == 50) {
+                    errors++;
+                } else {
+                    debugs++;
+                }
+            }
+            assertEquals(50, errors, format + ": " + left);
+            assertTrue(debugs < 150, format.name());
+            assertEquals(200 - left.size(), spool.evicted(), format.name());
+            spool.close();
+        }
+    }
+
+    @Test
+    public void testSegmentsBeingReadAreNotRewritten() throws Exception {
+        open(new SpoolLimits(MAX_BYTES * 2, 0, SpoolOverflowPolicy.DROP_LOWEST_LEVEL), SpoolFormat.JSON);
+        for (int i = 0; i < 40; i++) {
+            spool.append(record(i, 20));
+        }
+        try (SpoolReader reader = new SpoolReader(spool, new SpoolCursor(dir.resolve("test.cursor")))) {
+            assertEquals(1, reader.read(1, Long.MAX_VALUE).size());
+            long reading = reader.segment();
+            assertTrue(reading < spool.written().segment);
+            Path path = spool.segmentPath(reading);
+            long size = Files.size(path);
+            for (int i = 40; i < 400; i++) {
+                spool.append(record(i, 20));
+            }
+            // Not rewritten, though it is full of debug records - it may
+            // only be deleted
+            assertTrue(!Files.exists(path) || Files.size(path) == size);
+            assertEquals(1, reader.read(1, Long.MAX_VALUE).size());
+        }
+    }
+
+    @Test
+    public void testRefuseNonSevere() throws Exception {
+        open(new SpoolLimits(MAX_BYTES, 0, SpoolOverflowPolicy.REFUSE_NON_SEVERE), SpoolFormat.JSON);
+        DiskSink sink = new DiskSink(spool);
+        int i = 0;
+        while (spool.totalBytes() <= MAX_BYTES) {
+            sink.push(null, record(i++, 30));
+        }
+        long size = spool.totalBytes();
+        assertFalse(spool.admits(30));
+        assertTrue(spool.admits(50));
+        sink.push(null, record(i++, 30));
+        assertEquals(size, spool.totalBytes());
+        sink.push(null, record(i++, 50));
+        assertTrue(spool.totalBytes() > size);
+        assertEquals(2, spool.refused());
+        assertEquals(0, spool.evicted());
+    }
+
+    @Test
+    public void testMaxAge() throws Exception {
+        open(new SpoolLimits(0, TimeUnit.HOURS.toMillis(1), SpoolOverflowPolicy.DROP_OLDEST), SpoolFormat.JSON);
+        for (int i = 0; i < 100; i++) {
+            spool.append(record(i, 30));
+        }
+        long current = spool.written().segment;
+        long first = spool.firstSegment();
+        assertTrue(current - first >= 3);
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2));
+        Files.setLastModifiedTime(spool.segmentPath(first), old);
+        Files.setLastModifiedTime(spool.segmentPath(first + 1), old);
+        SpoolEviction.enforce(spool);
+        assertEquals(first + 2, (long) spool.firstSegment());
+        assertTrue(spool.evicted() > 0);
+        List<Map<String, Object>> left = readAll();
+        assertEquals(100 - spool.evicted(), left.size());
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        open(SpoolLimits.NONE, SpoolFormat.BLOCKS);
+        SpoolMetrics metrics = new SpoolMetrics(spool, 0);
+        SpoolMetrics.DestinationMetrics slow = metrics.destination("slow", 0);
+        SpoolMetrics.DestinationMetrics fast = metrics.destination("fast", 0);
+        assertEquals(0, metrics.spooledRecords());
+        assertEquals(0, metrics.oldestRecordAge().toMillis());
+        for (int i = 0; i < 100; i++) {
+            spool.append(record(i, 30));
+        }
+        assertEquals(100, metrics.spooledRecords());
+        assertEquals(spool.totalBytes(), metrics.spooledBytes());
+        long before = System.currentTimeMillis() / 1000;
+        slow.onSent(40);
+        fast.onSent(70);
+        assertEquals(60, metrics.spooledRecords());
+        assertEquals(30, fast.unsent());
+        assertEquals(40, metrics.recordsSent());
+        // Wait for the second the records were sent in to be over
+        while (System.currentTimeMillis() / 1000 == before) {
+            Thread.sleep(50);
+        }
+        assertEquals(4.0, metrics.sendRate(), 0.001);
+        assertEquals(7.0, fast.sendRate(), 0.001);
+        assertEquals(8, metrics.snapshot().size());
+        assertEquals(2, ((Map<?, ?>) metrics.snapshot().get("destinations")).size());
+    }
+
+    private List<Map<String, Object>> readAll() throws IOException {
+        Files.deleteIfExists(dir.resolve("all.cursor"));
+        List<Map<String, Object>> result = new ArrayList<>();
+        try (SpoolReader reader = new SpoolReader(spool, new SpoolCursor(dir.resolve("all.cursor")))) {
+            List<SpoolReader.Read> reads;
+            while (!(reads = reader.read(1000, Long.MAX_VALUE)).isEmpty()) {
+                for (SpoolReader.Read read : reads) {
+                    result.add(read.record);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void open(SpoolLimits limits, SpoolFormat format) throws IOException {
+        spool = new Spool(dir, serde, SEGMENT_BYTES, false, 256, format, limits);
+    }
+
+    private static Map<String, Object> record(int ix, int level) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("msg", "record-" + ix);
+        result.put("level", level);
+        result.put("ix", ix);
+        return result;
+    }
+
+    private void clean() throws IOException {
+        FileUtils.deltree(dir);
+        Files.createDirectories(dir);
+    }
+
+    @BeforeEach
+    public void setup() throws IOException {
+        dir = FileUtils.newTempDir(SpoolEvictionTest.class.getSimpleName() + "-");
+        serde = new MapSerde(new ObjectMapper());
+    }
+
+    @AfterEach
+    public void teardown() throws Exception {
+        try {
+            if (spool != null) {
+                spool.close();
+            }
+            serde.close();
+        } finally {
+            FileUtils.deltree(dir);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mastfrog.util.file.FileUtils;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class SpoolRecoveryTest {
+
+    private Path dir;
+    private MapSerde serde;
+
+    @Test
+    public void testTornTailIsTruncated() throws Exception {
+        for (SpoolFormat format : SpoolFormat.values()) {
+            clean();
+            Path segment = writeRecords(format, 10, 0);
+            long intactSize = Files.size(segment);
+            // Half a record, as if the process died writing it
+            byte[] partial = framedRecord(format, 10);
+            Files.write(segment, Arrays.copyOf(partial, partial.length / 2),
+                    StandardOpenOption.APPEND);
+
+            try (Spool spool = open()) {
+                SpoolRecovery recovery = SpoolRecovery.recover(spool);
+                assertEquals(10, recovery.records(), format.name());
+                assertEquals(partial.length / 2, recovery.bytesTruncated(), format.name());
+                assertEquals(0, recovery.regionsQuarantined(), format.name());
+                assertEquals(intactSize, Files.size(segment), format.name());
+                spool.append(record(10));
+                assertEquals(range(0, 11), readAll(spool, "test"), format.name());
+            }
+        }
+    }
+
+    @Test
+    public void testCorruptRegionsAreQuarantined() throws Exception {
+        for (SpoolFormat format : SpoolFormat.values()) {
+            clean();
+            // Records written one at a time, so each block holds one record
+            Path segment = writeRecords(format, 10, 0);
+            List<Long> ends = recordEnds();
+            // Point a cursor after record 6
+            try (SpoolCursor cursor = new SpoolCursor(dir.resolve("test" + Spool.CURSOR_SUFFIX))) {
+                cursor.store(1, ends.get(6));
+            }
+            // Damage record 4
+            byte[] bytes = Files.readAllBytes(segment);
+            int at = (int) (ends.get(3) + 2);
+            bytes[at] = (byte) 0xFF;
+            bytes[at + 1] = (byte) 0x7F;
+            Files.write(segment, bytes);
+
+            try (Spool spool = open()) {
+                SpoolRecovery recovery = SpoolRecovery.recover(spool);
+                assertTrue(recovery.foundDamage(), format.name());
+                assertEquals(9, recovery.records(), format.name());
+                assertEquals(1, recovery.regionsQuarantined(), format.name());
+                assertEquals(0, recovery.bytesTruncated(), format.name());
+                assertEquals(ends.get(4) - ends.get(3), recovery.bytesQuarantined(), format.name());
+                assertEquals(bytes.length - recovery.bytesQuarantined(), Files.size(segment), format.name());
+                Path quarantined = dir.resolve(SpoolRecovery.QUARANTINE_DIR)
+                        .resolve(segment.getFileName() + "." + ends.get(3) + ".corrupt");
+                assertTrue(Files.exists(quarantined), format.name());
+                assertEquals(recovery.bytesQuarantined(), Files.size(quarantined), format.name());
+
+                // The cursor still points after record 6
+                assertEquals(range(7, 10), readAll(spool, "test"), format.name());
+                assertEquals(expectedAfterDamage(), readAll(spool, "other"), format.name());
+            }
+            // Nothing more to repair the second time
+            try (Spool spool = open()) {
+                assertFalse(SpoolRecovery.recover(spool).foundDamage(), format.name());
+            }
+        }
+    }
+
+    @Test
+    public void testDamageFoundWhileReadingIsSkipped() throws Exception {
+        for (SpoolFormat format : SpoolFormat.values()) {
+            clean();
+            Path segment = writeRecords(format, 10, 0);
+            List<Long> ends = recordEnds();
+            try (Spool spool = open();
+                    SpoolReader reader = new SpoolReader(spool, new SpoolCursor(dir.resolve("test" + Spool.CURSOR_SUFFIX)))) {
+                // Damage record 4 after recovery has had its chance
+                try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                    ch.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF, (byte) 0x7F}), ends.get(3) + 2);
+                }
+                assertEquals(range(0, 4), indices(reader.read(100, Long.MAX_VALUE)), format.name());
+                for (int i = 1; i < SpoolReader.MAX_READ_FAILURES; i++) {
+                    assertThrows(IOException.class, () -> reader.read(100, Long.MAX_VALUE));
+                }
+                assertEquals(range(5, 10), indices(reader.read(100, Long.MAX_VALUE)), format.name());
+                Path quarantined = dir.resolve(SpoolRecovery.QUARANTINE_DIR)
+                        .resolve(segment.getFileName() + "." + ends.get(3) + ".corrupt");
+                assertTrue(Files.exists(quarantined), format.name());
+                assertEquals(ends.get(4) - ends.get(3), Files.size(quarantined), format.name());
+            }
+        }
+    }
+
+    @Test
+    public void testSegmentsLargerThanTheScanWindowAreChecked() throws Exception {
+        for (SpoolFormat format : SpoolFormat.values()) {
+            clean();
+            Path segment;
+            try (Spool spool = new Spool(dir, serde, Spool.DEFAULT_MAX_SEGMENT_BYTES, false,
+                    Spool.DEFAULT_BATCH_BUFFER_BYTES, format)) {
+                for (int i = 0; i < 40; i++) {
+                    Map<String, Object> rec = record(i);
+                    // One record larger than the window, the rest spread
+                    // across several windows
+                    rec.put("pad", pad(i == 20 ? SpoolScanner.WINDOW_BYTES * 2 : 20000 + i));
+                    spool.append(rec);
+                }
+                segment = spool.segmentPath(spool.written().segment);
+            }
+            assertTrue(Files.size(segment) > SpoolScanner.WINDOW_BYTES * 4, format.name());
+            List<Long> ends = recordEnds();
+            byte[] bytes = Files.readAllBytes(segment);
+            // Damage record 30, well past the first window
+            int at = (int) (ends.get(29) + 2);
+            bytes[at] = (byte) 0xFF;
+            bytes[at + 1] = (byte) 0x7F;
+            Files.write(segment, bytes);
+
+            try (Spool spool = open()) {
+                SpoolRecovery recovery = SpoolRecovery.recover(spool);
+                assertEquals(39, recovery.records(), format.name());
+                assertEquals(1, recovery.regionsQuarantined(), format.name());
+                assertEquals(ends.get(30) - ends.get(29), recovery.bytesQuarantined(), format.name());
+                List<Integer> expected = range(0, 40);
+                expected.remove(Integer.valueOf(30));
+                assertEquals(expected, readAll(spool, "test"), format.name());
+            }
+        }
+    }
+
+    private static String pad(int length) {
+        // Random, so deflated blocks are not much smaller
+        Random rnd = new Random(length);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + rnd.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    private static List<Integer> expectedAfterDamage() {
+        List<Integer> result = range(0, 10);
+        result.remove(Integer.valueOf(4));
+        return result;
+    }
+
+    private Path writeRecords(SpoolFormat format, int count, int first) throws IOException {
+        try (Spool spool = new Spool(dir, serde, Spool.DEFAULT_MAX_SEGMENT_BYTES, false,
+                Spool.DEFAULT_BATCH_BUFFER_BYTES, format)) {
+            for (int i = first; i < first + count; i++) {
+                spool.append(record(i));
+            }
+            return spool.segmentPath(spool.written().segment);
+        }
+    }
+
+    private byte[] framedRecord(SpoolFormat format, int ix) throws IOException {
+        Path other = dir.resolve("scratch");
+        try (Spool spool = new Spool(other, serde, Spool.DEFAULT_MAX_SEGMENT_BYTES, false,
+                Spool.DEFAULT_BATCH_BUFFER_BYTES, format)) {
+            long start = spool.written().position;
+            spool.append(record(ix));
+            byte[] all = Files.readAllBytes(spool.segmentPath(spool.written().segment));
+            return Arrays.copyOfRange(all, (int) start, all.length);
+        } finally {
+            FileUtils.deltree(other);
+        }
+    }
+
+    private List<Long> recordEnds() throws IOException {
+        List<Long> result = new ArrayList<>();
+        try (Spool spool = open();
+                SpoolReader reader = new SpoolReader(spool, new SpoolCursor(dir.resolve("scan" + Spool.CURSOR_SUFFIX)))) {
+            for (SpoolReader.Read read : reader.read(Integer.MAX_VALUE, Long.MAX_VALUE)) {
+                result.add(read.end);
+            }
+        }
+        Files.delete(dir.resolve("scan" + Spool.CURSOR_SUFFIX));
+        return result;
+    }
+
+    private List<Integer> readAll(Spool spool, String cursorName) throws IOException {
+        List<Integer> result = new ArrayList<>();
+        try (SpoolReader reader = new SpoolReader(spool, new SpoolCursor(dir.resolve(cursorName + Spool.CURSOR_SUFFIX)))) {
+            List<SpoolReader.Read> reads;
+            while (!(reads = reader.read(100, Long.MAX_VALUE)).isEmpty()) {
+                for (SpoolReader.Read read : reads) {
+                    result.add(((Number) read.record.get("ix")).intValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    private static List<Integer> indices(List<SpoolReader.Read> reads) {
+        List<Integer> result = new ArrayList<>();
+        for (SpoolReader.Read read : reads) {
+            result.add(((Number) read.record.get("ix")).intValue());
+        }
+        return result;
+    }
+
+    private Spool open() throws IOException {
+        return new Spool(dir, serde, Spool.DEFAULT_MAX_SEGMENT_BYTES);
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> result = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            result.add(i);
+        }
+        return result;
+    }
+
+    private static Map<String, Object> record(int ix) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("msg", "record-" + ix);
+        result.put("ix", ix);
+        return result;
+    }
+
+    private void clean() throws IOException {
+        FileUtils.deltree(dir);
+        Files.createDirectories(dir);
+    }
+
+    @BeforeEach
+    public void setup() throws IOException {
+        dir = FileUtils.newTempDir(SpoolRecoveryTest.class.getSimpleName() + "-");
+        serde = new MapSerde(new ObjectMapper());
+    }
+
+    @AfterEach
+    public void teardown() throws Exception {
+        try {
+            serde.close();
+        } finally {
+            FileUtils.deltree(dir);
+        }
+    }
+}
@@ -0,0 +1,555 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mastfrog.util.file.FileUtils;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class SpoolTest {
+
+    private static final int THREADS = 8;
+    private static final int PER_THREAD = 2000;
+    private Path dir;
+    private MapSerde serde;
+
+    @Test
+    public void testConcurrentAppendsAreGroupCommitted() throws Exception {
+        for (SpoolFormat format : SpoolFormat.values()) {
+            testConcurrentAppends(false, format);
+        }
+    }
+
+    @Test
+    public void testConcurrentAppendsWithFsync() throws Exception {
+        testConcurrentAppends(true, SpoolFormat.JSON);
+        testConcurrentAppends(true, SpoolFormat.DEFLATED_BLOCKS);
+    }
+
+    private void testConcurrentAppends(boolean fsync, SpoolFormat format) throws Exception {
+        clean();
+        Spool spool = new Spool(dir, serde, 64 * 1024, fsync, 4096, format);
+        CountDownLatch start = new CountDownLatch(1);
+        Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            int thread = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < PER_THREAD; j++) {
+                        spool.append(record(thread, j));
+                    }
+                } catch (Throwable ex) {
+                    failure[0] = ex;
+                }
+            }, "appender-" + i);
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join(60000);
+        }
+        assertNull(failure[0]);
+        spool.close();
+        assertEquals(THREADS * PER_THREAD, spool.appended());
+        assertTrue(spool.batches() <= spool.appended());
+        assertReadableInOrder(THREADS * PER_THREAD, false);
+        assertReadableInOrder(THREADS * PER_THREAD, true);
+    }
+
+    @Test
+    public void testAppenderThreadWritesQueuedRecordsInOrder() throws Exception {
+        Spool spool = new Spool(dir, serde, 64 * 1024);
+        // A small queue, so loggers have to wait for room in it
+        DiskSink disk = new DiskSink(spool, 64);
+        AtomicInteger wakeups = new AtomicInteger();
+        disk.onAppend = wakeups::incrementAndGet;
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            int thread = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < PER_THREAD; j++) {
+                        disk.push(null, record(thread, j));
+                    }
+                } catch (InterruptedException ex) {
+                    throw new AssertionError(ex);
+                }
+            }, "logger-" + i);
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join(60000);
+        }
+        disk.stop();
+        assertEquals(0, disk.queued());
+        assertEquals(THREADS * PER_THREAD, spool.appended());
+        assertTrue(spool.batches() < spool.appended(), "Records should be written in batches");
+        assertTrue(wakeups.get() < THREADS * PER_THREAD, "The sender should be woken per batch");
+        // Once stopped, records are written by the thread logging them
+        disk.push(null, record(THREADS, 0));
+        assertEquals(THREADS * PER_THREAD + 1, spool.appended());
+        spool.close();
+        assertReadableInOrder(THREADS * PER_THREAD + 1, false);
+    }
+
+    @Test
+    public void testRecordsAreOnDiskWhenTheCallLoggingThemReturns() throws Exception {
+        Spool spool = new Spool(dir, serde, Spool.DEFAULT_MAX_SEGMENT_BYTES, true,
+                Spool.DEFAULT_BATCH_BUFFER_BYTES, SpoolFormat.JSON);
+        // No append queue, so the threads logging records write them
+        DiskSink disk = new DiskSink(spool, 0);
+        Path segment = spool.segmentPath(spool.written().segment);
+        int perThread = 200;
+        CountDownLatch start = new CountDownLatch(1);
+        Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            int thread = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < perThread; j++) {
+                        disk.push(null, record(thread, j));
+                        // Whichever thread wrote it, it must be written, and
+                        // before the end readers may read to
+                        long end = spool.written().position;
+                        byte[] bytes = Files.readAllBytes(segment);
+                        String written = new String(bytes, 0, (int) Math.min(end, bytes.length), UTF_8);
+                        assertTrue(written.contains("\"record-" + thread + "-" + j + "\""),
+                                "record-" + thread + "-" + j + " not written when its append returned");
+                    }
+                } catch (Throwable ex) {
+                    failure[0] = ex;
+                }
+            }, "logger-" + i);
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join(60000);
+        }
+        assertNull(failure[0]);
+        spool.close();
+        assertEquals(THREADS * perThread, spool.appended());
+        assertReadableInOrder(THREADS * perThread, false);
+    }
+
+    @Test
+    public void testFailedBatchIsReportedToEveryCallerInIt() throws Exception {
+        Spool spool = new Spool(dir, serde, Spool.DEFAULT_MAX_SEGMENT_BYTES);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // Holds up the first write until other threads have queued records,
+        // then fails the second, which writes theirs
+        spool.wrapWriteChannel(ch -> new FailingChannel(ch, writing, release, 2));
+        Thread first = new Thread(() -> {
+            try {
+                spool.append(record(0, 0));
+            } catch (IOException ex) {
+                throw new AssertionError(ex);
+            }
+        }, "first");
+        first.start();
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+        Throwable[] failures = new Throwable[3];
+        Thread[] threads = new Thread[failures.length];
+        for (int i = 0; i < threads.length; i++) {
+            int thread = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    spool.append(record(thread + 1, 0));
+                } catch (Throwable ex) {
+                    failures[thread] = ex;
+                }
+            }, "queued-" + i);
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            long until = System.currentTimeMillis() + 10000;
+            while (t.getState() != Thread.State.WAITING && System.currentTimeMillis() < until) {
+                Thread.sleep(5);
+            }
+        }
+        release.countDown();
+        first.join(10000);
+        for (Thread t : threads) {
+            t.join(10000);
+        }
+        for (Throwable failure : failures) {
+            assertTrue(failure instanceof IOException, "Should have failed: " + failure);
+        }
+        spool.append(record(4, 0));
+        spool.close();
+        assertReadableInOrder(2, false);
+    }
+
+    @Test
+    public void testWrittenBatchIsKeptWhenTheNextSegmentCannotBeCreated() throws Exception {
+        for (SpoolFormat format : SpoolFormat.values()) {
+            clean();
+            Spool spool = new Spool(dir, serde, 1024, false, Spool.DEFAULT_BATCH_BUFFER_BYTES, format);
+            long first = spool.written().segment;
+            // A directory where the next segment should go, so it cannot be
+            // opened
+            Path blocker = dir.resolve(Spool.segmentName(first + 1));
+            Files.createDirectory(blocker);
+            int ix = 0;
+            while (spool.written().position < 2048) {
+                // Must not fail: the records were written
+                spool.append(record(0, ix++));
+            }
+            assertEquals(first, spool.written().segment, format.name());
+            assertEquals(ix, spool.appended(), format.name());
+            // Once it can be, the next batch rolls over
+            Files.delete(blocker);
+            spool.append(record(0, ix++));
+            assertEquals(first + 1, spool.written().segment, format.name());
+            spool.append(record(0, ix++));
+            spool.close();
+            assertReadableInOrder(ix, false);
+        }
+    }
+
+    @Test
+    public void testRecordsLargerThanTheBatchBuffer() throws Exception {
+        for (SpoolFormat format : SpoolFormat.values()) {
+            testRecordsLargerThanTheBatchBuffer(format);
+        }
+    }
+
+    private void testRecordsLargerThanTheBatchBuffer(SpoolFormat format) throws Exception {
+        clean();
+        Spool spool = new Spool(dir, serde, Spool.DEFAULT_MAX_SEGMENT_BYTES, false, 64, format);
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            big.append("abcdefghij");
+        }
+        for (int i = 0; i < 10; i++) {
+            Map<String, Object> rec = record(0, i);
+            if (i % 3 == 0) {
+                rec.put("big", big.toString());
+            }
+            spool.append(rec);
+        }
+        spool.close();
+        assertReadableInOrder(10, false);
+    }
+
+    @Test
+    public void testSegmentsInEveryFormatAreReadable() throws Exception {
+        int ix = 0;
+        for (SpoolFormat format : SpoolFormat.values()) {
+            try (Spool spool = new Spool(dir, serde, Spool.DEFAULT_MAX_SEGMENT_BYTES,
+                    false, Spool.DEFAULT_BATCH_BUFFER_BYTES, format)) {
+                for (int i = 0; i < 100; i++) {
+                    spool.append(record(0, ix++));
+                }
+            }
+        }
+        assertReadableInOrder(ix, false);
+        assertReadableInOrder(ix, true);
+    }
+
+    @Test
+    public void testDeflatedBlocksAreSmaller() throws Exception {
+        long[] sizes = new long[2];
+        SpoolFormat[] formats = {SpoolFormat.BLOCKS, SpoolFormat.DEFLATED_BLOCKS};
+        for (int f = 0; f < formats.length; f++) {
+            clean();
+            try (Spool spool = new Spool(dir, serde, Spool.DEFAULT_MAX_SEGMENT_BYTES,
+                    false, Spool.DEFAULT_BATCH_BUFFER_BYTES, formats[f])) {
+                // Appended one at a time, so each record is its own block
+                for (int i = 0; i < 100; i++) {
+                    Map<String, Object> rec = record(0, i);
+                    rec.put("text", "The quick brown fox jumps over the lazy dog. "
+                            + "The quick brown fox jumps over the lazy dog. "
+                            + "The quick brown fox jumps over the lazy dog.");
+                    spool.append(rec);
+                }
+                sizes[f] = spool.written().position;
+            }
+            assertReadableInOrder(100, false);
+        }
+        assertTrue(sizes[1] < sizes[0], "Deflated " + sizes[1] + " stored " + sizes[0]);
+    }
+
+    @Test
+    public void testCorruptBlocksAreDetected() throws Exception {
+        Path segment;
+        try (Spool spool = new Spool(dir, serde, Spool.DEFAULT_MAX_SEGMENT_BYTES,
+                false, Spool.DEFAULT_BATCH_BUFFER_BYTES, SpoolFormat.BLOCKS)) {
+            spool.append(record(0, 0));
+            segment = spool.segmentPath(spool.written().segment);
+        }
+        byte[] bytes = Files.readAllBytes(segment);
+        // Flip a bit in the JSON - the framing is still valid
+        int at = bytes.length - 5;
+        bytes[at] ^= 0x01;
+        Files.write(segment, bytes);
+        try (Spool spool = new Spool(dir, serde, Spool.DEFAULT_MAX_SEGMENT_BYTES);
+                SpoolReader reader = new SpoolReader(spool, new SpoolCursor(dir.resolve("test.cursor")))) {
+            IOException ex = assertThrows(IOException.class, () -> reader.read(10, Long.MAX_VALUE));
+            assertTrue(ex.getMessage().contains("Checksum"), ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testSegmentsAreKeptUntilEveryReaderHasSentThem() throws Exception {
+        try (Spool spool = new Spool(dir, serde, 2048);
+                SpoolReader fast = new SpoolReader(spool, new SpoolCursor(dir.resolve("fast.cursor")));
+                SpoolReader slow = new SpoolReader(spool, new SpoolCursor(dir.resolve("slow.cursor")))) {
+            for (int i = 0; i < 200; i++) {
+                spool.append(record(0, i));
+            }
+            long first = spool.firstSegment();
+            assertTrue(spool.written().segment - first >= 3);
+            List<SpoolReader.Read> reads;
+            int fastCount = 0;
+            while (!(reads = fast.read(50, Long.MAX_VALUE)).isEmpty()) {
+                SpoolReader.Read last = reads.get(reads.size() - 1);
+                fast.commit(last.segment, last.end);
+                fastCount += reads.size();
+            }
+            assertEquals(200, fastCount);
+            // The slow reader has not committed anything yet
+            assertEquals(first, (long) spool.firstSegment());
+
+            reads = slow.read(20, Long.MAX_VALUE);
+            assertEquals(20, reads.size());
+            assertEquals(0, reads.get(0).record.get("ix"));
+            SpoolReader.Read last = reads.get(reads.size() - 1);
+            slow.commit(last.segment, last.end);
+            assertEquals(last.segment, (long) spool.firstSegment());
+            int slowCount = reads.size();
+            while (!(reads = slow.read(50, Long.MAX_VALUE)).isEmpty()) {
+                last = reads.get(reads.size() - 1);
+                slow.commit(last.segment, last.end);
+                slowCount += reads.size();
+            }
+            assertEquals(200, slowCount);
+            assertEquals(spool.written().segment, (long) spool.firstSegment());
+        }
+    }
+
+    private void assertReadableInOrder(int expected, boolean raw) throws IOException {
+        // A fresh cursor each time, so every record is read
+        Files.deleteIfExists(dir.resolve("test.cursor"));
+        try (Spool spool = new Spool(dir, serde, Spool.DEFAULT_MAX_SEGMENT_BYTES);
+                SpoolReader reader = new SpoolReader(spool, new SpoolCursor(dir.resolve("test.cursor")), raw)) {
+            Map<Integer, Integer> lastPerThread = new HashMap<>();
+            int count = 0;
+            while (reader.hasUnread()) {
+                List<SpoolReader.Read> reads = reader.read(1000, Long.MAX_VALUE);
+                for (SpoolReader.Read read : reads) {
+                    Map<String, Object> record = raw ? serde.decode(read.json, 0, read.json.length)
+                            : read.record;
+                    int thread = ((Number) record.get("thread")).intValue();
+                    int ix = ((Number) record.get("ix")).intValue();
+                    Integer last = lastPerThread.put(thread, ix);
+                    assertEquals(last == null ? 0 : last + 1, ix,
+                            "Out of order or missing record for thread " + thread);
+                    count++;
+                }
+            }
+            assertEquals(expected, count);
+        }
+    }
+
+    private static Map<String, Object> record(int thread, int ix) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("msg", "record-" + thread + "-" + ix);
+        result.put("thread", thread);
+        result.put("ix", ix);
+        return result;
+    }
+
+    /**
+     * Delegates to a channel, blocking in its first gathering write until
+     * released, and failing one later write.
+     */
+    private static final class FailingChannel extends FileChannel {
+
+        private final FileChannel delegate;
+        private final CountDownLatch writing;
+        private final CountDownLatch release;
+        private final int failWrite;
+        private int writes;
+
+        FailingChannel(FileChannel delegate, CountDownLatch writing, CountDownLatch release, int failWrite) {
+            this.delegate = delegate;
+            this.writing = writing;
+            this.release = release;
+            this.failWrite = failWrite;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            if (++writes == 1) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+            } else if (writes == failWrite) {
+                throw new IOException("Write " + writes + " failed");
+            }
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return delegate.write(src);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+
+    private void clean() throws IOException {
+        FileUtils.deltree(dir);
+        Files.createDirectories(dir);
+    }
+
+    @BeforeEach
+    public void setup() throws IOException {
+        dir = FileUtils.newTempDir(SpoolTest.class.getSimpleName() + "-");
+        serde = new MapSerde(new ObjectMapper());
+    }
+
+    @AfterEach
+    public void teardown() throws Exception {
+        try {
+            serde.close();
+        } finally {
+            FileUtils.deltree(dir);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.remote;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mastfrog.util.file.FileUtils;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class TcpRemoteSinkTest {
+
+    private static final DeliveryPolicy FAST_RETRIES = new DeliveryPolicy(TimeUnit.SECONDS.toNanos(10),
+            TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.MILLISECONDS.toNanos(100), 5);
+    private final ObjectMapper mapper = new ObjectMapper();
+    private Path dir;
+    private MapSerde serde;
+    private Spool spool;
+    private SpoolReader reader;
+    private LogRecordSender sender;
+    private TcpRemoteSink sink;
+    private TcpLogCollector collector;
+
+    @Test
+    public void testRecordsAreDeliveredInEveryFormat() throws Exception {
+        boolean raw = false;
+        for (SpoolFormat format : SpoolFormat.values()) {
+            raw = !raw;
+            Received received = new Received();
+            start(received, format, raw);
+            startSending(4);
+            for (int i = 0; i < 2000; i++) {
+                spool.append(record(i));
+                if (i % 100 == 0) {
+                    sender.wake();
+                }
+            }
+            sender.wake();
+            received.await(2000);
+            List<Map<String, Object>> records = received.records();
+            assertEquals(2000, records.size(), format + " raw " + raw);
+            for (int i = 0; i < 2000; i++) {
+                assertEquals(i, records.get(i).get("ix"), format + " raw " + raw);
+                assertEquals("line one\nline two", records.get(i).get("text"));
+            }
+            assertEquals(2000, collector.recordsReceived());
+            stop();
+        }
+    }
+
+    @Test
+    public void testCollectorCanAskForRetriesAndReject() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Received received = new Received();
+        start(records -> {
+            switch (calls.incrementAndGet()) {
+                case 1:
+                    throw new IOException("Disk full");
+                case 2:
+                    throw new IllegalArgumentException("Malformed");
+                default:
+                    received.receive(records);
+            }
+        }, SpoolFormat.JSON, true);
+        // Appended before sending starts, so batches are whole
+        for (int i = 0; i < 50; i++) {
+            spool.append(record(i));
+        }
+        startSending(1);
+        received.await(40);
+        List<Map<String, Object>> records = received.records();
+        assertEquals(40, records.size());
+        // The first batch failed, was sent again and rejected
+        assertEquals(10, records.get(0).get("ix"));
+        assertEquals(0, sender.consecutiveFailures());
+    }
+
+    @Test
+    public void testSinkReconnectsWhenCollectorComesBack() throws Exception {
+        Received received = new Received();
+        start(received, SpoolFormat.DEFLATED_BLOCKS, true);
+        startSending(2);
+        InetSocketAddress address = collector.address();
+        for (int i = 0; i < 100; i++) {
+            spool.append(record(i));
+        }
+        sender.wake();
+        received.await(100);
+        assertEquals(100, received.records().size());
+
+        collector.close();
+        for (int i = 100; i < 200; i++) {
+            spool.append(record(i));
+        }
+        sender.wake();
+        long until = System.currentTimeMillis() + 10000;
+        while (sender.consecutiveFailures() == 0 && System.currentTimeMillis() < until) {
+            Thread.sleep(20);
+        }
+        assertTrue(sender.consecutiveFailures() > 0, "Sends should fail with the collector gone");
+
+        collector = new TcpLogCollector(address, received).start();
+        received.await(200);
+        List<Map<String, Object>> records = received.records();
+        assertEquals(200, records.size());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i, records.get(i).get("ix"));
+        }
+    }
+
+    @Test
+    public void testEmptyRecordsAreRejected() throws Exception {
+        Received received = new Received();
+        start(received, SpoolFormat.JSON, true);
+        Outcomes outcomes = new Outcomes();
+        List<byte[]> batch = new ArrayList<>();
+        batch.add(mapper.writeValueAsBytes(record(0)));
+        batch.add(new byte[0]);
+        sink.sendEncoded(batch, outcomes);
+        assertEquals(1, outcomes.rejected.get());
+        // The connection is still in step with the collector
+        sink.sendEncoded(Collections.singletonList(mapper.writeValueAsBytes(record(1))), outcomes);
+        received.await(1);
+        List<Map<String, Object>> records = received.records();
+        assertEquals(1, records.size());
+        assertEquals(1, records.get(0).get("ix"));
+        outcomes.await(2);
+        assertEquals(1, outcomes.sent.get());
+        assertEquals(0, outcomes.failed.get());
+    }
+
+    @Test
+    public void testBatchesSentWhileClosingAreAllCompleted() throws Exception {
+        start(new Received(), SpoolFormat.JSON, true);
+        List<byte[]> batch = Collections.singletonList(mapper.writeValueAsBytes(record(0)));
+        for (int i = 0; i < 100; i++) {
+            TcpRemoteSink closing = new TcpRemoteSink(collector.address(), mapper,
+                    SpoolFormat.JSON, Duration.ofSeconds(5));
+            closing.open(ready -> {
+            });
+            Outcomes outcomes = new Outcomes();
+            AtomicInteger submitted = new AtomicInteger();
+            Thread t = new Thread(() -> {
+                while (outcomes.failed.get() == 0) {
+                    submitted.incrementAndGet();
+                    closing.sendEncoded(batch, outcomes);
+                }
+            });
+            t.start();
+            closing.close();
+            t.join(10000);
+            outcomes.await(submitted.get());
+            assertEquals(submitted.get(), outcomes.completed(), "Batches never completed");
+        }
+    }
+
+    private void start(TcpLogCollector.BatchHandler handler, SpoolFormat format, boolean raw) throws IOException {
+        dir = FileUtils.newTempDir(TcpRemoteSinkTest.class.getSimpleName() + "-");
+        serde = new MapSerde(mapper);
+        spool = new Spool(dir, serde, 64 * 1024, false, Spool.DEFAULT_BATCH_BUFFER_BYTES, format);
+        reader = new SpoolReader(spool, new SpoolCursor(dir.resolve("test.cursor")), raw);
+        collector = new TcpLogCollector(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), handler).start();
+        sink = new TcpRemoteSink(collector.address(), mapper, format, Duration.ofSeconds(5));
+        sink.open(ready -> {
+        });
+    }
+
+    private void startSending(int inFlight) {
+        sender = new LogRecordSender(reader, sink, 10, 1024 * 1024, inFlight, null, FAST_RETRIES).start();
+    }
+
+    private Map<String, Object> record(int ix) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("msg", "record-" + ix);
+        result.put("ix", ix);
+        result.put("text", "line one\nline two");
+        return result;
+    }
+
+    @BeforeEach
+    public void setup() {
+        dir = null;
+    }
+
+    @AfterEach
+    public void stop() throws Exception {
+        if (sender != null) {
+            sender.stop(10, TimeUnit.SECONDS);
+            sender = null;
+        }
+        try {
+            if (sink != null) {
+                sink.close();
+            }
+            if (collector != null) {
+                collector.close();
+            }
+            if (reader != null) {
+                reader.close();
+                spool.close();
+                serde.close();
+            }
+        } finally {
+            reader = null;
+            if (dir != null) {
+                FileUtils.deltree(dir);
+                dir = null;
+            }
+        }
+    }
+
+    static final class Outcomes implements DeliveryCallback {
+
+        final AtomicInteger sent = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+
+        @Override
+        public void sent() {
+            sent.incrementAndGet();
+            done();
+        }
+
+        @Override
+        public void failed(Throwable cause) {
+            failed.incrementAndGet();
+            done();
+        }
+
+        @Override
+        public void rejected(Throwable cause) {
+            rejected.incrementAndGet();
+            done();
+        }
+
+        private synchronized void done() {
+            notifyAll();
+        }
+
+        int completed() {
+            return sent.get() + failed.get() + rejected.get();
+        }
+
+        synchronized void await(int count) throws InterruptedException {
+            long until = System.currentTimeMillis() + 10000;
+            while (completed() < count && System.currentTimeMillis() < until) {
+                wait(100);
+            }
+        }
+    }
+
+    final class Received implements TcpLogCollector.BatchHandler {
+
+        private final List<Map<String, Object>> records = new ArrayList<>();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized void receive(List<byte[]> batch) throws IOException {
+            for (byte[] json : batch) {
+                records.add(mapper.readValue(json, Map.class));
+            }
+            notifyAll();
+        }
+
+        synchronized List<Map<String, Object>> records() {
+            return new ArrayList<>(records);
+        }
+
+        synchronized void await(int count) throws InterruptedException {
+            long until = System.currentTimeMillis() + 10000;
+            while (records.size() < count && System.currentTimeMillis() < until) {
+                wait(100);
+            }
+        }
+    }
+}
@@ -25,6 +25,8 @@ package com.mastfrog.bunyan.java.v2;
 
 import com.mastfrog.util.collections.CollectionUtils;
 import static com.mastfrog.util.preconditions.Checks.notNull;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.AbstractMap;
 import java.util.Collection;
 import java.util.Collections;
@@ -70,6 +72,22 @@ abstract class AbstractSingletonMap extends AbstractMap<String, Object> implemen
         return value ? new OfTrue(key) : new OfFalse(key);
     }
 
+    public static Map<String, Object> ofDouble(String key, double value) {
+        return new OfDouble(value, key);
+    }
+
+    public static Map<String, Object> ofFloat(String key, float value) {
+        return new OfFloat(value, key);
+    }
+
+    public static Map<String, Object> ofDuration(String key, Duration value) {
+        return value == null ? new OfNull(key) : new OfDuration(value, key);
+    }
+
+    public static Map<String, Object> ofInstant(String key, Instant value) {
+        return value == null ? new OfNull(key) : new OfInstant(value, key);
+    }
+
     String key() {
         return key;
     }
@@ -83,6 +101,10 @@ abstract class AbstractSingletonMap extends AbstractMap<String, Object> implemen
             this.supplier = supplier;
         }
 
+        Supplier<?> supplier() {
+            return supplier;
+        }
+
         @Override
         public Object getValue() {
             return supplier.get();
@@ -160,6 +182,66 @@ abstract class AbstractSingletonMap extends AbstractMap<String, Object> implemen
         }
     }
 
+    static class OfDouble extends AbstractSingletonMap {
+
+        private final double value;
+
+        OfDouble(double value, String key) {
+            super(key);
+            this.value = value;
+        }
+
+        @Override
+        public Object getValue() {
+            return TypedValues.doubleValue(value);
+        }
+    }
+
+    static class OfFloat extends AbstractSingletonMap {
+
+        private final float value;
+
+        OfFloat(float value, String key) {
+            super(key);
+            this.value = value;
+        }
+
+        @Override
+        public Object getValue() {
+            return TypedValues.floatValue(value);
+        }
+    }
+
+    static class OfDuration extends AbstractSingletonMap {
+
+        private final Duration value;
+
+        OfDuration(Duration value, String key) {
+            super(key);
+            this.value = value;
+        }
+
+        @Override
+        public Object getValue() {
+            return TypedValues.durationValue(value);
+        }
+    }
+
+    static class OfInstant extends AbstractSingletonMap {
+
+        private final Instant value;
+
+        OfInstant(Instant value, String key) {
+            super(key);
+            this.value = value;
+        }
+
+        @Override
+        public Object getValue() {
+            return TypedValues.instantValue(value);
+        }
+    }
+
     static class OfTrue extends AbstractSingletonMap {
 
         static Boolean TRUE = Boolean.valueOf(true);
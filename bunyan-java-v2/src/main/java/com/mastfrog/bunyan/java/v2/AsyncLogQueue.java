@@ -26,8 +26,8 @@ package com.mastfrog.bunyan.java.v2;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import static com.mastfrog.util.preconditions.Checks.greaterThanZero;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  *
@@ -36,34 +36,83 @@ import java.util.concurrent.TimeUnit;
 final class AsyncLogQueue implements Runnable {
 
     @JsonProperty("threadpool")
-    private final ExecutorService svc;
+    private final LogJobExecutor svc;
+    @JsonProperty("onDequeue")
+    private final Consumer<Map<String, Object>> onDequeue;
+    private final LoggingMetrics metrics;
 
     AsyncLogQueue() {
-        this(3, Thread.currentThread().getPriority() - 1, true);
+        this(3, Thread.currentThread().getPriority() - 1, true, null);
     }
 
-    AsyncLogQueue(int threads, int priority, boolean useShutdownHook) {
-        svc = new PoliteExecutorService(greaterThanZero("threads", threads),
-                greaterThanZero("priority", priority));
+    AsyncLogQueue(int threads, int priority, boolean useShutdownHook,
+            Consumer<Map<String, Object>> onDequeue) {
+        this(threads, priority, useShutdownHook, onDequeue, null);
+    }
+
+    AsyncLogQueue(int threads, int priority, boolean useShutdownHook,
+            Consumer<Map<String, Object>> onDequeue, LoggingMetrics metrics) {
+        this(threads, priority, useShutdownHook, onDequeue, metrics, false);
+    }
+
+    AsyncLogQueue(int threads, int priority, boolean useShutdownHook,
+            Consumer<Map<String, Object>> onDequeue, LoggingMetrics metrics,
+            boolean writerThread) {
+        // A single writer thread keeps records in order, so the thread count
+        // only applies to the default executor
+        svc = writerThread
+                ? new WriterThreadExecutor(greaterThanZero("priority", priority))
+                : new PoliteExecutorService(greaterThanZero("threads", threads),
+                        greaterThanZero("priority", priority));
+        this.onDequeue = onDequeue;
+        this.metrics = metrics;
         if (useShutdownHook) {
             Runtime.getRuntime().addShutdownHook(new Thread(this, "async-log-shutdown"));
         }
     }
 
     void run(Runnable toRun) {
-        svc.submit(toRun);
+        svc.execute(toRun);
     }
 
     void enqueue(LogSink orig, JSONContext ctx, Map<String, Object> logRecord) {
         if (svc.isShutdown()) {
+            dequeued(ctx, logRecord);
             orig.push(ctx, logRecord);
             return;
         }
-        svc.submit(() -> {
-            orig.push(ctx, logRecord);
+        // A pooled record must stay live until the delegate is done with it
+        PooledRecord pooled = logRecord instanceof PooledRecord
+                ? ((PooledRecord) logRecord).retain() : null;
+        long enqueuedAt = metrics == null ? 0 : System.nanoTime();
+        svc.execute(() -> {
+            try {
+                dequeued(ctx, logRecord);
+                orig.push(ctx, logRecord);
+                if (metrics != null) {
+                    metrics.onWritten(enqueuedAt);
+                }
+            } finally {
+                if (pooled != null) {
+                    pooled.release();
+                }
+            }
         });
     }
 
+    private void dequeued(JSONContext ctx, Map<String, Object> logRecord) {
+        if (logRecord instanceof HasDeferredValues) {
+            ((HasDeferredValues) logRecord).resolveDeferredValues(ctx);
+        }
+        if (onDequeue != null) {
+            onDequeue.accept(logRecord);
+        }
+    }
+
+    int pendingJobs() {
+        return svc.pendingJobs();
+    }
+
     boolean shutdown() {
         if (!svc.isShutdown()) {
             for (Runnable r : svc.shutdownNow()) {
@@ -82,7 +82,10 @@ class AsyncLogSink implements LogSink, Wrapper<LogSink> {
                 config = DelayedDelegationLogs.config;
             }
         } else {
-            config = DelayedDelegationLogs.config;
+            config = this.config.get();
+            if (config == null) {
+                config = DelayedDelegationLogs.config;
+            }
         }
         config.logQueue().enqueue(orig, ctx, logrecord);
     }
@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+/**
+ * A child Logs for a unit of work such as a request, whose trace and debug
+ * records are held in a bounded buffer instead of being written - regardless
+ * of whether those levels are enabled. If an error or fatal record is logged
+ * through it, the buffered records are written first, to wherever that record
+ * goes, so failures come with full debug detail; if the work succeeds, they
+ * are simply discarded by calling <code>close()</code>. Only the most recent
+ * records are kept if the buffer fills up.
+ *
+ * @author Tim Boudreau
+ */
+public interface BufferingLogs extends Logs, AutoCloseable {
+
+    /**
+     * Write any buffered records now, to the destination an error record from
+     * this logger would be written to.
+     */
+    void flush();
+
+    /**
+     * Discard any buffered records.
+     */
+    void discard();
+
+    /**
+     * Get the number of records currently buffered.
+     *
+     * @return The count
+     */
+    int buffered();
+
+    /**
+     * Discard any buffered records; records logged after this call are
+     * buffered again.
+     */
+    @Override
+    default void close() {
+        discard();
+    }
+}
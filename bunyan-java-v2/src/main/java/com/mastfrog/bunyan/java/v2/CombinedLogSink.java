@@ -52,6 +52,14 @@ final class CombinedLogSink implements LogSink, Wrapper<LogSink[]> {
         }
     }
 
+    LogSink first() {
+        return a;
+    }
+
+    LogSink second() {
+        return b;
+    }
+
     @Override
     public String toString() {
         return a + " & " + b;
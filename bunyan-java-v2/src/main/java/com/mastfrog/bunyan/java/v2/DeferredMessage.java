@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The message of a record bound for an asynchronous sink which contains
+ * message templates, so they can be formatted by the async logging thread.
+ * The pieces of the message are kept in order and joined the same way
+ * LogImpl joins them when it builds the message itself.
+ *
+ * @author Tim Boudreau
+ */
+final class DeferredMessage implements Supplier<Object> {
+
+    private final MessageFragments message;
+    private final List<Object> pieces = new ArrayList<>(3);
+
+    DeferredMessage(MessageFragments soFar) {
+        // Copy, since the caller's may be reused
+        message = new MessageFragments(soFar.isExact());
+        message.addAll(soFar);
+    }
+
+    /**
+     * Add a piece of the message.
+     *
+     * @param piece A CharSequence, Number, Boolean or FormattedMessage
+     */
+    void add(Object piece) {
+        if (piece instanceof CharSequence && !(piece instanceof String)) {
+            piece = piece.toString();
+        }
+        pieces.add(piece);
+    }
+
+    @Override
+    public Object get() {
+        for (Object piece : pieces) {
+            message.add(piece instanceof FormattedMessage
+                    ? ((FormattedMessage) piece).format() : piece);
+        }
+        pieces.clear();
+        return message.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "message(" + message + " + " + pieces.size() + ")";
+    }
+}
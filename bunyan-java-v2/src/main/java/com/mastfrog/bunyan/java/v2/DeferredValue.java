@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import java.util.function.Supplier;
+
+/**
+ * Placeholder for the value of a field added with <code>addLazy()</code>,
+ * left in a record bound for an asynchronous sink so that the supplier is
+ * called by the async logging thread rather than the thread which logged the
+ * record.
+ *
+ * @author Tim Boudreau
+ */
+final class DeferredValue {
+
+    private final Supplier<?> supplier;
+
+    DeferredValue(Supplier<?> supplier) {
+        this.supplier = supplier;
+    }
+
+    /**
+     * Call the supplier. Since the caller who logged the record is long gone,
+     * a failure is logged and recorded as the field's value rather than
+     * thrown.
+     *
+     * @return The value
+     */
+    Object evaluate() {
+        try {
+            return supplier.get();
+        } catch (RuntimeException | LinkageError | AssertionError ex) {
+            LoggingLogging.log("Exception evaluating lazy log record value from "
+                    + supplier, ex, true);
+            return "lazy value failed: " + ex;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "deferred(" + supplier + ")";
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * An ordinary log record bound for an asynchronous sink, which may contain
+ * DeferredValue placeholders for lazy fields.
+ *
+ * @author Tim Boudreau
+ */
+final class DeferredValuesRecord extends LinkedHashMap<String, Object> implements HasDeferredValues {
+
+    private int deferred;
+
+    DeferredValuesRecord(int initialCapacity) {
+        super(initialCapacity);
+    }
+
+    DeferredValuesRecord(Map<String, Object> copy) {
+        super(copy);
+        for (Object o : copy.values()) {
+            if (o instanceof DeferredValue) {
+                deferred++;
+            }
+        }
+    }
+
+    void defer(String key, Supplier<?> supplier) {
+        if (!(get(key) instanceof DeferredValue)) {
+            deferred++;
+        }
+        put(key, new DeferredValue(supplier));
+    }
+
+    @Override
+    public void resolveDeferredValues(JSONContext ctx) {
+        synchronized (this) {
+            if (deferred == 0) {
+                return;
+            }
+            for (Map.Entry<String, Object> e : entrySet()) {
+                Object val = e.getValue();
+                if (val instanceof DeferredValue) {
+                    e.setValue(ctx.check(((DeferredValue) val).evaluate()));
+                }
+            }
+            deferred = 0;
+        }
+    }
+}
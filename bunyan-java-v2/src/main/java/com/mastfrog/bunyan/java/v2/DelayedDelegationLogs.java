@@ -26,7 +26,10 @@ package com.mastfrog.bunyan.java.v2;
 import static com.mastfrog.bunyan.java.v2.LoggingConfig.PROP_AUTO_CONFIG_THRESHOLD;
 import static com.mastfrog.bunyan.java.v2.LoggingConfig.PROP_LOGGING_CONFIG_FILE;
 import com.mastfrog.util.collections.CollectionUtils;
+import static com.mastfrog.util.preconditions.Checks.notNull;
 import com.mastfrog.util.preconditions.ConfigurationError;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -274,6 +277,38 @@ class DelayedDelegationLogs implements Logs {
         return new ChildDelegatingLogs(name, pairs);
     }
 
+    @Override
+    public BufferingLogs bufferingChild(Map<String, Object> pairs, int maxBuffered) {
+        if (delegate != null) {
+            return delegate.bufferingChild(pairs, maxBuffered);
+        }
+        // Records logged before configuration are cached and replayed anyway,
+        // so there is nothing useful to buffer - log them as a plain child would
+        return new UnbufferedChildDelegatingLogs(name, pairs);
+    }
+
+    static final class UnbufferedChildDelegatingLogs extends ChildDelegatingLogs implements BufferingLogs {
+
+        UnbufferedChildDelegatingLogs(String name, Map<String, Object> pairs) {
+            super(name, pairs);
+        }
+
+        @Override
+        public void flush() {
+            // do nothing
+        }
+
+        @Override
+        public void discard() {
+            // do nothing
+        }
+
+        @Override
+        public int buffered() {
+            return 0;
+        }
+    }
+
     @Override
     public Log trace() {
         return newLog(LogLevel.TRACE);
@@ -343,6 +378,12 @@ class DelayedDelegationLogs implements Logs {
             return this;
         }
 
+        @Override
+        public Log message(MessageTemplate template, Object... args) {
+            components.add(new FormattedMessage(notNull("template", template), args));
+            return this;
+        }
+
         @Override
         public Log add(Object o) {
             components.add(o);
@@ -373,6 +414,36 @@ class DelayedDelegationLogs implements Logs {
             return this;
         }
 
+        @Override
+        public Log add(String name, double value) {
+            components.add(AbstractSingletonMap.ofDouble(name, value));
+            return this;
+        }
+
+        @Override
+        public Log add(String name, float value) {
+            components.add(AbstractSingletonMap.ofFloat(name, value));
+            return this;
+        }
+
+        @Override
+        public Log add(String name, CharSequence value) {
+            components.add(AbstractSingletonMap.ofObject(name, value == null ? null : value.toString()));
+            return this;
+        }
+
+        @Override
+        public Log addDuration(String name, Duration value) {
+            components.add(AbstractSingletonMap.ofDuration(name, value));
+            return this;
+        }
+
+        @Override
+        public Log addInstant(String name, Instant value) {
+            components.add(AbstractSingletonMap.ofInstant(name, value));
+            return this;
+        }
+
         @Override
         public Log addLazy(String name, Supplier<Object> value) {
             components.add(AbstractSingletonMap.lazy(name, value));
@@ -0,0 +1,238 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Collapses identical records - same logger, level, message and exception
+ * type - logged within a time window into the first one, plus a single record
+ * with the count of repeats when the window closes. Useful when a failing
+ * downstream dependency causes the same error to be logged thousands of times
+ * a second.
+ * <p>
+ * Records are compared by their whole message as it will be written, so
+ * records from one template with different arguments are distinct, and
+ * templates are formatted when a record is closed rather than on the async
+ * logging thread. Lazy values are not evaluated, and are not compared.
+ * </p>
+ * <p>
+ * Tracked records live in a fixed-size, open-addressed table of atomic slots,
+ * so memory use is bounded and lookups take no locks; if every slot a record
+ * hashes to is occupied by a different, still-open window, the record is
+ * simply logged untracked. Closed windows are swept and their summaries
+ * logged by a timer every half window, by the next logging call after they
+ * expire if that comes first, and on shutdown. Repeat counts are approximate
+ * if a repeat races the window closing.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+final class DuplicateRecordSuppressor {
+
+    static final String REPEATED_KEY = "repeated";
+    private static final int PROBES = 4;
+    private static final long MIN_SWEEP_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    @JsonIgnore
+    private final AtomicReferenceArray<Entry> slots;
+    @JsonIgnore
+    private final int mask;
+    @JsonIgnore
+    private final long windowNanos;
+    @JsonIgnore
+    private final AtomicLong nextSweep;
+    @JsonIgnore
+    private final Supplier<LoggingConfig> config;
+    @JsonIgnore
+    private ScheduledExecutorService sweeper;
+
+    DuplicateRecordSuppressor(long windowNanos, int maxTracked, Supplier<LoggingConfig> config) {
+        int size = Integer.highestOneBit(Math.max(PROBES, maxTracked - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.windowNanos = windowNanos;
+        this.config = config;
+        this.nextSweep = new AtomicLong(System.nanoTime() + windowNanos);
+    }
+
+    @JsonProperty("windowMillis")
+    long windowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(windowNanos);
+    }
+
+    @JsonProperty("maxTracked")
+    int maxTracked() {
+        return slots.length();
+    }
+
+    /**
+     * Returns true if the record should be logged, false if it is a repeat
+     * within an open window.
+     */
+    boolean admit(String name, LogLevel level, CharSequence msg, Class<?> errorType) {
+        long now = System.nanoTime();
+        long sweepAt = nextSweep.get();
+        if (now - sweepAt >= 0 && nextSweep.compareAndSet(sweepAt, now + windowNanos)) {
+            sweep(now, false);
+        }
+        int hash = hash(name, level, msg, errorType);
+        int claimable = -1;
+        Entry claimed = null;
+        for (int i = 0; i < PROBES; i++) {
+            int ix = (hash + i) & mask;
+            Entry e = slots.get(ix);
+            if (e == null || e.isExpired(now, windowNanos)) {
+                if (claimable < 0) {
+                    claimable = ix;
+                    claimed = e;
+                }
+                continue;
+            }
+            if (e.matches(hash, name, level, msg, errorType)) {
+                e.repeats.increment();
+                return false;
+            }
+        }
+        if (claimable >= 0) {
+            Entry nue = new Entry(hash, name, level, msg == null ? null : msg.toString(),
+                    errorType, now);
+            if (slots.compareAndSet(claimable, claimed, nue) && claimed != null) {
+                emitSummary(claimed, now);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Start sweeping closed windows on a timer, so their summaries are logged
+     * whether or not anything else is.
+     */
+    synchronized void start() {
+        if (sweeper != null) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bunyan-v2-duplicates");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = Math.max(windowNanos / 2, MIN_SWEEP_INTERVAL_NANOS);
+        sweeper.scheduleAtFixedRate(() -> {
+            try {
+                sweep(System.nanoTime(), false);
+            } catch (Exception | Error e) {
+                LoggingLogging.log(e);
+            }
+        }, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stop the timer and log summaries for all windows, open or closed.
+     */
+    void flush() {
+        synchronized (this) {
+            if (sweeper != null) {
+                sweeper.shutdownNow();
+                sweeper = null;
+            }
+        }
+        sweep(System.nanoTime(), true);
+    }
+
+    private void sweep(long now, boolean all) {
+        for (int i = 0; i < slots.length(); i++) {
+            Entry e = slots.get(i);
+            if (e != null && (all || e.isExpired(now, windowNanos))
+                    && slots.compareAndSet(i, e, null)) {
+                emitSummary(e, now);
+            }
+        }
+    }
+
+    private void emitSummary(Entry e, long now) {
+        long count = e.repeats.sum();
+        if (count > 0) {
+            LogImpl log = new LogImpl(e.name, e.level, config.get()).unfiltered();
+            if (e.msg != null) {
+                log.message(e.msg);
+            }
+            log.add(REPEATED_KEY, count)
+                    .add("windowMs", TimeUnit.NANOSECONDS.toMillis(now - e.start));
+            if (e.errorType != null) {
+                log.add("errorType", e.errorType.getName());
+            }
+            log.close();
+        }
+    }
+
+    private static int hash(String name, LogLevel level, CharSequence msg, Class<?> errorType) {
+        int h = name.hashCode() * 31 + level.intValue();
+        h = h * 31 + (msg == null ? 0 : msg.hashCode());
+        h = h * 31 + (errorType == null ? 0 : System.identityHashCode(errorType));
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        return "suppress-duplicates(" + windowMillis() + "ms, " + slots.length() + " slots)";
+    }
+
+    static final class Entry {
+
+        final int hash;
+        final String name;
+        final LogLevel level;
+        final String msg;
+        final Class<?> errorType;
+        final long start;
+        final LongAdder repeats = new LongAdder();
+
+        Entry(int hash, String name, LogLevel level, String msg, Class<?> errorType, long start) {
+            this.hash = hash;
+            this.name = name;
+            this.level = level;
+            this.msg = msg;
+            this.errorType = errorType;
+            this.start = start;
+        }
+
+        boolean isExpired(long now, long windowNanos) {
+            return now - start >= windowNanos;
+        }
+
+        boolean matches(int hash, String name, LogLevel level, CharSequence msg, Class<?> errorType) {
+            return this.hash == hash && this.level.intValue() == level.intValue()
+                    && this.errorType == errorType && this.name.equals(name)
+                    && (this.msg == null ? msg == null : msg != null && this.msg.contentEquals(msg));
+        }
+    }
+}
@@ -32,6 +32,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 
 /**
@@ -42,14 +44,26 @@ final class FileLogSink extends AbstractLogSink implements ThrowingRunnable {
 
     @JsonProperty("path")
     private final Path path;
-    private FileChannel channel;
+    private volatile FileChannel channel;
+    // Not a monitor, so a virtual thread waiting for the channel to be
+    // opened or closed does not pin its carrier thread
+    private final ReentrantLock lock = new ReentrantLock();
     @JsonProperty("dead")
     private boolean dead;
     private boolean warned;
+    // The name bytes written are counted under - for rotated files, the
+    // base path, so the count is not spread across each rotated file
+    private final String metricsName;
+    private LongAdder bytesWritten;
 
     public FileLogSink(Path path, Supplier<LoggingConfig> config) {
+        this(path, config, path.toString());
+    }
+
+    FileLogSink(Path path, Supplier<LoggingConfig> config, String metricsName) {
         super(config);
         this.path = path;
+        this.metricsName = metricsName;
     }
     
     Path path() {
@@ -72,7 +86,7 @@ final class FileLogSink extends AbstractLogSink implements ThrowingRunnable {
         return "FileLogSink(" + path + ")";
     }
 
-    synchronized long size() throws IOException {
+    long size() throws IOException {
         FileChannel ch = channel;
         if (ch != null) {
             try {
@@ -89,11 +103,21 @@ final class FileLogSink extends AbstractLogSink implements ThrowingRunnable {
         return 0L;
     }
 
-    private synchronized FileChannel channel() throws IOException {
-        if (channel == null) {
-            channel = FileChannel.open(path, StandardOpenOption.APPEND, StandardOpenOption.CREATE);
+    private FileChannel channel() throws IOException {
+        FileChannel result = channel;
+        if (result == null) {
+            lock.lock();
+            try {
+                result = channel;
+                if (result == null) {
+                    result = channel = FileChannel.open(path,
+                            StandardOpenOption.APPEND, StandardOpenOption.CREATE);
+                }
+            } finally {
+                lock.unlock();
+            }
         }
-        return channel;
+        return result;
     }
 
     @Override
@@ -114,23 +138,42 @@ final class FileLogSink extends AbstractLogSink implements ThrowingRunnable {
                 dead = true;
                 throw ioe;
             }
-            byte[] b = ctx.writeValueAsBytes(logrecord);
-            ByteBuffer buffer = ByteBuffer.allocate(b.length + 1);
-            buffer.put(b);
-            buffer.put((byte) '\n');
-            buffer.flip();
-            ch.write(buffer);
+            ByteBuffer buffer = ctx.encodedLine(logrecord);
+            int bytes = buffer.remaining();
+            while (buffer.hasRemaining()) {
+                ch.write(buffer);
+            }
+            LongAdder counter = bytesCounter();
+            if (counter != null) {
+                counter.add(bytes);
+            }
         } catch (IOException ex) {
             LoggingLogging.log("Exception generating JSON", ex, true);
         }
     }
 
+    private LongAdder bytesCounter() {
+        LongAdder result = bytesWritten;
+        if (result == null) {
+            LoggingConfig config = configSupplier().get();
+            LoggingMetrics metrics = config == null ? null : config.metrics();
+            if (metrics != null) {
+                // Racy but harmless - the registry hands back the same counter
+                result = bytesWritten = metrics.bytesCounter(metricsName);
+            }
+        }
+        return result;
+    }
+
     @Override
     public void run() throws Exception {
         FileChannel ch;
-        synchronized (this) {
+        lock.lock();
+        try {
             ch = channel;
             channel = null;
+        } finally {
+            lock.unlock();
         }
         if (ch != null) {
             ch.close();
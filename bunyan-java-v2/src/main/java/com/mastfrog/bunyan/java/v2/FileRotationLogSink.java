@@ -30,6 +30,7 @@ import java.nio.file.Path;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -47,6 +48,9 @@ final class FileRotationLogSink extends AbstractLogSink implements ThrowingRunna
     private final AtomicInteger index = new AtomicInteger(1);
     private final long maxSize;
     private final AtomicInteger writes = new AtomicInteger(1);
+    // Guards currPath; not a monitor, since finding the next path does file
+    // I/O, which would pin a waiting virtual thread's carrier
+    private final ReentrantLock lock = new ReentrantLock();
 
     FileRotationLogSink(long maxSize, Path path, Supplier<LoggingConfig> config) {
         super(config);
@@ -59,7 +63,7 @@ final class FileRotationLogSink extends AbstractLogSink implements ThrowingRunna
         } catch (IOException ex) {
             LoggingLogging.log(ex);
         }
-        sinkRef = new AtomicReference<>(new FileLogSink(currPath, config));
+        sinkRef = new AtomicReference<>(new FileLogSink(currPath, config, basePath.toString()));
     }
 
     static String extension(Path p) {
@@ -121,11 +125,19 @@ final class FileRotationLogSink extends AbstractLogSink implements ThrowingRunna
 
     private void rotate(FileLogSink sink) {
         Path next;
-        synchronized (this) {
+        lock.lock();
+        try {
             next = currPath = nextPath(sink.path());
+        } finally {
+            lock.unlock();
+        }
+        FileLogSink nue = new FileLogSink(next, configSupplier(), basePath.toString());
+        if (sinkRef.compareAndSet(sink, nue)) {
+            LoggingMetrics metrics = configSupplier().get().metrics();
+            if (metrics != null) {
+                metrics.onRotation();
+            }
         }
-        FileLogSink nue = new FileLogSink(next, configSupplier());
-        sinkRef.compareAndSet(sink, nue);
         // Ensure any enqueued work referencing the old sink completes
         // before we close the old one - new writes will go to the new
         // sink from here.
@@ -147,8 +159,11 @@ final class FileRotationLogSink extends AbstractLogSink implements ThrowingRunna
     public String toString() {
         String result = basePath.toString();
         Path cp;
-        synchronized (this) {
+        lock.lock();
+        try {
             cp = currPath;
+        } finally {
+            lock.unlock();
         }
         if (!cp.equals(basePath)) {
             result += "(" + cp.getFileName() + ")";
@@ -0,0 +1,68 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+/**
+ * A message template and its arguments, added to a log record as a piece of
+ * its message and formatted when the message is built.
+ *
+ * @author Tim Boudreau
+ */
+final class FormattedMessage {
+
+    private final MessageTemplate template;
+    private final Object[] args;
+    private String formatted;
+
+    FormattedMessage(MessageTemplate template, Object[] args) {
+        this.template = template;
+        this.args = args;
+    }
+
+    MessageTemplate template() {
+        return template;
+    }
+
+    String format() {
+        // Duplicate suppression may have formatted it already, when the
+        // record was closed; the record is handed off to the thread which
+        // writes it after that, so no further synchronization is needed
+        if (formatted != null) {
+            return formatted;
+        }
+        try {
+            return formatted = template.format(args);
+        } catch (RuntimeException ex) {
+            // An argument's toString() failed
+            LoggingLogging.log("Exception formatting log message '"
+                    + template.pattern() + "'", ex, true);
+            return formatted = template.pattern();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+}
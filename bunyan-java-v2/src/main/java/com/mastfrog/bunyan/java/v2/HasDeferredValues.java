@@ -0,0 +1,45 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+/**
+ * A log record which may contain values whose evaluation was deferred to the
+ * async logging thread; the async queue calls resolveDeferredValues() before
+ * passing the record to its sink.
+ *
+ * @author Tim Boudreau
+ */
+interface HasDeferredValues {
+
+    /**
+     * Evaluate any deferred values, replacing them with their results. May be
+     * called more than once, and by more than one thread, if the record is
+     * routed to more than one asynchronous sink; only the first call
+     * evaluates anything.
+     *
+     * @param ctx The serialization context for the record, which is told
+     * about each value, so it can choose a serializer that can handle them
+     */
+    void resolveDeferredValues(JSONContext ctx);
+}
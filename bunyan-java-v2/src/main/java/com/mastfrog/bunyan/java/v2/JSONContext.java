@@ -28,6 +28,7 @@ import static com.mastfrog.bunyan.java.v2.LoggingConfig.JsonSerializationPolicy.
 import com.mastfrog.util.fileformat.SimpleJSON;
 import static com.mastfrog.util.fileformat.SimpleJSON.Style.COMPACT;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
@@ -52,6 +53,35 @@ public class JSONContext implements JSONEncoder {
         cachedBytes = null;
     }
 
+    /**
+     * Restore this context to its initial state, for reuse with a new record.
+     */
+    void reset() {
+        clear();
+        simpleJsonSafe = config.serializationPolicy() != ALWAYS_JACKSON;
+    }
+
+    LoggingConfig config() {
+        return config;
+    }
+
+    /**
+     * Get the JSON for a record followed by a newline, ready to write to a
+     * channel.
+     *
+     * @param o A record
+     * @return A buffer, flipped for reading
+     * @throws IOException If serialization fails
+     */
+    ByteBuffer encodedLine(Object o) throws IOException {
+        byte[] b = writeValueAsBytes(o);
+        ByteBuffer buffer = ByteBuffer.allocate(b.length + 1);
+        buffer.put(b);
+        buffer.put((byte) '\n');
+        buffer.flip();
+        return buffer;
+    }
+
     <T> T check(T o) {
         if (simpleJsonSafe) {
             if (config.serializationPolicy() == NEVER_JACKSON) {
@@ -85,11 +115,25 @@ public class JSONContext implements JSONEncoder {
         if (result != null) {
             return result;
         }
-        if (simpleJsonSafe) {
+        RecordLimits limits = config.recordLimits();
+        LoggingMetrics metrics = config.metrics();
+        long start = metrics == null ? 0 : System.nanoTime();
+        String how;
+        if (limits != null) {
+            // Streamed, so oversized content is never written in the
+            // first place
+            result = limits.writeValueAsBytes(config._mapper(), o);
+            how = LoggingMetrics.SER_LIMITED;
+        } else if (simpleJsonSafe) {
             cachedString = SimpleJSON.stringify(o, COMPACT);
             result = cachedString.getBytes(UTF_8);
+            how = LoggingMetrics.SER_SIMPLE;
         } else {
             result = config._mapper().writeValueAsBytes(o);
+            how = LoggingMetrics.SER_JACKSON;
+        }
+        if (metrics != null) {
+            metrics.onSerialized(how, start);
         }
         assert result != null : "got null";
         return cachedBytes = result;
@@ -0,0 +1,177 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations in nanoseconds, with log-linear buckets
+ * in the style of HdrHistogram - values below 16 get a bucket each, and each
+ * power of two above that is split into 16 buckets, so any recorded value is
+ * reported to within about 6%, with a fixed 960 buckets covering the whole
+ * range of a long. Buckets are striped by thread, so threads recording at
+ * the same time mostly touch different cache lines.
+ *
+ * @author Tim Boudreau
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final int MAX_STRIPES = 4;
+    private final AtomicLongArray[] stripes;
+    private final int stripeMask;
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    LatencyHistogram() {
+        int stripeCount = Math.min(MAX_STRIPES,
+                Integer.highestOneBit(Runtime.getRuntime().availableProcessors()));
+        stripes = new AtomicLongArray[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+        stripeMask = stripeCount - 1;
+    }
+
+    static int bucketFor(long value) {
+        if (value < SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+    }
+
+    static long lowestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub)) << shift;
+    }
+
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        return lowestValueIn(bucket) + (1L << shift) - 1;
+    }
+
+    void record(long nanos) {
+        if (nanos < 0) {
+            // System.nanoTime() is not guaranteed to be monotonic across cores
+            nanos = 0;
+        }
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        stripes[stripe].incrementAndGet(bucketFor(nanos));
+        sum.add(nanos);
+        min.accumulate(nanos);
+        max.accumulate(nanos);
+    }
+
+    private long[] counts() {
+        long[] result = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                result[i] += stripe.get(i);
+            }
+        }
+        return result;
+    }
+
+    long count() {
+        long result = 0;
+        for (long c : counts()) {
+            result += c;
+        }
+        return result;
+    }
+
+    /**
+     * Get the value below which the passed fraction of recorded values fall,
+     * as the highest value in the bucket the fraction falls in, capped at the
+     * largest value recorded.
+     *
+     * @param fraction A number from 0 to 1
+     * @return A number of nanoseconds
+     */
+    long valueAt(double fraction) {
+        return valueAt(fraction, counts());
+    }
+
+    private long valueAt(double fraction, long[] counts) {
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestValueIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Get the count, minimum, maximum, mean and percentiles of the recorded
+     * values. Values recorded while this is being computed may be partially
+     * included.
+     *
+     * @return A map
+     */
+    Map<String, Object> snapshot() {
+        long[] counts = counts();
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        Map<String, Object> result = new LinkedHashMap<>(12);
+        result.put("count", total);
+        if (total > 0) {
+            result.put("min", min.get());
+            result.put("max", max.get());
+            result.put("mean", sum.sum() / total);
+            result.put("p50", valueAt(0.5, counts));
+            result.put("p90", valueAt(0.9, counts));
+            result.put("p99", valueAt(0.99, counts));
+            result.put("p999", valueAt(0.999, counts));
+        }
+        return result;
+    }
+}
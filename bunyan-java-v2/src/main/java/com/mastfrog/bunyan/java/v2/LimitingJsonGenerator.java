@@ -0,0 +1,488 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Applies RecordLimits to JSON as a mapper's serializers write it, by
+ * intercepting every call which writes a value, property name or structure:
+ * anything over a limit is dropped before it reaches the underlying
+ * generator, and a nested structure which is being left out is skipped down
+ * to its matching end without writing any of it.
+ * <p>
+ * Generators are not thread-safe and this is no exception; one is created
+ * for each value written.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+final class LimitingJsonGenerator extends JsonGeneratorDelegate {
+
+    private static final String TOO_DEEP = "(nested too deeply)";
+    private final RecordLimits limits;
+    private final ByteArrayOutputStream out;
+    private final int budget;
+    // True if writing a whole record, whose bunyan properties are exempt
+    // from the size limit
+    private final boolean record;
+    // Per open object or array, indexed by depth
+    private final int[] counts;
+    private final int[] omitted;
+    private final boolean[] arrays;
+    private int depth;
+    // Depth within a structure being left out
+    private int skipDepth;
+    // Set when a property name was left out, so its value is too
+    private boolean skipNextValue;
+    private boolean bunyanProperty;
+    private boolean recordTruncated;
+
+    LimitingJsonGenerator(JsonGenerator delegate, RecordLimits limits,
+            ByteArrayOutputStream out, int depth, int budget) {
+        // Not delegating copy and object-writing methods, so that
+        // writeObject() serializes through this generator rather than
+        // around it
+        super(delegate, false);
+        this.limits = limits;
+        this.out = out;
+        this.depth = depth;
+        this.budget = budget;
+        this.record = depth == 0;
+        int max = Math.max(depth, limits.maxDepth()) + 1;
+        counts = new int[max];
+        omitted = new int[max];
+        arrays = new boolean[max];
+    }
+
+    private int written() {
+        return out.size() + Math.max(0, delegate.getOutputBuffered());
+    }
+
+    private boolean full() {
+        return written() >= budget;
+    }
+
+    private boolean exempt() {
+        return record && depth == 1 && bunyanProperty;
+    }
+
+    private void onFull() {
+        if (!recordTruncated) {
+            recordTruncated = true;
+            limits.onRecordTruncated();
+        }
+    }
+
+    /**
+     * Called before writing any value; returns true if it should be left
+     * out.
+     */
+    private boolean skipValue() {
+        if (skipDepth > 0) {
+            return true;
+        }
+        if (skipNextValue) {
+            skipNextValue = false;
+            return true;
+        }
+        if (arrays[depth]) {
+            boolean overCount = counts[depth]++ >= limits.maxElements();
+            if (overCount || full()) {
+                omitted[depth]++;
+                if (!overCount) {
+                    onFull();
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void startStructure(boolean array, Object forValue) throws IOException {
+        if (skipValue()) {
+            skipDepth++;
+            return;
+        }
+        if (depth >= limits.maxDepth()) {
+            limits.onNestingTruncated();
+            delegate.writeString(TOO_DEEP);
+            skipDepth = 1;
+            return;
+        }
+        depth++;
+        counts[depth] = 0;
+        omitted[depth] = 0;
+        arrays[depth] = array;
+        if (array) {
+            delegate.writeStartArray();
+        } else {
+            delegate.writeStartObject(forValue);
+        }
+    }
+
+    private void endStructure(boolean array) throws IOException {
+        if (skipDepth > 0) {
+            skipDepth--;
+            return;
+        }
+        int left = omitted[depth];
+        if (left > 0) {
+            if (counts[depth] > limits.maxElements()) {
+                limits.onCollectionTruncated();
+            }
+            if (array) {
+                delegate.writeString("(" + left + " more)");
+            } else {
+                delegate.writeFieldName("_truncated");
+                delegate.writeNumber(left);
+            }
+        }
+        depth--;
+        if (array) {
+            delegate.writeEndArray();
+        } else {
+            delegate.writeEndObject();
+        }
+    }
+
+    private void writeLimited(String s) throws IOException {
+        int max = limits.maxStringLength();
+        if (!exempt()) {
+            int room = budget - written();
+            if (room < max) {
+                max = Math.max(0, room);
+            }
+        }
+        delegate.writeString(s.length() <= max ? s : limits.truncate(s, max, this::onFull));
+    }
+
+    private boolean fits(int length) {
+        return length <= limits.maxStringLength()
+                && (exempt() || written() + length < budget);
+    }
+
+    @Override
+    public void writeStartArray() throws IOException {
+        startStructure(true, null);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void writeStartArray(int size) throws IOException {
+        startStructure(true, null);
+    }
+
+    // No @Override on these, which only exist in later Jackson versions;
+    // where they do exist, they must not bypass the limits
+
+    public void writeStartArray(Object forValue) throws IOException {
+        startStructure(true, forValue);
+    }
+
+    public void writeStartArray(Object forValue, int size) throws IOException {
+        startStructure(true, forValue);
+    }
+
+    public void writeStartObject(Object forValue, int size) throws IOException {
+        startStructure(false, forValue);
+    }
+
+    public void writeArray(String[] array, int offset, int length) throws IOException {
+        writeStartArray();
+        for (int i = offset; i < offset + length; i++) {
+            writeString(array[i]);
+        }
+        writeEndArray();
+    }
+
+    @Override
+    public void writeEndArray() throws IOException {
+        endStructure(true);
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        startStructure(false, null);
+    }
+
+    @Override
+    public void writeStartObject(Object forValue) throws IOException {
+        startStructure(false, forValue);
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        endStructure(false);
+    }
+
+    @Override
+    public void writeFieldName(String name) throws IOException {
+        if (skipDepth > 0) {
+            return;
+        }
+        bunyanProperty = record && depth == 1 && RecordLimits.isBunyanProperty(name);
+        if (!bunyanProperty) {
+            boolean overCount = counts[depth]++ >= limits.maxElements();
+            if (overCount || full()) {
+                omitted[depth]++;
+                if (!overCount) {
+                    onFull();
+                }
+                skipNextValue = true;
+                return;
+            }
+        }
+        delegate.writeFieldName(name);
+    }
+
+    @Override
+    public void writeFieldName(SerializableString name) throws IOException {
+        writeFieldName(name.getValue());
+    }
+
+    @Override
+    public void writeFieldId(long id) throws IOException {
+        writeFieldName(Long.toString(id));
+    }
+
+    @Override
+    public void writeArray(int[] array, int offset, int length) throws IOException {
+        writeStartArray();
+        for (int i = offset; i < offset + length; i++) {
+            writeNumber(array[i]);
+        }
+        writeEndArray();
+    }
+
+    @Override
+    public void writeArray(long[] array, int offset, int length) throws IOException {
+        writeStartArray();
+        for (int i = offset; i < offset + length; i++) {
+            writeNumber(array[i]);
+        }
+        writeEndArray();
+    }
+
+    @Override
+    public void writeArray(double[] array, int offset, int length) throws IOException {
+        writeStartArray();
+        for (int i = offset; i < offset + length; i++) {
+            writeNumber(array[i]);
+        }
+        writeEndArray();
+    }
+
+    @Override
+    public void writeString(String text) throws IOException {
+        if (skipValue()) {
+            return;
+        }
+        if (fits(text.length())) {
+            delegate.writeString(text);
+        } else {
+            writeLimited(text);
+        }
+    }
+
+    @Override
+    public void writeString(char[] text, int offset, int len) throws IOException {
+        if (skipValue()) {
+            return;
+        }
+        if (fits(len)) {
+            delegate.writeString(text, offset, len);
+        } else {
+            writeLimited(new String(text, offset, len));
+        }
+    }
+
+    @Override
+    public void writeString(SerializableString text) throws IOException {
+        if (skipValue()) {
+            return;
+        }
+        String s = text.getValue();
+        if (fits(s.length())) {
+            delegate.writeString(text);
+        } else {
+            writeLimited(s);
+        }
+    }
+
+    @Override
+    public void writeString(Reader reader, int len) throws IOException {
+        if (!skipValue()) {
+            delegate.writeString(reader, len);
+        }
+    }
+
+    @Override
+    public void writeUTF8String(byte[] text, int offset, int length) throws IOException {
+        if (skipValue()) {
+            return;
+        }
+        if (fits(length)) {
+            delegate.writeUTF8String(text, offset, length);
+        } else {
+            writeLimited(new String(text, offset, length, UTF_8));
+        }
+    }
+
+    @Override
+    public void writeRawUTF8String(byte[] text, int offset, int length) throws IOException {
+        // Already escaped, so cannot be cut off safely
+        if (!skipValue()) {
+            delegate.writeRawUTF8String(text, offset, length);
+        }
+    }
+
+    @Override
+    public void writeRawValue(String text) throws IOException {
+        if (!skipValue()) {
+            delegate.writeRawValue(text);
+        }
+    }
+
+    @Override
+    public void writeRawValue(String text, int offset, int len) throws IOException {
+        if (!skipValue()) {
+            delegate.writeRawValue(text, offset, len);
+        }
+    }
+
+    @Override
+    public void writeRawValue(char[] text, int offset, int len) throws IOException {
+        if (!skipValue()) {
+            delegate.writeRawValue(text, offset, len);
+        }
+    }
+
+    @Override
+    public void writeBinary(Base64Variant b64variant, byte[] data, int offset, int len) throws IOException {
+        if (skipValue()) {
+            return;
+        }
+        if (fits((len + 2) / 3 * 4)) {
+            delegate.writeBinary(b64variant, data, offset, len);
+        } else {
+            limits.onStringTruncated();
+            delegate.writeString("(" + len + " bytes)");
+        }
+    }
+
+    @Override
+    public int writeBinary(Base64Variant b64variant, InputStream data, int dataLength) throws IOException {
+        if (skipValue()) {
+            return 0;
+        }
+        return delegate.writeBinary(b64variant, data, dataLength);
+    }
+
+    @Override
+    public void writeNumber(short v) throws IOException {
+        if (!skipValue()) {
+            delegate.writeNumber(v);
+        }
+    }
+
+    @Override
+    public void writeNumber(int v) throws IOException {
+        if (!skipValue()) {
+            delegate.writeNumber(v);
+        }
+    }
+
+    @Override
+    public void writeNumber(long v) throws IOException {
+        if (!skipValue()) {
+            delegate.writeNumber(v);
+        }
+    }
+
+    @Override
+    public void writeNumber(BigInteger v) throws IOException {
+        if (!skipValue()) {
+            delegate.writeNumber(v);
+        }
+    }
+
+    @Override
+    public void writeNumber(double v) throws IOException {
+        if (!skipValue()) {
+            delegate.writeNumber(v);
+        }
+    }
+
+    @Override
+    public void writeNumber(float v) throws IOException {
+        if (!skipValue()) {
+            delegate.writeNumber(v);
+        }
+    }
+
+    @Override
+    public void writeNumber(BigDecimal v) throws IOException {
+        if (!skipValue()) {
+            delegate.writeNumber(v);
+        }
+    }
+
+    @Override
+    public void writeNumber(String encodedValue) throws IOException {
+        if (!skipValue()) {
+            delegate.writeNumber(encodedValue);
+        }
+    }
+
+    public void writeNumber(char[] encodedValueBuffer, int offset, int len) throws IOException {
+        if (!skipValue()) {
+            delegate.writeNumber(new String(encodedValueBuffer, offset, len));
+        }
+    }
+
+    @Override
+    public void writeBoolean(boolean state) throws IOException {
+        if (!skipValue()) {
+            delegate.writeBoolean(state);
+        }
+    }
+
+    @Override
+    public void writeNull() throws IOException {
+        if (!skipValue()) {
+            delegate.writeNull();
+        }
+    }
+}
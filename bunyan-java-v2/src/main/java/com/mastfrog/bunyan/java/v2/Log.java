@@ -23,6 +23,8 @@
  */
 package com.mastfrog.bunyan.java.v2;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.function.Supplier;
 
 /**
@@ -65,6 +67,25 @@ public interface Log extends AutoCloseable {
      */
     public Log message(String msg);
 
+    /**
+     * Set the message for this log record from a template and arguments,
+     * which are only formatted if the record is written - when it is closed,
+     * or with asynchronous logging, on the async logging thread. As with
+     * message(String), additional text is concatenated to it.
+     * <p>
+     * The default implementation formats the template immediately and
+     * passes the result to <code>message(String)</code>.
+     * </p>
+     *
+     * @see MessageTemplate
+     * @param template A template
+     * @param args The arguments to the template
+     * @return this
+     */
+    public default Log message(MessageTemplate template, Object... args) {
+        return message(template.format(args));
+    }
+
     /**
      * Add some object to the log record. If it is serializable by Jackson, its
      * key/value pairs will be incorporated into this log record; if it is a
@@ -92,13 +113,114 @@ public interface Log extends AutoCloseable {
 
     public Log add(String name, boolean value);
 
+    /**
+     * Add a double without boxing it. NaN and infinite values are written as
+     * strings, since JSON has no representation for them. The default
+     * implementation boxes it and calls <code>add(String, Object)</code>.
+     *
+     * @param name The key
+     * @param value The value
+     * @return this
+     */
+    public default Log add(String name, double value) {
+        return add(name, (Object) value);
+    }
+
+    /**
+     * Add a float without boxing it or widening it to a double. The default
+     * implementation boxes it and calls <code>add(String, Object)</code>.
+     *
+     * @param name The key
+     * @param value The value
+     * @return this
+     */
+    public default Log add(String name, float value) {
+        return add(name, (Object) value);
+    }
+
+    /**
+     * Add a string or other character sequence. A character sequence which
+     * is not a String is copied when it is added, so later changes to it are
+     * not seen. The default implementation passes its string value to
+     * <code>add(String, Object)</code>.
+     *
+     * @param name The key
+     * @param value The value
+     * @return this
+     */
+    public default Log add(String name, CharSequence value) {
+        return add(name, value == null ? null : (Object) value.toString());
+    }
+
+    /**
+     * Add a duration, which is written as a number of milliseconds (with a
+     * fractional part if it has sub-millisecond precision). Durations passed
+     * to <code>add(String, Object)</code> are handled the same way, and the
+     * default implementation simply calls it.
+     *
+     * @param name The key
+     * @param value The value
+     * @return this
+     */
+    public default Log addDuration(String name, Duration value) {
+        return add(name, (Object) value);
+    }
+
+    /**
+     * Add an instant, which is written as an ISO-8601 string in UTC. Instants
+     * passed to <code>add(String, Object)</code> are handled the same way,
+     * and the default implementation simply calls it.
+     *
+     * @param name The key
+     * @param value The value
+     * @return this
+     */
+    public default Log addInstant(String name, Instant value) {
+        return add(name, (Object) value);
+    }
+
+    /**
+     * Add a value which is only computed if the record is actually written.
+     * <p>
+     * With synchronous logging, for records held by a buffering child logger,
+     * or if the value's key is "msg", the supplier is called from
+     * <code>close()</code>, on the thread that calls it. With asynchronous
+     * logging it is called later, by the async logging thread, so that
+     * expensive diagnostics cost the logging thread nothing. That means:
+     * </p>
+     * <ul>
+     * <li>The supplier must only read state which is safe to read from
+     * another thread - immutable objects, values captured in final or
+     * effectively final local variables, or objects that are themselves
+     * thread-safe. Do not capture collections or buffers which the logging
+     * thread goes on to modify or reuse.</li>
+     * <li>The value reflects that state as of when the supplier runs, not as
+     * of when the record was closed - capture a snapshot first if that
+     * matters.</li>
+     * <li>The supplier must not block for long, since it holds up the records
+     * queued behind it.</li>
+     * <li>An exception thrown by the supplier is not seen by the logging
+     * thread; it is reported and the field's value is a description of
+     * it.</li>
+     * </ul>
+     * <p>
+     * Suppliers which cannot follow these rules can be kept on the logging
+     * thread with
+     * <code>LoggingConfig.Builder.evaluateLazyValuesOnLoggingThread()</code>.
+     * </p>
+     *
+     * @param name The key
+     * @param value A supplier of the value
+     * @return this
+     */
     public Log addLazy(String name, Supplier<Object> value);
 
     public Log addIfNotNull(String name, Object value);
 
     /**
      * Add an error. The error's message becomes the message of this log record;
-     * its stack is serialized as JSON.
+     * its stack is serialized as JSON - as a bunyan-style <code>err</code>
+     * object if <code>LoggingConfig.Builder.compactErrors()</code> was used.
      *
      * @param t A throwable
      * @return this
@@ -24,11 +24,8 @@
 package com.mastfrog.bunyan.java.v2;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.mastfrog.util.strings.Strings;
 import com.mastfrog.util.collections.CollectionUtils;
-import com.mastfrog.util.collections.MapBuilder2;
 import static com.mastfrog.util.preconditions.Checks.notNull;
-import com.mastfrog.util.strings.AppendableCharSequence;
 import com.mastfrog.util.time.TimeUtil;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
@@ -36,9 +33,12 @@ import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -54,7 +54,7 @@ class LogImpl implements Log {
     final String name;
     @JsonProperty("level")
     LogLevel level;
-    private final List<Object> m = new ArrayList<>(10);
+    private final List<Object> m;
 
     public static final String DEBUG = "debug";
     public static final String ERROR = "error";
@@ -65,16 +65,138 @@ class LogImpl implements Log {
     private final LoggingConfig config;
     private final JSONContext ctx;
     private final String oldCtx;
+    private boolean unfiltered;
+    private TailBuffer tail;
+    // Non-null only in pooled mode, and only until close() hands it off
+    private PooledRecord record;
+    private final boolean pooled;
 
     @SuppressWarnings("LeakingThisInConstructor")
     LogImpl(String name, LogLevel level, LoggingConfig config) {
-        this.ctx = new JSONContext(config);
+        RecordPool pool = config.recordPool();
+        if (pool != null) {
+            record = pool.take();
+            pooled = true;
+            ctx = record.context();
+            m = null;
+        } else {
+            pooled = false;
+            ctx = new JSONContext(config);
+            m = new ArrayList<>(10);
+        }
         this.name = name;
         this.level = level;
         this.config = config;
         oldCtx = LogContext.enter(name);
     }
 
+    private PooledRecord record() {
+        PooledRecord result = record;
+        if (result == null) {
+            throw new IllegalStateException("Pooled log record for " + name
+                    + " used after close()");
+        }
+        return result;
+    }
+
+    /**
+     * Mark this record as exempt from the configured record filter - used
+     * for records the filter itself generates.
+     */
+    LogImpl unfiltered() {
+        unfiltered = true;
+        return this;
+    }
+
+    /**
+     * Hold this record in the passed buffer if it is below info level, and
+     * flush the buffer ahead of it if it is error or fatal.
+     */
+    LogImpl bufferingTo(TailBuffer tail) {
+        this.tail = tail;
+        return this;
+    }
+
+    /**
+     * Find the first message text without evaluating anything lazy, for
+     * use by record filters.
+     */
+    CharSequence firstMessage() {
+        if (pooled) {
+            return record().firstMessage();
+        }
+        for (int i = 0; i < m.size(); i++) {
+            Object o = m.get(i);
+            if (o instanceof CharSequence) {
+                return (CharSequence) o;
+            } else if (o instanceof FormattedMessage) {
+                // Filters see the template, so records from one call
+                // site are treated alike, and nothing is formatted
+                return ((FormattedMessage) o).template().pattern();
+            } else if (o instanceof AbstractSingletonMap.OfObject) {
+                AbstractSingletonMap am = (AbstractSingletonMap) o;
+                if ("msg".equals(am.key()) && am.getValue() instanceof CharSequence) {
+                    return (CharSequence) am.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Build the message as it will be written, for comparing records by
+     * message. Templates are formatted (once - the result is reused when the
+     * record is written), but lazy values, including a lazy "msg", are not
+     * evaluated.
+     */
+    CharSequence renderedMessage() {
+        if (pooled) {
+            return record().renderedMessage();
+        }
+        MessageFragments msg = new MessageFragments(config.isExactMessageDeduplication());
+        for (int i = 0; i < m.size(); i++) {
+            Object o = m.get(i);
+            if (o instanceof FormattedMessage) {
+                msg.add(((FormattedMessage) o).format());
+            } else if (o instanceof CharSequence || o instanceof Boolean || o instanceof Number) {
+                msg.add(o);
+            } else if (o instanceof AbstractSingletonMap.OfObject) {
+                AbstractSingletonMap am = (AbstractSingletonMap) o;
+                if ("msg".equals(am.key()) && am.getValue() instanceof CharSequence) {
+                    msg.add(am.getValue());
+                }
+            } else if (o instanceof Map<?, ?> && !(o instanceof AbstractSingletonMap)) {
+                Object val = ((Map<?, ?>) o).get("msg");
+                if (val instanceof CharSequence) {
+                    msg.add(val);
+                }
+            }
+        }
+        return msg.isEmpty() ? null : msg.toString();
+    }
+
+    /**
+     * Find the type of the first throwable added to this record, if any,
+     * without evaluating anything lazy.
+     */
+    Class<?> firstThrowableType() {
+        if (pooled) {
+            return record().firstThrowableType();
+        }
+        for (int i = 0; i < m.size(); i++) {
+            Object o = m.get(i);
+            if (o instanceof Throwable) {
+                return o.getClass();
+            } else if (o instanceof AbstractSingletonMap.OfObject) {
+                Object val = ((AbstractSingletonMap) o).getValue();
+                if (val instanceof Throwable) {
+                    return val.getClass();
+                }
+            }
+        }
+        return null;
+    }
+
     public Log escalate(LogLevel newLevel) {
         if (notNull("newLevel", newLevel).intValue() > level.intValue()) {
             this.level = newLevel;
@@ -84,6 +206,10 @@ class LogImpl implements Log {
 
     @Override
     public Log message(String msg) {
+        if (pooled) {
+            record().addObject("msg", notNull("msg", msg));
+            return this;
+        }
         m.add(AbstractSingletonMap.ofObject("msg", notNull("msg", msg)));
         return this;
     }
@@ -96,19 +222,51 @@ class LogImpl implements Log {
         return LogLevel.ERROR;
     }
 
+    @Override
+    public Log message(MessageTemplate template, Object... args) {
+        return addFormatted(new FormattedMessage(notNull("template", template), args));
+    }
+
+    private Log addFormatted(FormattedMessage msg) {
+        if (pooled) {
+            record().addFormatted(msg);
+            return this;
+        }
+        m.add(msg);
+        return this;
+    }
+
     @Override
     public Log add(Object object) {
+        if (object instanceof FormattedMessage) {
+            // From a logger that cached records before logging was configured
+            return addFormatted((FormattedMessage) object);
+        }
         if (config.isEscalate() && object instanceof Throwable) {
             escalate(levelForThrowable(object));
         }
+        if (pooled) {
+            // The pooled encoder decides how to serialize each value
+            record().addUnkeyed(notNull("object", object));
+            return this;
+        }
         m.add(notNull("object", object));
-        if (!maybeCheckMap(object)) {
+        if (!maybeCheckMap(object) && !isCompactError(object)) {
             ctx.check(object);
         }
         return this;
     }
 
+    private boolean isCompactError(Object o) {
+        // Encoded as maps of strings, which never need Jackson
+        return o instanceof Throwable && config.errorEncoder() != null;
+    }
+
     private boolean maybeCheckMap(Object o) {
+        if (o instanceof AbstractSingletonMap.OfSupplier) {
+            // Checked when, and on the thread where, it is evaluated
+            return true;
+        }
         if (o instanceof Map<?, ?>) {
             for (Map.Entry<?, ?> e : ((Map<?, ?>) o).entrySet()) {
                 if (!(e.getValue() instanceof AbstractSingletonMap)) {
@@ -122,30 +280,108 @@ class LogImpl implements Log {
 
     @Override
     public Log add(String name, int value) {
+        if (pooled) {
+            record().addLong(notNull("name", name), value);
+            return this;
+        }
         m.add(AbstractSingletonMap.ofInt(name, value));
         return this;
     }
 
     @Override
     public Log add(String name, long value) {
+        if (pooled) {
+            record().addLong(notNull("name", name), value);
+            return this;
+        }
         m.add(AbstractSingletonMap.ofLong(name, value));
         return this;
     }
 
     @Override
     public Log add(String name, boolean value) {
+        if (pooled) {
+            record().addBoolean(notNull("name", name), value);
+            return this;
+        }
         m.add(AbstractSingletonMap.ofBoolean(name, value));
         return this;
     }
 
+    @Override
+    public Log add(String name, double value) {
+        if (pooled) {
+            record().addDouble(notNull("name", name), value);
+            return this;
+        }
+        m.add(AbstractSingletonMap.ofDouble(notNull("name", name), value));
+        return this;
+    }
+
+    @Override
+    public Log add(String name, float value) {
+        if (pooled) {
+            record().addFloat(notNull("name", name), value);
+            return this;
+        }
+        m.add(AbstractSingletonMap.ofFloat(notNull("name", name), value));
+        return this;
+    }
+
+    @Override
+    public Log add(String name, CharSequence value) {
+        // Copy mutable sequences now - the record may be encoded on
+        // another thread after close()
+        String str = value == null ? null : value.toString();
+        if (pooled) {
+            record().addObject(notNull("name", name), str);
+            return this;
+        }
+        m.add(AbstractSingletonMap.ofObject(notNull("name", name), str));
+        return this;
+    }
+
+    @Override
+    public Log addDuration(String name, Duration value) {
+        if (pooled) {
+            record().addDuration(notNull("name", name), value);
+            return this;
+        }
+        m.add(AbstractSingletonMap.ofDuration(notNull("name", name), value));
+        return this;
+    }
+
+    @Override
+    public Log addInstant(String name, Instant value) {
+        if (pooled) {
+            record().addInstant(notNull("name", name), value);
+            return this;
+        }
+        m.add(AbstractSingletonMap.ofInstant(notNull("name", name), value));
+        return this;
+    }
+
     @Override
     public Log add(String name, Object value) {
-        if (!maybeCheckMap(value)) {
-            ctx.check(value);
+        // Route values with a fixed JSON representation to the typed
+        // methods, so they never need checking or push a record onto Jackson
+        if (value instanceof CharSequence) {
+            return add(name, (CharSequence) value);
+        } else if (value instanceof Instant) {
+            return addInstant(name, (Instant) value);
+        } else if (value instanceof Duration) {
+            return addDuration(name, (Duration) value);
         }
         if (config.isEscalate() && value instanceof Throwable) {
             escalate(levelForThrowable(value));
         }
+        if (pooled) {
+            record().addObject(notNull("name", name), value);
+            return this;
+        }
+        if (!maybeCheckMap(value) && !isCompactError(value)) {
+            ctx.check(value);
+        }
         m.add(AbstractSingletonMap.ofObject(notNull("name", name), value));
         return this;
     }
@@ -155,12 +391,21 @@ class LogImpl implements Log {
         if (config.isEscalate()) {
             escalate(levelForThrowable(error));
         }
-        m.add(AbstractSingletonMap.ofObject("error", notNull("error", error)));
+        String key = config.errorEncoder() == null ? "error" : "err";
+        if (pooled) {
+            record().addObject(key, notNull("error", error));
+            return this;
+        }
+        m.add(AbstractSingletonMap.ofObject(key, notNull("error", error)));
         return this;
     }
 
     @Override
     public Log addLazy(String key, Supplier<Object> val) {
+        if (pooled) {
+            record().addLazy(notNull("key", key), notNull("val", val));
+            return this;
+        }
         m.add(AbstractSingletonMap.lazy(key, val));
         return this;
     }
@@ -190,37 +435,87 @@ class LogImpl implements Log {
     public void close() {
         LogContext.exitTo(oldCtx);
         ctx.clear();
-        if (!config.isEnabled(name, level)) {
+        // Buffered records are kept whether or not their level is enabled,
+        // since the point is to have them if something fails
+        boolean buffer = tail != null && level.intValue() < LogLevel.INFO_LEVEL;
+        if (!buffer && !config.isEnabled(name, level)) {
+            releaseRecord();
+            return;
+        }
+        if (!buffer && !unfiltered && !config.admit(name, level, this)) {
+            releaseRecord();
             return;
         }
         config.decorate(this);
-        LogSink sink = config.sinkFor(name, level);
-        AppendableCharSequence msg = new AppendableCharSequence(60);
-        MapBuilder2<String, Object> mb = CollectionUtils.map();
+        LoggingMetrics metrics = config.metrics();
+        if (metrics != null && !buffer) {
+            metrics.onRecord(name, level);
+        }
+        LogSink sink = buffer ? LogSink.NULL : config.sinkFor(name, level);
+        // Lazy values in records bound for the async queue are evaluated
+        // by the async logging thread
+        boolean defer = !buffer && sink instanceof AsyncLogSink && config.isDeferLazyValues();
+        if (pooled) {
+            closePooled(sink, buffer, defer);
+            return;
+        }
+        MessageFragments msg = new MessageFragments(config.isExactMessageDeduplication());
+        ThrowableEncoder errors = config.errorEncoder();
+        // A plain mutable map, so sequence numbers can be stamped into it
+        // when it is dequeued, if that is configured
+        Map<String, Object> mb = defer ? new DeferredValuesRecord(m.size() + 12)
+                : new LinkedHashMap<>(m.size() + 12);
+        // Once a message template is seen, the rest of the message is
+        // assembled by the async logging thread
+        DeferredMessage deferredMessage = null;
         for (Iterator<Object> it = m.iterator(); it.hasNext();) {
             Object o = it.next();
-            CharSequence s = null;
+            // A piece of the message - a CharSequence, or a Boolean or Number
+            Object s = null;
             if (o == null) {
                 continue;
+            } else if (o instanceof FormattedMessage) {
+                it.remove();
+                if (defer) {
+                    if (deferredMessage == null) {
+                        deferredMessage = new DeferredMessage(msg);
+                    }
+                    deferredMessage.add((FormattedMessage) o);
+                    continue;
+                }
+                s = ((FormattedMessage) o).format();
             } else if (o instanceof CharSequence) {
                 s = (CharSequence) o;
                 it.remove();
             } else if (o instanceof Boolean || o instanceof Number) {
-                s = o.toString();
+                s = o;
             } else if (o instanceof Map<?, ?>) {
                 Map<?, ?> m = ((Map<?, ?>) o);
                 if (m instanceof AbstractSingletonMap) {
                     AbstractSingletonMap am = (AbstractSingletonMap) m;
                     String key = am.key();
+                    boolean lazy = am instanceof AbstractSingletonMap.OfSupplier;
+                    if (defer && lazy && !"msg".equals(key)) {
+                        ((DeferredValuesRecord) mb).defer(key,
+                                ((AbstractSingletonMap.OfSupplier) am).supplier());
+                        it.remove();
+                        continue;
+                    }
                     Object val = am.getValue();
+                    if (errors != null && val instanceof Throwable) {
+                        val = errors.toMap((Throwable) val);
+                    } else if (lazy) {
+                        // Never checked when it was added
+                        ctx.check(val);
+                    }
                     if ("msg".equals(key)) {
                         if (val instanceof CharSequence) {
                             s = (CharSequence) val;
                         } else {
-                            mb.map("_msg").to(val);
+                            mb.put("_msg", val);
                         }
                     } else {
-                        mb.map(key).to(val);
+                        mb.put(key, val);
                     }
                 } else {
                     for (Map.Entry<?, ?> e : m.entrySet()) {
@@ -229,11 +524,11 @@ class LogImpl implements Log {
                             if (ob instanceof CharSequence) {
                                 s = (CharSequence) ob;
                             } else {
-                                mb.map("_msg").to(ob);
+                                mb.put("_msg", ob);
                             }
                         } else {
                             Object key = e.getKey();
-                            mb.map(Objects.toString(key)).to(e.getValue());
+                            mb.put(Objects.toString(key), e.getValue());
                         }
                     }
                 }
@@ -242,45 +537,61 @@ class LogImpl implements Log {
                 List<?> l = (List<?>) o;
                 int sz = l.size();
                 for (int i = 0; i < sz; i++) {
-                    mb.map(Integer.toString(i)).to(l.get(i));
+                    mb.put(Integer.toString(i), l.get(i));
                 }
+            } else if (errors != null && o instanceof Throwable) {
+                mb.put("err", errors.toMap((Throwable) o));
             } else {
                 try {
                     Map<Object, Object> mm = CollectionUtils.uncheckedMap(config._mapper().readValue(ctx.writeValueAsBytes(o), Map.class));
                     for (Map.Entry<?, ?> e : mm.entrySet()) {
-                        mb.map(Objects.toString(e.getKey())).to(e.getValue());
+                        mb.put(Objects.toString(e.getKey()), e.getValue());
                     }
                 } catch (IOException ex) {
                     LoggingLogging.log("Exception in map conversion", ex, true);
                 }
             }
-            if (o instanceof Map<?, ?>) {
+            if (o instanceof Map<?, ?> && !(o instanceof AbstractSingletonMap)) {
+                // Singleton maps were fully handled above, and calling
+                // getValue() again would evaluate lazy values twice
                 Map<?, ?> m = (Map) o;
                 for (Map.Entry<?, ?> e : m.entrySet()) {
                     if (!"msg".equals(e.getKey())) {
-                        mb.map(Objects.toString(e.getKey())).to(e.getValue());
+                        mb.put(Objects.toString(e.getKey()), e.getValue());
                     }
                 }
             }
-            if (s != null && !Strings.charSequenceContains(msg, s, false)) {
-                if (msg.length() != 0) {
-                    msg.append(' ');
+            if (s != null) {
+                if (deferredMessage != null) {
+                    deferredMessage.add(s);
+                } else {
+                    msg.add(s);
                 }
-                msg.append(s);
             }
         }
         String hn = config.hostname();
         if (hn == null) {
             hn = hostname();
         }
-        mb.map("name").to(name)
-                .map("msg").to(msg.toString())
-                .map("v").to(0)
-                .map("time").to(formattedNow())
-                .map("pid").to(pid())
-                .map("level").to(level.intValue())
-                .map("hostname").to(hn);
-        sink.push(ctx, mb.build());
+        mb.put("name", name);
+        if (deferredMessage != null) {
+            ((DeferredValuesRecord) mb).defer("msg", deferredMessage);
+        } else {
+            mb.put("msg", msg.toString());
+        }
+        mb.put("v", 0);
+        mb.put("time", formattedNow());
+        mb.put("pid", pid());
+        mb.put("level", level.intValue());
+        mb.put("hostname", hn);
+        if (buffer) {
+            tail.add(ctx, mb);
+        } else {
+            if (tail != null && level.isSevere()) {
+                tail.flushTo(sink);
+            }
+            sink.push(ctx, mb);
+        }
         m.clear();
     }
 
@@ -292,6 +603,45 @@ class LogImpl implements Log {
         return this;
     }
 
+    private void releaseRecord() {
+        PooledRecord rec = record;
+        if (rec != null) {
+            record = null;
+            rec.release();
+        }
+    }
+
+    private void closePooled(LogSink sink, boolean buffer, boolean defer) {
+        // Hand off ownership - any use of this Log from here on fails
+        // rather than touching a record which may already be reused
+        PooledRecord rec = record();
+        record = null;
+        try {
+            rec.resolve(defer);
+            String hn = config.hostname();
+            if (hn == null) {
+                hn = hostname();
+            }
+            rec.putObject("name", name);
+            rec.putMessage("msg");
+            rec.putLong("v", 0);
+            rec.putObject("time", formattedNow());
+            rec.putLong("pid", pid());
+            rec.putLong("level", level.intValue());
+            rec.putObject("hostname", hn);
+            if (buffer) {
+                tail.add(rec.context(), rec);
+                return;
+            }
+            if (tail != null && level.isSevere()) {
+                tail.flushTo(sink);
+            }
+            rec.pushTo(sink);
+        } finally {
+            rec.release();
+        }
+    }
+
     @Override
     public String toString() {
         return name + "(" + level + ")";
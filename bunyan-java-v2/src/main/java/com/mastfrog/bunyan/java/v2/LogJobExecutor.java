@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What AsyncLogQueue needs of the executor that writes records: jobs are
+ * run in the background and never return a result, and on shutdown every
+ * job is still run - either handed back to the caller, or run by the
+ * submitting thread once the executor is shut down.
+ *
+ * @author Tim Boudreau
+ */
+interface LogJobExecutor {
+
+    /**
+     * Run a job in the background, or synchronously if shut down.
+     *
+     * @param job A job
+     */
+    void execute(Runnable job);
+
+    /**
+     * Stop the background thread(s) and run anything still queued on the
+     * calling thread.
+     */
+    void shutdown();
+
+    /**
+     * Stop the background thread(s) and return anything still queued.
+     *
+     * @return The jobs that were not run
+     */
+    List<Runnable> shutdownNow();
+
+    boolean isShutdown();
+
+    boolean isTerminated();
+
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * The number of jobs waiting to be run.
+     *
+     * @return A count
+     */
+    int pendingJobs();
+}
@@ -155,4 +155,19 @@ final class LogLevel implements Comparable<LogLevel> {
     boolean isSevere() {
         return intValue >= ERROR_LEVEL;
     }
+
+    Level toLevel() {
+        if (intValue >= FATAL_LEVEL) {
+            return Level.FATAL;
+        } else if (intValue >= ERROR_LEVEL) {
+            return Level.ERROR;
+        } else if (intValue >= WARN_LEVEL) {
+            return Level.WARN;
+        } else if (intValue >= INFO_LEVEL) {
+            return Level.INFO;
+        } else if (intValue >= DEBUG_LEVEL) {
+            return Level.DEBUG;
+        }
+        return Level.TRACE;
+    }
 }
@@ -0,0 +1,50 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+/**
+ * Decides whether a log record should be written at all, before any work is
+ * done to assemble or serialize it - the hook for sampling and rate limiting.
+ * Called for every record whose level is enabled, on the thread that closes
+ * the record, so implementations must be thread-safe, and should not block,
+ * take locks or allocate.
+ *
+ * @author Tim Boudreau
+ */
+public interface LogRecordFilter {
+
+    /**
+     * Determine if a record should be logged.
+     *
+     * @param loggerName The logger name
+     * @param level The level of the record
+     * @param message The message of the record, if one was set - may be null
+     * @return true if the record should be written
+     */
+    boolean accept(String loggerName, Level level, CharSequence message);
+
+    default LogRecordFilter and(LogRecordFilter other) {
+        return (name, level, msg) -> accept(name, level, msg) && other.accept(name, level, msg);
+    }
+}
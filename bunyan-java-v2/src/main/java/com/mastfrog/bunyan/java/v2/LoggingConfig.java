@@ -56,6 +56,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
@@ -125,6 +126,28 @@ public final class LoggingConfig implements AutoCloseable {
      * <i>created</i> not created before a record that is subsequently closed.
      */
     public static final String PROP_SEQ_NUMBERS = "bunyan-v2-seq-numbers";
+    /**
+     * For use with <code>LoggingConfig.fromSystemProperties()</code> or
+     * <code>LoggingConfig.fromProperties(Properties)</code>: If sequence
+     * numbers are enabled, how they are assigned. The possible values are
+     * <code>global</code> (a single shared atomic counter - the default),
+     * <code>blocks</code> (each thread takes a block of numbers from the
+     * shared counter and hands them out without contention) or
+     * <code>dequeue</code> (numbers are assigned by the async logging thread
+     * as records are taken off the queue; falls back to <code>global</code>
+     * if logging is not asynchronous).
+     */
+    public static final String PROP_SEQ_NUMBER_MODE = "bunyan-v2-seq-number-mode";
+    /**
+     * For use with <code>LoggingConfig.fromSystemProperties()</code> or
+     * <code>LoggingConfig.fromProperties(Properties)</code>: The number of
+     * sequence numbers each thread reserves at a time when the sequence number
+     * mode is <code>blocks</code>. The default is 64.
+     */
+    public static final String PROP_SEQ_NUMBER_BLOCK_SIZE = "bunyan-v2-seq-number-block-size";
+    public static final String PROP_VALUE_SEQ_NUMBER_MODE_GLOBAL = "global";
+    public static final String PROP_VALUE_SEQ_NUMBER_MODE_BLOCKS = "blocks";
+    public static final String PROP_VALUE_SEQ_NUMBER_MODE_DEQUEUE = "dequeue";
     /**
      * For use with <code>LoggingConfig.fromSystemProperties()</code> or
      * <code>LoggingConfig.fromProperties(Properties)</code>: If "true", log to
@@ -240,6 +263,87 @@ public final class LoggingConfig implements AutoCloseable {
     public static final String PROP_USE_SHUTDOWN_HOOK = "bunyan-v2-shutdown-hook";
 
     public static final String PROP_LOG_ROTATION_MAX_SIZE_MB = "bunyan-v2-log-rotation-size-mb";
+    /**
+     * For use with <code>LoggingConfig.fromSystemProperties()</code> and
+     * <code>LoggingConfig.fromProperties(Properties)</code>: If set to a
+     * number of milliseconds greater than zero, records identical to one
+     * logged within that window (same logger, level, message and exception
+     * type) are counted rather than written, and a single record with the
+     * count is logged when the window closes.
+     */
+    public static final String PROP_SUPPRESS_DUPLICATES_MS = "bunyan-v2-suppress-duplicates-ms";
+    /**
+     * For use with <code>LoggingConfig.fromSystemProperties()</code> and
+     * <code>LoggingConfig.fromProperties(Properties)</code>: If "true", log
+     * records, their field storage and JSON encoding buffers are recycled
+     * rather than garbage collected; if set to a number, that is the maximum
+     * number of idle records kept.
+     */
+    public static final String PROP_POOLED_RECORDS = "bunyan-v2-pooled-records";
+    /**
+     * For use with <code>LoggingConfig.fromSystemProperties()</code> and
+     * <code>LoggingConfig.fromProperties(Properties)</code>: If "true", values
+     * added with <code>Log.addLazy()</code> are evaluated by the thread which
+     * closes the log record even when logging asynchronously, rather than by
+     * the async logging thread.
+     */
+    public static final String PROP_EAGER_LAZY_VALUES = "bunyan-v2-eager-lazy-values";
+    /**
+     * For use with <code>LoggingConfig.fromSystemProperties()</code> and
+     * <code>LoggingConfig.fromProperties(Properties)</code>: If "true", the
+     * pieces of a log record's message are only deduplicated if they are
+     * equal, rather than if the message so far contains them, which is
+     * faster for records with many pieces.
+     */
+    public static final String PROP_EXACT_MESSAGE_DEDUPLICATION = "bunyan-v2-exact-message-dedup";
+    /**
+     * For use with <code>LoggingConfig.fromSystemProperties()</code> and
+     * <code>LoggingConfig.fromProperties(Properties)</code>: If "true",
+     * throwables are written as bunyan-style <code>err</code> objects with
+     * the default limits.
+     */
+    public static final String PROP_COMPACT_ERRORS = "bunyan-v2-compact-errors";
+    /**
+     * For use with <code>LoggingConfig.fromSystemProperties()</code> and
+     * <code>LoggingConfig.fromProperties(Properties)</code>: The size in bytes
+     * beyond which properties of a log record are left out. Setting this or
+     * PROP_MAX_STRING_LENGTH turns on record limits, with defaults for
+     * anything unset.
+     */
+    public static final String PROP_MAX_RECORD_BYTES = "bunyan-v2-max-record-bytes";
+    /**
+     * For use with <code>LoggingConfig.fromSystemProperties()</code> and
+     * <code>LoggingConfig.fromProperties(Properties)</code>: The maximum
+     * number of characters of any string in a log record.
+     */
+    public static final String PROP_MAX_STRING_LENGTH = "bunyan-v2-max-string-length";
+    /**
+     * For use with <code>LoggingConfig.fromSystemProperties()</code> and
+     * <code>LoggingConfig.fromProperties(Properties)</code>: If "true",
+     * metrics about the logging pipeline are collected.
+     */
+    public static final String PROP_METRICS = "bunyan-v2-metrics";
+    /**
+     * For use with <code>LoggingConfig.fromSystemProperties()</code> and
+     * <code>LoggingConfig.fromProperties(Properties)</code>: A name to publish
+     * logging metrics as a JMX MBean under; implies PROP_METRICS.
+     */
+    public static final String PROP_METRICS_JMX_NAME = "bunyan-v2-metrics-jmx-name";
+    /**
+     * For use with <code>LoggingConfig.fromSystemProperties()</code> and
+     * <code>LoggingConfig.fromProperties(Properties)</code>: An interval in
+     * seconds at which to log metrics as records of the logger named
+     * "bunyan-metrics"; implies PROP_METRICS.
+     */
+    public static final String PROP_METRICS_LOG_SECONDS = "bunyan-v2-metrics-log-seconds";
+    /**
+     * For use with <code>LoggingConfig.fromSystemProperties()</code> and
+     * <code>LoggingConfig.fromProperties(Properties)</code>: If "true", log
+     * asynchronously in the mode meant for applications which log from
+     * virtual threads - see
+     * <code>Builder.asyncLoggingForVirtualThreads()</code>.
+     */
+    public static final String PROP_VIRTUAL_THREAD_ASYNC = "bunyan-v2-virtual-thread-async";
 
     private static ThreadLocal<LoggingConfig> TAKING_OVER = new ThreadLocal<>();
 
@@ -261,6 +365,24 @@ public final class LoggingConfig implements AutoCloseable {
     private final String hostname;
     @JsonProperty("escalateOnError")
     private final boolean escalateOnError;
+    @JsonProperty("filter")
+    private final LogRecordFilter recordFilter;
+    @JsonIgnore
+    private final RecordThrottle throttle;
+    @JsonProperty("duplicates")
+    private final DuplicateRecordSuppressor duplicates;
+    @JsonProperty("pool")
+    private final RecordPool recordPool;
+    @JsonProperty("deferLazyValues")
+    private final boolean deferLazyValues;
+    @JsonProperty("exactMessageDedup")
+    private final boolean exactMessageDeduplication;
+    @JsonIgnore
+    private final ThrowableEncoder errors;
+    @JsonIgnore
+    private final RecordLimits limits;
+    @JsonIgnore
+    private final LoggingMetrics metrics;
 
     @SuppressWarnings("LeakingThisInConstructor")
     LoggingConfig(ObjectMapper mapper, int minLevel,
@@ -270,7 +392,13 @@ public final class LoggingConfig implements AutoCloseable {
             boolean recordCaller, int asyncThreads,
             DefaultLoggingConfigHandling defaultHandling, int asyncThreadPriority,
             JsonSerializationPolicy jsonPolicy, String hostname,
-            boolean escalateOnError, boolean useShutdownHook) {
+            boolean escalateOnError, boolean useShutdownHook,
+            DequeueSequenceStamper dequeueSequence, RecordThrottle throttle,
+            LogRecordFilter recordFilter, DuplicateRecordSuppressor duplicates,
+            int recordPoolSize, boolean deferLazyValues,
+            boolean exactMessageDeduplication, ThrowableEncoder errors,
+            RecordLimits limits, LoggingMetrics.Options metricsOptions,
+            boolean writerThread) {
         this._mapper = mapper.copy();
         this._mapper.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS,
                 SerializationFeature.FAIL_ON_SELF_REFERENCES,
@@ -281,10 +409,20 @@ public final class LoggingConfig implements AutoCloseable {
         this.sinkRouter = sinkForNameAndLevel;
         this.hostname = hostname;
         this.escalateOnError = escalateOnError;
+        this.throttle = throttle;
+        this.recordFilter = recordFilter;
+        this.duplicates = duplicates;
+        this.deferLazyValues = deferLazyValues;
+        this.exactMessageDeduplication = exactMessageDeduplication;
+        this.errors = errors;
+        this.limits = limits;
+        this.metrics = metricsOptions == null ? null : new LoggingMetrics(this);
+        this.recordPool = recordPoolSize <= 0 ? null : new RecordPool(recordPoolSize, this);
         this.onShutdown = onShutdown;
         this.decorator = !recordCaller ? decorator
                 : decorator == null ? new RecordCallerDecorator() : decorator.andThen(new RecordCallerDecorator());
-        this.logQueue = new AsyncLogQueue(asyncThreads, asyncThreadPriority, useShutdownHook);
+        this.logQueue = new AsyncLogQueue(asyncThreads, asyncThreadPriority,
+                useShutdownHook, dequeueSequence, metrics, writerThread);
         if (useShutdownHook) {
             HookThread.add(this);
         }
@@ -398,6 +536,63 @@ public final class LoggingConfig implements AutoCloseable {
         return _mapper;
     }
 
+    boolean admit(String name, LogLevel level, LogImpl log) {
+        if (recordFilter == null && duplicates == null) {
+            return true;
+        }
+        // Collapse repeats first, so they are counted as repeats rather than
+        // consuming rate limits. Repeats must match the whole message, while
+        // rate limits apply to all records from a call site
+        if (duplicates != null && !duplicates.admit(name, level, log.renderedMessage(),
+                log.firstThrowableType())) {
+            return false;
+        }
+        return recordFilter == null || recordFilter.accept(name, level.toLevel(), log.firstMessage());
+    }
+
+    RecordPool recordPool() {
+        return recordPool;
+    }
+
+    boolean isDeferLazyValues() {
+        return deferLazyValues;
+    }
+
+    boolean isExactMessageDeduplication() {
+        return exactMessageDeduplication;
+    }
+
+    /**
+     * Get the encoder for throwables, if they are written as compact
+     * <code>err</code> objects.
+     *
+     * @return An encoder or null
+     */
+    ThrowableEncoder errorEncoder() {
+        return errors;
+    }
+
+    /**
+     * Get the limits on the size of log records, if any, whose counts of
+     * truncated content can be monitored, and which can be shared with
+     * other things that write records.
+     *
+     * @return The limits, or null if records are not limited
+     */
+    public RecordLimits recordLimits() {
+        return limits;
+    }
+
+    /**
+     * Get the metrics for this configuration's logging pipeline, if they are
+     * being collected.
+     *
+     * @return The metrics, or null if they are not collected
+     */
+    public LoggingMetrics metrics() {
+        return metrics;
+    }
+
     void decorate(Log log) {
         if (decorator != null) {
             decorator.accept(log);
@@ -443,6 +638,15 @@ public final class LoggingConfig implements AutoCloseable {
      */
     public final void shutdown() {
         try {
+            if (duplicates != null) {
+                duplicates.flush();
+            }
+            if (throttle != null) {
+                throttle.emitSummaries();
+            }
+            if (metrics != null) {
+                metrics.shutdown();
+            }
             logQueue.shutdown();
         } finally {
             onShutdown.toNonThrowing().run();
@@ -553,7 +757,33 @@ public final class LoggingConfig implements AutoCloseable {
             b.recordCaller();
         }
         if ("true".equals(props.getProperty(PROP_SEQ_NUMBERS))) {
-            b.withSequenceNumbers();
+            String mode = props.getProperty(PROP_SEQ_NUMBER_MODE, PROP_VALUE_SEQ_NUMBER_MODE_GLOBAL);
+            switch (mode.toLowerCase()) {
+                case PROP_VALUE_SEQ_NUMBER_MODE_BLOCKS:
+                    int blockSize = BlockSequenceDecorator.DEFAULT_BLOCK_SIZE;
+                    String bs = props.getProperty(PROP_SEQ_NUMBER_BLOCK_SIZE);
+                    if (bs != null) {
+                        try {
+                            blockSize = Integer.parseInt(bs);
+                        } catch (NumberFormatException nfe) {
+                            LoggingLogging.log("Sequence block size not parseable: "
+                                    + bs + " for " + PROP_SEQ_NUMBER_BLOCK_SIZE, nfe);
+                        }
+                    }
+                    b.withBlockAllocatedSequenceNumbers("seq", 0L, blockSize);
+                    break;
+                case PROP_VALUE_SEQ_NUMBER_MODE_DEQUEUE:
+                    b.withSequenceNumbersAssignedAtDequeue();
+                    break;
+                case PROP_VALUE_SEQ_NUMBER_MODE_GLOBAL:
+                    b.withSequenceNumbers();
+                    break;
+                default:
+                    LoggingLogging.log(true, "Unknown " + PROP_SEQ_NUMBER_MODE
+                            + " '" + mode + "'.  Using default of "
+                            + PROP_VALUE_SEQ_NUMBER_MODE_GLOBAL + ".");
+                    b.withSequenceNumbers();
+            }
         }
         if ("true".equals(props.getProperty(PROP_LOG_CONSOLE))) {
             b.logToConsole();
@@ -580,6 +810,87 @@ public final class LoggingConfig implements AutoCloseable {
             }
         }
 
+        String pooled = props.getProperty(PROP_POOLED_RECORDS);
+        if ("true".equals(pooled)) {
+            b.pooledRecords();
+        } else if (pooled != null && !"false".equals(pooled)) {
+            try {
+                b.pooledRecords(Integer.parseInt(pooled.trim()));
+            } catch (NumberFormatException nfe) {
+                LoggingLogging.log("Record pool size not parseable: "
+                        + pooled + " for " + PROP_POOLED_RECORDS, nfe);
+            }
+        }
+
+        if ("true".equals(props.getProperty(PROP_EAGER_LAZY_VALUES))) {
+            b.evaluateLazyValuesOnLoggingThread();
+        }
+        if ("true".equals(props.getProperty(PROP_EXACT_MESSAGE_DEDUPLICATION))) {
+            b.deduplicateMessagePiecesExactly();
+        }
+        if ("true".equals(props.getProperty(PROP_COMPACT_ERRORS))) {
+            b.compactErrors();
+        }
+        if (props.containsKey(PROP_MAX_RECORD_BYTES) || props.containsKey(PROP_MAX_STRING_LENGTH)) {
+            int maxRecordBytes = RecordLimits.DEFAULT_MAX_RECORD_BYTES;
+            String recordBytes = props.getProperty(PROP_MAX_RECORD_BYTES);
+            if (recordBytes != null) {
+                try {
+                    maxRecordBytes = Integer.parseInt(recordBytes.trim());
+                } catch (NumberFormatException nfe) {
+                    LoggingLogging.log("Max record bytes not parseable: "
+                            + recordBytes + " for " + PROP_MAX_RECORD_BYTES, nfe);
+                }
+            }
+            int maxStringLength = RecordLimits.DEFAULT_MAX_STRING_LENGTH;
+            String stringLength = props.getProperty(PROP_MAX_STRING_LENGTH);
+            if (stringLength != null) {
+                try {
+                    maxStringLength = Integer.parseInt(stringLength.trim());
+                } catch (NumberFormatException nfe) {
+                    LoggingLogging.log("Max string length not parseable: "
+                            + stringLength + " for " + PROP_MAX_STRING_LENGTH, nfe);
+                }
+            }
+            b.limitRecords(maxRecordBytes, maxStringLength,
+                    RecordLimits.DEFAULT_MAX_ELEMENTS, RecordLimits.DEFAULT_MAX_DEPTH);
+        }
+        if ("true".equals(props.getProperty(PROP_METRICS))) {
+            b.collectMetrics();
+        }
+        String metricsJmxName = props.getProperty(PROP_METRICS_JMX_NAME);
+        if (metricsJmxName != null) {
+            b.publishMetricsToJmx(metricsJmxName);
+        }
+        String metricsLogSeconds = props.getProperty(PROP_METRICS_LOG_SECONDS);
+        if (metricsLogSeconds != null) {
+            try {
+                long seconds = Long.parseLong(metricsLogSeconds.trim());
+                if (seconds > 0) {
+                    b.logMetricsEvery(Duration.ofSeconds(seconds), "bunyan-metrics");
+                }
+            } catch (NumberFormatException nfe) {
+                LoggingLogging.log("Metrics log interval not parseable: "
+                        + metricsLogSeconds + " for " + PROP_METRICS_LOG_SECONDS, nfe);
+            }
+        }
+        if ("true".equals(props.getProperty(PROP_VIRTUAL_THREAD_ASYNC))) {
+            b.asyncLoggingForVirtualThreads();
+        }
+
+        String suppressDuplicates = props.getProperty(PROP_SUPPRESS_DUPLICATES_MS);
+        if (suppressDuplicates != null) {
+            try {
+                long ms = Long.parseLong(suppressDuplicates.trim());
+                if (ms > 0) {
+                    b.suppressDuplicateRecords(Duration.ofMillis(ms));
+                }
+            } catch (NumberFormatException nfe) {
+                LoggingLogging.log("Duplicate suppression window not parseable: "
+                        + suppressDuplicates + " for " + PROP_SUPPRESS_DUPLICATES_MS, nfe);
+            }
+        }
+
         if (props.containsKey(PROP_ASYNC_LOGGING_THREAD_PRIORITY)) {
             String priorityString = props.getProperty(PROP_ASYNC_LOGGING_THREAD_PRIORITY);
             int priority;
@@ -725,6 +1036,114 @@ public final class LoggingConfig implements AutoCloseable {
         }
     }
 
+    /**
+     * Sequence numbers where each thread reserves a block of numbers from the
+     * shared counter and hands them out locally, so the shared counter is only
+     * touched once per block. Numbers are unique, and ordered within a thread,
+     * but a thread which logs rarely may emit numbers lower than ones already
+     * emitted by busier threads - so across threads the ordering is only
+     * approximate.
+     */
+    static final class BlockSequenceDecorator implements LoggableConsumer<Log> {
+
+        static final int DEFAULT_BLOCK_SIZE = 64;
+        @JsonIgnore
+        private final AtomicLong nextBlock;
+        @JsonIgnore
+        private final ThreadLocal<long[]> block = ThreadLocal.withInitial(() -> new long[2]);
+        @JsonIgnore
+        private final String key;
+        @JsonProperty("blockSize")
+        private final int blockSize;
+
+        BlockSequenceDecorator(long start, String key, int blockSize) {
+            this.nextBlock = new AtomicLong(start);
+            this.key = notNull("key", key);
+            this.blockSize = greaterThanZero("blockSize", blockSize);
+        }
+
+        @JsonProperty("current")
+        public long currentValue() {
+            return nextBlock.get();
+        }
+
+        @JsonProperty("name")
+        public String name() {
+            return key;
+        }
+
+        @Override
+        public void accept(Log t) {
+            // [next, limit] - when they are equal, the block is used up
+            long[] b = block.get();
+            if (b[0] == b[1]) {
+                b[0] = nextBlock.getAndAdd(blockSize);
+                b[1] = b[0] + blockSize;
+            }
+            t.add(key, b[0]++);
+        }
+
+        @Override
+        public String toString() {
+            return "block-sequence-numbers(" + key + " blocks of " + blockSize
+                    + " next block at " + nextBlock.get() + ")";
+        }
+    }
+
+    /**
+     * Assigns sequence numbers on the async logging thread as records are
+     * taken off the queue, so request threads never touch the counter.
+     * Intended for use with a single async logging thread (the default) - with
+     * more than one, numbers are still unique, but reflect the order records
+     * were dequeued, not the order they were written.
+     */
+    static final class DequeueSequenceStamper implements Consumer<Map<String, Object>> {
+
+        @JsonIgnore
+        private final AtomicLong seq;
+        @JsonIgnore
+        private final String key;
+
+        DequeueSequenceStamper(long start, String key) {
+            this.seq = new AtomicLong(start);
+            this.key = notNull("key", key);
+        }
+
+        @JsonProperty("current")
+        public long currentValue() {
+            return seq.get();
+        }
+
+        @JsonProperty("name")
+        public String name() {
+            return key;
+        }
+
+        @Override
+        public void accept(Map<String, Object> logRecord) {
+            // The same record may be enqueued once per async sink it is
+            // routed to; only the first dequeue assigns a number
+            synchronized (logRecord) {
+                if (!logRecord.containsKey(key)) {
+                    try {
+                        if (logRecord instanceof PooledRecord) {
+                            ((PooledRecord) logRecord).putLong(key, seq.getAndIncrement());
+                            return;
+                        }
+                        logRecord.put(key, seq.getAndIncrement());
+                    } catch (UnsupportedOperationException ex) {
+                        LoggingLogging.log("Cannot add sequence number to unmodifiable record", ex);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "dequeue-sequence-numbers(" + key + " currently " + seq.get() + ")";
+        }
+    }
+
     enum DefaultLoggingConfigHandling {
         NON_DEFAULT,
         SET_IF_UNSET,
@@ -789,6 +1208,18 @@ public final class LoggingConfig implements AutoCloseable {
         private boolean escalateOnError = true;
         private boolean useShutdownHook = true;
         private long rotateFilesAboveMb = -1;
+        private DequeueSequenceStamper dequeueSequence;
+        private RecordThrottle.Builder throttle;
+        private LogRecordFilter recordFilter;
+        private long duplicateWindowNanos;
+        private int maxTrackedDuplicates = 1024;
+        private int recordPoolSize;
+        private boolean deferLazyValues = true;
+        private boolean exactMessageDeduplication;
+        private ThrowableEncoder errors;
+        private RecordLimits limits;
+        private LoggingMetrics.Options metrics;
+        private boolean writerThread;
 
         public Builder fileRotationThresholdMegabytes(long val) {
             rotateFilesAboveMb = val;
@@ -939,6 +1370,219 @@ public final class LoggingConfig implements AutoCloseable {
             return withLogDecorator(new SequenceDecorator(start, notNull("key", key)));
         }
 
+        /**
+         * Include sequence numbers under the key "seq", where each thread
+         * reserves blocks of 64 numbers at a time, avoiding contention on a
+         * single shared counter when many threads are logging. Numbers are
+         * unique, but only roughly ordered across threads.
+         *
+         * @return this
+         */
+        public Builder withBlockAllocatedSequenceNumbers() {
+            return withBlockAllocatedSequenceNumbers("seq", 0L, BlockSequenceDecorator.DEFAULT_BLOCK_SIZE);
+        }
+
+        /**
+         * Include sequence numbers, where each thread reserves blocks of
+         * numbers at a time, avoiding contention on a single shared counter
+         * when many threads are logging. Numbers are unique, but only roughly
+         * ordered across threads.
+         *
+         * @param key The key in the log record
+         * @param start The first number
+         * @param blockSize The number of sequence numbers a thread reserves at
+         * a time
+         * @return this
+         */
+        public Builder withBlockAllocatedSequenceNumbers(String key, long start, int blockSize) {
+            return withLogDecorator(new BlockSequenceDecorator(start, notNull("key", key), blockSize));
+        }
+
+        /**
+         * Include sequence numbers under the key "seq", assigned by the async
+         * logging thread as records are dequeued, so the threads doing the
+         * logging never contend on the counter. If asynchronous logging is not
+         * enabled, this is equivalent to <code>withSequenceNumbers()</code>.
+         *
+         * @return this
+         */
+        public Builder withSequenceNumbersAssignedAtDequeue() {
+            return withSequenceNumbersAssignedAtDequeue("seq", 0L);
+        }
+
+        /**
+         * Include sequence numbers assigned by the async logging thread as
+         * records are dequeued, so the threads doing the logging never contend
+         * on the counter. If asynchronous logging is not enabled, this is
+         * equivalent to <code>withSequenceNumbers(key, start)</code>.
+         *
+         * @param key The key in the log record
+         * @param start The first number
+         * @return this
+         */
+        public Builder withSequenceNumbersAssignedAtDequeue(String key, long start) {
+            dequeueSequence = new DequeueSequenceStamper(start, notNull("key", key));
+            return this;
+        }
+
+        private RecordThrottle.Builder throttle() {
+            if (throttle == null) {
+                throttle = new RecordThrottle.Builder();
+            }
+            return throttle;
+        }
+
+        /**
+         * Keep only a random sample of records for the given logger at the
+         * given level. Unless <code>rateLimitSevereRecordsToo()</code> is
+         * called, error and fatal records are always kept. The decision is
+         * made before the record is assembled or serialized, and the count of
+         * dropped records is periodically logged.
+         *
+         * @param logger The logger name
+         * @param level The level
+         * @param probability The fraction of records to keep, from 0 to 1
+         * @return this
+         */
+        public Builder sampleRecords(String logger, Level level, double probability) {
+            throttle().sample(logger, level, probability);
+            return this;
+        }
+
+        /**
+         * Limit the number of records the given logger may emit, using a
+         * token bucket which allows bursts of up to <code>burst</code>
+         * records. Unless <code>rateLimitSevereRecordsToo()</code> is called,
+         * error and fatal records are always kept.
+         *
+         * @param logger The logger name
+         * @param recordsPerSecond The sustained rate
+         * @param burst The maximum burst size
+         * @return this
+         */
+        public Builder rateLimit(String logger, int recordsPerSecond, int burst) {
+            throttle().rateLimit(logger, recordsPerSecond, burst);
+            return this;
+        }
+
+        /**
+         * Limit the number of records with the same message the given logger
+         * may emit, so one noisy call site cannot crowd out the rest. Messages
+         * are hashed into a fixed set of buckets, so distinct messages which
+         * collide share a limit.
+         *
+         * @param logger The logger name
+         * @param recordsPerSecond The sustained rate per message
+         * @param burst The maximum burst size per message
+         * @return this
+         */
+        public Builder rateLimitPerMessage(String logger, int recordsPerSecond, int burst) {
+            throttle().rateLimitPerMessage(logger, recordsPerSecond, burst);
+            return this;
+        }
+
+        /**
+         * By default, sampling and rate limits never drop error or fatal
+         * records; call this to apply them to all levels.
+         *
+         * @return this
+         */
+        public Builder rateLimitSevereRecordsToo() {
+            throttle().alwaysKeepSevere(false);
+            return this;
+        }
+
+        /**
+         * Set how often a record with the count of records dropped by
+         * sampling or rate limits is logged; the default is 30 seconds.
+         *
+         * @param interval The interval
+         * @return this
+         */
+        public Builder droppedRecordSummaryInterval(Duration interval) {
+            throttle().summaryInterval(greaterThanZero("interval",
+                    notNull("interval", interval).toNanos()));
+            return this;
+        }
+
+        /**
+         * Add a filter which is consulted for every enabled record before it
+         * is assembled or serialized; it must be thread-safe and must not
+         * block.
+         *
+         * @param filter A filter
+         * @return this
+         */
+        public Builder withRecordFilter(LogRecordFilter filter) {
+            notNull("filter", filter);
+            recordFilter = recordFilter == null ? filter : recordFilter.and(filter);
+            return this;
+        }
+
+        /**
+         * Suppress identical records - the same logger, level, message and
+         * exception type - logged within the passed time window of the first
+         * one; instead, a single record with the original message and a
+         * <code>repeated</code> count is logged when the window closes.
+         *
+         * @param window The window
+         * @return this
+         */
+        public Builder suppressDuplicateRecords(Duration window) {
+            return suppressDuplicateRecords(window, 1024);
+        }
+
+        /**
+         * Suppress identical records - the same logger, level, message and
+         * exception type - logged within the passed time window of the first
+         * one; instead, a single record with the original message and a
+         * <code>repeated</code> count is logged when the window closes.
+         *
+         * @param window The window
+         * @param maxTracked The approximate maximum number of distinct
+         * records to track at once; records beyond that are logged normally
+         * @return this
+         */
+        public Builder suppressDuplicateRecords(Duration window, int maxTracked) {
+            duplicateWindowNanos = greaterThanZero("window",
+                    notNull("window", window).toNanos());
+            maxTrackedDuplicates = greaterThanZero("maxTracked", maxTracked);
+            return this;
+        }
+
+        /**
+         * Recycle log records, their field storage and their JSON encoding
+         * buffers rather than leaving them for the garbage collector, which
+         * is mostly a benefit when logging asynchronously at high volume. In
+         * this mode int, long and boolean fields are stored without boxing,
+         * and records are encoded to JSON directly unless Jackson is required
+         * for a particular value.
+         * <p>
+         * A Log must not be used in any way after its <code>close()</code>
+         * method is called (attempts to will throw an
+         * IllegalStateException). Records are only passed to the built-in
+         * sinks without copying; custom LogSinks receive a copy, since they
+         * may retain the map passed to them.
+         * </p>
+         *
+         * @return this
+         */
+        public Builder pooledRecords() {
+            return pooledRecords(256);
+        }
+
+        /**
+         * Recycle log records, keeping up to the passed number of idle ones.
+         *
+         * @see #pooledRecords()
+         * @param maxIdle The maximum number of idle records to keep
+         * @return this
+         */
+        public Builder pooledRecords(int maxIdle) {
+            recordPoolSize = greaterThanZero("maxIdle", maxIdle);
+            return this;
+        }
+
         public Builder routeLogsTo(LogSink to, String... names) {
             notNull("to", to);
             for (String name : names) {
@@ -962,6 +1606,11 @@ public final class LoggingConfig implements AutoCloseable {
                 throw new IllegalStateException("build() called twice");
             }
             onShutdown = ThrowingRunnable.oneShot(true);
+            if (dequeueSequence != null && !async) {
+                // Nothing is dequeued, so assign them on close
+                withSequenceNumbers(dequeueSequence.name(), dequeueSequence.currentValue());
+                dequeueSequence = null;
+            }
             ObjectMapper mapperLocal = this.mapper == null ? new ObjectMapper() : this.mapper;
             mapperConsumer.accept(mapperLocal);
             BiPredicate<String, LogLevel> specificConfig = new LevelConfig(minLogLevelForLogger, dll.minimum);
@@ -991,11 +1640,28 @@ public final class LoggingConfig implements AutoCloseable {
                     minLogLevelForLogger, logFileForLogger, fallback, async, onShutdown, logSinkForLogName,
                     logPathForSevere, logSinkForSevere, configSupplier, rotateFilesAboveBytes);
 
+            RecordThrottle recordThrottle = throttle == null ? null
+                    : throttle.build(configSupplier);
+            LogRecordFilter filter = recordThrottle == null ? recordFilter
+                    : recordFilter == null ? recordThrottle
+                            : recordThrottle.and(recordFilter);
             LoggingConfig result = new LoggingConfig(mapperLocal, dll.minimum,
                     specificConfig, sp, onShutdown, decorator, recordCaller, asyncThreads,
                     defaultConfigReplacementPolicy, asyncThreadPriority,
-                    jsonSerializationPolicy, hostname, escalateOnError, useShutdownHook);
+                    jsonSerializationPolicy, hostname, escalateOnError, useShutdownHook,
+                    dequeueSequence, recordThrottle, filter,
+                    duplicateWindowNanos <= 0 ? null
+                            : new DuplicateRecordSuppressor(duplicateWindowNanos,
+                                    maxTrackedDuplicates, configSupplier),
+                    recordPoolSize, deferLazyValues, exactMessageDeduplication,
+                    errors, limits, metrics, writerThread);
             configSupplier.config = result;
+            if (result.metrics != null) {
+                result.metrics.start(metrics);
+            }
+            if (result.duplicates != null) {
+                result.duplicates.start();
+            }
             return result;
         }
 
@@ -1019,7 +1685,7 @@ public final class LoggingConfig implements AutoCloseable {
             public boolean test(String t, LogLevel u) {
                 LogLevel lev = minLogLevelForLogger.get(t);
                 int val = lev != null ? lev.intValue() : defaultMinLevel;
-                return val >= u.intValue();
+                return val <= u.intValue();
             }
         }
 
@@ -1042,11 +1708,219 @@ public final class LoggingConfig implements AutoCloseable {
             return this;
         }
 
+        /**
+         * Log asynchronously, on a background thread. Values added to records
+         * with <code>Log.addLazy()</code> are then evaluated on that thread,
+         * after the logging call has returned - see the documentation of
+         * <code>Log.addLazy()</code> for what that means for the state they
+         * use - unless <code>evaluateLazyValuesOnLoggingThread()</code> is
+         * also called.
+         *
+         * @return this
+         */
         public Builder asyncLogging() {
             async = true;
             return this;
         }
 
+        /**
+         * Log asynchronously in a mode suited to applications which log from
+         * virtual threads. Rather than a pool of threads woken through a
+         * latch, a single dedicated platform thread does all writing - so
+         * blocking file I/O never occupies a virtual thread's carrier - and
+         * handing a record to it is a lock-free queue append which never
+         * blocks the logging thread or waits on a monitor. Shutting down
+         * waits for the writer to finish rather than polling. The number of
+         * async logging threads is ignored; the thread priority applies to
+         * the writer thread.
+         *
+         * @return this
+         */
+        public Builder asyncLoggingForVirtualThreads() {
+            async = true;
+            writerThread = true;
+            return this;
+        }
+
+        /**
+         * When logging asynchronously, evaluate values added with
+         * <code>Log.addLazy()</code> when the record is closed, on the thread
+         * which closes it, as is always done for synchronous logging - for
+         * code whose suppliers read state that is not safe to read from
+         * another thread, or which will have changed by the time the async
+         * logging thread gets to the record.
+         *
+         * @return this
+         */
+        public Builder evaluateLazyValuesOnLoggingThread() {
+            deferLazyValues = false;
+            return this;
+        }
+
+        /**
+         * Build log record messages from their pieces (strings passed to
+         * <code>Log.message()</code> or <code>Log.add(Object)</code>, and
+         * formatted message templates) more cheaply: rather than dropping a
+         * piece if the message so far contains it anywhere - which costs a
+         * substring search per piece - only drop pieces which are equal to an
+         * earlier one; and rather than converting numbers and booleans added
+         * with <code>add(Object)</code> to text when they are added, write
+         * them when the message is written. With pooled records, the message
+         * is written directly into the output buffer without ever being
+         * assembled as a string.
+         * <p>
+         * The difference is visible only for messages with pieces that are
+         * substrings of other pieces, which will now be kept.
+         * </p>
+         *
+         * @return this
+         */
+        public Builder deduplicateMessagePiecesExactly() {
+            exactMessageDeduplication = true;
+            return this;
+        }
+
+        /**
+         * Write throwables as the compact <code>err</code> object bunyan's
+         * own error serializer produces - <code>message</code>,
+         * <code>name</code> (the class name) and <code>stack</code> (the text
+         * <code>printStackTrace()</code> would print for it, without causes)
+         * - plus nested <code>cause</code> and <code>suppressed</code>
+         * objects, rather than serializing the whole throwable with Jackson.
+         * Throwables passed to <code>Log.add(Throwable)</code> get the key
+         * <code>err</code>, as bunyan tools expect, rather than
+         * <code>error</code>.
+         * <p>
+         * The formatted text of stack traces is cached, so logging the same
+         * exception repeatedly, as happens when something fails in a loop,
+         * is cheap. Uses the default limits of 8 levels of nested causes and
+         * suppressed exceptions, 8 suppressed exceptions per throwable and
+         * 128 stack frames per throwable.
+         * </p>
+         *
+         * @return this
+         */
+        public Builder compactErrors() {
+            return compactErrors(ThrowableEncoder.DEFAULT_MAX_DEPTH,
+                    ThrowableEncoder.DEFAULT_MAX_SUPPRESSED,
+                    ThrowableEncoder.DEFAULT_MAX_FRAMES);
+        }
+
+        /**
+         * Write throwables as compact <code>err</code> objects, with the
+         * passed limits. What is left out is counted in
+         * <code>causesOmitted</code> and <code>suppressedOmitted</code>
+         * properties, and omitted stack frames in a final <code>... n
+         * more</code> line of the stack.
+         *
+         * @see #compactErrors()
+         * @param maxDepth The maximum depth of nested causes and suppressed
+         * exceptions
+         * @param maxSuppressed The maximum number of suppressed exceptions
+         * to include for each throwable
+         * @param maxFrames The maximum number of stack frames to include for
+         * each throwable
+         * @return this
+         */
+        public Builder compactErrors(int maxDepth, int maxSuppressed, int maxFrames) {
+            errors = new ThrowableEncoder(maxDepth, maxSuppressed, maxFrames);
+            return this;
+        }
+
+        /**
+         * Limit the size of log records with the default limits - see
+         * <code>RecordLimits</code>.
+         *
+         * @return this
+         */
+        public Builder limitRecords() {
+            return limitRecords(new RecordLimits());
+        }
+
+        /**
+         * Limit the size of log records, leaving out oversized content while
+         * records are written, with a marker in its place, so that a
+         * carelessly logged huge object cannot produce a huge log line.
+         *
+         * @see RecordLimits
+         * @param maxRecordBytes The size of a record in bytes beyond which its
+         * properties are left out
+         * @param maxStringLength The maximum length of any string
+         * @param maxElements The maximum number of elements of any array or
+         * collection, or properties of any object
+         * @param maxDepth The maximum depth of nested objects, counting the
+         * record itself as 1
+         * @return this
+         */
+        public Builder limitRecords(int maxRecordBytes, int maxStringLength, int maxElements, int maxDepth) {
+            return limitRecords(new RecordLimits(maxRecordBytes, maxStringLength, maxElements, maxDepth));
+        }
+
+        /**
+         * Limit the size of log records, using a set of limits which may be
+         * shared with other code that writes log records, so their counts of
+         * truncated content are combined.
+         * <p>
+         * Records which are not pooled are written through Jackson's
+         * streaming generator, which applies the limits as it goes, whatever
+         * the JSON serialization policy.
+         * </p>
+         *
+         * @param limits The limits
+         * @return this
+         */
+        public Builder limitRecords(RecordLimits limits) {
+            this.limits = notNull("limits", limits);
+            return this;
+        }
+
+        /**
+         * Collect counts of records written per logger and level, bytes
+         * written per file, file rotations, the depth of the async queue,
+         * and histograms of queue-to-write latency and serialization time,
+         * available from <code>LoggingConfig.metrics()</code>.
+         *
+         * @return this
+         */
+        public Builder collectMetrics() {
+            if (metrics == null) {
+                metrics = new LoggingMetrics.Options(null, null, null);
+            }
+            return this;
+        }
+
+        /**
+         * Collect metrics, and publish them as the attributes of a JMX MBean
+         * named <code>com.mastfrog.bunyan:type=LoggingMetrics,name=</code>
+         * <i>name</i>, which is unregistered when the configuration is shut
+         * down.
+         *
+         * @param name The name
+         * @return this
+         */
+        public Builder publishMetricsToJmx(String name) {
+            collectMetrics();
+            metrics = metrics.withJmxName(notNull("name", name));
+            return this;
+        }
+
+        /**
+         * Collect metrics, and log them periodically as an info-level record
+         * with the message "metrics" from the passed logger.
+         *
+         * @param interval How often to log them
+         * @param loggerName The logger name
+         * @return this
+         */
+        public Builder logMetricsEvery(Duration interval, String loggerName) {
+            collectMetrics();
+            if (notNull("interval", interval).isNegative() || interval.isZero()) {
+                throw new IllegalArgumentException("Bad interval " + interval);
+            }
+            metrics = metrics.withLogging(interval, notNull("loggerName", loggerName));
+            return this;
+        }
+
         public Builder routeLogsTo(Path file, String... logs) {
             checkUsable(file);
             for (String log : logs) {
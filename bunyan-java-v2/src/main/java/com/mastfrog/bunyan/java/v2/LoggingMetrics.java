@@ -0,0 +1,377 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for a logging configuration's pipeline,
+ * enabled with <code>LoggingConfig.Builder.collectMetrics()</code>:
+ * <ul>
+ * <li><code>records</code> - records written, per logger and level</li>
+ * <li><code>bytes</code> - bytes written, per log file</li>
+ * <li><code>rotations</code> - log files rotated</li>
+ * <li><code>queueDepth</code> - records waiting for the async logging
+ * threads</li>
+ * <li><code>enqueueToWrite</code> - nanoseconds from a record being queued
+ * for the async logging threads to its sink being done with it</li>
+ * <li><code>serialization</code> - records converted to JSON, by which
+ * means (<code>simple</code>, <code>jackson</code>, <code>direct</code> for
+ * pooled records encoded in place and <code>limited</code> for records
+ * streamed through record limits), and the nanoseconds it took</li>
+ * </ul>
+ * Counting costs an uncontended add to a striped counter; nothing is locked.
+ * The same values can be published as attributes of a JMX MBean, or logged
+ * periodically as bunyan records.
+ *
+ * @author Tim Boudreau
+ */
+public final class LoggingMetrics {
+
+    private static final String[] LEVEL_NAMES = {LogLevel.TRACE_NAME,
+        LogLevel.DEBUG_NAME, LogLevel.INFO_NAME, LogLevel.WARN_NAME,
+        LogLevel.ERROR_NAME, LogLevel.FATAL_NAME};
+    static final int MAX_TRACKED_LOGGERS = 1024;
+    static final String OTHER_LOGGERS = "(other)";
+    static final String SER_SIMPLE = "simple";
+    static final String SER_JACKSON = "jackson";
+    static final String SER_DIRECT = "direct";
+    static final String SER_LIMITED = "limited";
+    private final LoggingConfig config;
+    private final Map<String, LongAdder[]> records = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> bytes = new ConcurrentHashMap<>();
+    private final LongAdder rotations = new LongAdder();
+    private final LongAdder serializedSimple = new LongAdder();
+    private final LongAdder serializedJackson = new LongAdder();
+    private final LongAdder serializedDirect = new LongAdder();
+    private final LongAdder serializedLimited = new LongAdder();
+    private final LatencyHistogram enqueueToWrite = new LatencyHistogram();
+    private final LatencyHistogram serialization = new LatencyHistogram();
+    private ObjectName objectName;
+    private ScheduledExecutorService publisher;
+
+    LoggingMetrics(LoggingConfig config) {
+        this.config = config;
+    }
+
+    synchronized void start(Options options) {
+        if (options.jmxName != null) {
+            registerMBean(options.jmxName);
+        }
+        if (options.logInterval != null) {
+            publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "bunyan-v2-metrics");
+                t.setDaemon(true);
+                return t;
+            });
+            Logs logs = config.logs(options.logger);
+            long millis = options.logInterval.toMillis();
+            publisher.scheduleAtFixedRate(() -> {
+                try {
+                    logs.info("metrics").add(snapshot()).close();
+                } catch (Exception | Error e) {
+                    LoggingLogging.log(e);
+                }
+            }, millis, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void shutdown() {
+        if (publisher != null) {
+            publisher.shutdownNow();
+            publisher = null;
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception ex) {
+                LoggingLogging.log(ex);
+            } finally {
+                objectName = null;
+            }
+        }
+    }
+
+    void onRecord(String logger, LogLevel level) {
+        LongAdder[] counts = records.get(logger);
+        if (counts == null) {
+            if (records.size() >= MAX_TRACKED_LOGGERS) {
+                // Loggers named for something unbounded, like a request id,
+                // must not grow this forever
+                logger = OTHER_LOGGERS;
+            }
+            counts = records.computeIfAbsent(logger, ignored -> {
+                LongAdder[] result = new LongAdder[LEVEL_NAMES.length];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = new LongAdder();
+                }
+                return result;
+            });
+        }
+        int index = Math.max(0, Math.min(LEVEL_NAMES.length - 1,
+                level.intValue() / 10 - 1));
+        counts[index].increment();
+    }
+
+    /**
+     * Get the counter for bytes written to a sink, which the sink can hold
+     * onto.
+     *
+     * @param sink The sink's name
+     * @return A counter
+     */
+    LongAdder bytesCounter(String sink) {
+        return bytes.computeIfAbsent(sink, ignored -> new LongAdder());
+    }
+
+    void onRotation() {
+        rotations.increment();
+    }
+
+    void onWritten(long enqueuedAt) {
+        enqueueToWrite.record(System.nanoTime() - enqueuedAt);
+    }
+
+    void onSerialized(String how, long startedAt) {
+        serialization.record(System.nanoTime() - startedAt);
+        switch (how) {
+            case SER_SIMPLE:
+                serializedSimple.increment();
+                break;
+            case SER_JACKSON:
+                serializedJackson.increment();
+                break;
+            case SER_DIRECT:
+                serializedDirect.increment();
+                break;
+            default:
+                serializedLimited.increment();
+        }
+    }
+
+    /**
+     * Get the number of records written for a logger at a level.
+     *
+     * @param logger The logger name
+     * @param level The level
+     * @return A count
+     */
+    public long records(String logger, LogLevel level) {
+        LongAdder[] counts = records.get(logger);
+        if (counts == null) {
+            return 0;
+        }
+        return counts[Math.max(0, Math.min(LEVEL_NAMES.length - 1,
+                level.intValue() / 10 - 1))].sum();
+    }
+
+    /**
+     * Get the total number of bytes written to a log file.
+     *
+     * @param sink The path of the log file
+     * @return A count
+     */
+    public long bytesWritten(String sink) {
+        LongAdder counter = bytes.get(sink);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public long rotations() {
+        return rotations.sum();
+    }
+
+    /**
+     * Get the number of records waiting for the async logging threads.
+     *
+     * @return A count
+     */
+    public int queueDepth() {
+        AsyncLogQueue queue = config.logQueue();
+        return queue == null ? 0 : queue.pendingJobs();
+    }
+
+    /**
+     * Get all metrics as nested maps of numbers, suitable for logging or
+     * serializing as JSON.
+     *
+     * @return A map
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>(8);
+        Map<String, Object> recs = new TreeMap<>();
+        for (Map.Entry<String, LongAdder[]> e : records.entrySet()) {
+            Map<String, Object> perLevel = new LinkedHashMap<>(LEVEL_NAMES.length);
+            for (int i = 0; i < LEVEL_NAMES.length; i++) {
+                long count = e.getValue()[i].sum();
+                if (count > 0) {
+                    perLevel.put(LEVEL_NAMES[i], count);
+                }
+            }
+            recs.put(e.getKey(), perLevel);
+        }
+        result.put("records", recs);
+        Map<String, Object> bytesWritten = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : bytes.entrySet()) {
+            bytesWritten.put(e.getKey(), e.getValue().sum());
+        }
+        result.put("bytes", bytesWritten);
+        result.put("rotations", rotations.sum());
+        result.put("queueDepth", queueDepth());
+        result.put("enqueueToWrite", enqueueToWrite.snapshot());
+        Map<String, Object> ser = new LinkedHashMap<>(6);
+        ser.put(SER_SIMPLE, serializedSimple.sum());
+        ser.put(SER_JACKSON, serializedJackson.sum());
+        ser.put(SER_DIRECT, serializedDirect.sum());
+        ser.put(SER_LIMITED, serializedLimited.sum());
+        ser.put("nanos", serialization.snapshot());
+        result.put("serialization", ser);
+        return result;
+    }
+
+    static Map<String, Object> flatten(Map<String, Object> snapshot) {
+        Map<String, Object> result = new TreeMap<>();
+        flatten("", snapshot, result);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void flatten(String prefix, Map<String, Object> map, Map<String, Object> into) {
+        for (Map.Entry<String, Object> e : map.entrySet()) {
+            String key = prefix + e.getKey();
+            if (e.getValue() instanceof Map<?, ?>) {
+                flatten(key + '.', (Map<String, Object>) e.getValue(), into);
+            } else {
+                into.put(key, e.getValue());
+            }
+        }
+    }
+
+    private void registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName("com.mastfrog.bunyan:type=LoggingMetrics,name="
+                    + ObjectName.quote(name));
+            server.registerMBean(new MetricsMBean(), on);
+            objectName = on;
+        } catch (Exception ex) {
+            LoggingLogging.log("Could not register logging metrics MBean " + name, ex);
+        }
+    }
+
+    /**
+     * Exposes the flattened snapshot as read-only attributes named by path,
+     * such as <code>records.myapp.info</code>; since loggers and files come
+     * and go, the set of attributes is recomputed each time it is asked for.
+     */
+    final class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object result = flatten(snapshot()).get(attribute);
+            if (result == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return result;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Object> flat = flatten(snapshot());
+            AttributeList result = new AttributeList();
+            for (String attr : attributes) {
+                Object val = flat.get(attr);
+                if (val != null) {
+                    result.add(new Attribute(attr, val));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attrs = new ArrayList<>();
+            for (Map.Entry<String, Object> e : flatten(snapshot()).entrySet()) {
+                attrs.add(new MBeanAttributeInfo(e.getKey(), e.getValue().getClass().getName(),
+                        e.getKey(), true, false, false));
+            }
+            return new MBeanInfo(LoggingMetrics.class.getName(), "Bunyan logging metrics",
+                    attrs.toArray(new MBeanAttributeInfo[attrs.size()]), null, null, null);
+        }
+    }
+
+    static final class Options {
+
+        private final String jmxName;
+        private final Duration logInterval;
+        private final String logger;
+
+        Options(String jmxName, Duration logInterval, String logger) {
+            this.jmxName = jmxName;
+            this.logInterval = logInterval;
+            this.logger = logger;
+        }
+
+        Options withJmxName(String name) {
+            return new Options(name, logInterval, logger);
+        }
+
+        Options withLogging(Duration interval, String logger) {
+            return new Options(jmxName, interval, logger);
+        }
+    }
+}
@@ -145,6 +145,20 @@ public interface Logs {
         return trace().message(msg);
     }
 
+    /**
+     * Create a log record builder with <i>trace</i> level logging and its
+     * message set from the passed template and arguments, which are only
+     * formatted if the record is actually written.
+     *
+     * @see MessageTemplate
+     * @param template A message template
+     * @param args The template's arguments
+     * @return A trace-level log record builder
+     */
+    default Log trace(MessageTemplate template, Object... args) {
+        return trace().message(template, args);
+    }
+
     /**
      * Create a log record builder with <i>debug</i> level logging and its
      * message set to the passed (non-null) message, which will log its contents
@@ -158,6 +172,20 @@ public interface Logs {
         return debug().message(msg);
     }
 
+    /**
+     * Create a log record builder with <i>debug</i> level logging and its
+     * message set from the passed template and arguments, which are only
+     * formatted if the record is actually written.
+     *
+     * @see MessageTemplate
+     * @param template A message template
+     * @param args The template's arguments
+     * @return A debug-level log record builder
+     */
+    default Log debug(MessageTemplate template, Object... args) {
+        return debug().message(template, args);
+    }
+
     /**
      * Create a log record builder with <i>info</i> level logging and its
      * message set to the passed (non-null) message, which will log its contents
@@ -171,6 +199,20 @@ public interface Logs {
         return info().message(msg);
     }
 
+    /**
+     * Create a log record builder with <i>info</i> level logging and its
+     * message set from the passed template and arguments, which are only
+     * formatted if the record is actually written.
+     *
+     * @see MessageTemplate
+     * @param template A message template
+     * @param args The template's arguments
+     * @return An info-level log record builder
+     */
+    default Log info(MessageTemplate template, Object... args) {
+        return info().message(template, args);
+    }
+
     /**
      * Create a log record builder with <i>warn</i> level logging and its
      * message set to the passed (non-null) message, which will log its contents
@@ -184,6 +226,20 @@ public interface Logs {
         return warn().message(msg);
     }
 
+    /**
+     * Create a log record builder with <i>warn</i> level logging and its
+     * message set from the passed template and arguments, which are only
+     * formatted if the record is actually written.
+     *
+     * @see MessageTemplate
+     * @param template A message template
+     * @param args The template's arguments
+     * @return A warn-level log record builder
+     */
+    default Log warn(MessageTemplate template, Object... args) {
+        return warn().message(template, args);
+    }
+
     /**
      * Create a log record builder with <i>error</i> level logging and its
      * message set to the passed (non-null) message, which will log its contents
@@ -197,6 +253,20 @@ public interface Logs {
         return error().message(msg);
     }
 
+    /**
+     * Create a log record builder with <i>error</i> level logging and its
+     * message set from the passed template and arguments, which are only
+     * formatted if the record is actually written.
+     *
+     * @see MessageTemplate
+     * @param template A message template
+     * @param args The template's arguments
+     * @return An error-level log record builder
+     */
+    default Log error(MessageTemplate template, Object... args) {
+        return error().message(template, args);
+    }
+
     /**
      * Create a log record builder with <i>fatal</i> level logging and its
      * message set to the passed (non-null) message, which will log its contents
@@ -210,6 +280,20 @@ public interface Logs {
         return fatal().message(msg);
     }
 
+    /**
+     * Create a log record builder with <i>fatal</i> level logging and its
+     * message set from the passed template and arguments, which are only
+     * formatted if the record is actually written.
+     *
+     * @see MessageTemplate
+     * @param template A message template
+     * @param args The template's arguments
+     * @return A fatal-level log record builder
+     */
+    default Log fatal(MessageTemplate template, Object... args) {
+        return fatal().message(template, args);
+    }
+
     /**
      * Create a child instance of this log record factory, which will create Log
      * records pre-populated with the passed map's contents.
@@ -260,6 +344,37 @@ public interface Logs {
         return child(AbstractSingletonMap.ofLong(key, val));
     }
 
+    /**
+     * Create a child instance of this log record factory for a unit of work
+     * such as a request, which buffers its trace and debug records and only
+     * writes them if an error or fatal record is logged through it.
+     *
+     * @param pairs Some key/value pairs to include in all records created by
+     * the returned instance
+     * @param maxBuffered The maximum number of records to buffer; if more are
+     * logged, the oldest are discarded
+     * @return A new BufferingLogs
+     */
+    default BufferingLogs bufferingChild(Map<String, Object> pairs, int maxBuffered) {
+        // Implementations which cannot buffer write records immediately
+        return new UnbufferedLogs(child(pairs));
+    }
+
+    /**
+     * Create a child instance of this log record factory for a unit of work
+     * such as a request, which buffers its trace and debug records and only
+     * writes them if an error or fatal record is logged through it.
+     *
+     * @param key - A key
+     * @param value - A value
+     * @param maxBuffered The maximum number of records to buffer; if more are
+     * logged, the oldest are discarded
+     * @return A new BufferingLogs
+     */
+    default BufferingLogs bufferingChild(String key, Object value, int maxBuffered) {
+        return bufferingChild(AbstractSingletonMap.ofObject(key, value), maxBuffered);
+    }
+
     /**
      * Perform trace-level logging, creating a new log record and closing it
      * when the passed consumer exits.
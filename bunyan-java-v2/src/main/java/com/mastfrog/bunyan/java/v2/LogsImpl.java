@@ -29,6 +29,7 @@ import static com.mastfrog.bunyan.java.v2.LogLevel.FATAL;
 import static com.mastfrog.bunyan.java.v2.LogLevel.INFO;
 import static com.mastfrog.bunyan.java.v2.LogLevel.TRACE;
 import static com.mastfrog.bunyan.java.v2.LogLevel.WARN;
+import static com.mastfrog.util.preconditions.Checks.greaterThanZero;
 import java.util.Map;
 
 /**
@@ -54,6 +55,10 @@ class LogsImpl implements Logs {
         return name;
     }
 
+    LoggingConfig config() {
+        return config;
+    }
+
     @Override
     public Logs contextual() {
         if (LogContext.isDefaultContext()) {
@@ -71,11 +76,50 @@ class LogsImpl implements Logs {
         return new ChildLogs(name, config, pairs);
     }
 
+    @Override
+    public BufferingLogs bufferingChild(Map<String, Object> pairs, int maxBuffered) {
+        return new BufferingChildLogs(name, config, pairs, greaterThanZero("maxBuffered", maxBuffered));
+    }
+
     @Override
     public String toString() {
         return name;
     }
 
+    static final class BufferingChildLogs extends LogsImpl implements BufferingLogs {
+
+        private final Map<String, Object> pairs;
+        private final TailBuffer tail;
+
+        BufferingChildLogs(String name, LoggingConfig config, Map<String, Object> pairs, int maxBuffered) {
+            super(name, config);
+            this.pairs = pairs;
+            this.tail = new TailBuffer(maxBuffered);
+        }
+
+        @Override
+        LogImpl newLog(LogLevel level) {
+            LogImpl result = super.newLog(level).bufferingTo(tail);
+            result.add(pairs);
+            return result;
+        }
+
+        @Override
+        public void flush() {
+            tail.flushTo(config().sinkFor(name(), ERROR));
+        }
+
+        @Override
+        public void discard() {
+            tail.discard();
+        }
+
+        @Override
+        public int buffered() {
+            return tail.size();
+        }
+    }
+
     static final class ChildLogs extends LogsImpl {
 
         private final Map<String, Object> pairs;
@@ -0,0 +1,184 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import com.mastfrog.util.strings.Strings;
+import java.util.Arrays;
+
+/**
+ * Accumulates the pieces of a log record's message. By default, as always,
+ * a piece is dropped if the message so far already contains it as a
+ * substring, and numbers and booleans are converted to text as they are
+ * added; that is quadratic in the number of pieces. With exact
+ * deduplication, pieces are kept as they are in a small array, a piece is
+ * only dropped if it is identical or equal to an earlier one (compared by
+ * hash code first), and numbers and booleans are only converted to text when
+ * the message is written - which, for pooled records, is directly into the
+ * output buffer without building the message as a string at all.
+ *
+ * @author Tim Boudreau
+ */
+final class MessageFragments {
+
+    private static final int INITIAL_FRAGMENTS = 4;
+    private final boolean exact;
+    // Exact mode
+    private Object[] fragments;
+    private int[] hashes;
+    private int count;
+    // Substring mode
+    private StringBuilder text;
+
+    MessageFragments(boolean exact) {
+        this.exact = exact;
+    }
+
+    boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Add a piece of the message.
+     *
+     * @param piece A CharSequence, Number or Boolean
+     */
+    void add(Object piece) {
+        if (!exact) {
+            CharSequence s = piece instanceof CharSequence
+                    ? (CharSequence) piece : piece.toString();
+            if (text == null) {
+                text = new StringBuilder(Math.max(60, s.length()));
+            }
+            if (!Strings.charSequenceContains(text, s, false)) {
+                if (text.length() != 0) {
+                    text.append(' ');
+                }
+                text.append(s);
+            }
+            return;
+        }
+        if (piece instanceof CharSequence && !(piece instanceof String)) {
+            // Mutable sequences may change before the message is written
+            piece = piece.toString();
+        }
+        int hash = piece.hashCode();
+        for (int i = 0; i < count; i++) {
+            Object f = fragments[i];
+            if (f == piece || (hashes[i] == hash && f.equals(piece))) {
+                return;
+            }
+        }
+        if (fragments == null) {
+            fragments = new Object[INITIAL_FRAGMENTS];
+            hashes = new int[INITIAL_FRAGMENTS];
+        } else if (count == fragments.length) {
+            fragments = Arrays.copyOf(fragments, count * 2);
+            hashes = Arrays.copyOf(hashes, count * 2);
+        }
+        fragments[count] = piece;
+        hashes[count++] = hash;
+    }
+
+    /**
+     * Add all the pieces in another instance.
+     *
+     * @param other Another instance in the same mode
+     */
+    void addAll(MessageFragments other) {
+        if (other.exact) {
+            for (int i = 0; i < other.count; i++) {
+                add(other.fragments[i]);
+            }
+        } else if (other.text != null && other.text.length() > 0) {
+            add(other.text.toString());
+        }
+    }
+
+    /**
+     * Get the number of fragments, in exact mode.
+     */
+    int fragmentCount() {
+        return count;
+    }
+
+    /**
+     * Get a fragment, in exact mode - a String, Number or Boolean.
+     */
+    Object fragment(int index) {
+        return fragments[index];
+    }
+
+    /**
+     * Get the accumulated text, in substring mode.
+     */
+    CharSequence text() {
+        return text == null ? "" : text;
+    }
+
+    boolean isEmpty() {
+        return exact ? count == 0 : text == null || text.length() == 0;
+    }
+
+    int capacity() {
+        return exact ? (fragments == null ? 0 : fragments.length)
+                : text == null ? 0 : text.capacity();
+    }
+
+    void clear() {
+        if (fragments != null) {
+            Arrays.fill(fragments, 0, count, null);
+        }
+        count = 0;
+        if (text != null) {
+            text.setLength(0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (!exact) {
+            return text == null ? "" : text.toString();
+        }
+        switch (count) {
+            case 0:
+                return "";
+            case 1:
+                return fragments[0].toString();
+            default:
+                int len = count - 1;
+                for (int i = 0; i < count; i++) {
+                    Object f = fragments[i];
+                    len += f instanceof String ? ((String) f).length() : 8;
+                }
+                StringBuilder sb = new StringBuilder(len);
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) {
+                        sb.append(' ');
+                    }
+                    sb.append(fragments[i]);
+                }
+                return sb.toString();
+        }
+    }
+}
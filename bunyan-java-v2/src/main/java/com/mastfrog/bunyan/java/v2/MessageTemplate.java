@@ -0,0 +1,276 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import static com.mastfrog.util.preconditions.Checks.notNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IllegalFormatException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A parsed log message template with placeholders for arguments, so that
+ * building the message text costs nothing unless the record is actually
+ * written - the message is formatted when the record is closed, after its
+ * level has been checked, or with asynchronous logging, by the async logging
+ * thread (see <code>Log.addLazy()</code> for what that means for the
+ * arguments, which are subject to the same rules as the state captured by a
+ * lazy value's supplier).
+ * <p>
+ * Templates are best kept in a constant at the call site, so they are parsed
+ * once:
+ * </p>
+ * <pre>
+ * private static final MessageTemplate CONNECT_FAILED
+ *         = MessageTemplate.of("Connecting to {} failed after {} attempts");
+ * ...
+ * LOGS.warn(CONNECT_FAILED, host, attempts).close();
+ * </pre>
+ * <p>
+ * The <code>of()</code> and <code>printf()</code> methods also cache
+ * templates by their pattern, so passing a literal pattern to them at the
+ * call site is cheap too. Record filters such as rate limiting see the
+ * template's pattern, not the formatted message, so records from the same
+ * call site are treated alike. Duplicate suppression compares whole
+ * messages, so when it is enabled, templates are formatted when the record
+ * is closed.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+public final class MessageTemplate {
+
+    private static final int MAX_CACHED = 2048;
+    private static final ConcurrentHashMap<String, MessageTemplate> CACHE
+            = new ConcurrentHashMap<>(64);
+    private static final ConcurrentHashMap<String, MessageTemplate> PRINTF_CACHE
+            = new ConcurrentHashMap<>(16);
+
+    private final String pattern;
+    // Literal text, with segments.length == placeholders + 1; null for a
+    // printf template which must be passed to String.format()
+    private final String[] segments;
+    private final int estimatedLength;
+    private final String placeholder;
+
+    private MessageTemplate(String pattern, String[] segments, String placeholder) {
+        this.pattern = pattern;
+        this.segments = segments;
+        this.placeholder = placeholder;
+        int len = 0;
+        if (segments != null) {
+            for (String s : segments) {
+                len += s.length();
+            }
+            len += (segments.length - 1) * 8;
+        } else {
+            len = pattern.length() + 16;
+        }
+        this.estimatedLength = len;
+    }
+
+    /**
+     * Get a template whose placeholders are <code>{}</code>, replaced by the
+     * string value of each argument in turn. A placeholder preceded by a
+     * backslash is written literally, without the backslash. Placeholders
+     * with no corresponding argument are written as-is, and extra arguments
+     * are ignored.
+     *
+     * @param pattern A pattern
+     * @return A template
+     */
+    public static MessageTemplate of(String pattern) {
+        return cached(CACHE, notNull("pattern", pattern), false);
+    }
+
+    /**
+     * Get a template for a <code>String.format()</code> style pattern, for
+     * code which already has such patterns. Patterns which only use the
+     * <code>%s</code>, <code>%d</code>, <code>%%</code> and <code>%n</code>
+     * conversions are parsed once and formatted without
+     * <code>String.format()</code>; anything else is passed to it.
+     *
+     * @param pattern A pattern
+     * @return A template
+     */
+    public static MessageTemplate printf(String pattern) {
+        return cached(PRINTF_CACHE, notNull("pattern", pattern), true);
+    }
+
+    private static MessageTemplate cached(ConcurrentHashMap<String, MessageTemplate> cache,
+            String pattern, boolean printf) {
+        MessageTemplate result = cache.get(pattern);
+        if (result == null) {
+            result = printf ? parsePrintf(pattern) : parse(pattern);
+            // Don't let patterns built at runtime grow the cache forever
+            if (cache.size() < MAX_CACHED) {
+                MessageTemplate existing = cache.putIfAbsent(pattern, result);
+                if (existing != null) {
+                    result = existing;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static MessageTemplate parse(String pattern) {
+        List<String> segments = new ArrayList<>(4);
+        StringBuilder curr = new StringBuilder(pattern.length());
+        int len = pattern.length();
+        for (int i = 0; i < len; i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\' && i + 2 < len && pattern.charAt(i + 1) == '{'
+                    && pattern.charAt(i + 2) == '}') {
+                curr.append("{}");
+                i += 2;
+            } else if (c == '{' && i + 1 < len && pattern.charAt(i + 1) == '}') {
+                segments.add(curr.toString());
+                curr.setLength(0);
+                i++;
+            } else {
+                curr.append(c);
+            }
+        }
+        segments.add(curr.toString());
+        return new MessageTemplate(pattern, segments.toArray(new String[segments.size()]), "{}");
+    }
+
+    private static MessageTemplate parsePrintf(String pattern) {
+        List<String> segments = new ArrayList<>(4);
+        StringBuilder curr = new StringBuilder(pattern.length());
+        int len = pattern.length();
+        for (int i = 0; i < len; i++) {
+            char c = pattern.charAt(i);
+            if (c != '%') {
+                curr.append(c);
+                continue;
+            }
+            char next = i + 1 < len ? pattern.charAt(i + 1) : 0;
+            switch (next) {
+                case 's':
+                case 'd':
+                    segments.add(curr.toString());
+                    curr.setLength(0);
+                    break;
+                case '%':
+                    curr.append('%');
+                    break;
+                case 'n':
+                    curr.append(System.lineSeparator());
+                    break;
+                default:
+                    // Flags, widths, indices or other conversions
+                    return new MessageTemplate(pattern, null, null);
+            }
+            i++;
+        }
+        segments.add(curr.toString());
+        return new MessageTemplate(pattern, segments.toArray(new String[segments.size()]), "%s");
+    }
+
+    /**
+     * Get the pattern this template was created from.
+     *
+     * @return The pattern
+     */
+    public String pattern() {
+        return pattern;
+    }
+
+    /**
+     * Get the number of placeholders in this template, or -1 if it is a
+     * printf template that is formatted by <code>String.format()</code>.
+     *
+     * @return The number of placeholders
+     */
+    public int placeholders() {
+        return segments == null ? -1 : segments.length - 1;
+    }
+
+    /**
+     * Format the message.
+     *
+     * @param args The arguments
+     * @return A string
+     */
+    public String format(Object... args) {
+        if (segments == null) {
+            try {
+                return String.format(pattern, args);
+            } catch (IllegalFormatException ex) {
+                return pattern + " " + Arrays.toString(args);
+            }
+        }
+        if (segments.length == 1) {
+            return segments[0];
+        }
+        int argCount = args == null ? 0 : args.length;
+        StringBuilder sb = new StringBuilder(estimatedLength);
+        for (int i = 0; i < segments.length; i++) {
+            sb.append(segments[i]);
+            if (i < segments.length - 1) {
+                if (i < argCount) {
+                    appendArgument(args[i], sb);
+                } else {
+                    sb.append(placeholder);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendArgument(Object arg, StringBuilder into) {
+        if (arg instanceof Object[]) {
+            into.append(Arrays.deepToString((Object[]) arg));
+        } else if (arg instanceof int[]) {
+            into.append(Arrays.toString((int[]) arg));
+        } else if (arg instanceof long[]) {
+            into.append(Arrays.toString((long[]) arg));
+        } else if (arg instanceof byte[]) {
+            into.append(Arrays.toString((byte[]) arg));
+        } else if (arg instanceof double[]) {
+            into.append(Arrays.toString((double[]) arg));
+        } else {
+            into.append(arg);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || (o instanceof MessageTemplate
+                && ((MessageTemplate) o).pattern.equals(pattern)
+                && (((MessageTemplate) o).segments == null) == (segments == null));
+    }
+
+    @Override
+    public int hashCode() {
+        return pattern.hashCode() * (segments == null ? 7 : 1);
+    }
+}
@@ -23,6 +23,8 @@
  */
 package com.mastfrog.bunyan.java.v2;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.function.Supplier;
 
 /**
@@ -36,6 +38,11 @@ final class NoOpLog implements Log {
         return this;
     }
 
+    @Override
+    public Log message(MessageTemplate template, Object... args) {
+        return this;
+    }
+
     @Override
     public Log add(Object o) {
         return this;
@@ -61,6 +68,31 @@ final class NoOpLog implements Log {
         return this;
     }
 
+    @Override
+    public Log add(String name, double value) {
+        return this;
+    }
+
+    @Override
+    public Log add(String name, float value) {
+        return this;
+    }
+
+    @Override
+    public Log add(String name, CharSequence value) {
+        return this;
+    }
+
+    @Override
+    public Log addDuration(String name, Duration value) {
+        return this;
+    }
+
+    @Override
+    public Log addInstant(String name, Instant value) {
+        return this;
+    }
+
     @Override
     public Log addLazy(String name, Supplier<Object> value) {
         return this;
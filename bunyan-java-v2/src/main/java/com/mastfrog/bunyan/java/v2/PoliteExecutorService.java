@@ -53,7 +53,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
  *
  * @author Tim Boudreau
  */
-class PoliteExecutorService implements ExecutorService {
+class PoliteExecutorService implements ExecutorService, LogJobExecutor {
 
     @JsonIgnore
     private final AtomicLinkedQueue<Runnable> q = new AtomicLinkedQueue<>();
@@ -78,8 +78,9 @@ class PoliteExecutorService implements ExecutorService {
         }
     }
 
+    @Override
     @JsonProperty("pending")
-    int pendingJobs() {
+    public int pendingJobs() {
         return q.size();
     }
 
@@ -0,0 +1,1063 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import static com.mastfrog.bunyan.java.v2.LoggingConfig.JsonSerializationPolicy.ALWAYS_JACKSON;
+import static com.mastfrog.bunyan.java.v2.LoggingConfig.JsonSerializationPolicy.NEVER_JACKSON;
+import com.mastfrog.bunyan.java.v2.ThrowableEncoder.ErrorNode;
+import com.mastfrog.bunyan.java.v2.ThrowableEncoder.StackFragment;
+import com.mastfrog.util.collections.CollectionUtils;
+import com.mastfrog.util.fileformat.SimpleJSON;
+import static com.mastfrog.util.fileformat.SimpleJSON.Style.COMPACT;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A recyclable log record, used when pooled records are enabled. Fields are
+ * stored as they are added in parallel arrays of keys, kinds, primitive
+ * values and objects, so adding a primitive boxes nothing (doubles and floats
+ * are stored as their raw bits); on
+ * close they are resolved, with the same precedence rules LogImpl applies to
+ * ordinary records, into a second set of parallel arrays which back the Map
+ * view passed to sinks, and which can be encoded to JSON directly into a
+ * reusable buffer.
+ * <p>
+ * Ownership is explicit: the pool hands out a record with one reference,
+ * owned by the LogImpl building it; anything which keeps the record past the
+ * return of a call to <code>LogSink.push()</code> (the async queue, tail
+ * buffers) must <code>retain()</code> it and <code>release()</code> it when
+ * done. When the last reference is released, the record is cleared and
+ * returned to the pool, and any further use of it throws an
+ * IllegalStateException rather than silently reading another record's data.
+ * Sinks which are not known to be done with a record when
+ * <code>push()</code> returns are given a copy instead.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+final class PooledRecord extends AbstractMap<String, Object> implements HasDeferredValues {
+
+    static final byte K_LONG = 1;
+    static final byte K_BOOLEAN = 2;
+    static final byte K_OBJECT = 3;
+    static final byte K_LAZY = 4;
+    static final byte K_UNKEYED = 5;
+    static final byte K_MESSAGE = 6;
+    static final byte K_DOUBLE = 7;
+    static final byte K_FLOAT = 8;
+    static final byte K_DURATION = 9;
+    static final byte K_INSTANT = 10;
+    static final byte K_FORMATTED = 11;
+    static final byte K_ERROR = 12;
+    private static final int INITIAL_FIELDS = 16;
+    // Records which grew very large are not kept around in the pool
+    private static final int MAX_POOLED_FIELDS = 256;
+    private static final int MAX_POOLED_BYTES = 64 * 1024;
+    private static final int INITIAL_BYTES = 512;
+
+    // Fields in the order they were added to the Log
+    private String[] pendingKeys = new String[INITIAL_FIELDS];
+    private byte[] pendingKinds = new byte[INITIAL_FIELDS];
+    private long[] pendingLongs = new long[INITIAL_FIELDS];
+    private Object[] pendingObjects = new Object[INITIAL_FIELDS];
+    private int pendingCount;
+
+    // The resolved record
+    private String[] keys = new String[INITIAL_FIELDS];
+    private byte[] kinds = new byte[INITIAL_FIELDS];
+    private long[] longs = new long[INITIAL_FIELDS];
+    private Object[] objects = new Object[INITIAL_FIELDS];
+    private int size;
+    private int deferred;
+    private DeferredMessage deferredMessage;
+    private final MessageFragments message;
+
+    private final AtomicInteger refs = new AtomicInteger();
+    private final RecordPool pool;
+    private final Context ctx;
+    private final LoggingConfig config;
+
+    private byte[] encoded = new byte[INITIAL_BYTES];
+    // The number of characters of the string being encoded which may be
+    // written, if records are size-limited
+    private int stringLimit = Integer.MAX_VALUE;
+    private boolean truncatedToFit;
+    private int encodedLength = -1;
+    private boolean encodedShared;
+    private Set<Map.Entry<String, Object>> entrySet;
+    private int home;
+
+    PooledRecord(RecordPool pool, LoggingConfig config) {
+        this.pool = pool;
+        this.config = config;
+        this.ctx = new Context(config, this);
+        this.message = new MessageFragments(config.isExactMessageDeduplication());
+    }
+
+    JSONContext context() {
+        return ctx;
+    }
+
+    // Ownership
+    void acquire(int home) {
+        if (!refs.compareAndSet(0, 1)) {
+            throw new IllegalStateException("Pooled record handed out while in use");
+        }
+        this.home = home;
+    }
+
+    int home() {
+        return home;
+    }
+
+    PooledRecord retain() {
+        for (;;) {
+            int r = refs.get();
+            if (r <= 0) {
+                throw new IllegalStateException("Record retained after it was released");
+            }
+            if (refs.compareAndSet(r, r + 1)) {
+                return this;
+            }
+        }
+    }
+
+    void release() {
+        int r = refs.decrementAndGet();
+        if (r == 0) {
+            recycle();
+        } else if (r < 0) {
+            throw new IllegalStateException("Record released more times than it was retained");
+        }
+    }
+
+    boolean isLive() {
+        return refs.get() > 0;
+    }
+
+    private void checkLive() {
+        if (refs.get() <= 0) {
+            throw new IllegalStateException("Record used after it was released to the pool");
+        }
+    }
+
+    private void recycle() {
+        boolean tooBig = keys.length > MAX_POOLED_FIELDS || pendingKeys.length > MAX_POOLED_FIELDS
+                || encoded.length > MAX_POOLED_BYTES
+                || message.capacity() > (message.isExact() ? MAX_POOLED_FIELDS : MAX_POOLED_BYTES);
+        if (tooBig) {
+            // Let it be garbage collected
+            return;
+        }
+        Arrays.fill(pendingKeys, 0, pendingCount, null);
+        Arrays.fill(pendingObjects, 0, pendingCount, null);
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(objects, 0, size, null);
+        pendingCount = 0;
+        size = 0;
+        deferred = 0;
+        deferredMessage = null;
+        message.clear();
+        encodedLength = -1;
+        encodedShared = false;
+        ctx.reset();
+        pool.give(this);
+    }
+
+    /**
+     * Push this record to a sink, giving the sink a copy if it is not one
+     * known to be done with the record when push() returns.
+     */
+    void pushTo(LogSink sink) {
+        if (isPoolSafe(sink)) {
+            sink.push(ctx, this);
+        } else {
+            sink.push(new JSONContext(config), deferred > 0
+                    ? new DeferredValuesRecord(this) : new LinkedHashMap<>(this));
+        }
+    }
+
+    static boolean isPoolSafe(LogSink sink) {
+        if (sink instanceof AsyncLogSink) {
+            // The async queue retains the record until the delegate is done
+            return isPoolSafe(((AsyncLogSink) sink).orig);
+        } else if (sink instanceof CombinedLogSink) {
+            CombinedLogSink comb = (CombinedLogSink) sink;
+            return isPoolSafe(comb.first()) && isPoolSafe(comb.second());
+        }
+        return sink instanceof NullLogSink || sink instanceof FileLogSink
+                || sink instanceof FileRotationLogSink || sink instanceof ConsoleLogSink;
+    }
+
+    // Pending fields, written by the thread building the record
+    private int pending(String key, byte kind) {
+        if (pendingCount == pendingKeys.length) {
+            int newSize = pendingKeys.length * 2;
+            pendingKeys = Arrays.copyOf(pendingKeys, newSize);
+            pendingKinds = Arrays.copyOf(pendingKinds, newSize);
+            pendingLongs = Arrays.copyOf(pendingLongs, newSize);
+            pendingObjects = Arrays.copyOf(pendingObjects, newSize);
+        }
+        int ix = pendingCount++;
+        pendingKeys[ix] = key;
+        pendingKinds[ix] = kind;
+        return ix;
+    }
+
+    void addLong(String key, long value) {
+        int ix = pending(key, K_LONG);
+        pendingLongs[ix] = value;
+    }
+
+    void addBoolean(String key, boolean value) {
+        int ix = pending(key, K_BOOLEAN);
+        pendingLongs[ix] = value ? 1 : 0;
+    }
+
+    void addDouble(String key, double value) {
+        int ix = pending(key, K_DOUBLE);
+        pendingLongs[ix] = Double.doubleToRawLongBits(value);
+    }
+
+    void addFloat(String key, float value) {
+        int ix = pending(key, K_FLOAT);
+        pendingLongs[ix] = Float.floatToRawIntBits(value);
+    }
+
+    void addDuration(String key, Duration value) {
+        int ix = pending(key, value == null ? K_OBJECT : K_DURATION);
+        pendingObjects[ix] = value;
+    }
+
+    void addInstant(String key, Instant value) {
+        int ix = pending(key, value == null ? K_OBJECT : K_INSTANT);
+        pendingObjects[ix] = value;
+    }
+
+    void addObject(String key, Object value) {
+        int ix = pending(key, K_OBJECT);
+        pendingObjects[ix] = value;
+    }
+
+    void addLazy(String key, Supplier<?> value) {
+        int ix = pending(key, K_LAZY);
+        pendingObjects[ix] = value;
+    }
+
+    void addFormatted(FormattedMessage value) {
+        int ix = pending(null, K_FORMATTED);
+        pendingObjects[ix] = value;
+    }
+
+    void addUnkeyed(Object value) {
+        int ix = pending(null, K_UNKEYED);
+        pendingObjects[ix] = value;
+    }
+
+    CharSequence firstMessage() {
+        for (int i = 0; i < pendingCount; i++) {
+            Object o = pendingObjects[i];
+            if (pendingKinds[i] == K_UNKEYED && o instanceof CharSequence) {
+                return (CharSequence) o;
+            } else if (pendingKinds[i] == K_FORMATTED) {
+                return ((FormattedMessage) o).template().pattern();
+            } else if (pendingKinds[i] == K_OBJECT && "msg".equals(pendingKeys[i])
+                    && o instanceof CharSequence) {
+                return (CharSequence) o;
+            }
+        }
+        return null;
+    }
+
+    CharSequence renderedMessage() {
+        MessageFragments msg = new MessageFragments(config.isExactMessageDeduplication());
+        for (int i = 0; i < pendingCount; i++) {
+            Object o = pendingObjects[i];
+            switch (pendingKinds[i]) {
+                case K_UNKEYED:
+                    if (o instanceof CharSequence || o instanceof Boolean || o instanceof Number) {
+                        msg.add(o);
+                    }
+                    break;
+                case K_FORMATTED:
+                    msg.add(((FormattedMessage) o).format());
+                    break;
+                case K_OBJECT:
+                    if ("msg".equals(pendingKeys[i]) && o instanceof CharSequence) {
+                        msg.add(o);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return msg.isEmpty() ? null : msg.toString();
+    }
+
+    Class<?> firstThrowableType() {
+        for (int i = 0; i < pendingCount; i++) {
+            byte k = pendingKinds[i];
+            if ((k == K_UNKEYED || k == K_OBJECT) && pendingObjects[i] instanceof Throwable) {
+                return pendingObjects[i].getClass();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Merge the pending fields into the record, in the order they were added,
+     * so later fields replace earlier ones and message text is concatenated.
+     *
+     * @param defer If true, leave lazy values (other than the message) and
+     * message templates to be evaluated by resolveDeferredValues() on the
+     * async logging thread
+     */
+    void resolve(boolean defer) {
+        for (int i = 0; i < pendingCount; i++) {
+            String key = pendingKeys[i];
+            switch (pendingKinds[i]) {
+                case K_LONG:
+                case K_BOOLEAN:
+                case K_DOUBLE:
+                case K_FLOAT:
+                    putPrimitive("msg".equals(key) ? "_msg" : key, pendingKinds[i], pendingLongs[i]);
+                    break;
+                case K_DURATION:
+                case K_INSTANT:
+                    if ("msg".equals(key)) {
+                        mergeKeyed(key, typedValue(pendingKinds[i], pendingObjects[i]));
+                    } else {
+                        putTyped(key, pendingKinds[i], pendingObjects[i]);
+                    }
+                    break;
+                case K_OBJECT:
+                    mergeKeyed(key, pendingObjects[i]);
+                    break;
+                case K_LAZY:
+                    if (defer && !"msg".equals(key)) {
+                        int existing = indexOf(key);
+                        if (existing < 0 || kinds[existing] != K_LAZY) {
+                            deferred++;
+                        }
+                        putTyped(key, K_LAZY, new DeferredValue((Supplier<?>) pendingObjects[i]));
+                    } else {
+                        mergeKeyed(key, ((Supplier<?>) pendingObjects[i]).get());
+                    }
+                    break;
+                case K_UNKEYED:
+                    mergeUnkeyed(pendingObjects[i]);
+                    break;
+                case K_FORMATTED:
+                    if (defer) {
+                        // The rest of the message is assembled on the
+                        // async logging thread
+                        if (deferredMessage == null) {
+                            deferredMessage = new DeferredMessage(message);
+                        }
+                        deferredMessage.add((FormattedMessage) pendingObjects[i]);
+                    } else {
+                        appendMessage(((FormattedMessage) pendingObjects[i]).format());
+                    }
+                    break;
+                default:
+                    throw new AssertionError(pendingKinds[i]);
+            }
+        }
+    }
+
+    private void mergeKeyed(String key, Object val) {
+        ThrowableEncoder errors = config.errorEncoder();
+        if (errors != null && val instanceof Throwable) {
+            putTyped("msg".equals(key) ? "_msg" : key, K_ERROR, errors.describe((Throwable) val));
+        } else if ("msg".equals(key)) {
+            if (val instanceof CharSequence) {
+                appendMessage((CharSequence) val);
+            } else {
+                putObject("_msg", val);
+            }
+        } else {
+            putObject(key, val);
+        }
+    }
+
+    private void mergeUnkeyed(Object o) {
+        if (o == null) {
+            return;
+        } else if (o instanceof CharSequence) {
+            appendMessage((CharSequence) o);
+        } else if (o instanceof Boolean || o instanceof Number) {
+            appendMessage(o);
+        } else if (o instanceof Map<?, ?>) {
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) o).entrySet()) {
+                mergeKeyed(Objects.toString(e.getKey()), e.getValue());
+            }
+        } else if (o instanceof List<?>) {
+            List<?> l = (List<?>) o;
+            for (int i = 0; i < l.size(); i++) {
+                putObject(Integer.toString(i), l.get(i));
+            }
+        } else if (o instanceof Throwable && config.errorEncoder() != null) {
+            mergeKeyed("err", o);
+        } else {
+            Map<Object, Object> mm;
+            try {
+                mm = CollectionUtils.uncheckedMap(
+                        config._mapper().convertValue(o, Map.class));
+            } catch (IllegalArgumentException ex) {
+                // Enums, arrays and the like have no properties to merge
+                LoggingLogging.log("Exception in map conversion", ex, true);
+                return;
+            }
+            for (Map.Entry<?, ?> e : mm.entrySet()) {
+                putObject(Objects.toString(e.getKey()), e.getValue());
+            }
+        }
+    }
+
+    private void appendMessage(Object piece) {
+        if (deferredMessage != null) {
+            deferredMessage.add(piece);
+        } else {
+            message.add(piece);
+        }
+    }
+
+    // The resolved record
+    private int indexOf(Object key) {
+        for (int i = 0; i < size; i++) {
+            String k = keys[i];
+            if (k == key || k.equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int slot(String key) {
+        int ix = indexOf(key);
+        if (ix < 0) {
+            if (size == keys.length) {
+                int newSize = keys.length * 2;
+                keys = Arrays.copyOf(keys, newSize);
+                kinds = Arrays.copyOf(kinds, newSize);
+                longs = Arrays.copyOf(longs, newSize);
+                objects = Arrays.copyOf(objects, newSize);
+            }
+            ix = size++;
+            keys[ix] = key;
+        }
+        encodedLength = -1;
+        return ix;
+    }
+
+    void putPrimitive(String key, byte kind, long value) {
+        int ix = slot(key);
+        kinds[ix] = kind;
+        longs[ix] = value;
+        objects[ix] = null;
+    }
+
+    void putLong(String key, long value) {
+        putPrimitive(key, K_LONG, value);
+    }
+
+    private void putTyped(String key, byte kind, Object value) {
+        int ix = slot(key);
+        kinds[ix] = kind;
+        objects[ix] = value;
+    }
+
+    void putObject(String key, Object value) {
+        int ix = slot(key);
+        kinds[ix] = K_OBJECT;
+        objects[ix] = value;
+    }
+
+    void putMessage(String key) {
+        if (deferredMessage != null) {
+            deferred++;
+            putTyped(key, K_LAZY, new DeferredValue(deferredMessage));
+            return;
+        }
+        int ix = slot(key);
+        kinds[ix] = K_MESSAGE;
+        objects[ix] = null;
+    }
+
+    private Object valueAt(int ix) {
+        switch (kinds[ix]) {
+            case K_LONG:
+                return longs[ix];
+            case K_BOOLEAN:
+                return longs[ix] != 0;
+            case K_MESSAGE:
+                return message.toString();
+            case K_DOUBLE:
+                return TypedValues.doubleValue(Double.longBitsToDouble(longs[ix]));
+            case K_FLOAT:
+                return TypedValues.floatValue(Float.intBitsToFloat((int) longs[ix]));
+            default:
+                return typedValue(kinds[ix], objects[ix]);
+        }
+    }
+
+    @Override
+    public synchronized void resolveDeferredValues(JSONContext ctx) {
+        checkLive();
+        if (deferred == 0) {
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            if (kinds[i] == K_LAZY) {
+                kinds[i] = K_OBJECT;
+                objects[i] = ((DeferredValue) objects[i]).evaluate();
+            }
+        }
+        deferred = 0;
+        encodedLength = -1;
+    }
+
+    private static Object typedValue(byte kind, Object value) {
+        switch (kind) {
+            case K_DURATION:
+                return TypedValues.durationValue((Duration) value);
+            case K_INSTANT:
+                return TypedValues.instantValue((Instant) value);
+            case K_ERROR:
+                return ((ErrorNode) value).toMap();
+            default:
+                return value;
+        }
+    }
+
+    @Override
+    public int size() {
+        checkLive();
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        checkLive();
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        checkLive();
+        int ix = indexOf(key);
+        return ix < 0 ? null : valueAt(ix);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        checkLive();
+        int ix = indexOf(key);
+        Object old = ix < 0 ? null : valueAt(ix);
+        putObject(key, value);
+        return old;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        checkLive();
+        if (entrySet == null) {
+            entrySet = new Entries();
+        }
+        return entrySet;
+    }
+
+    final class Entries extends AbstractSet<Map.Entry<String, Object>> {
+
+        @Override
+        public Iterator<Map.Entry<String, Object>> iterator() {
+            checkLive();
+            return new Iterator<Map.Entry<String, Object>>() {
+                int ix;
+
+                @Override
+                public boolean hasNext() {
+                    return ix < size;
+                }
+
+                @Override
+                public Map.Entry<String, Object> next() {
+                    if (ix >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    int i = ix++;
+                    return new AbstractMap.SimpleImmutableEntry<>(keys[i], valueAt(i));
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return PooledRecord.this.size();
+        }
+    }
+
+    // Encoding
+    synchronized ByteBuffer encodedLine() throws IOException {
+        checkLive();
+        encode();
+        // Once a view of the buffer has been handed out, it may be being
+        // written by another thread, so re-encoding must use a new one
+        encodedShared = true;
+        return ByteBuffer.wrap(encoded, 0, encodedLength + 1);
+    }
+
+    synchronized byte[] encodedBytes() throws IOException {
+        checkLive();
+        encode();
+        return Arrays.copyOf(encoded, encodedLength);
+    }
+
+    private void encode() throws IOException {
+        if (encodedLength >= 0) {
+            return;
+        }
+        if (deferred > 0) {
+            // Never write a placeholder, whoever forgot to resolve it
+            resolveDeferredValues(ctx);
+        }
+        if (encodedShared) {
+            encoded = new byte[encoded.length];
+            encodedShared = false;
+        }
+        LoggingMetrics metrics = config.metrics();
+        long startedAt = metrics == null ? 0 : System.nanoTime();
+        RecordLimits limits = config.recordLimits();
+        int pos = 0;
+        int written = 0;
+        int omitted = 0;
+        boolean tooMany = false;
+        truncatedToFit = false;
+        pos = ascii('{', pos);
+        for (int i = 0; i < size; i++) {
+            int start = pos;
+            // Bunyan's own properties are never left out
+            boolean limited = limits != null && !RecordLimits.isBunyanProperty(keys[i]);
+            if (limited) {
+                if (written >= limits.maxElements() || pos >= limits.maxRecordBytes()) {
+                    tooMany |= written >= limits.maxElements();
+                    truncatedToFit |= pos >= limits.maxRecordBytes();
+                    omitted++;
+                    continue;
+                }
+                stringLimit = Math.min(limits.maxStringLength(),
+                        Math.max(0, limits.maxRecordBytes() - pos));
+            } else {
+                stringLimit = limits == null ? Integer.MAX_VALUE : limits.maxStringLength();
+            }
+            if (written > 0) {
+                pos = ascii(',', pos);
+            }
+            pos = string(keys[i], pos);
+            pos = ascii(':', pos);
+            switch (kinds[i]) {
+                case K_LONG:
+                    pos = number(longs[i], pos);
+                    break;
+                case K_BOOLEAN:
+                    pos = raw(longs[i] != 0 ? "true" : "false", pos);
+                    break;
+                case K_MESSAGE:
+                    pos = message(pos);
+                    break;
+                case K_DOUBLE:
+                    pos = decimal(Double.longBitsToDouble(longs[i]), pos);
+                    break;
+                case K_FLOAT:
+                    pos = decimal(Float.intBitsToFloat((int) longs[i]), pos);
+                    break;
+                case K_DURATION:
+                    pos = duration((Duration) objects[i], pos);
+                    break;
+                case K_INSTANT:
+                    pos = instant((Instant) objects[i], pos);
+                    break;
+                case K_ERROR:
+                    pos = error((ErrorNode) objects[i], pos);
+                    break;
+                default:
+                    pos = value(objects[i], pos);
+            }
+            if (limited && pos > limits.maxRecordBytes()) {
+                // Too big to fit - roll it back
+                pos = start;
+                truncatedToFit = true;
+                omitted++;
+                continue;
+            }
+            written++;
+        }
+        if (omitted > 0) {
+            if (tooMany) {
+                limits.onCollectionTruncated();
+            }
+            pos = raw(written > 0 ? ",\"_truncated\":" : "\"_truncated\":", pos);
+            pos = number(omitted, pos);
+        }
+        if (truncatedToFit) {
+            limits.onRecordTruncated();
+        }
+        pos = ascii('}', pos);
+        encodedLength = pos;
+        ascii('\n', pos);
+        if (metrics != null) {
+            metrics.onSerialized(LoggingMetrics.SER_DIRECT, startedAt);
+        }
+    }
+
+    private void onTruncatedToFit() {
+        truncatedToFit = true;
+    }
+
+    private int value(Object o, int pos) throws IOException {
+        if (o == null) {
+            return raw("null", pos);
+        } else if (o instanceof CharSequence) {
+            CharSequence cs = (CharSequence) o;
+            if (cs.length() > stringLimit) {
+                cs = config.recordLimits().truncate(cs, stringLimit, this::onTruncatedToFit);
+            }
+            return string(cs, pos);
+        } else if (o instanceof Boolean) {
+            return raw(((Boolean) o) ? "true" : "false", pos);
+        } else if (o instanceof Integer || o instanceof Long || o instanceof Short || o instanceof Byte) {
+            return number(((Number) o).longValue(), pos);
+        } else if (o instanceof Double) {
+            return decimal((Double) o, pos);
+        } else if (o instanceof Float) {
+            return decimal((Float) o, pos);
+        } else if (o instanceof Enum<?>) {
+            return string(((Enum<?>) o).name(), pos);
+        } else if (o instanceof Throwable && config.errorEncoder() != null) {
+            // A lazy value's result
+            return error(config.errorEncoder().describe((Throwable) o), pos);
+        } else if (config.recordLimits() != null) {
+            RecordLimits limits = config.recordLimits();
+            return bytes(limits.writeValueAsBytes(config._mapper(), o, 1,
+                    Math.max(0, limits.maxRecordBytes() - pos)), pos);
+        } else if (config.serializationPolicy() == NEVER_JACKSON || SimpleJSON.canDefinitelySerialize(o)) {
+            return bytes(SimpleJSON.stringify(o, COMPACT).getBytes(UTF_8), pos);
+        }
+        return bytes(config._mapper().writeValueAsBytes(o), pos);
+    }
+
+    private int error(ErrorNode err, int pos) {
+        pos = ascii('{', pos);
+        if (err.message != null) {
+            pos = raw("\"message\":", pos);
+            pos = string(err.message, pos);
+            pos = ascii(',', pos);
+        }
+        pos = raw("\"name\":", pos);
+        pos = string(err.name, pos);
+        pos = raw(",\"stack\":\"", pos);
+        pos = stringContent(err.name, pos);
+        if (err.message != null) {
+            pos = raw(": ", pos);
+            pos = stringContent(err.message, pos);
+        }
+        StackFragment frames = err.stack;
+        byte[] json = frames.json();
+        if (json == null) {
+            // Escape the frames once, and reuse that for every record
+            // with the same stack
+            int start = pos;
+            pos = stringContent(frames.text(), pos);
+            frames.json(Arrays.copyOfRange(encoded, start, pos));
+        } else {
+            pos = bytes(json, pos);
+        }
+        pos = ascii('"', pos);
+        if (err.cause != null) {
+            pos = raw(",\"cause\":", pos);
+            pos = error(err.cause, pos);
+        }
+        if (err.causesOmitted > 0) {
+            pos = raw(",\"causesOmitted\":", pos);
+            pos = number(err.causesOmitted, pos);
+        }
+        if (err.suppressed.length > 0) {
+            pos = raw(",\"suppressed\":[", pos);
+            for (int i = 0; i < err.suppressed.length; i++) {
+                if (i > 0) {
+                    pos = ascii(',', pos);
+                }
+                pos = error(err.suppressed[i], pos);
+            }
+            pos = ascii(']', pos);
+        }
+        if (err.suppressedOmitted > 0) {
+            pos = raw(",\"suppressedOmitted\":", pos);
+            pos = number(err.suppressedOmitted, pos);
+        }
+        return ascii('}', pos);
+    }
+
+    private int decimal(double value, int pos) {
+        if (!Double.isFinite(value)) {
+            return string(Double.toString(value), pos);
+        }
+        int places = TypedValues.fixedDecimals(value);
+        if (places < 0) {
+            return raw(Double.toString(value), pos);
+        }
+        ensure(pos, TypedValues.MAX_FIXED_BYTES);
+        return TypedValues.writeFixed(value, places, encoded, pos);
+    }
+
+    private int decimal(float value, int pos) {
+        if (!Float.isFinite(value)) {
+            return string(Float.toString(value), pos);
+        }
+        int places = TypedValues.fixedDecimals(value);
+        if (places < 0) {
+            return raw(Float.toString(value), pos);
+        }
+        ensure(pos, TypedValues.MAX_FIXED_BYTES);
+        return TypedValues.writeFixed(value, places, encoded, pos);
+    }
+
+    private int duration(Duration value, int pos) {
+        if (TypedValues.hasWholeMillis(value)) {
+            return number(value.toMillis(), pos);
+        }
+        return decimal(TypedValues.fractionalMillis(value), pos);
+    }
+
+    private int instant(Instant value, int pos) {
+        ensure(pos, TypedValues.MAX_INSTANT_BYTES + 2);
+        encoded[pos] = '"';
+        int end = TypedValues.writeInstant(value, encoded, pos + 1);
+        if (end < 0) {
+            return string(value.toString(), pos);
+        }
+        encoded[end] = '"';
+        return end + 1;
+    }
+
+    private void ensure(int pos, int count) {
+        if (pos + count > encoded.length) {
+            encoded = Arrays.copyOf(encoded, Math.max(encoded.length * 2, pos + count + 64));
+        }
+    }
+
+    private int ascii(char c, int pos) {
+        ensure(pos, 1);
+        encoded[pos] = (byte) c;
+        return pos + 1;
+    }
+
+    private int raw(String s, int pos) {
+        int len = s.length();
+        ensure(pos, len);
+        for (int i = 0; i < len; i++) {
+            encoded[pos++] = (byte) s.charAt(i);
+        }
+        return pos;
+    }
+
+    private int bytes(byte[] b, int pos) {
+        ensure(pos, b.length);
+        System.arraycopy(b, 0, encoded, pos, b.length);
+        return pos + b.length;
+    }
+
+    private int number(long value, int pos) {
+        if (value == Long.MIN_VALUE) {
+            return raw(Long.toString(value), pos);
+        }
+        ensure(pos, 20);
+        if (value < 0) {
+            encoded[pos++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int end = pos + digits;
+        for (int i = end - 1; i >= pos; i--) {
+            encoded[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        return end;
+    }
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(UTF_8);
+
+    private int message(int pos) {
+        if (stringLimit != Integer.MAX_VALUE) {
+            String text = message.toString();
+            return string(text.length() <= stringLimit ? text
+                    : config.recordLimits().truncate(text, stringLimit, this::onTruncatedToFit), pos);
+        } else if (!message.isExact()) {
+            return string(message.text(), pos);
+        }
+        // Write the fragments straight into the buffer, without ever
+        // assembling the message as a string
+        pos = ascii('"', pos);
+        int count = message.fragmentCount();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                pos = ascii(' ', pos);
+            }
+            Object f = message.fragment(i);
+            if (f instanceof CharSequence) {
+                pos = stringContent((CharSequence) f, pos);
+            } else if (f instanceof Boolean) {
+                pos = raw(((Boolean) f) ? "true" : "false", pos);
+            } else if (f instanceof Integer || f instanceof Long || f instanceof Short || f instanceof Byte) {
+                pos = number(((Number) f).longValue(), pos);
+            } else if (f instanceof Double && Double.isFinite((Double) f)) {
+                pos = decimal((Double) f, pos);
+            } else if (f instanceof Float && Float.isFinite((Float) f)) {
+                pos = decimal((Float) f, pos);
+            } else {
+                pos = stringContent(f.toString(), pos);
+            }
+        }
+        return ascii('"', pos);
+    }
+
+    private int string(CharSequence s, int pos) {
+        pos = ascii('"', pos);
+        pos = stringContent(s, pos);
+        return ascii('"', pos);
+    }
+
+    private int stringContent(CharSequence s, int pos) {
+        int len = s.length();
+        // Worst case, every char is a \\u escape
+        ensure(pos, len * 6);
+        byte[] b = encoded;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    b[pos++] = '\\';
+                    b[pos++] = (byte) c;
+                    break;
+                case '\n':
+                    b[pos++] = '\\';
+                    b[pos++] = 'n';
+                    break;
+                case '\r':
+                    b[pos++] = '\\';
+                    b[pos++] = 'r';
+                    break;
+                case '\t':
+                    b[pos++] = '\\';
+                    b[pos++] = 't';
+                    break;
+                default:
+                    if (c < 0x20) {
+                        b[pos++] = '\\';
+                        b[pos++] = 'u';
+                        b[pos++] = '0';
+                        b[pos++] = '0';
+                        b[pos++] = HEX[c >> 4];
+                        b[pos++] = HEX[c & 0xF];
+                    } else if (c < 0x80) {
+                        b[pos++] = (byte) c;
+                    } else if (c < 0x800) {
+                        b[pos++] = (byte) (0xC0 | (c >> 6));
+                        b[pos++] = (byte) (0x80 | (c & 0x3F));
+                    } else if (Character.isHighSurrogate(c) && i + 1 < len
+                            && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, s.charAt(++i));
+                        b[pos++] = (byte) (0xF0 | (cp >> 18));
+                        b[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                        b[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                        b[pos++] = (byte) (0x80 | (cp & 0x3F));
+                    } else {
+                        b[pos++] = (byte) (0xE0 | (c >> 12));
+                        b[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                        b[pos++] = (byte) (0x80 | (c & 0x3F));
+                    }
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * The JSONContext owned by a pooled record, which encodes it directly
+     * unless the configuration says to always use Jackson.
+     */
+    static final class Context extends JSONContext {
+
+        private final PooledRecord record;
+        private final boolean direct;
+
+        Context(LoggingConfig config, PooledRecord record) {
+            super(config);
+            this.record = record;
+            this.direct = config.serializationPolicy() != ALWAYS_JACKSON;
+        }
+
+        @Override
+        public byte[] writeValueAsBytes(Object o) throws IOException {
+            if (direct && o == record) {
+                return record.encodedBytes();
+            }
+            return super.writeValueAsBytes(o);
+        }
+
+        @Override
+        public CharSequence writeValueAsString(Object o) throws IOException {
+            if (direct && o == record) {
+                return new String(record.encodedBytes(), UTF_8);
+            }
+            return super.writeValueAsString(o);
+        }
+
+        @Override
+        ByteBuffer encodedLine(Object o) throws IOException {
+            if (direct && o == record) {
+                return record.encodedLine();
+            }
+            return super.encodedLine(o);
+        }
+    }
+}
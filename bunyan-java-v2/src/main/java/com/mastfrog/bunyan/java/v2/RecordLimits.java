@@ -0,0 +1,259 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import static com.mastfrog.util.preconditions.Checks.greaterThanZero;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits on the size of log records, enforced while they are written as JSON,
+ * so that one careless <code>log.add("body", hugeObject)</code> cannot produce
+ * a multi-megabyte line, exhaust the buffers of whatever writes it, or stall
+ * a log file while it is written. Content over a limit is left out as it is
+ * encountered, with a marker in its place:
+ * <ul>
+ * <li>Strings longer than the maximum length are cut off, ending with
+ * <code>...(<i>n</i> more chars)</code></li>
+ * <li>Arrays and collections with more than the maximum number of elements
+ * end with a <code>(<i>n</i> more)</code> element; objects and maps with more
+ * than that many properties get a <code>_truncated</code> property with the
+ * number left out</li>
+ * <li>Objects and arrays nested more deeply than the maximum depth (the log
+ * record itself being depth 1) are replaced by the string
+ * <code>(nested too deeply)</code></li>
+ * <li>Once a record's JSON reaches the maximum size, strings are cut off
+ * to fit, and remaining properties are left out and counted in
+ * <code>_truncated</code> - except for bunyan's own (<code>name, msg, v,
+ * time, pid, level, hostname</code>), so a record can exceed the maximum by
+ * the size of those</li>
+ * </ul>
+ * <p>
+ * Each kind of truncation is counted. An instance may be shared between
+ * things that write records, such as a LoggingConfig and a remote sink's
+ * spool, so the counts cover both.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+public final class RecordLimits {
+
+    public static final int DEFAULT_MAX_RECORD_BYTES = 32 * 1024;
+    public static final int DEFAULT_MAX_STRING_LENGTH = 8 * 1024;
+    public static final int DEFAULT_MAX_ELEMENTS = 512;
+    public static final int DEFAULT_MAX_DEPTH = 16;
+    private final int maxRecordBytes;
+    private final int maxStringLength;
+    private final int maxElements;
+    private final int maxDepth;
+    private final LongAdder truncatedStrings = new LongAdder();
+    private final LongAdder truncatedCollections = new LongAdder();
+    private final LongAdder truncatedNesting = new LongAdder();
+    private final LongAdder truncatedRecords = new LongAdder();
+
+    /**
+     * Create a set of limits.
+     *
+     * @param maxRecordBytes The size in bytes of a record's JSON, beyond
+     * which properties are left out
+     * @param maxStringLength The maximum number of characters of any string
+     * @param maxElements The maximum number of elements of any array or
+     * collection, or properties of any object or map
+     * @param maxDepth The maximum depth of nested objects and arrays, counting
+     * the record itself as 1
+     */
+    public RecordLimits(int maxRecordBytes, int maxStringLength, int maxElements, int maxDepth) {
+        this.maxRecordBytes = greaterThanZero("maxRecordBytes", maxRecordBytes);
+        this.maxStringLength = greaterThanZero("maxStringLength", maxStringLength);
+        this.maxElements = greaterThanZero("maxElements", maxElements);
+        this.maxDepth = greaterThanZero("maxDepth", maxDepth);
+    }
+
+    /**
+     * Create a set of limits with the defaults - records of 32Kb, strings of
+     * 8192 characters, 512 elements and a depth of 16.
+     */
+    public RecordLimits() {
+        this(DEFAULT_MAX_RECORD_BYTES, DEFAULT_MAX_STRING_LENGTH,
+                DEFAULT_MAX_ELEMENTS, DEFAULT_MAX_DEPTH);
+    }
+
+    public int maxRecordBytes() {
+        return maxRecordBytes;
+    }
+
+    public int maxStringLength() {
+        return maxStringLength;
+    }
+
+    public int maxElements() {
+        return maxElements;
+    }
+
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * The number of strings which have been cut off.
+     *
+     * @return A count
+     */
+    public long truncatedStrings() {
+        return truncatedStrings.sum();
+    }
+
+    /**
+     * The number of arrays, collections, objects and maps which have had
+     * elements or properties left out for having too many.
+     *
+     * @return A count
+     */
+    public long truncatedCollections() {
+        return truncatedCollections.sum();
+    }
+
+    /**
+     * The number of objects or arrays which were left out for being nested
+     * too deeply.
+     *
+     * @return A count
+     */
+    public long truncatedNesting() {
+        return truncatedNesting.sum();
+    }
+
+    /**
+     * The number of records which had properties left out for reaching the
+     * maximum record size.
+     *
+     * @return A count
+     */
+    public long truncatedRecords() {
+        return truncatedRecords.sum();
+    }
+
+    /**
+     * Write a log record (or any other object) as JSON with these limits
+     * applied, using the passed mapper's serializers.
+     *
+     * @param mapper The mapper
+     * @param value The record
+     * @return The JSON
+     * @throws IOException If serialization fails
+     */
+    public byte[] writeValueAsBytes(ObjectMapper mapper, Object value) throws IOException {
+        return writeValueAsBytes(mapper, value, 0, maxRecordBytes);
+    }
+
+    /**
+     * Write a value which is nested inside a record at the passed depth, with
+     * the passed number of bytes of the record's size budget left.
+     */
+    byte[] writeValueAsBytes(ObjectMapper mapper, Object value, int depth, int budget) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(budget, 512) + 64);
+        JsonGenerator raw = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        try (LimitingJsonGenerator gen = new LimitingJsonGenerator(raw, this, out, depth, budget)) {
+            mapper.writeValue(gen, value);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Get a string cut off at the passed number of characters, with a marker
+     * saying how many were left out, counting it as a truncated string if it
+     * is longer than the maximum string length, and as a truncated record
+     * if it was cut shorter than that to fit.
+     *
+     * @param s A string
+     * @param limit The number of characters to keep
+     * @param record Called if the string was cut off to fit the record
+     * @return A string
+     */
+    String truncate(CharSequence s, int limit, Runnable record) {
+        int len = s.length();
+        if (len <= limit) {
+            return s.toString();
+        }
+        if (len > maxStringLength) {
+            onStringTruncated();
+        }
+        if (limit < Math.min(len, maxStringLength)) {
+            record.run();
+        }
+        if (limit > 0 && Character.isHighSurrogate(s.charAt(limit - 1))) {
+            limit--;
+        }
+        return new StringBuilder(limit + 24).append(s, 0, limit)
+                .append("...(").append(len - limit).append(" more chars)").toString();
+    }
+
+    void onStringTruncated() {
+        truncatedStrings.increment();
+    }
+
+    void onCollectionTruncated() {
+        truncatedCollections.increment();
+    }
+
+    void onNestingTruncated() {
+        truncatedNesting.increment();
+    }
+
+    void onRecordTruncated() {
+        truncatedRecords.increment();
+    }
+
+    /**
+     * Determine if a top-level property of a record is one of bunyan's own,
+     * which are never left out.
+     *
+     * @param key A property name
+     * @return true if it is a bunyan property
+     */
+    static boolean isBunyanProperty(String key) {
+        switch (key) {
+            case "name":
+            case "msg":
+            case "v":
+            case "time":
+            case "pid":
+            case "level":
+            case "hostname":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RecordLimits(bytes " + maxRecordBytes + ", string " + maxStringLength
+                + ", elements " + maxElements + ", depth " + maxDepth + ")";
+    }
+}
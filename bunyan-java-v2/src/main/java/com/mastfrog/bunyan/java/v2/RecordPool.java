@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, lock-free pool of PooledRecords. Taking a record probes a few
+ * slots starting at a per-thread offset, so threads mostly do not contend for
+ * the same slots; records are returned near the slot of the thread that took
+ * them, which may not be the thread releasing them if logging is async. If no
+ * record is available a new one is created, and if there is no room to return
+ * one, it is left for the garbage collector.
+ *
+ * @author Tim Boudreau
+ */
+final class RecordPool {
+
+    private static final int PROBES = 8;
+    @JsonIgnore
+    private final AtomicReferenceArray<PooledRecord> slots;
+    @JsonIgnore
+    private final int mask;
+    @JsonIgnore
+    private final LoggingConfig config;
+    @JsonIgnore
+    private final LongAdder created = new LongAdder();
+    @JsonIgnore
+    private final LongAdder reused = new LongAdder();
+
+    RecordPool(int size, LoggingConfig config) {
+        int sz = Integer.highestOneBit(Math.max(PROBES, size - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(sz);
+        this.mask = sz - 1;
+        this.config = config;
+    }
+
+    PooledRecord take() {
+        int start = start();
+        for (int i = 0; i < PROBES; i++) {
+            int ix = (start + i) & mask;
+            PooledRecord rec = slots.get(ix);
+            if (rec != null && slots.compareAndSet(ix, rec, null)) {
+                reused.increment();
+                rec.acquire(start);
+                return rec;
+            }
+        }
+        created.increment();
+        PooledRecord result = new PooledRecord(this, config);
+        result.acquire(start);
+        return result;
+    }
+
+    void give(PooledRecord rec) {
+        int start = rec.home();
+        for (int i = 0; i < PROBES; i++) {
+            int ix = (start + i) & mask;
+            if (slots.get(ix) == null && slots.compareAndSet(ix, null, rec)) {
+                return;
+            }
+        }
+    }
+
+    private int start() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 32)) * PROBES;
+    }
+
+    @JsonProperty("size")
+    int size() {
+        return slots.length();
+    }
+
+    @JsonProperty("created")
+    long created() {
+        return created.sum();
+    }
+
+    @JsonProperty("reused")
+    long reused() {
+        return reused.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "pool(" + slots.length() + ", created " + created.sum()
+                + ", reused " + reused.sum() + ")";
+    }
+}
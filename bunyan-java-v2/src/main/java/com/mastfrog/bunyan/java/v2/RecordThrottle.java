@@ -0,0 +1,319 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import static com.mastfrog.util.preconditions.Checks.greaterThanZero;
+import static com.mastfrog.util.preconditions.Checks.notNull;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The built-in sampling and rate limiting policies, configured per logger
+ * name via LoggingConfig.Builder. All decisions are made with atomics and
+ * pre-allocated state - no locks, no allocation on the logging path.
+ * <p>
+ * Counts of dropped records are logged as a <code>dropped-records</code>
+ * record on the logger in question, at most once per summary interval, when
+ * that logger is next used (and on shutdown).
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+final class RecordThrottle implements LogRecordFilter {
+
+    static final String SUMMARY_MESSAGE = "dropped-records";
+    static final int MESSAGE_BUCKETS = 256;
+    @JsonProperty("loggers")
+    private final Map<String, LoggerThrottle> throttles;
+    @JsonProperty("alwaysKeepSevere")
+    private final boolean alwaysKeepSevere;
+    @JsonIgnore
+    private final long summaryIntervalNanos;
+    @JsonIgnore
+    private final Supplier<LoggingConfig> config;
+
+    RecordThrottle(Map<String, LoggerThrottle> throttles, boolean alwaysKeepSevere,
+            long summaryIntervalNanos, Supplier<LoggingConfig> config) {
+        this.throttles = throttles;
+        this.alwaysKeepSevere = alwaysKeepSevere;
+        this.summaryIntervalNanos = summaryIntervalNanos;
+        this.config = config;
+    }
+
+    @Override
+    public boolean accept(String loggerName, Level level, CharSequence message) {
+        LoggerThrottle throttle = throttles.get(loggerName);
+        if (throttle == null) {
+            return true;
+        }
+        long now = System.nanoTime();
+        boolean result = (alwaysKeepSevere && (level == Level.ERROR || level == Level.FATAL))
+                || throttle.accept(level, message, now);
+        if (!result) {
+            throttle.dropped.increment();
+        }
+        if (now - throttle.lastSummary.get() >= summaryIntervalNanos) {
+            emitSummary(throttle, now);
+        }
+        return result;
+    }
+
+    void emitSummaries() {
+        long now = System.nanoTime();
+        for (LoggerThrottle throttle : throttles.values()) {
+            emitSummary(throttle, now);
+        }
+    }
+
+    private void emitSummary(LoggerThrottle throttle, long now) {
+        long last = throttle.lastSummary.get();
+        // Only one thread wins the right to log the summary
+        if (!throttle.lastSummary.compareAndSet(last, now)) {
+            return;
+        }
+        long count = throttle.dropped.sumThenReset();
+        if (count > 0) {
+            LoggingConfig cfig = config.get();
+            new LogImpl(throttle.name, LogLevel.WARN, cfig).unfiltered()
+                    .message(SUMMARY_MESSAGE)
+                    .add("dropped", count)
+                    .add("periodMs", TimeUnit.NANOSECONDS.toMillis(now - last))
+                    .close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "throttle(" + throttles.values() + ", alwaysKeepSevere=" + alwaysKeepSevere + ")";
+    }
+
+    static final class LoggerThrottle {
+
+        @JsonProperty("name")
+        final String name;
+        // Indexed by Level.ordinal()
+        @JsonProperty("sampleRates")
+        private final double[] sampleRates;
+        @JsonProperty("limit")
+        private final RateLimiter loggerLimit;
+        @JsonIgnore
+        private final RateLimiter[] messageLimits;
+        @JsonIgnore
+        final LongAdder dropped = new LongAdder();
+        @JsonIgnore
+        final AtomicLong lastSummary = new AtomicLong(System.nanoTime());
+
+        LoggerThrottle(String name, double[] sampleRates, RateLimiter loggerLimit,
+                RateLimiter[] messageLimits) {
+            this.name = name;
+            this.sampleRates = sampleRates;
+            this.loggerLimit = loggerLimit;
+            this.messageLimits = messageLimits;
+        }
+
+        @JsonProperty("dropped")
+        long droppedSinceLastSummary() {
+            return dropped.sum();
+        }
+
+        boolean accept(Level level, CharSequence message, long now) {
+            double rate = sampleRates[level.ordinal()];
+            if (rate < 1D && (rate <= 0D || ThreadLocalRandom.current().nextDouble() >= rate)) {
+                return false;
+            }
+            RateLimiter messageLimit = messageLimits == null ? null : messageLimits[bucket(message)];
+            if (messageLimit != null && !messageLimit.tryAcquire(now)) {
+                return false;
+            }
+            if (loggerLimit != null && !loggerLimit.tryAcquire(now)) {
+                // The record is not logged, so it should not count against
+                // its message's allowance
+                if (messageLimit != null) {
+                    messageLimit.release();
+                }
+                return false;
+            }
+            return true;
+        }
+
+        private static int bucket(CharSequence message) {
+            // Messages that hash to the same bucket share a limit - the
+            // price of having a fixed, preallocated set of buckets
+            int h = message == null ? 0 : message.hashCode();
+            return (h ^ (h >>> 16)) & (MESSAGE_BUCKETS - 1);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(name).append('(');
+            for (Level l : Level.values()) {
+                if (sampleRates[l.ordinal()] < 1D) {
+                    sb.append(l.name().toLowerCase()).append('=')
+                            .append(sampleRates[l.ordinal()]).append(' ');
+                }
+            }
+            if (loggerLimit != null) {
+                sb.append("limit=").append(loggerLimit).append(' ');
+            }
+            if (messageLimits != null) {
+                sb.append("perMessage=").append(messageLimits[0]);
+            }
+            return sb.append(')').toString();
+        }
+    }
+
+    /**
+     * A lock-free token bucket, implemented as the generic cell rate
+     * algorithm: a single atomic "theoretical arrival time" which each
+     * accepted record pushes forward by one emission interval; a record is
+     * accepted if doing so would not push it further ahead of the current time
+     * than the burst allows.
+     */
+    static final class RateLimiter {
+
+        private final long emissionIntervalNanos;
+        private final long burstToleranceNanos;
+        private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+        private final int perSecond;
+        private final int burst;
+
+        RateLimiter(int perSecond, int burst) {
+            this.perSecond = greaterThanZero("perSecond", perSecond);
+            this.burst = greaterThanZero("burst", burst);
+            emissionIntervalNanos = TimeUnit.SECONDS.toNanos(1) / perSecond;
+            burstToleranceNanos = emissionIntervalNanos * (burst - 1);
+        }
+
+        boolean tryAcquire(long now) {
+            for (;;) {
+                long tat = theoreticalArrival.get();
+                long base = Math.max(tat, now);
+                if (base - now > burstToleranceNanos) {
+                    return false;
+                }
+                if (theoreticalArrival.compareAndSet(tat, base + emissionIntervalNanos)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Give back a token taken by tryAcquire() for a record which another
+         * limit then rejected.
+         */
+        void release() {
+            theoreticalArrival.addAndGet(-emissionIntervalNanos);
+        }
+
+        @Override
+        public String toString() {
+            return perSecond + "/s burst " + burst;
+        }
+    }
+
+    static final class Builder {
+
+        private final Map<String, Spec> specs = new HashMap<>();
+        private boolean alwaysKeepSevere = true;
+        private long summaryIntervalNanos = TimeUnit.SECONDS.toNanos(30);
+
+        private Spec spec(String logger) {
+            return specs.computeIfAbsent(notNull("logger", logger), Spec::new);
+        }
+
+        Builder sample(String logger, Level level, double probability) {
+            if (probability < 0D || probability > 1D) {
+                throw new IllegalArgumentException("Probability must be between "
+                        + "0 and 1 but got " + probability);
+            }
+            spec(logger).sampleRates[notNull("level", level).ordinal()] = probability;
+            return this;
+        }
+
+        Builder rateLimit(String logger, int perSecond, int burst) {
+            spec(logger).loggerLimit = new int[]{greaterThanZero("perSecond", perSecond),
+                greaterThanZero("burst", burst)};
+            return this;
+        }
+
+        Builder rateLimitPerMessage(String logger, int perSecond, int burst) {
+            spec(logger).messageLimit = new int[]{greaterThanZero("perSecond", perSecond),
+                greaterThanZero("burst", burst)};
+            return this;
+        }
+
+        Builder alwaysKeepSevere(boolean val) {
+            alwaysKeepSevere = val;
+            return this;
+        }
+
+        Builder summaryInterval(long nanos) {
+            summaryIntervalNanos = nanos;
+            return this;
+        }
+
+        RecordThrottle build(Supplier<LoggingConfig> config) {
+            Map<String, LoggerThrottle> throttles = new HashMap<>(specs.size() * 2);
+            for (Spec spec : specs.values()) {
+                throttles.put(spec.name, spec.build());
+            }
+            return new RecordThrottle(throttles, alwaysKeepSevere, summaryIntervalNanos, config);
+        }
+
+        static final class Spec {
+
+            private final String name;
+            private final double[] sampleRates = new double[Level.values().length];
+            private int[] loggerLimit;
+            private int[] messageLimit;
+
+            Spec(String name) {
+                this.name = name;
+                for (int i = 0; i < sampleRates.length; i++) {
+                    sampleRates[i] = 1D;
+                }
+            }
+
+            LoggerThrottle build() {
+                RateLimiter[] perMessage = null;
+                if (messageLimit != null) {
+                    perMessage = new RateLimiter[MESSAGE_BUCKETS];
+                    for (int i = 0; i < perMessage.length; i++) {
+                        perMessage[i] = new RateLimiter(messageLimit[0], messageLimit[1]);
+                    }
+                }
+                return new LoggerThrottle(name, sampleRates.clone(),
+                        loggerLimit == null ? null : new RateLimiter(loggerLimit[0], loggerLimit[1]),
+                        perMessage);
+            }
+        }
+    }
+}
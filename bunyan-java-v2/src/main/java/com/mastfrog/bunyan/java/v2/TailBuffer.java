@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import java.util.Map;
+
+/**
+ * Ring buffer of assembled log records backing BufferingLogs.
+ *
+ * @author Tim Boudreau
+ */
+final class TailBuffer {
+
+    static final String SKIPPED_KEY = "tailSkipped";
+    private final JSONContext[] contexts;
+    private final Object[] records;
+    private int head;
+    private int count;
+    private long overwritten;
+
+    TailBuffer(int capacity) {
+        contexts = new JSONContext[capacity];
+        records = new Object[capacity];
+    }
+
+    synchronized void add(JSONContext ctx, Map<String, Object> record) {
+        int ix = (head + count) % records.length;
+        if (count == records.length) {
+            release(records[ix]);
+            head = (head + 1) % records.length;
+            overwritten++;
+        } else {
+            count++;
+        }
+        if (record instanceof PooledRecord) {
+            ((PooledRecord) record).retain();
+        }
+        contexts[ix] = ctx;
+        records[ix] = record;
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    synchronized void discard() {
+        for (int i = 0; i < count; i++) {
+            release(records[(head + i) % records.length]);
+        }
+        clear();
+    }
+
+    private static void release(Object record) {
+        if (record instanceof PooledRecord) {
+            ((PooledRecord) record).release();
+        }
+    }
+
+    private void clear() {
+        for (int i = 0; i < records.length; i++) {
+            contexts[i] = null;
+            records[i] = null;
+        }
+        head = 0;
+        count = 0;
+        overwritten = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    void flushTo(LogSink sink) {
+        JSONContext[] ctxs;
+        Object[] recs;
+        long skipped;
+        // Copy out under the lock, but push outside it, since sinks may block
+        synchronized (this) {
+            if (count == 0) {
+                return;
+            }
+            ctxs = new JSONContext[count];
+            recs = new Object[count];
+            for (int i = 0; i < count; i++) {
+                int ix = (head + i) % records.length;
+                ctxs[i] = contexts[ix];
+                recs[i] = records[ix];
+            }
+            skipped = overwritten;
+            clear();
+        }
+        if (skipped > 0) {
+            ((Map<String, Object>) recs[0]).put(SKIPPED_KEY, skipped);
+        }
+        for (int i = 0; i < recs.length; i++) {
+            if (recs[i] instanceof PooledRecord) {
+                PooledRecord rec = (PooledRecord) recs[i];
+                try {
+                    rec.pushTo(sink);
+                } finally {
+                    rec.release();
+                }
+            } else {
+                sink.push(ctxs[i], (Map<String, Object>) recs[i]);
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "tail(" + count + "/" + records.length + ")";
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converts throwables into the compact <code>err</code> object bunyan's own
+ * error serializer produces - <code>message</code>, <code>name</code> and
+ * <code>stack</code>, where the stack is the text Java would print for it -
+ * plus <code>cause</code> and <code>suppressed</code> objects for the
+ * throwables it refers to, in place of Jackson's serialization of the entire
+ * object graph.
+ * <p>
+ * The text of each run of stack frames is cached, keyed by the frames
+ * themselves, so an exception thrown from the same place again costs a hash
+ * lookup rather than formatting every frame; pooled records also cache the
+ * JSON-escaped bytes of that text, so it is only escaped once. Frames a
+ * cause or suppressed exception shares with the throwable enclosing it are
+ * elided as <code>... n more</code>, as <code>printStackTrace()</code> does,
+ * and the number of frames, the depth of nested causes and suppressed
+ * exceptions, and the number of suppressed exceptions per throwable are
+ * limited, with counts of what was left out.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+final class ThrowableEncoder {
+
+    static final int DEFAULT_MAX_DEPTH = 8;
+    static final int DEFAULT_MAX_SUPPRESSED = 8;
+    static final int DEFAULT_MAX_FRAMES = 128;
+    // Bounds the total however the limits are set, since each suppressed
+    // exception can have its own causes and suppressed exceptions
+    private static final int MAX_THROWABLES = 64;
+    private static final int MAX_CACHED = 1024;
+    private final ConcurrentHashMap<StackKey, StackFragment> cache
+            = new ConcurrentHashMap<>(64);
+    private final int maxDepth;
+    private final int maxSuppressed;
+    private final int maxFrames;
+
+    ThrowableEncoder(int maxDepth, int maxSuppressed, int maxFrames) {
+        if (maxDepth < 0 || maxSuppressed < 0 || maxFrames < 0) {
+            throw new IllegalArgumentException("Negative limit: depth " + maxDepth
+                    + " suppressed " + maxSuppressed + " frames " + maxFrames);
+        }
+        this.maxDepth = maxDepth;
+        this.maxSuppressed = maxSuppressed;
+        this.maxFrames = maxFrames;
+    }
+
+    ThrowableEncoder() {
+        this(DEFAULT_MAX_DEPTH, DEFAULT_MAX_SUPPRESSED, DEFAULT_MAX_FRAMES);
+    }
+
+    int maxDepth() {
+        return maxDepth;
+    }
+
+    int maxSuppressed() {
+        return maxSuppressed;
+    }
+
+    int maxFrames() {
+        return maxFrames;
+    }
+
+    /**
+     * Describe a throwable, its causes and its suppressed exceptions, within
+     * the limits this encoder was created with.
+     *
+     * @param t A throwable
+     * @return A description of it
+     */
+    ErrorNode describe(Throwable t) {
+        Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        return describe(t, null, 0, seen, new int[]{MAX_THROWABLES});
+    }
+
+    /**
+     * Get the JSON-ready map for a throwable, for records which are
+     * serialized as maps.
+     *
+     * @param t A throwable
+     * @return A map
+     */
+    Map<String, Object> toMap(Throwable t) {
+        return describe(t).toMap();
+    }
+
+    private ErrorNode describe(Throwable t, StackTraceElement[] enclosing, int depth,
+            Set<Throwable> seen, int[] budget) {
+        seen.add(t);
+        budget[0]--;
+        StackTraceElement[] frames = t.getStackTrace();
+        int own = frames.length - framesInCommon(frames, enclosing);
+        int written = Math.min(own, maxFrames);
+        StackFragment stack = fragment(frames, written, frames.length - written);
+
+        ErrorNode[] suppressed = ErrorNode.NONE;
+        int suppressedOmitted = 0;
+        Throwable[] sup = t.getSuppressed();
+        if (sup.length > 0) {
+            List<ErrorNode> nodes = new ArrayList<>(Math.min(sup.length, maxSuppressed));
+            for (Throwable s : sup) {
+                if (seen.contains(s)) {
+                    continue;
+                }
+                if (depth < maxDepth && nodes.size() < maxSuppressed && budget[0] > 0) {
+                    nodes.add(describe(s, frames, depth + 1, seen, budget));
+                } else {
+                    suppressedOmitted++;
+                }
+            }
+            suppressed = nodes.toArray(new ErrorNode[nodes.size()]);
+        }
+
+        ErrorNode cause = null;
+        int causesOmitted = 0;
+        Throwable c = t.getCause();
+        if (c != null && !seen.contains(c)) {
+            if (depth < maxDepth && budget[0] > 0) {
+                cause = describe(c, frames, depth + 1, seen, budget);
+            } else {
+                for (; c != null && !seen.contains(c); c = c.getCause()) {
+                    seen.add(c);
+                    causesOmitted++;
+                }
+            }
+        }
+        return new ErrorNode(t.getClass().getName(), t.getMessage(), stack,
+                cause, causesOmitted, suppressed, suppressedOmitted);
+    }
+
+    private static int framesInCommon(StackTraceElement[] frames, StackTraceElement[] enclosing) {
+        if (enclosing == null) {
+            return 0;
+        }
+        int m = frames.length - 1;
+        int n = enclosing.length - 1;
+        while (m >= 0 && n >= 0 && frames[m].equals(enclosing[n])) {
+            m--;
+            n--;
+        }
+        return frames.length - 1 - m;
+    }
+
+    private StackFragment fragment(StackTraceElement[] frames, int count, int omitted) {
+        StackKey key = new StackKey(frames, count, omitted);
+        StackFragment result = cache.get(key);
+        if (result == null) {
+            StringBuilder sb = new StringBuilder(count * 64 + 16);
+            for (int i = 0; i < count; i++) {
+                sb.append("\n\tat ").append(frames[i]);
+            }
+            if (omitted > 0) {
+                sb.append("\n\t... ").append(omitted).append(" more");
+            }
+            result = new StackFragment(sb.toString());
+            // Stacks from code generated at runtime could grow the cache
+            // without limit
+            if (cache.size() < MAX_CACHED) {
+                StackFragment existing = cache.putIfAbsent(key, result);
+                if (existing != null) {
+                    result = existing;
+                }
+            }
+        }
+        return result;
+    }
+
+    int cachedFragments() {
+        return cache.size();
+    }
+
+    /**
+     * The text of a run of stack frames, each on its own line, and its JSON
+     * encoding once something has computed it.
+     */
+    static final class StackFragment {
+
+        private final String text;
+        private volatile byte[] json;
+
+        StackFragment(String text) {
+            this.text = text;
+        }
+
+        String text() {
+            return text;
+        }
+
+        /**
+         * Get the UTF-8 bytes of the text escaped as the content of a JSON
+         * string, if they have been set.
+         *
+         * @return The bytes or null
+         */
+        byte[] json() {
+            return json;
+        }
+
+        void json(byte[] json) {
+            this.json = json;
+        }
+    }
+
+    /**
+     * A throwable as it is written to a log record.
+     */
+    static final class ErrorNode {
+
+        static final ErrorNode[] NONE = new ErrorNode[0];
+        final String name;
+        final String message;
+        final StackFragment stack;
+        final ErrorNode cause;
+        final int causesOmitted;
+        final ErrorNode[] suppressed;
+        final int suppressedOmitted;
+
+        ErrorNode(String name, String message, StackFragment stack, ErrorNode cause,
+                int causesOmitted, ErrorNode[] suppressed, int suppressedOmitted) {
+            this.name = name;
+            this.message = message;
+            this.stack = stack;
+            this.cause = cause;
+            this.causesOmitted = causesOmitted;
+            this.suppressed = suppressed;
+            this.suppressedOmitted = suppressedOmitted;
+        }
+
+        /**
+         * The first line of the stack, as <code>Throwable.toString()</code>
+         * would produce by default.
+         *
+         * @return The first line
+         */
+        String header() {
+            return message == null ? name : name + ": " + message;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> result = new LinkedHashMap<>(8);
+            if (message != null) {
+                result.put("message", message);
+            }
+            result.put("name", name);
+            result.put("stack", header() + stack.text());
+            if (cause != null) {
+                result.put("cause", cause.toMap());
+            }
+            if (causesOmitted > 0) {
+                result.put("causesOmitted", causesOmitted);
+            }
+            if (suppressed.length > 0) {
+                List<Map<String, Object>> sup = new ArrayList<>(suppressed.length);
+                for (ErrorNode s : suppressed) {
+                    sup.add(s.toMap());
+                }
+                result.put("suppressed", sup);
+            }
+            if (suppressedOmitted > 0) {
+                result.put("suppressedOmitted", suppressedOmitted);
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return header();
+        }
+    }
+
+    private static final class StackKey {
+
+        private final StackTraceElement[] frames;
+        private final int count;
+        private final int omitted;
+        private final int hash;
+
+        StackKey(StackTraceElement[] frames, int count, int omitted) {
+            this.frames = frames;
+            this.count = count;
+            this.omitted = omitted;
+            int h = 31 * count + omitted;
+            for (int i = 0; i < count; i++) {
+                h = 31 * h + frames[i].hashCode();
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            } else if (!(o instanceof StackKey)) {
+                return false;
+            }
+            StackKey other = (StackKey) o;
+            if (other.hash != hash || other.count != count || other.omitted != omitted) {
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                if (frames[i] != other.frames[i] && !frames[i].equals(other.frames[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
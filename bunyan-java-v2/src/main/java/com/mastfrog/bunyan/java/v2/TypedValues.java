@@ -0,0 +1,239 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Defines how the typed values which can be added to a Log are represented
+ * in JSON, so that ordinary and pooled records write them identically, and
+ * neither needs reflection or Jackson to do it:
+ * <ul>
+ * <li>Doubles and floats are written as numbers which read back as the same
+ * value - in plain notation with as few decimal places as possible where
+ * that can be done cheaply, otherwise as <code>Double.toString()</code> or
+ * <code>Float.toString()</code> would; NaN and the infinities, which JSON
+ * cannot represent as numbers, are written as strings</li>
+ * <li>Durations are written as a number of milliseconds, with a fractional
+ * part only if the duration has sub-millisecond precision</li>
+ * <li>Instants are written as ISO-8601 strings in UTC, as
+ * <code>Instant.toString()</code> does</li>
+ * </ul>
+ *
+ * @author Tim Boudreau
+ */
+final class TypedValues {
+
+    private static final long MAX_EXACT_MILLIS_SECONDS = Long.MAX_VALUE / 1000 - 1;
+    private static final int MAX_FIXED_DECIMALS = 6;
+    private static final double[] POWERS = {1, 10, 100, 1000, 10000, 100000, 1000000};
+    // 0000-01-01T00:00:00Z and 9999-12-31T23:59:59Z
+    private static final long MIN_FOUR_DIGIT_YEAR_SECONDS = -62167219200L;
+    private static final long MAX_FOUR_DIGIT_YEAR_SECONDS = 253402300799L;
+    // Sign, seven integer digits, point and six decimals
+    static final int MAX_FIXED_BYTES = 15;
+    // yyyy-MM-ddTHH:mm:ss.nnnnnnnnnZ
+    static final int MAX_INSTANT_BYTES = 30;
+
+    private TypedValues() {
+        throw new AssertionError();
+    }
+
+    static Object doubleValue(double value) {
+        if (!Double.isFinite(value)) {
+            return Double.toString(value);
+        }
+        return value;
+    }
+
+    static Object floatValue(float value) {
+        if (!Float.isFinite(value)) {
+            return Float.toString(value);
+        }
+        return value;
+    }
+
+    static Object durationValue(Duration value) {
+        if (hasWholeMillis(value)) {
+            return value.toMillis();
+        }
+        return fractionalMillis(value);
+    }
+
+    static String instantValue(Instant value) {
+        return value.toString();
+    }
+
+    static boolean hasWholeMillis(Duration value) {
+        long secs = value.getSeconds();
+        return value.getNano() % 1000000 == 0
+                && secs < MAX_EXACT_MILLIS_SECONDS && secs > -MAX_EXACT_MILLIS_SECONDS;
+    }
+
+    static double fractionalMillis(Duration value) {
+        return value.getSeconds() * 1000D + value.getNano() / 1000000D;
+    }
+
+    /**
+     * Find the fewest decimal places (at most six) with which a double can be
+     * written in plain fixed-point notation and read back as exactly the same
+     * value, if any, for values Double.toString() would not write in
+     * scientific notation. A decimal string parses to the double nearest its
+     * exact value, and dividing two exactly representable doubles yields the
+     * same double, so the division is a correct round-trip test.
+     *
+     * @param value A finite double
+     * @return The number of decimal places, or -1
+     */
+    static int fixedDecimals(double value) {
+        double abs = Math.abs(value);
+        if (abs != 0 && (abs < 1E-3 || abs >= 1E7)) {
+            return -1;
+        }
+        for (int places = 0; places <= MAX_FIXED_DECIMALS; places++) {
+            double scaled = Math.rint(value * POWERS[places]);
+            if (scaled / POWERS[places] == value) {
+                return places;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The same as fixedDecimals(double), for floats. Double has more than
+     * twice the precision of float, so rounding the quotient to double and
+     * then to float gives the same float as rounding the exact quotient.
+     *
+     * @param value A finite float
+     * @return The number of decimal places, or -1
+     */
+    static int fixedDecimals(float value) {
+        float abs = Math.abs(value);
+        if (abs != 0 && (abs < 1E-3F || abs >= 1E7F)) {
+            return -1;
+        }
+        for (int places = 0; places <= MAX_FIXED_DECIMALS; places++) {
+            double scaled = Math.rint(value * POWERS[places]);
+            if ((float) (scaled / POWERS[places]) == value) {
+                return places;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Write a value in fixed-point notation with the number of decimal places
+     * returned by fixedDecimals(), which needs at most MAX_FIXED_BYTES.
+     *
+     * @param value The value
+     * @param places The decimal places
+     * @param into The array
+     * @param pos The position to write at
+     * @return The position after the last byte written
+     */
+    static int writeFixed(double value, int places, byte[] into, int pos) {
+        long scaled = (long) Math.rint(value * POWERS[places]);
+        if (scaled < 0) {
+            into[pos++] = '-';
+            scaled = -scaled;
+        }
+        long divisor = (long) POWERS[places];
+        long whole = scaled / divisor;
+        int digits = 1;
+        for (long v = whole; v >= 10; v /= 10) {
+            digits++;
+        }
+        pos = writeDigits(whole, digits, into, pos);
+        into[pos++] = '.';
+        if (places == 0) {
+            into[pos++] = '0';
+            return pos;
+        }
+        return writeDigits(scaled % divisor, places, into, pos);
+    }
+
+    /**
+     * Write an instant the way <code>Instant.toString()</code> would, if its
+     * year is between 0 and 9999 (which it has to be for the result to be a
+     * four-digit-year ISO-8601 date), needing at most MAX_INSTANT_BYTES.
+     *
+     * @param value An instant
+     * @param into The array
+     * @param pos The position to write at
+     * @return The position after the last byte written, or -1 if the year is
+     * out of range and the caller should use toString()
+     */
+    static int writeInstant(Instant value, byte[] into, int pos) {
+        long secs = value.getEpochSecond();
+        if (secs < MIN_FOUR_DIGIT_YEAR_SECONDS || secs > MAX_FOUR_DIGIT_YEAR_SECONDS) {
+            return -1;
+        }
+        long days = Math.floorDiv(secs, 86400);
+        int secondOfDay = (int) Math.floorMod(secs, 86400);
+        // Civil date from days since the epoch, in 400 year eras starting
+        // on March 1st of year 0, so leap days fall at the end of a year
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        long month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        pos = writeDigits(year, 4, into, pos);
+        into[pos++] = '-';
+        pos = writeDigits(month, 2, into, pos);
+        into[pos++] = '-';
+        pos = writeDigits(day, 2, into, pos);
+        into[pos++] = 'T';
+        pos = writeDigits(secondOfDay / 3600, 2, into, pos);
+        into[pos++] = ':';
+        pos = writeDigits((secondOfDay / 60) % 60, 2, into, pos);
+        into[pos++] = ':';
+        pos = writeDigits(secondOfDay % 60, 2, into, pos);
+        int nano = value.getNano();
+        if (nano != 0) {
+            into[pos++] = '.';
+            if (nano % 1000000 == 0) {
+                pos = writeDigits(nano / 1000000, 3, into, pos);
+            } else if (nano % 1000 == 0) {
+                pos = writeDigits(nano / 1000, 6, into, pos);
+            } else {
+                pos = writeDigits(nano, 9, into, pos);
+            }
+        }
+        into[pos++] = 'Z';
+        return pos;
+    }
+
+    private static int writeDigits(long value, int width, byte[] into, int pos) {
+        for (int i = pos + width - 1; i >= pos; i--) {
+            into[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        return pos + width;
+    }
+}
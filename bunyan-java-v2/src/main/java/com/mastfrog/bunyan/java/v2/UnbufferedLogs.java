@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import java.util.Map;
+
+/**
+ * BufferingLogs for Logs implementations which cannot buffer - records are
+ * passed straight through to a child of the original, so nothing is ever
+ * buffered, and flushing or discarding does nothing.
+ *
+ * @author Tim Boudreau
+ */
+final class UnbufferedLogs implements BufferingLogs {
+
+    private final Logs delegate;
+
+    UnbufferedLogs(Logs delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void flush() {
+        // do nothing
+    }
+
+    @Override
+    public void discard() {
+        // do nothing
+    }
+
+    @Override
+    public int buffered() {
+        return 0;
+    }
+
+    @Override
+    public Log trace() {
+        return delegate.trace();
+    }
+
+    @Override
+    public Log debug() {
+        return delegate.debug();
+    }
+
+    @Override
+    public Log info() {
+        return delegate.info();
+    }
+
+    @Override
+    public Log warn() {
+        return delegate.warn();
+    }
+
+    @Override
+    public Log error() {
+        return delegate.error();
+    }
+
+    @Override
+    public Log fatal() {
+        return delegate.fatal();
+    }
+
+    @Override
+    public Logs child(Map<String, Object> pairs) {
+        return delegate.child(pairs);
+    }
+
+    @Override
+    public BufferingLogs bufferingChild(Map<String, Object> pairs, int maxBuffered) {
+        return new UnbufferedLogs(delegate.child(pairs));
+    }
+
+    @Override
+    public String toString() {
+        return "unbuffered(" + delegate + ")";
+    }
+}
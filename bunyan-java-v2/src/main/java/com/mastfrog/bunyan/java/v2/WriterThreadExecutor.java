@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.mastfrog.util.collections.AtomicLinkedQueue;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Executor for applications whose logging threads are virtual threads: a
+ * single dedicated platform thread does all the (blocking) writing, and
+ * submitting a job never blocks or waits on a monitor - it is a lock-free
+ * queue append, plus an unpark of the writer if it is not already awake.
+ * Like PoliteExecutorService, it runs jobs submitted after shutdown
+ * synchronously, and hands back whatever is left in the queue on shutdown
+ * rather than dropping it; but it waits for the writer with a join rather
+ * than by sleeping in a loop. Jobs are fire-and-forget, so it implements
+ * only LogJobExecutor, not the Future-returning ExecutorService contract.
+ *
+ * @author Tim Boudreau
+ */
+final class WriterThreadExecutor implements LogJobExecutor {
+
+    @JsonIgnore
+    private final AtomicLinkedQueue<Runnable> q = new AtomicLinkedQueue<>();
+    @JsonIgnore
+    private final AtomicBoolean shutdown = new AtomicBoolean();
+    // Set by submitters, cleared by the writer before it drains the queue,
+    // so at most one unpark is issued per batch of submissions
+    @JsonIgnore
+    private final AtomicBoolean signalled = new AtomicBoolean();
+    // Submitters between checking for shutdown and adding to the queue
+    @JsonIgnore
+    private final AtomicInteger submitting = new AtomicInteger();
+    // The thread in shutdownNow(), unparked by the last such submitter
+    @JsonIgnore
+    private volatile Thread shuttingDown;
+    @JsonIgnore
+    private final Thread writer;
+
+    WriterThreadExecutor(int priority) {
+        writer = new Thread(this::run, "bunyan-v2-writer");
+        writer.setDaemon(true);
+        writer.setPriority(priority);
+        writer.start();
+    }
+
+    @Override
+    @JsonProperty("pending")
+    public int pendingJobs() {
+        return q.size();
+    }
+
+    private void run() {
+        for (;;) {
+            signalled.set(false);
+            for (Runnable r : q.drain()) {
+                runOneSync(r);
+            }
+            if (q.isEmpty()) {
+                if (shutdown.get()) {
+                    return;
+                }
+                // No lost wakeups: anything added after the drain above sees
+                // signalled == false and unparks us, and park() returns at
+                // once if that already happened
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    private void runOneSync(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception | Error ex) {
+            LoggingLogging.log("Exception in " + task, ex, true);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        for (Runnable r : shutdownNow()) {
+            runOneSync(r);
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        if (!shutdown.compareAndSet(false, true)) {
+            return Collections.emptyList();
+        }
+        // Wait out any submitter which saw the executor as running and has
+        // not yet added its job; the last one to finish unparks us
+        shuttingDown = Thread.currentThread();
+        while (submitting.get() > 0) {
+            LockSupport.park(this);
+        }
+        LockSupport.unpark(writer);
+        if (Thread.currentThread() != writer) {
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException ex) {
+                LoggingLogging.log("Interrupted waiting for log writer thread to exit", ex, false);
+            }
+        }
+        return q.drain();
+    }
+
+    @Override
+    @JsonProperty("shutdown")
+    public boolean isShutdown() {
+        return shutdown.get();
+    }
+
+    @Override
+    @JsonProperty("terminated")
+    public boolean isTerminated() {
+        return isShutdown() && !writer.isAlive();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        if (Thread.currentThread() != writer) {
+            writer.join(Math.max(1, unit.toMillis(timeout)));
+        }
+        return isTerminated();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        submitting.incrementAndGet();
+        try {
+            if (shutdown.get()) {
+                runOneSync(task);
+                return;
+            }
+            q.add(task);
+        } finally {
+            if (submitting.decrementAndGet() == 0 && shutdown.get()) {
+                Thread t = shuttingDown;
+                if (t != null) {
+                    LockSupport.unpark(t);
+                }
+            }
+        }
+        if (signalled.compareAndSet(false, true)) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WriterThreadExecutor(" + q.size() + " pending"
+                + (shutdown.get() ? ", shut down)" : ")");
+    }
+}
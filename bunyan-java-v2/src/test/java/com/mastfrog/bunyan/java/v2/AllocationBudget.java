@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import java.lang.management.ManagementFactory;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Measures the bytes allocated per operation by the calling thread, using
+ * the HotSpot extension of ThreadMXBean, so tests can fail when a hot path
+ * starts allocating more than it should. The operation is run enough times
+ * first for it to be JIT compiled, then measured over several rounds, taking
+ * the smallest result, so a one-off allocation (a lazily initialized cache,
+ * a ThreadLocal's first use) does not count against it.
+ *
+ * @author Tim Boudreau
+ */
+final class AllocationBudget {
+
+    static final int WARMUP = 50_000;
+    static final int ROUNDS = 5;
+    static final int OPS_PER_ROUND = 10_000;
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private AllocationBudget() {
+        throw new AssertionError();
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        java.lang.management.ThreadMXBean result = ManagementFactory.getThreadMXBean();
+        if (result instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) result;
+            if (sun.isThreadAllocatedMemorySupported()) {
+                if (!sun.isThreadAllocatedMemoryEnabled()) {
+                    sun.setThreadAllocatedMemoryEnabled(true);
+                }
+                return sun;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Skip the calling test on a JVM which cannot measure allocation.
+     */
+    static void assumeSupported() {
+        assumeTrue(THREADS != null, "Thread allocation measurement not supported");
+    }
+
+    private static long allocated() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Get the number of bytes the passed operation allocates each time it is
+     * run, in the round where it allocated least.
+     *
+     * @param op An operation
+     * @return A number of bytes
+     */
+    static long bytesPerOperation(Runnable op) {
+        for (int i = 0; i < WARMUP; i++) {
+            op.run();
+        }
+        // The first call may allocate
+        allocated();
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = allocated();
+            for (int i = 0; i < OPS_PER_ROUND; i++) {
+                op.run();
+            }
+            long after = allocated();
+            best = Math.min(best, (after - before) / OPS_PER_ROUND);
+        }
+        return best;
+    }
+
+    /**
+     * Fail if the passed operation allocates more than the budget.
+     *
+     * @param what A description of the operation
+     * @param budget The most bytes it may allocate each time it is run
+     * @param op The operation
+     * @return The bytes it allocated each time it was run
+     */
+    static long assertWithinBudget(String what, long budget, Runnable op) {
+        assumeSupported();
+        long bytes = bytesPerOperation(op);
+        assertTrue(bytes <= budget, what + " allocates " + bytes
+                + " bytes per call, over its budget of " + budget);
+        return bytes;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Allocation budgets for the hot paths of logging. The budgets leave
+ * headroom over what each path allocates today, so that they only fail for
+ * a real regression - if one fails, find the new allocation before raising
+ * it.
+ *
+ * @author Tim Boudreau
+ */
+public class TestAllocationBudgets {
+
+    // A disabled record still creates its Log, JSONContext and field list
+    private static final long DISABLED_BUDGET = 512;
+    // Only the Log itself; the record comes from the pool
+    private static final long DISABLED_POOLED_BUDGET = 256;
+    // The record's map and message, and formatting the timestamp
+    private static final long ENABLED_BUDGET = 3072;
+    // The Log, and formatting the timestamp, which is most of it
+    private static final long ENABLED_POOLED_BUDGET = 2048;
+    private LoggingConfig config;
+
+    private Logs setup(boolean pooled) {
+        LoggingConfig.Builder b = LoggingConfig.builder().nonDefault()
+                .dontUseShutdownHook()
+                .hostNameForLogRecords("alloc")
+                .setMinimumLogLevelToInfo()
+                .routeLogsTo(LogSink.NULL, "alloc");
+        if (pooled) {
+            b.pooledRecords(4);
+        }
+        config = b.build();
+        return config.logs("alloc");
+    }
+
+    @Test
+    public void testDisabledDebug() {
+        Logs logs = setup(false);
+        AllocationBudget.assertWithinBudget("Disabled debug()", DISABLED_BUDGET,
+                () -> logs.debug("x").add("k", 1).close());
+    }
+
+    @Test
+    public void testDisabledDebugPooled() {
+        Logs logs = setup(true);
+        AllocationBudget.assertWithinBudget("Disabled pooled debug()", DISABLED_POOLED_BUDGET,
+                () -> logs.debug("x").add("k", 1).close());
+    }
+
+    @Test
+    public void testEnabledInfoToNullSink() {
+        Logs logs = setup(false);
+        AllocationBudget.assertWithinBudget("info(\"x\").add(\"k\", 1).close()", ENABLED_BUDGET,
+                () -> logs.info("x").add("k", 1).close());
+    }
+
+    @Test
+    public void testEnabledPooledInfoToNullSink() {
+        Logs logs = setup(true);
+        AllocationBudget.assertWithinBudget("Pooled info(\"x\").add(\"k\", 1).close()",
+                ENABLED_POOLED_BUDGET, () -> logs.info("x").add("k", 1).close());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (config != null) {
+            config.shutdown();
+        }
+    }
+}
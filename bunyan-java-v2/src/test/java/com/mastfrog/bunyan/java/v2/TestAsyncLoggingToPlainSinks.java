@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Async logging must use the sink's own configuration, not the global one,
+ * when the sink is not an AbstractLogSink.
+ *
+ * @author Tim Boudreau
+ */
+public class TestAsyncLoggingToPlainSinks {
+
+    private LoggingConfig config;
+
+    @Test
+    public void testNonDefaultConfigLogsAsynchronouslyToPlainSink() throws InterruptedException {
+        List<Object> messages = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        LogSink sink = (JSONContext ctx, Map<String, Object> logrecord) -> {
+            threads.add(Thread.currentThread());
+            messages.add(logrecord.get("msg"));
+        };
+        config = LoggingConfig.builder().nonDefault()
+                .dontUseShutdownHook()
+                .logTo(sink)
+                .asyncLogging()
+                .build();
+        Logs logs = config.logs("plain");
+        logs.info("one").close();
+        logs.info("two").close();
+        long until = System.currentTimeMillis() + 10_000;
+        while (messages.size() < 2 && System.currentTimeMillis() < until) {
+            Thread.sleep(5);
+        }
+        assertEquals(2, messages.size(), messages.toString());
+        assertEquals("one", messages.get(0));
+        assertEquals("two", messages.get(1));
+        assertNotSame(Thread.currentThread(), threads.get(0),
+                "Should have been written by the async logging thread");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (config != null) {
+            config.shutdown();
+        }
+    }
+}
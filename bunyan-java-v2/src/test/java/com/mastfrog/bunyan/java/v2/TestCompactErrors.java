@@ -0,0 +1,189 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mastfrog.util.collections.CollectionUtils;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class TestCompactErrors {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private LoggingConfig config;
+    private List<CharSequence> lines;
+
+    private Logs setup(boolean pooled, int maxDepth, int maxSuppressed, int maxFrames) {
+        System.setProperty("disable.console.logger", "false");
+        lines = Collections.synchronizedList(new ArrayList<>());
+        LoggingConfig[] cfig = new LoggingConfig[1];
+        Supplier<LoggingConfig> supp = () -> cfig[0];
+        LoggingConfig.Builder b = LoggingConfig.builder().nonDefault()
+                .dontUseShutdownHook()
+                .hostNameForLogRecords("errors")
+                .compactErrors(maxDepth, maxSuppressed, maxFrames)
+                .routeLogsTo(new ConsoleLogSink(supp, lines::add), "errors");
+        if (pooled) {
+            b.pooledRecords(4);
+        }
+        config = cfig[0] = b.build();
+        return config.logs("errors");
+    }
+
+    private Map<String, Object> record(int index) throws Exception {
+        CharSequence line = lines.get(index);
+        try {
+            return CollectionUtils.uncheckedMap(mapper.readValue(line.toString(), Map.class));
+        } catch (Exception ex) {
+            throw new AssertionError("Invalid JSON: " + line, ex);
+        }
+    }
+
+    private static Map<String, Object> map(Object o) {
+        assertNotNull(o);
+        assertTrue(o instanceof Map, o.getClass().getName());
+        return CollectionUtils.uncheckedMap((Map<?, ?>) o);
+    }
+
+    @Test
+    public void testUnpooled() throws Exception {
+        testErrors(false);
+    }
+
+    @Test
+    public void testPooled() throws Exception {
+        testErrors(true);
+    }
+
+    private void testErrors(boolean pooled) throws Exception {
+        Logs logs = setup(pooled, 8, 8, 128);
+        IOException cause = new IOException("disk \"full\"");
+        IllegalStateException ex = new IllegalStateException("write failed", cause);
+        ex.addSuppressed(new IllegalArgumentException());
+        logs.error("failed").add(ex).add("k", 1).close();
+        logs.warn("also").add("problem", new IOException("keyed")).close();
+        config.shutdown();
+        config = null;
+        assertEquals(2, lines.size(), lines.toString());
+
+        Map<String, Object> rec = record(0);
+        assertFalse(rec.containsKey("error"), rec.toString());
+        assertEquals(1, rec.get("k"));
+        Map<String, Object> err = map(rec.get("err"));
+        assertEquals("write failed", err.get("message"));
+        assertEquals(IllegalStateException.class.getName(), err.get("name"));
+        String stack = (String) err.get("stack");
+        assertTrue(stack.startsWith(IllegalStateException.class.getName()
+                + ": write failed\n\tat " + getClass().getName() + ".testErrors("), stack);
+        assertFalse(stack.contains("... "), stack);
+
+        Map<String, Object> c = map(err.get("cause"));
+        assertEquals("disk \"full\"", c.get("message"));
+        String causeStack = (String) c.get("stack");
+        assertTrue(causeStack.startsWith("java.io.IOException: disk \"full\"\n\tat "), causeStack);
+        // Frames shared with the enclosing exception are elided
+        assertTrue(causeStack.matches("(?s).*\n\t\\.\\.\\. \\d+ more"), causeStack);
+
+        List<?> suppressed = (List<?>) err.get("suppressed");
+        assertEquals(1, suppressed.size());
+        Map<String, Object> sup = map(suppressed.get(0));
+        assertNull(sup.get("message"));
+        assertEquals(IllegalArgumentException.class.getName(), sup.get("name"));
+
+        Map<String, Object> keyed = map(record(1).get("problem"));
+        assertEquals("keyed", keyed.get("message"));
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        testLimits(false);
+        testLimits(true);
+    }
+
+    private void testLimits(boolean pooled) throws Exception {
+        Logs logs = setup(pooled, 1, 1, 2);
+        Exception ex = new Exception("top", new Exception("one",
+                new Exception("two", new Exception("three"))));
+        ex.addSuppressed(new Exception("s1"));
+        ex.addSuppressed(new Exception("s2"));
+        ex.addSuppressed(new Exception("s3"));
+        logs.error("limited").add(ex).close();
+        config.shutdown();
+        config = null;
+
+        Map<String, Object> err = map(record(0).get("err"));
+        String stack = (String) err.get("stack");
+        assertEquals(4, stack.split("\n").length, stack);
+        assertTrue(stack.matches("(?s).*\n\t\\.\\.\\. \\d+ more"), stack);
+        Map<String, Object> cause = map(err.get("cause"));
+        assertEquals("one", cause.get("message"));
+        assertNull(cause.get("cause"));
+        assertEquals(2, cause.get("causesOmitted"));
+        assertEquals(1, ((List<?>) err.get("suppressed")).size());
+        assertEquals(2, err.get("suppressedOmitted"));
+    }
+
+    @Test
+    public void testStacksAreCached() throws Exception {
+        Logs logs = setup(true, 8, 8, 128);
+        ThrowableEncoder enc = config.errorEncoder();
+        String first = null;
+        for (int i = 0; i < 20; i++) {
+            try {
+                throw new IOException("attempt " + i);
+            } catch (IOException ex) {
+                logs.error("retry").add(ex).close();
+            }
+            if (i == 0) {
+                first = (String) map(record(0).get("err")).get("stack");
+            }
+        }
+        assertEquals(1, enc.cachedFragments());
+        Map<String, Object> last = map(record(19).get("err"));
+        assertEquals("attempt 19", last.get("message"));
+        assertEquals(first.replace("attempt 0", "attempt 19"), last.get("stack"));
+    }
+
+    @AfterEach
+    public void teardown() {
+        if (config != null) {
+            config.shutdown();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import com.mastfrog.bunyan.java.v2.TestRecordThrottling.RecordingSink;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class TestDeferredLazyValues {
+
+    private LoggingConfig config;
+
+    private RecordingSink setup(boolean pooled, boolean eager) {
+        RecordingSink sink = new RecordingSink();
+        LoggingConfig.Builder b = LoggingConfig.builder().nonDefault()
+                .dontUseShutdownHook()
+                .asyncLogging()
+                .hostNameForLogRecords("lazy")
+                .routeLogsTo(sink, "lazy");
+        if (pooled) {
+            b.pooledRecords(4);
+        }
+        if (eager) {
+            b.evaluateLazyValuesOnLoggingThread();
+        }
+        config = b.build();
+        return sink;
+    }
+
+    @Test
+    public void testLazyValuesEvaluatedOnAsyncThread() throws InterruptedException {
+        testLazyValuesEvaluatedOnAsyncThread(false);
+    }
+
+    @Test
+    public void testLazyValuesEvaluatedOnAsyncThreadPooled() throws InterruptedException {
+        testLazyValuesEvaluatedOnAsyncThread(true);
+    }
+
+    private void testLazyValuesEvaluatedOnAsyncThread(boolean pooled) throws InterruptedException {
+        RecordingSink sink = setup(pooled, false);
+        Logs logs = config.logs("lazy");
+        AtomicReference<Thread> evaluatedOn = new AtomicReference<>();
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger overriddenCalls = new AtomicInteger();
+        logs.info("deferred")
+                .add("a", 1)
+                .addLazy("expensive", () -> {
+                    evaluatedOn.set(Thread.currentThread());
+                    calls.incrementAndGet();
+                    return "cache-dump";
+                })
+                .addLazy("replaced", () -> {
+                    overriddenCalls.incrementAndGet();
+                    return "never";
+                })
+                .add("b", 2)
+                .add("replaced", "eager")
+                .addLazy("broken", () -> {
+                    throw new IllegalStateException("oops");
+                })
+                .close();
+        sink.awaitRecords(1);
+        config.shutdown();
+
+        List<Map<String, Object>> records = sink.records();
+        assertEquals(1, records.size(), records.toString());
+        Map<String, Object> rec = records.get(0);
+        assertEquals("cache-dump", rec.get("expensive"));
+        assertEquals("eager", rec.get("replaced"));
+        assertEquals(1, calls.get(), "Supplier should be called exactly once");
+        assertEquals(0, overriddenCalls.get(), "Supplier whose value was replaced should not be called");
+        assertNotNull(evaluatedOn.get());
+        assertFalse(Thread.currentThread() == evaluatedOn.get(),
+                "Supplier should not run on the logging thread");
+        Object broken = rec.get("broken");
+        assertTrue(broken instanceof String && ((String) broken).contains("oops"), String.valueOf(broken));
+        // Deferral must not change field order
+        List<String> keys = new ArrayList<>(rec.keySet());
+        assertTrue(keys.indexOf("a") < keys.indexOf("expensive"), keys.toString());
+        assertTrue(keys.indexOf("expensive") < keys.indexOf("b"), keys.toString());
+        for (Object val : rec.values()) {
+            assertFalse(val instanceof DeferredValue, rec.toString());
+        }
+    }
+
+    @Test
+    public void testLazyValuesCanBeEvaluatedEagerly() {
+        RecordingSink sink = setup(false, true);
+        Logs logs = config.logs("lazy");
+        AtomicReference<Thread> evaluatedOn = new AtomicReference<>();
+        logs.info("eager").addLazy("x", () -> {
+            evaluatedOn.set(Thread.currentThread());
+            return 23;
+        }).close();
+        assertSame(Thread.currentThread(), evaluatedOn.get());
+        config.shutdown();
+        assertEquals(23, sink.records().get(0).get("x"));
+    }
+
+    @Test
+    public void testLazyMessageIsEvaluatedWhenClosed() {
+        RecordingSink sink = setup(false, false);
+        Logs logs = config.logs("lazy");
+        Thread[] evaluatedOn = new Thread[1];
+        logs.info("hello").addLazy("msg", () -> {
+            evaluatedOn[0] = Thread.currentThread();
+            return "world";
+        }).close();
+        assertSame(Thread.currentThread(), evaluatedOn[0]);
+        config.shutdown();
+        assertEquals("hello world", sink.records().get(0).get("msg"),
+                Arrays.toString(sink.records().toArray()));
+    }
+
+    @AfterEach
+    public void teardown() {
+        if (config != null) {
+            config.shutdown();
+        }
+    }
+}
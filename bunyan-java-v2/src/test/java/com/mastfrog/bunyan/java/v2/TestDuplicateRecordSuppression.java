@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class TestDuplicateRecordSuppression {
+
+    private LoggingConfig cfig;
+
+    @Test
+    public void testRepeatsAreCollapsed() throws InterruptedException {
+        TestRecordThrottling.RecordingSink sink = new TestRecordThrottling.RecordingSink();
+        cfig = LoggingConfig.builder().nonDefault().dontUseShutdownHook()
+                .logTo(sink)
+                .suppressDuplicateRecords(Duration.ofMillis(100))
+                .build();
+        Logs logs = cfig.logs("dups");
+        for (int i = 0; i < 50; i++) {
+            logs.error("downstream failed").add(new IOException("x" + i)).close();
+        }
+        // Different exception type, level or message are distinct records
+        logs.error("downstream failed").add(new IllegalStateException()).close();
+        logs.warn("downstream failed").close();
+        logs.error("something else").add(new IOException()).close();
+        List<Map<String, Object>> recs = sink.records();
+        assertEquals(4, recs.size(), recs.toString());
+        for (Map<String, Object> rec : recs) {
+            assertNull(rec.get(DuplicateRecordSuppressor.REPEATED_KEY), rec.toString());
+        }
+        Thread.sleep(150);
+        // The next logging call sweeps the expired window
+        logs.info("unrelated").close();
+        recs = sink.records();
+        assertEquals(6, recs.size(), recs.toString());
+        Map<String, Object> summary = recs.get(4);
+        assertEquals("downstream failed", summary.get("msg"), summary.toString());
+        assertEquals(49L, ((Number) summary.get(DuplicateRecordSuppressor.REPEATED_KEY)).longValue(),
+                summary.toString());
+        assertEquals(IOException.class.getName(), summary.get("errorType"), summary.toString());
+        assertEquals("unrelated", recs.get(5).get("msg"));
+    }
+
+    @Test
+    public void testPendingRepeatsAreFlushedOnShutdown() {
+        TestRecordThrottling.RecordingSink sink = new TestRecordThrottling.RecordingSink();
+        cfig = LoggingConfig.builder().nonDefault().dontUseShutdownHook()
+                .logTo(sink)
+                .suppressDuplicateRecords(Duration.ofMinutes(5), 8)
+                .build();
+        Logs logs = cfig.logs("dups");
+        for (int i = 0; i < 10; i++) {
+            logs.info("hello").close();
+        }
+        assertEquals(1, sink.records().size(), sink.records().toString());
+        cfig.shutdown();
+        List<Map<String, Object>> recs = sink.records();
+        assertEquals(2, recs.size(), recs.toString());
+        assertEquals(9L, ((Number) recs.get(1).get(DuplicateRecordSuppressor.REPEATED_KEY)).longValue(),
+                recs.toString());
+    }
+
+    @Test
+    public void testRecordsAreComparedByWholeMessage() {
+        TestRecordThrottling.RecordingSink sink = new TestRecordThrottling.RecordingSink();
+        cfig = LoggingConfig.builder().nonDefault().dontUseShutdownHook()
+                .logTo(sink)
+                .suppressDuplicateRecords(Duration.ofMinutes(5))
+                .build();
+        Logs logs = cfig.logs("dups");
+        MessageTemplate connect = MessageTemplate.of("Connecting to {} failed");
+        for (int i = 0; i < 3; i++) {
+            logs.warn(connect, "a").close();
+        }
+        logs.warn(connect, "b").close();
+        logs.warn("request").add("one").close();
+        logs.warn("request").add("two").close();
+        List<Map<String, Object>> recs = sink.records();
+        assertEquals(4, recs.size(), recs.toString());
+        assertEquals("Connecting to a failed", recs.get(0).get("msg"));
+        assertEquals("Connecting to b failed", recs.get(1).get("msg"));
+        assertEquals("request one", recs.get(2).get("msg"));
+        assertEquals("request two", recs.get(3).get("msg"));
+        cfig.shutdown();
+        recs = sink.records();
+        assertEquals(5, recs.size(), recs.toString());
+        assertEquals("Connecting to a failed", recs.get(4).get("msg"));
+        assertEquals(2L, ((Number) recs.get(4).get(DuplicateRecordSuppressor.REPEATED_KEY)).longValue(),
+                recs.toString());
+    }
+
+    @Test
+    public void testSummaryIsLoggedWhenWindowClosesWithoutFurtherLogging() throws InterruptedException {
+        TestRecordThrottling.RecordingSink sink = new TestRecordThrottling.RecordingSink();
+        cfig = LoggingConfig.builder().nonDefault().dontUseShutdownHook()
+                .logTo(sink)
+                .suppressDuplicateRecords(Duration.ofMillis(100))
+                .build();
+        Logs logs = cfig.logs("dups");
+        for (int i = 0; i < 5; i++) {
+            logs.error("downstream failed").close();
+        }
+        assertEquals(1, sink.records().size(), sink.records().toString());
+        sink.awaitRecords(2);
+        List<Map<String, Object>> recs = sink.records();
+        assertEquals(2, recs.size(), recs.toString());
+        assertEquals("downstream failed", recs.get(1).get("msg"));
+        assertEquals(4L, ((Number) recs.get(1).get(DuplicateRecordSuppressor.REPEATED_KEY)).longValue(),
+                recs.toString());
+    }
+
+    @AfterEach
+    public void teardown() {
+        if (cfig != null) {
+            cfig.shutdown();
+        }
+    }
+}
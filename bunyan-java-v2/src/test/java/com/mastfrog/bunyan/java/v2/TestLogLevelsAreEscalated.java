@@ -27,6 +27,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.AfterEach;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -105,6 +106,35 @@ public class TestLogLevelsAreEscalated {
         all.assertNoMessage("shouldNotExist");
     }
 
+    @Test
+    public void testRecordsBelowMinimumLevelAreNotBuilt() {
+        AtomicInteger decorated = new AtomicInteger();
+        LogCapture quiet = new LogCapture("warn-and-up");
+        LoggingConfig warnConfig = LoggingConfig.builder().nonDefault()
+                .dontUseShutdownHook()
+                .logTo(quiet)
+                .setMinimumLogLevelToWarn()
+                .withLogDecorator(log -> decorated.incrementAndGet())
+                .build();
+        try {
+            Logs warnLogs = warnConfig.logs("quiet");
+            warnLogs.trace("belowTrace").close();
+            warnLogs.debug("belowDebug").close();
+            warnLogs.info("belowInfo").close();
+            assertEquals(0, decorated.get(), "Records below the minimum level were built");
+            quiet.assertNoMessage("belowTrace");
+            quiet.assertNoMessage("belowDebug");
+            quiet.assertNoMessage("belowInfo");
+            warnLogs.warn("atMinimum").close();
+            warnLogs.error("aboveMinimum").close();
+            assertEquals(2, decorated.get());
+            quiet.assertLevelForMessage(LogLevel.WARN, "atMinimum");
+            quiet.assertLevelForMessage(LogLevel.ERROR, "aboveMinimum");
+        } finally {
+            warnConfig.shutdown();
+        }
+    }
+
     @BeforeEach
     public void setup() {
         severe = new LogCapture("severe-only");
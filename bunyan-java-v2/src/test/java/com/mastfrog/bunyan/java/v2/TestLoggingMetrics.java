@@ -0,0 +1,198 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Supplier;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class TestLoggingMetrics {
+
+    private LoggingConfig config;
+    private Path file;
+
+    @Test
+    public void testHistogramBuckets() {
+        for (long v : new long[]{0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456789L, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketFor(v);
+            assertTrue(bucket < LatencyHistogram.BUCKETS, "Bucket " + bucket + " for " + v);
+            assertTrue(LatencyHistogram.lowestValueIn(bucket) <= v, "Low for " + v);
+            assertTrue(LatencyHistogram.highestValueIn(bucket) >= v, "High for " + v);
+            // Within about 6%
+            long width = LatencyHistogram.highestValueIn(bucket) - LatencyHistogram.lowestValueIn(bucket);
+            assertTrue(width <= Math.max(0, v / 16), "Width " + width + " for " + v);
+        }
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i * 1000L);
+        }
+        assertEquals(1000, h.count());
+        long p50 = h.valueAt(0.5);
+        assertTrue(p50 >= 500_000 && p50 <= 500_000 * 17 / 16, "p50 " + p50);
+        assertEquals(1_000_000L, h.valueAt(1));
+        Map<String, Object> snap = h.snapshot();
+        assertEquals(1000L, snap.get("count"));
+        assertEquals(1000L, snap.get("min"));
+        assertEquals(1_000_000L, snap.get("max"));
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        config = LoggingConfig.builder().nonDefault().dontUseShutdownHook().build();
+        assertNull(config.metrics());
+    }
+
+    @Test
+    public void testUnparseableLogIntervalSkipsMetricsLogging() {
+        Properties props = new Properties();
+        props.setProperty(LoggingConfig.PROP_METRICS_LOG_SECONDS, "often");
+        props.setProperty(LoggingConfig.PROP_DEFAULT_CONFIG_POLICY,
+                LoggingConfig.PROP_VALUE_DONT_SET_AS_DEFAULT_CONFIG);
+        config = LoggingConfig.fromProperties(props);
+        assertNull(config.metrics());
+        config.shutdown();
+
+        props.setProperty(LoggingConfig.PROP_METRICS, "true");
+        config = LoggingConfig.fromProperties(props);
+        assertNotNull(config.metrics(), "Metrics should still be collected");
+    }
+
+    @Test
+    public void testRecordsAndSerializationAreCounted() {
+        List<CharSequence> lines = Collections.synchronizedList(new ArrayList<>());
+        LoggingConfig[] cfig = new LoggingConfig[1];
+        Supplier<LoggingConfig> supp = () -> cfig[0];
+        config = cfig[0] = LoggingConfig.builder().nonDefault()
+                .dontUseShutdownHook()
+                .hostNameForLogRecords("metrics")
+                .collectMetrics()
+                .setMinimumLogLevelToInfo()
+                .routeLogsTo(new ConsoleLogSink(supp, lines::add), "counted")
+                .build();
+        Logs logs = config.logs("counted");
+        logs.info("one").add("x", 1).close();
+        logs.info("two").close();
+        logs.warn("three").close();
+        logs.debug("disabled").close();
+        config.shutdown();
+        LoggingMetrics metrics = config.metrics();
+        assertNotNull(metrics);
+        assertEquals(3, lines.size(), lines.toString());
+        assertEquals(2L, metrics.records("counted", LogLevel.INFO));
+        assertEquals(1L, metrics.records("counted", LogLevel.WARN));
+        assertEquals(0L, metrics.records("counted", LogLevel.DEBUG));
+        Map<String, Object> snap = metrics.snapshot();
+        Map<?, ?> ser = (Map<?, ?>) snap.get("serialization");
+        long serialized = (Long) ser.get("simple") + (Long) ser.get("jackson")
+                + (Long) ser.get("direct") + (Long) ser.get("limited");
+        assertEquals(3L, serialized, snap.toString());
+        assertEquals(3L, ((Map<?, ?>) ser.get("nanos")).get("count"), snap.toString());
+        Map<?, ?> recs = (Map<?, ?>) snap.get("records");
+        assertEquals(2L, ((Map<?, ?>) recs.get("counted")).get("info"));
+    }
+
+    @Test
+    public void testAsyncFileBytesAndJmx() throws Exception {
+        file = Files.createTempFile("metrics", ".log");
+        config = LoggingConfig.builder().nonDefault()
+                .dontUseShutdownHook()
+                .logToFile(file)
+                .asyncLogging()
+                .publishMetricsToJmx("TestLoggingMetrics")
+                .build();
+        Logs logs = config.logs("filed");
+        for (int i = 0; i < 20; i++) {
+            logs.info("record").add("index", i).close();
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.mastfrog.bunyan:type=LoggingMetrics,name="
+                + ObjectName.quote("TestLoggingMetrics"));
+        assertTrue(server.isRegistered(name));
+        assertEquals(20L, server.getAttribute(name, "records.filed.info"));
+        config.shutdown();
+        assertFalse(server.isRegistered(name));
+
+        LoggingMetrics metrics = config.metrics();
+        assertEquals(Files.size(file), metrics.bytesWritten(file.toString()));
+        Map<?, ?> latency = (Map<?, ?>) metrics.snapshot().get("enqueueToWrite");
+        // Records still queued at shutdown are written by the shutting down
+        // thread, but still timed
+        assertEquals(20L, latency.get("count"));
+        assertEquals(0, metrics.queueDepth());
+    }
+
+    @Test
+    public void testRepeatedShutdownLeavesLaterMBeanAlone() throws Exception {
+        config = LoggingConfig.builder().nonDefault()
+                .dontUseShutdownHook()
+                .publishMetricsToJmx("TestLoggingMetricsReused")
+                .build();
+        config.shutdown();
+        LoggingConfig other = LoggingConfig.builder().nonDefault()
+                .dontUseShutdownHook()
+                .publishMetricsToJmx("TestLoggingMetricsReused")
+                .build();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.mastfrog.bunyan:type=LoggingMetrics,name="
+                    + ObjectName.quote("TestLoggingMetricsReused"));
+            assertTrue(server.isRegistered(name));
+            // A second shutdown of the first config must not unregister
+            // the MBean the second one registered under the same name
+            config.shutdown();
+            assertTrue(server.isRegistered(name));
+        } finally {
+            other.shutdown();
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (config != null) {
+            config.shutdown();
+        }
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mastfrog.util.collections.CollectionUtils;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class TestMessageAggregation {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private LoggingConfig config;
+    private List<CharSequence> lines;
+
+    private Logs setup(boolean pooled, boolean exact) {
+        System.setProperty("disable.console.logger", "false");
+        lines = Collections.synchronizedList(new ArrayList<>());
+        LoggingConfig[] cfig = new LoggingConfig[1];
+        Supplier<LoggingConfig> supp = () -> cfig[0];
+        LoggingConfig.Builder b = LoggingConfig.builder().nonDefault()
+                .dontUseShutdownHook()
+                .hostNameForLogRecords("aggregation")
+                .routeLogsTo(new ConsoleLogSink(supp, lines::add), "aggregation");
+        if (pooled) {
+            b.pooledRecords(4);
+        }
+        if (exact) {
+            b.deduplicateMessagePiecesExactly();
+        }
+        config = cfig[0] = b.build();
+        return config.logs("aggregation");
+    }
+
+    private String message(int index) throws Exception {
+        CharSequence line = lines.get(index);
+        try {
+            Map<String, Object> rec = CollectionUtils.uncheckedMap(
+                    mapper.readValue(line.toString(), Map.class));
+            return (String) rec.get("msg");
+        } catch (Exception ex) {
+            throw new AssertionError("Invalid JSON: " + line, ex);
+        }
+    }
+
+    @Test
+    public void testSubstringMode() throws Exception {
+        testMessages(false, false);
+        testMessages(true, false);
+    }
+
+    @Test
+    public void testExactMode() throws Exception {
+        testMessages(false, true);
+        testMessages(true, true);
+    }
+
+    private void testMessages(boolean pooled, boolean exact) throws Exception {
+        Logs logs = setup(pooled, exact);
+        logs.info("connecting").add("connecting").add(new StringBuilder("connecting")).close();
+        logs.info("connecting to").add("to").add("host").close();
+        logs.info("got").add(5).add(2.5D).add(true).add("items").add(5).close();
+        logs.info("quote \"me\"").add("tab\there").close();
+        StringBuilder sb = new StringBuilder("pieces");
+        for (int i = 0; i < 20; i++) {
+            sb.append(" p").append(i);
+        }
+        String[] parts = sb.toString().split(" ");
+        Log log = logs.info(parts[0]);
+        for (int i = 1; i < parts.length; i++) {
+            log.add(parts[i]);
+        }
+        log.close();
+        config.shutdown();
+        config = null;
+
+        String mode = (pooled ? "pooled " : "unpooled ") + (exact ? "exact" : "substring");
+        assertEquals(5, lines.size(), mode + ": " + lines);
+        assertEquals("connecting", message(0), mode);
+        // Only the legacy mode drops pieces already contained in the message
+        assertEquals(exact ? "connecting to to host" : "connecting to host", message(1), mode);
+        assertEquals("got 5 2.5 true items", message(2), mode);
+        assertEquals("quote \"me\" tab\there", message(3), mode);
+        // Each piece is only compared with those before it
+        assertEquals(sb.toString(), message(4), mode);
+    }
+
+    @AfterEach
+    public void teardown() {
+        if (config != null) {
+            config.shutdown();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import com.mastfrog.bunyan.java.v2.TestRecordThrottling.RecordingSink;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class TestMessageTemplates {
+
+    private static final MessageTemplate CONNECT
+            = MessageTemplate.of("Connecting to {} failed after {} attempts");
+    private LoggingConfig config;
+
+    @Test
+    public void testFormatting() {
+        assertEquals("Connecting to foo failed after 3 attempts", CONNECT.format("foo", 3));
+        assertEquals(2, CONNECT.placeholders());
+        assertEquals("Connecting to foo failed after {} attempts", CONNECT.format("foo"));
+        assertEquals("Connecting to null failed after 1 attempts", CONNECT.format(null, 1, "extra"));
+        assertEquals("literal {} and [1, 2]", MessageTemplate.of("literal \\{} and {}").format((Object) new int[]{1, 2}));
+        assertEquals("no placeholders", MessageTemplate.of("no placeholders").format("x"));
+        assertEquals("{}", MessageTemplate.of("{}").format());
+        assertEquals("[a, [b]]", MessageTemplate.of("{}").format((Object) new Object[]{"a", new Object[]{"b"}}));
+    }
+
+    @Test
+    public void testPrintfTemplates() {
+        MessageTemplate simple = MessageTemplate.printf("Got %s from %d clients, 100%% done");
+        assertEquals(2, simple.placeholders());
+        assertEquals("Got x from 5 clients, 100% done", simple.format("x", 5));
+        MessageTemplate complex = MessageTemplate.printf("Took %5.2f ms");
+        assertEquals(-1, complex.placeholders());
+        assertEquals(String.format("Took %5.2f ms", 1.5D), complex.format(1.5D));
+        // Bad arguments should not throw from logging code
+        assertEquals("Took %5.2f ms [nope]", complex.format("nope"));
+    }
+
+    @Test
+    public void testTemplatesAreCached() {
+        assertSame(MessageTemplate.of("cached {}"), MessageTemplate.of("cached {}"));
+        assertSame(MessageTemplate.printf("cached %s"), MessageTemplate.printf("cached %s"));
+        assertFalse(MessageTemplate.of("x %s").equals(MessageTemplate.printf("x %s %5d")));
+    }
+
+    private RecordingSink setup(boolean async, boolean pooled) {
+        RecordingSink sink = new RecordingSink();
+        LoggingConfig.Builder b = LoggingConfig.builder().nonDefault()
+                .dontUseShutdownHook()
+                .hostNameForLogRecords("templates")
+                .routeLogsTo(sink, "templates");
+        if (async) {
+            b.asyncLogging();
+        }
+        if (pooled) {
+            b.pooledRecords(4);
+        }
+        config = b.build();
+        return sink;
+    }
+
+    @Test
+    public void testNothingFormattedForDisabledLevel() {
+        RecordingSink sink = setup(false, false);
+        Logs logs = config.logs("templates");
+        CountingArgument arg = new CountingArgument();
+        logs.trace(CONNECT, arg, 1).close();
+        logs.debug(CONNECT, arg, 2).close();
+        assertEquals(0, arg.calls.get());
+        assertEquals(0, sink.records().size());
+        logs.info(CONNECT, arg, 3).close();
+        assertEquals(1, arg.calls.get());
+        assertEquals("Connecting to counted failed after 3 attempts",
+                sink.records().get(0).get("msg"));
+    }
+
+    @Test
+    public void testFormattedOnAsyncThread() throws InterruptedException {
+        testFormattedOnAsyncThread(false);
+    }
+
+    @Test
+    public void testFormattedOnAsyncThreadPooled() throws InterruptedException {
+        testFormattedOnAsyncThread(true);
+    }
+
+    private void testFormattedOnAsyncThread(boolean pooled) throws InterruptedException {
+        RecordingSink sink = setup(true, pooled);
+        Logs logs = config.logs("templates");
+        CountingArgument arg = new CountingArgument();
+        logs.warn("before").message(CONNECT, arg, 5).add("done").add("k", 1).close();
+        sink.awaitRecords(1);
+        config.shutdown();
+        List<Map<String, Object>> records = sink.records();
+        assertEquals(1, records.size());
+        assertEquals("before Connecting to counted failed after 5 attempts done",
+                records.get(0).get("msg"));
+        assertEquals(1, ((Number) records.get(0).get("k")).intValue());
+        assertEquals(1, arg.calls.get());
+        assertFalse(Thread.currentThread() == arg.calledOn.get(),
+                "Should have been formatted on the async thread");
+    }
+
+    static final class CountingArgument {
+
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicReference<Thread> calledOn = new AtomicReference<>();
+
+        @Override
+        public String toString() {
+            calls.incrementAndGet();
+            calledOn.set(Thread.currentThread());
+            return "counted";
+        }
+    }
+
+    @AfterEach
+    public void teardown() {
+        if (config != null) {
+            config.shutdown();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mastfrog.util.collections.CollectionUtils;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class TestPooledRecords {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private LoggingConfig config;
+    private List<CharSequence> lines;
+
+    private Logs setup(boolean async, LogSink also) {
+        System.setProperty("disable.console.logger", "false");
+        lines = Collections.synchronizedList(new ArrayList<>());
+        LoggingConfig[] cfig = new LoggingConfig[1];
+        Supplier<LoggingConfig> supp = () -> cfig[0];
+        LogSink sink = new ConsoleLogSink(supp, lines::add);
+        if (also != null) {
+            sink = sink.and(also);
+        }
+        LoggingConfig.Builder b = LoggingConfig.builder().nonDefault()
+                .dontUseShutdownHook()
+                .hostNameForLogRecords("pooled")
+                .pooledRecords(16)
+                .routeLogsTo(sink, "pooled");
+        if (async) {
+            b.asyncLogging();
+        }
+        config = cfig[0] = b.build();
+        return config.logs("pooled");
+    }
+
+    private Map<String, Object> parse(CharSequence line) throws Exception {
+        try {
+            return CollectionUtils.uncheckedMap(mapper.readValue(line.toString(), Map.class));
+        } catch (Exception ex) {
+            throw new AssertionError("Invalid JSON: " + line, ex);
+        }
+    }
+
+    @Test
+    public void testPooledRecordsEncodeCorrectly() throws Exception {
+        Logs logs = setup(false, null);
+        Map<String, Object> extra = new HashMap<>();
+        extra.put("nested", "thing");
+        logs.info("hello")
+                .add("int", 23)
+                .add("long", Long.MIN_VALUE)
+                .add("neg", -42L)
+                .add("bool", true)
+                .add("str", "quote \" slash \\ newline \n tab \t ctrl \u0001 snow \u2603 \ud83d\ude00")
+                .add("dbl", 1.5D)
+                .add(extra)
+                .add("int", 24)
+                .addLazy("lazy", () -> "computed")
+                .close();
+        assertEquals(1, lines.size(), lines.toString());
+        Map<String, Object> rec = parse(lines.get(0));
+        assertEquals("hello", rec.get("msg"));
+        assertEquals(24, ((Number) rec.get("int")).intValue());
+        assertEquals(Long.MIN_VALUE, ((Number) rec.get("long")).longValue());
+        assertEquals(-42L, ((Number) rec.get("neg")).longValue());
+        assertEquals(Boolean.TRUE, rec.get("bool"));
+        assertEquals("quote \" slash \\ newline \n tab \t ctrl \u0001 snow \u2603 \ud83d\ude00", rec.get("str"));
+        assertEquals(1.5D, ((Number) rec.get("dbl")).doubleValue());
+        assertEquals("thing", rec.get("nested"));
+        assertEquals("computed", rec.get("lazy"));
+        assertEquals("pooled", rec.get("hostname"));
+        assertEquals(30, ((Number) rec.get("level")).intValue());
+    }
+
+    @Test
+    public void testUnconvertibleUnkeyedValuesAreSkipped() throws Exception {
+        Logs logs = setup(false, null);
+        logs.info("odd")
+                .add(TimeUnit.SECONDS)
+                .add(new int[]{1, 2, 3})
+                .add("k", 1)
+                .close();
+        assertEquals(1, lines.size(), lines.toString());
+        Map<String, Object> rec = parse(lines.get(0));
+        assertEquals("odd", rec.get("msg"));
+        assertEquals(1, ((Number) rec.get("k")).intValue());
+    }
+
+    @Test
+    public void testWideRecordsGrowPendingFields() throws Exception {
+        Logs logs = setup(false, null);
+        Log log = logs.info("wide");
+        for (int i = 0; i < 40; i++) {
+            log.add("l" + i, (long) i).add("o" + i, "v" + i);
+        }
+        log.close();
+        assertEquals(1, lines.size(), lines.toString());
+        Map<String, Object> rec = parse(lines.get(0));
+        for (int i = 0; i < 40; i++) {
+            assertEquals(i, ((Number) rec.get("l" + i)).intValue());
+            assertEquals("v" + i, rec.get("o" + i));
+        }
+    }
+
+    @Test
+    public void testLogCannotBeUsedAfterClose() {
+        Logs logs = setup(false, null);
+        Log log = logs.info("x");
+        log.close();
+        assertThrows(IllegalStateException.class, () -> log.add("y", 1));
+    }
+
+    @Test
+    public void testRecordsAreReusedAcrossAsyncHandoff() throws Exception {
+        List<Map<String, Object>> copies = Collections.synchronizedList(new ArrayList<>());
+        // A custom sink may hold onto records, so it must get copies
+        Logs logs = setup(true, (ctx, rec) -> {
+            assertFalse(rec instanceof PooledRecord, rec.getClass().getName());
+            copies.add(rec);
+        });
+        int count = 500;
+        for (int i = 0; i < count; i++) {
+            logs.info("rec").add("ix", i).close();
+        }
+        config.shutdown();
+        assertEquals(count, lines.size());
+        assertEquals(count, copies.size());
+        boolean[] seen = new boolean[count];
+        for (CharSequence line : lines) {
+            Map<String, Object> rec = parse(line);
+            assertEquals("rec", rec.get("msg"), line.toString());
+            seen[((Number) rec.get("ix")).intValue()] = true;
+        }
+        for (int i = 0; i < count; i++) {
+            assertTrue(seen[i], "Missing record " + i);
+            assertEquals("rec", copies.get(i).get("msg"));
+        }
+        assertTrue(config.recordPool().reused() > 0, config.recordPool().toString());
+    }
+
+    @AfterEach
+    public void teardown() {
+        System.setProperty("disable.console.logger", "true");
+        if (config != null) {
+            config.shutdown();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mastfrog.util.collections.CollectionUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class TestRecordLimits {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private LoggingConfig config;
+    private List<CharSequence> lines;
+
+    private Logs setup(boolean pooled, RecordLimits limits) {
+        System.setProperty("disable.console.logger", "false");
+        lines = Collections.synchronizedList(new ArrayList<>());
+        LoggingConfig[] cfig = new LoggingConfig[1];
+        Supplier<LoggingConfig> supp = () -> cfig[0];
+        LoggingConfig.Builder b = LoggingConfig.builder().nonDefault()
+                .dontUseShutdownHook()
+                .hostNameForLogRecords("limits")
+                .limitRecords(limits)
+                .routeLogsTo(new ConsoleLogSink(supp, lines::add), "limits");
+        if (pooled) {
+            b.pooledRecords(4);
+        }
+        config = cfig[0] = b.build();
+        return config.logs("limits");
+    }
+
+    private Map<String, Object> record(int index) throws Exception {
+        CharSequence line = lines.get(index);
+        try {
+            return CollectionUtils.uncheckedMap(mapper.readValue(line.toString(), Map.class));
+        } catch (Exception ex) {
+            throw new AssertionError("Invalid JSON: " + line, ex);
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    @Test
+    public void testStreamedLimits() throws Exception {
+        RecordLimits limits = new RecordLimits(4096, 10, 3, 3);
+        Map<String, Object> deep = new LinkedHashMap<>();
+        deep.put("inner", Collections.singletonMap("tooDeep", Collections.singletonMap("x", 1)));
+        Map<String, Object> rec = new LinkedHashMap<>();
+        rec.put("long", repeat('a', 25));
+        rec.put("bean", new Thing());
+        rec.put("deep", deep);
+        rec.put("dropped", "x");
+        rec.put("msg", repeat('m', 12));
+        rec.put("level", 30);
+        Map<String, Object> m = CollectionUtils.uncheckedMap(
+                mapper.readValue(limits.writeValueAsBytes(mapper, rec), Map.class));
+
+        assertEquals("aaaaaaaaaa...(15 more chars)", m.get("long"));
+        Map<?, ?> bean = (Map<?, ?>) m.get("bean");
+        assertEquals(Arrays.asList(1, 2, 3, "(4 more)"), bean.get("numbers"));
+        assertEquals("(nested too deeply)", ((Map<?, ?>) ((Map<?, ?>) m.get("deep")).get("inner")).get("tooDeep"));
+        // Over the element limit, but bunyan properties are always written
+        assertFalse(m.containsKey("dropped"), m.toString());
+        assertEquals(1, m.get("_truncated"));
+        assertEquals("mmmmmmmmmm...(2 more chars)", m.get("msg"));
+        assertEquals(30, m.get("level"));
+        assertEquals(2L, limits.truncatedStrings());
+        assertEquals(2L, limits.truncatedCollections());
+        assertEquals(1L, limits.truncatedNesting());
+        assertEquals(0L, limits.truncatedRecords());
+    }
+
+    @Test
+    public void testUnparseableLimitPropertiesKeepDefaults() {
+        Properties props = new Properties();
+        props.setProperty(LoggingConfig.PROP_MAX_RECORD_BYTES, "lots");
+        props.setProperty(LoggingConfig.PROP_MAX_STRING_LENGTH, "12");
+        props.setProperty(LoggingConfig.PROP_DEFAULT_CONFIG_POLICY,
+                LoggingConfig.PROP_VALUE_DONT_SET_AS_DEFAULT_CONFIG);
+        config = LoggingConfig.fromProperties(props);
+        RecordLimits limits = config.recordLimits();
+        assertEquals(RecordLimits.DEFAULT_MAX_RECORD_BYTES, limits.maxRecordBytes());
+        assertEquals(12, limits.maxStringLength());
+        config.shutdown();
+
+        props.setProperty(LoggingConfig.PROP_MAX_RECORD_BYTES, "2048");
+        props.setProperty(LoggingConfig.PROP_MAX_STRING_LENGTH, "12.5");
+        config = LoggingConfig.fromProperties(props);
+        limits = config.recordLimits();
+        assertEquals(2048, limits.maxRecordBytes());
+        assertEquals(RecordLimits.DEFAULT_MAX_STRING_LENGTH, limits.maxStringLength());
+    }
+
+    @Test
+    public void testUnpooledRecords() throws Exception {
+        testRecords(false);
+    }
+
+    @Test
+    public void testPooledRecords() throws Exception {
+        testRecords(true);
+    }
+
+    private void testRecords(boolean pooled) throws Exception {
+        RecordLimits limits = new RecordLimits(600, 100, 64, 4);
+        Logs logs = setup(pooled, limits);
+        logs.info("big").add("body", repeat('b', 5000)).add("after", 1).close();
+        Log log = logs.info("many");
+        for (int i = 0; i < 40; i++) {
+            log.add("field" + i, repeat('f', 30));
+        }
+        log.close();
+        logs.info("small").add("ok", true).close();
+        config.shutdown();
+        config = null;
+        assertEquals(3, lines.size());
+        for (CharSequence line : lines) {
+            // The size limit applies to everything but bunyan's properties
+            assertTrue(line.length() < 1000, line.toString());
+        }
+
+        Map<String, Object> big = record(0);
+        String body = (String) big.get("body");
+        assertTrue(body.startsWith(repeat('b', 100) + "...("), body);
+        assertEquals(1, big.get("after"));
+        assertEquals("big", big.get("msg"));
+
+        Map<String, Object> many = record(1);
+        assertEquals("many", many.get("msg"));
+        assertEquals(30, many.get("level"));
+        assertTrue(many.containsKey("field0"));
+        assertFalse(many.containsKey("field39"));
+        int omitted = (Integer) many.get("_truncated");
+        assertTrue(omitted > 0 && omitted < 40, many.toString());
+        assertEquals(40, omitted + many.keySet().stream().filter(k -> k.startsWith("field")).count());
+        assertEquals(1L, limits.truncatedRecords());
+        assertEquals(1L, limits.truncatedStrings());
+
+        Map<String, Object> small = record(2);
+        assertEquals(true, small.get("ok"));
+        assertFalse(small.containsKey("_truncated"));
+    }
+
+    public static final class Thing {
+
+        public int[] numbers = {1, 2, 3, 4, 5, 6, 7};
+    }
+
+    @AfterEach
+    public void teardown() {
+        if (config != null) {
+            config.shutdown();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class TestRecordThrottling {
+
+    private LoggingConfig cfig;
+
+    @Test
+    public void testSamplingKeepsSevereRecords() {
+        RecordingSink sink = new RecordingSink();
+        cfig = LoggingConfig.builder().nonDefault().dontUseShutdownHook()
+                .logTo(sink)
+                .sampleRecords("sampled", Level.INFO, 0)
+                .sampleRecords("sampled", Level.ERROR, 0)
+                .build();
+        Logs logs = cfig.logs("sampled");
+        for (int i = 0; i < 10; i++) {
+            logs.info("dropped").add("i", i).close();
+        }
+        logs.error("kept").close();
+        cfig.logs("other").info("unsampled").close();
+        assertEquals(2, sink.records().size(), sink.records().toString());
+        assertEquals("kept", sink.records().get(0).get("msg"));
+        assertEquals("unsampled", sink.records().get(1).get("msg"));
+    }
+
+    @Test
+    public void testRateLimitAndSummary() throws InterruptedException {
+        RecordingSink sink = new RecordingSink();
+        cfig = LoggingConfig.builder().nonDefault().dontUseShutdownHook()
+                .logTo(sink)
+                .rateLimit("limited", 1, 5)
+                .droppedRecordSummaryInterval(Duration.ofMillis(50))
+                .build();
+        Logs logs = cfig.logs("limited");
+        for (int i = 0; i < 20; i++) {
+            logs.info("hello").add("i", i).close();
+        }
+        assertEquals(5, sink.records().size(), sink.records().toString());
+        Thread.sleep(120);
+        logs.info("hello").add("i", 20).close();
+        long accepted = 0;
+        long dropped = 0;
+        for (Map<String, Object> rec : sink.records()) {
+            if (RecordThrottle.SUMMARY_MESSAGE.equals(rec.get("msg"))) {
+                dropped += ((Number) rec.get("dropped")).longValue();
+            } else {
+                accepted++;
+            }
+        }
+        assertTrue(dropped > 0, sink.records().toString());
+        assertEquals(21, accepted + dropped, sink.records().toString());
+    }
+
+    @Test
+    public void testPerMessageRateLimit() {
+        RecordingSink sink = new RecordingSink();
+        cfig = LoggingConfig.builder().nonDefault().dontUseShutdownHook()
+                .logTo(sink)
+                .rateLimitPerMessage("permsg", 1, 2)
+                .build();
+        Logs logs = cfig.logs("permsg");
+        for (int i = 0; i < 10; i++) {
+            logs.warn("noisy").close();
+        }
+        logs.warn("quiet").close();
+        assertEquals(3, sink.records().size(), sink.records().toString());
+        assertEquals("quiet", sink.records().get(2).get("msg"));
+    }
+
+    @Test
+    public void testLoggerLimitRejectionsDoNotUseMessageAllowance() throws InterruptedException {
+        RecordingSink sink = new RecordingSink();
+        cfig = LoggingConfig.builder().nonDefault().dontUseShutdownHook()
+                .logTo(sink)
+                .rateLimit("both", 10, 2)
+                .rateLimitPerMessage("both", 1, 2)
+                .build();
+        Logs logs = cfig.logs("both");
+        logs.info("first").close();
+        logs.info("first").close();
+        // The logger limit is used up, so these are rejected by it
+        logs.info("second").close();
+        logs.info("second").close();
+        assertEquals(2, sink.records().size(), sink.records().toString());
+        // Long enough for the logger limit to refill, but not the
+        // per-message one
+        Thread.sleep(300);
+        logs.info("second").close();
+        logs.info("second").close();
+        List<Map<String, Object>> recs = sink.records();
+        assertEquals(4, recs.size(), recs.toString());
+        assertEquals("second", recs.get(2).get("msg"));
+        assertEquals("second", recs.get(3).get("msg"));
+    }
+
+    @AfterEach
+    public void teardown() {
+        if (cfig != null) {
+            cfig.shutdown();
+        }
+    }
+
+    static final class RecordingSink implements LogSink {
+
+        private final List<Map<String, Object>> records = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void push(JSONContext ctx, Map<String, Object> logrecord) {
+            records.add(logrecord);
+        }
+
+        List<Map<String, Object>> records() {
+            synchronized (records) {
+                return new ArrayList<>(records);
+            }
+        }
+
+        /**
+         * Wait for an async logging thread to deliver some records, so that
+         * shutting down does not run the remaining work on the test thread.
+         */
+        void awaitRecords(int count) throws InterruptedException {
+            long until = System.currentTimeMillis() + 10_000;
+            while (records.size() < count && System.currentTimeMillis() < until) {
+                Thread.sleep(5);
+            }
+        }
+    }
+}
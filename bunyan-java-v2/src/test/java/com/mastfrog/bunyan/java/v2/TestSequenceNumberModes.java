@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Phaser;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class TestSequenceNumberModes {
+
+    private static final int THREADS = 8;
+    private static final int PER_THREAD = 300;
+    private LoggingConfig cfig;
+
+    @Test
+    public void testBlockSequenceNumbersAreUnique() throws Throwable {
+        SeqSink sink = new SeqSink();
+        cfig = LoggingConfig.builder().nonDefault().dontUseShutdownHook()
+                .logTo(sink)
+                .withBlockAllocatedSequenceNumbers("seq", 0L, 16)
+                .build();
+        hammer(cfig.logs("blocks"));
+        cfig.shutdown();
+        sink.assertUnique(THREADS * PER_THREAD);
+    }
+
+    @Test
+    public void testDequeueSequenceNumbersAreUnique() throws Throwable {
+        SeqSink sink = new SeqSink();
+        cfig = LoggingConfig.builder().nonDefault().dontUseShutdownHook()
+                .asyncLogging()
+                .logTo(sink)
+                .withSequenceNumbersAssignedAtDequeue()
+                .build();
+        hammer(cfig.logs("dequeue"));
+        cfig.shutdown();
+        sink.assertUnique(THREADS * PER_THREAD);
+    }
+
+    @Test
+    public void testDequeueSequenceNumbersWithoutAsync() throws Throwable {
+        SeqSink sink = new SeqSink();
+        cfig = LoggingConfig.builder().nonDefault().dontUseShutdownHook()
+                .logTo(sink)
+                .withSequenceNumbersAssignedAtDequeue()
+                .build();
+        hammer(cfig.logs("sync"));
+        sink.assertUnique(THREADS * PER_THREAD);
+    }
+
+    private void hammer(Logs logs) throws InterruptedException {
+        Phaser phaser = new Phaser(THREADS + 1);
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            threads[i] = new Thread(() -> {
+                phaser.arriveAndAwaitAdvance();
+                for (int j = 0; j < PER_THREAD; j++) {
+                    logs.info("x").add("j", j).close();
+                }
+            }, "seq-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        phaser.arriveAndDeregister();
+        for (Thread t : threads) {
+            t.join();
+        }
+    }
+
+    @AfterEach
+    public void teardown() {
+        if (cfig != null) {
+            cfig.shutdown();
+        }
+    }
+
+    static final class SeqSink implements LogSink {
+
+        private final List<Long> seqs = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void push(JSONContext ctx, Map<String, Object> logrecord) {
+            Object seq = logrecord.get("seq");
+            assertNotNull(seq, "No sequence number in " + logrecord);
+            seqs.add(((Number) seq).longValue());
+        }
+
+        List<Long> arrivalOrder() {
+            synchronized (seqs) {
+                return new ArrayList<>(seqs);
+            }
+        }
+
+        void assertUnique(int expectedCount) {
+            List<Long> all = arrivalOrder();
+            assertEquals(expectedCount, all.size(), "Wrong record count");
+            Set<Long> unique = new HashSet<>(all);
+            assertEquals(all.size(), unique.size(), "Duplicate sequence numbers");
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class TestTailBufferedLogging {
+
+    private LoggingConfig cfig;
+    private TestRecordThrottling.RecordingSink sink;
+
+    private Logs setup() {
+        sink = new TestRecordThrottling.RecordingSink();
+        cfig = LoggingConfig.builder().nonDefault().dontUseShutdownHook()
+                .logTo(sink)
+                .setMinimumLogLevelToInfo()
+                .build();
+        return cfig.logs("tail");
+    }
+
+    @Test
+    public void testBufferedRecordsAreDiscardedOnSuccess() {
+        Logs logs = setup();
+        try (BufferingLogs req = logs.bufferingChild("rid", "a", 10)) {
+            req.debug("step").add("n", 1).close();
+            req.trace("step").add("n", 2).close();
+            req.info("done").close();
+            assertEquals(2, req.buffered());
+        }
+        List<Map<String, Object>> recs = sink.records();
+        assertEquals(1, recs.size(), recs.toString());
+        assertEquals("done", recs.get(0).get("msg"));
+        assertEquals("a", recs.get(0).get("rid"));
+    }
+
+    @Test
+    public void testBufferedRecordsAreFlushedAheadOfErrors() {
+        Logs logs = setup();
+        try (BufferingLogs req = logs.bufferingChild("rid", "b", 3)) {
+            for (int i = 0; i < 5; i++) {
+                req.debug("step").add("n", i).close();
+            }
+            req.error("failed").close();
+            assertEquals(0, req.buffered());
+        }
+        List<Map<String, Object>> recs = sink.records();
+        assertEquals(4, recs.size(), recs.toString());
+        for (int i = 0; i < 3; i++) {
+            Map<String, Object> rec = recs.get(i);
+            assertEquals("step", rec.get("msg"), rec.toString());
+            assertEquals(i + 2, ((Number) rec.get("n")).intValue(), rec.toString());
+            assertEquals(LogLevel.DEBUG_LEVEL, ((Number) rec.get("level")).intValue(), rec.toString());
+        }
+        assertEquals(2L, ((Number) recs.get(0).get(TailBuffer.SKIPPED_KEY)).longValue(), recs.toString());
+        assertEquals("failed", recs.get(3).get("msg"));
+        assertEquals("b", recs.get(3).get("rid"));
+    }
+
+    @Test
+    public void testExplicitFlush() {
+        Logs logs = setup();
+        BufferingLogs req = logs.bufferingChild("rid", "c", 10);
+        req.debug("one").close();
+        req.debug("two").close();
+        assertEquals(0, sink.records().size());
+        req.flush();
+        assertEquals(2, sink.records().size(), sink.records().toString());
+        assertEquals("one", sink.records().get(0).get("msg"));
+        assertEquals("two", sink.records().get(1).get("msg"));
+    }
+
+    @Test
+    public void testLogsWhichCannotBufferWriteThrough() {
+        Logs real = setup();
+        // A Logs implementation which only implements the abstract methods
+        Logs plain = new Logs() {
+            @Override
+            public Log trace() {
+                return real.trace();
+            }
+
+            @Override
+            public Log debug() {
+                return real.debug();
+            }
+
+            @Override
+            public Log info() {
+                return real.info();
+            }
+
+            @Override
+            public Log warn() {
+                return real.warn();
+            }
+
+            @Override
+            public Log error() {
+                return real.error();
+            }
+
+            @Override
+            public Log fatal() {
+                return real.fatal();
+            }
+
+            @Override
+            public Logs child(Map<String, Object> pairs) {
+                return real.child(pairs);
+            }
+        };
+        try (BufferingLogs req = plain.bufferingChild("rid", "d", 10)) {
+            req.debug("disabled").close();
+            req.info("written").close();
+            assertEquals(0, req.buffered());
+            req.flush();
+        }
+        List<Map<String, Object>> recs = sink.records();
+        assertEquals(1, recs.size(), recs.toString());
+        assertEquals("written", recs.get(0).get("msg"));
+        assertEquals("d", recs.get(0).get("rid"));
+    }
+
+    @AfterEach
+    public void teardown() {
+        if (cfig != null) {
+            cfig.shutdown();
+        }
+    }
+}
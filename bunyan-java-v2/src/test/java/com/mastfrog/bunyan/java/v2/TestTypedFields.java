@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mastfrog.util.collections.CollectionUtils;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class TestTypedFields {
+
+    private static final Instant WHEN = Instant.parse("2023-02-14T04:01:10.697915Z");
+    private final ObjectMapper mapper = new ObjectMapper();
+    private LoggingConfig config;
+
+    @Test
+    public void testTypedFieldsUnpooled() throws Exception {
+        testTypedFields(false);
+    }
+
+    @Test
+    public void testTypedFieldsPooled() throws Exception {
+        testTypedFields(true);
+    }
+
+    private void testTypedFields(boolean pooled) throws Exception {
+        System.setProperty("disable.console.logger", "false");
+        List<CharSequence> lines = new ArrayList<>();
+        LoggingConfig[] cfig = new LoggingConfig[1];
+        Supplier<LoggingConfig> supp = () -> cfig[0];
+        ConsoleLogSink sink = new ConsoleLogSink(supp, lines::add);
+        LoggingConfig.Builder b = LoggingConfig.builder().nonDefault()
+                .dontUseShutdownHook()
+                .hostNameForLogRecords("typed")
+                .routeLogsTo(sink, "typed");
+        if (pooled) {
+            b.pooledRecords(4);
+        }
+        config = cfig[0] = b.build();
+        Logs logs = config.logs("typed");
+
+        StringBuilder sb = new StringBuilder("before");
+        logs.info("typed")
+                .add("p50", 12.345D)
+                .add("p99", -1024.5D)
+                .add("tiny", 1.0E-9D)
+                .add("whole", 100D)
+                .add("ratio", 0.1F)
+                .add("nan", Double.NaN)
+                .add("inf", Float.NEGATIVE_INFINITY)
+                .add("chars", sb)
+                .addDuration("elapsed", Duration.ofMillis(250))
+                .addDuration("fine", Duration.ofNanos(1500000))
+                .addDuration("none", null)
+                .addInstant("at", WHEN)
+                .addInstant("epoch", Instant.EPOCH)
+                .add("asObject", (Object) WHEN)
+                .add("durAsObject", (Object) Duration.ofSeconds(3))
+                .close();
+        sb.append(" and after");
+        assertEquals(1, lines.size(), lines.toString());
+        String line = lines.get(0).toString();
+        Map<String, Object> rec = CollectionUtils.uncheckedMap(mapper.readValue(line, Map.class));
+
+        assertEquals("typed", rec.get("msg"), line);
+        assertEquals(12.345D, ((Number) rec.get("p50")).doubleValue());
+        assertEquals(-1024.5D, ((Number) rec.get("p99")).doubleValue());
+        assertEquals(1.0E-9D, ((Number) rec.get("tiny")).doubleValue());
+        assertEquals(100D, ((Number) rec.get("whole")).doubleValue());
+        assertTrue(line.contains("\"ratio\":0.1,") || line.contains("\"ratio\":0.1}"),
+                "Float should not be widened: " + line);
+        assertEquals("NaN", rec.get("nan"));
+        assertEquals("-Infinity", rec.get("inf"));
+        assertEquals("before", rec.get("chars"));
+        assertEquals(250L, ((Number) rec.get("elapsed")).longValue());
+        assertEquals(1.5D, ((Number) rec.get("fine")).doubleValue());
+        assertTrue(rec.containsKey("none"), line);
+        assertEquals(null, rec.get("none"));
+        assertEquals("2023-02-14T04:01:10.697915Z", rec.get("at"));
+        assertEquals("1970-01-01T00:00:00Z", rec.get("epoch"));
+        assertEquals("2023-02-14T04:01:10.697915Z", rec.get("asObject"));
+        assertEquals(3000L, ((Number) rec.get("durAsObject")).longValue());
+    }
+
+    @AfterEach
+    public void teardown() {
+        System.setProperty("disable.console.logger", "true");
+        if (config != null) {
+            config.shutdown();
+        }
+    }
+}
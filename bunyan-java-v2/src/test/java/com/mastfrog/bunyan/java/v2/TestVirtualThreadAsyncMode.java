@@ -0,0 +1,196 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2026 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.bunyan.java.v2;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class TestVirtualThreadAsyncMode {
+
+    private static final int THREADS = 8;
+    private static final int PER_THREAD = 500;
+    private LoggingConfig config;
+    private Path file;
+
+    @Test
+    public void testRecordsAreWrittenInOrderOnTheWriterThread() throws Exception {
+        ThreadSink sink = new ThreadSink();
+        config = LoggingConfig.builder().nonDefault().dontUseShutdownHook()
+                .asyncLoggingForVirtualThreads()
+                .hostNameForLogRecords("vt")
+                .logTo(sink)
+                .build();
+        Logs logs = config.logs("vt");
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            int t = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int j = 0; j < PER_THREAD; j++) {
+                    logs.info("hey").add("t", t).add("j", j).close();
+                }
+            }, "vt-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        // Shut down immediately - nothing queued may be lost
+        config.shutdown();
+
+        List<Map<String, Object>> records = sink.records();
+        assertEquals(THREADS * PER_THREAD, records.size());
+        int[] last = new int[THREADS];
+        Arrays.fill(last, -1);
+        for (Map<String, Object> rec : records) {
+            int t = ((Number) rec.get("t")).intValue();
+            int j = ((Number) rec.get("j")).intValue();
+            assertEquals(last[t] + 1, j, "Out of order for thread " + t + ": " + rec);
+            last[t] = j;
+        }
+        Set<String> writers = sink.threadNames();
+        assertTrue(writers.size() <= 2, writers.toString());
+        // Anything not written by the writer was written by the thread
+        // which shut logging down
+        writers.remove(Thread.currentThread().getName());
+        assertEquals(Collections.singleton("bunyan-v2-writer"), writers);
+    }
+
+    @Test
+    public void testShutdownRacingSubmittersRunsEveryJob() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            WriterThreadExecutor exe = new WriterThreadExecutor(Thread.NORM_PRIORITY);
+            AtomicInteger ran = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int j = 0; j < PER_THREAD; j++) {
+                        exe.execute(ran::incrementAndGet);
+                    }
+                }, "submitter-" + i);
+                thread.start();
+                threads.add(thread);
+            }
+            start.countDown();
+            // Shut down while jobs are still being submitted
+            List<Runnable> left = exe.shutdownNow();
+            for (Runnable r : left) {
+                r.run();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+            assertTrue(exe.isTerminated());
+            assertEquals(THREADS * PER_THREAD, ran.get(), "Round " + round);
+        }
+    }
+
+    @Test
+    public void testFileLogging() throws Exception {
+        file = Files.createTempFile("TestVirtualThreadAsyncMode", ".log");
+        Properties props = new Properties();
+        props.setProperty(LoggingConfig.PROP_VIRTUAL_THREAD_ASYNC, "true");
+        props.setProperty(LoggingConfig.PROP_DEFAULT_FILE, file.toString());
+        props.setProperty(LoggingConfig.PROP_HOSTNAME, "vt");
+        props.setProperty(LoggingConfig.PROP_DEFAULT_CONFIG_POLICY,
+                LoggingConfig.PROP_VALUE_DONT_SET_AS_DEFAULT_CONFIG);
+        config = LoggingConfig.fromProperties(props);
+        Logs logs = config.logs("file");
+        for (int i = 0; i < 100; i++) {
+            logs.info("line").add("i", i).close();
+        }
+        config.shutdown();
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(100, lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            assertTrue(lines.get(i).contains("\"i\":" + i), lines.get(i));
+        }
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        if (config != null) {
+            config.shutdown();
+        }
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    static final class ThreadSink implements LogSink {
+
+        private final List<Map<String, Object>> records = Collections.synchronizedList(new ArrayList<>());
+        private final Set<String> threadNames = Collections.synchronizedSet(new HashSet<>());
+
+        @Override
+        public void push(JSONContext ctx, Map<String, Object> logrecord) {
+            threadNames.add(Thread.currentThread().getName());
+            records.add(logrecord);
+        }
+
+        List<Map<String, Object>> records() {
+            synchronized (records) {
+                return new ArrayList<>(records);
+            }
+        }
+
+        Set<String> threadNames() {
+            synchronized (threadNames) {
+                return new HashSet<>(threadNames);
+            }
+        }
+    }
+}
@@ -53,6 +53,7 @@ import com.mastfrog.util.strings.Strings;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -140,6 +141,16 @@ public final class LoggingModule extends AbstractModule {
             + "no rotation is performed).", type = INTEGER, tier = PRIMARY)
     public static final String SETTINGS_KEY_ROTATE_FILES_MB = "log.rotation.mb";
 
+    /**
+     * Settings key to collapse repeated identical records into one record
+     * with a count.
+     */
+    @Setting(value = "If set to a number of milliseconds, records identical to one logged "
+            + "within that window (same logger, level, message and exception type) are "
+            + "counted rather than written, and one record with the count is logged when "
+            + "the window closes.", type = INTEGER, tier = SECONDARY)
+    public static final String SETTINGS_KEY_SUPPRESS_DUPLICATES_MS = "log.suppress.duplicates.ms";
+
     /**
      * Name used by the Named annotation to identify the ObjectMapper that will
      * be injected into loggers. If unusual objects are to be serialized into
@@ -364,6 +375,19 @@ public final class LoggingModule extends AbstractModule {
                 }
             }
 
+            String dups = settings.getString(SETTINGS_KEY_SUPPRESS_DUPLICATES_MS);
+            if (dups != null) {
+                try {
+                    long ms = Long.parseLong(dups.trim());
+                    if (ms > 0) {
+                        b.suppressDuplicateRecords(Duration.ofMillis(ms));
+                    }
+                } catch (NumberFormatException nfe) {
+                    System.err.println("Bad value for " + SETTINGS_KEY_SUPPRESS_DUPLICATES_MS + ": " + dups);
+                    nfe.printStackTrace();
+                }
+            }
+
             String routedLogs = settings.getString(SETTINGS_KEY_ROUTED_LOGS);
             if (routedLogs != null) {
                 Set<CharSequence> all = Strings.splitUniqueNoEmpty(',', routedLogs);